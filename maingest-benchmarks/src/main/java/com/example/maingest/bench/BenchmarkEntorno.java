@@ -0,0 +1,237 @@
+package com.example.maingest.bench;
+
+import com.example.maingest.MaingestApplication;
+import com.example.maingest.domain.Almacen;
+import com.example.maingest.domain.Armario;
+import com.example.maingest.domain.Empresa;
+import com.example.maingest.domain.EmpresaUsuario;
+import com.example.maingest.domain.EmpresaUsuarioId;
+import com.example.maingest.domain.Permiso;
+import com.example.maingest.domain.Producto;
+import com.example.maingest.domain.Repisa;
+import com.example.maingest.domain.Rol;
+import com.example.maingest.domain.RolPermiso;
+import com.example.maingest.domain.RolPermisoId;
+import com.example.maingest.domain.UnidadMedida;
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.repository.AlmacenRepository;
+import com.example.maingest.repository.ArmarioRepository;
+import com.example.maingest.repository.EmpresaRepository;
+import com.example.maingest.repository.EmpresaUsuarioRepository;
+import com.example.maingest.repository.PermisoRepository;
+import com.example.maingest.repository.ProductoRepository;
+import com.example.maingest.repository.RepisaRepository;
+import com.example.maingest.repository.RolPermisoRepository;
+import com.example.maingest.repository.RolRepository;
+import com.example.maingest.repository.UsuarioRepository;
+import com.example.maingest.service.PermissionCacheService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Contexto Spring compartido por los benchmarks de un mismo fork. Arranca un PostgreSQL
+ * embebido (o usa el indicado con -Dbench.jdbc-url) y siembra un dataset determinista:
+ * misma semilla, mismos tamaños, mismos datos en cada corrida, para poder comparar builds.
+ */
+public final class BenchmarkEntorno {
+
+    public static final long SEMILLA = Long.getLong("bench.semilla", 20240601L);
+    public static final int PRODUCTOS = Integer.getInteger("bench.productos", 500);
+    public static final int REPISAS = Integer.getInteger("bench.repisas", 40);
+
+    private static BenchmarkEntorno instancia;
+
+    private final EmbeddedPostgres postgres;
+    private final ConfigurableApplicationContext contexto;
+    private final Datos datos;
+
+    /**
+     * Ids sembrados. El usuario no es super admin: entra por un rol de empresa con permisos reales.
+     */
+    public record Datos(
+            Usuario usuario,
+            Empresa empresa,
+            List<Long> productoIds,
+            List<Long> repisaIds
+    ) {
+    }
+
+    private BenchmarkEntorno(EmbeddedPostgres postgres, ConfigurableApplicationContext contexto) {
+        this.postgres = postgres;
+        this.contexto = contexto;
+        this.datos = sembrar();
+    }
+
+    public static synchronized BenchmarkEntorno iniciar() {
+        if (instancia != null) {
+            return instancia;
+        }
+        try {
+            String url = System.getProperty("bench.jdbc-url");
+            String usuario = System.getProperty("bench.jdbc-usuario", "postgres");
+            String clave = System.getProperty("bench.jdbc-clave", "postgres");
+            EmbeddedPostgres postgres = null;
+            if (url == null || url.isBlank()) {
+                postgres = EmbeddedPostgres.builder().start();
+                url = postgres.getJdbcUrl("postgres", "postgres");
+            } else {
+                // ddl-auto=create recrea las tablas mapeadas pero no SCHEMA_MIGRACION: sin esto los
+                // pasos constarían como aplicados sobre tablas nuevas
+                try (Connection conexion = DriverManager.getConnection(url, usuario, clave);
+                     Statement statement = conexion.createStatement()) {
+                    statement.execute("DROP TABLE IF EXISTS schema_migracion");
+                }
+            }
+            ConfigurableApplicationContext contexto = new SpringApplicationBuilder(MaingestApplication.class)
+                    // Como argumentos de línea de comandos: los defaultProperties pierden contra application.properties
+                    .run(
+                            "--spring.datasource.url=" + url,
+                            "--spring.datasource.username=" + usuario,
+                            "--spring.datasource.password=" + clave,
+                            "--spring.jpa.hibernate.ddl-auto=create",
+                            "--spring.jpa.show-sql=false",
+                            "--server.port=0",
+                            "--logging.level.root=WARN",
+                            "--app.jwt.secret=benchmark-secret-benchmark-secret-0123456789",
+                            "--app.auditoria.fallback-file=target/auditoria-fallback.ndjson",
+                            "--spring.security.oauth2.client.registration.google.client-id=bench",
+                            "--spring.security.oauth2.client.registration.google.client-secret=bench",
+                            "--spring.security.oauth2.client.registration.microsoft.client-id=bench",
+                            "--spring.security.oauth2.client.registration.microsoft.client-secret=bench"
+                    );
+            instancia = new BenchmarkEntorno(postgres, contexto);
+            Runtime.getRuntime().addShutdownHook(new Thread(instancia::cerrar, "bench-cierre"));
+            return instancia;
+        } catch (Exception e) {
+            throw new IllegalStateException("No se pudo iniciar el entorno de benchmarks", e);
+        }
+    }
+
+    public <T> T bean(Class<T> tipo) {
+        return contexto.getBean(tipo);
+    }
+
+    /**
+     * Instancia real detrás de un proxy AOP; necesaria para invocar métodos privados.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T objetivo(Class<T> tipo) {
+        T bean = bean(tipo);
+        Object objetivo = AopProxyUtils.getSingletonTarget(bean);
+        return objetivo != null ? (T) objetivo : bean;
+    }
+
+    public Datos datos() {
+        return datos;
+    }
+
+    private Datos sembrar() {
+        Random random = new Random(SEMILLA);
+
+        Empresa empresa = new Empresa();
+        empresa.setNombre("Empresa benchmark");
+        empresa = bean(EmpresaRepository.class).save(empresa);
+
+        Usuario usuario = new Usuario();
+        usuario.setCorreo("bench@maingest.local");
+        usuario.setClave("{noop}bench");
+        usuario.setNombre("Usuario benchmark");
+        usuario.setEstado("ACTIVO");
+        usuario = bean(UsuarioRepository.class).save(usuario);
+
+        Rol rol = new Rol();
+        rol.setNombre("BENCH_OPERADOR");
+        rol.setDescripcion("Rol de empresa para benchmarks");
+        rol.setEmpresa(empresa);
+        rol = bean(RolRepository.class).save(rol);
+
+        String[] areas = {"ALMACEN", "ARMARIO", "REPISA", "ITEM", "PRODUCTO", "INVENTARIO", "USUARIO", "ROL"};
+        List<RolPermiso> enlaces = new ArrayList<>();
+        for (String area : areas) {
+            for (int codigo = 1; codigo <= 4; codigo++) {
+                Permiso permiso = new Permiso();
+                permiso.setNombre("BENCH_" + area + "_" + codigo);
+                permiso.setArea(area);
+                permiso.setCodigo(codigo);
+                permiso = bean(PermisoRepository.class).save(permiso);
+                if (random.nextInt(4) != 0) {
+                    RolPermiso rp = new RolPermiso();
+                    rp.setId(new RolPermisoId(rol.getId(), permiso.getId()));
+                    rp.setRol(rol);
+                    rp.setPermiso(permiso);
+                    enlaces.add(rp);
+                }
+            }
+        }
+        bean(RolPermisoRepository.class).saveAll(enlaces);
+
+        EmpresaUsuario eu = new EmpresaUsuario();
+        eu.setId(new EmpresaUsuarioId(empresa.getId(), usuario.getId()));
+        eu.setEmpresa(empresa);
+        eu.setUsuario(usuario);
+        eu.setRol(rol);
+        bean(EmpresaUsuarioRepository.class).save(eu);
+
+        Almacen almacen = new Almacen();
+        almacen.setNombre("Almacén benchmark");
+        almacen.setEmpresa(empresa);
+        almacen = bean(AlmacenRepository.class).save(almacen);
+
+        List<Long> repisaIds = new ArrayList<>();
+        int armarios = Math.max(1, REPISAS / 4);
+        for (int a = 0; a < armarios; a++) {
+            Armario armario = new Armario();
+            armario.setNombre("Armario " + a);
+            armario.setTamanioTotal(4);
+            armario.setAlmacen(almacen);
+            armario = bean(ArmarioRepository.class).save(armario);
+            for (int nivel = 1; nivel <= 4 && repisaIds.size() < REPISAS; nivel++) {
+                Repisa repisa = new Repisa();
+                repisa.setNivel(nivel);
+                repisa.setCapacidad(1_000_000);
+                repisa.setArmario(armario);
+                repisaIds.add(bean(RepisaRepository.class).save(repisa).getId());
+            }
+        }
+
+        List<Producto> productos = new ArrayList<>();
+        UnidadMedida[] unidades = UnidadMedida.values();
+        for (int i = 0; i < PRODUCTOS; i++) {
+            Producto producto = new Producto();
+            producto.setEmpresa(empresa);
+            producto.setSku(String.format("BENCH-%06d", i));
+            producto.setNombre("Producto " + i);
+            producto.setUnidadMedida(unidades[random.nextInt(unidades.length)]);
+            producto.setPrecioBase(BigDecimal.valueOf(100 + random.nextInt(100_000), 2));
+            productos.add(producto);
+        }
+        List<Long> productoIds = bean(ProductoRepository.class).saveAll(productos).stream()
+                .map(Producto::getId)
+                .toList();
+
+        // El catálogo de permisos se compiló al arrancar, antes de sembrar
+        bean(PermissionCacheService.class).invalidarCatalogo();
+        return new Datos(usuario, empresa, productoIds, List.copyOf(repisaIds));
+    }
+
+    private synchronized void cerrar() {
+        try {
+            contexto.close();
+            if (postgres != null) {
+                postgres.close();
+            }
+        } catch (Exception ignored) {
+            // El proceso del fork está terminando
+        }
+    }
+}
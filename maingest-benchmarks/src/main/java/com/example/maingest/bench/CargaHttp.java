@@ -0,0 +1,122 @@
+package com.example.maingest.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prueba de carga de lazo cerrado contra una instancia ya levantada: {@code carga.clientes}
+ * clientes concurrentes, cada uno lanza el siguiente request apenas recibe la respuesta.
+ * Sirve para comparar el arranque normal (pool de Tomcat) contra {@code --spring.profiles.active=virtual}
+ * con el mismo dataset. Reporta throughput, p50/p99/p99.9 y la distribución de estados
+ * (los 503 del límite de concurrencia se cuentan aparte de los errores de conexión).
+ */
+public final class CargaHttp {
+
+    private CargaHttp() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        URI uri = URI.create(System.getProperty("carga.url", "http://localhost:8080/api/productos?page=0&size=20"));
+        int clientes = Integer.getInteger("carga.clientes", 5000);
+        long calentamientoNanos = Duration.ofSeconds(Long.getLong("carga.calentamiento-s", 10)).toNanos();
+        long duracionNanos = Duration.ofSeconds(Long.getLong("carga.duracion-s", 30)).toNanos();
+        String token = System.getProperty("carga.token", System.getenv("CARGA_TOKEN"));
+
+        HttpClient cliente = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        HttpRequest.Builder plantilla = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET();
+        if (token != null && !token.isBlank()) {
+            plantilla.header("Authorization", "Bearer " + token);
+        }
+        HttpRequest request = plantilla.build();
+
+        Estado estado = new Estado(System.nanoTime() + calentamientoNanos, duracionNanos);
+        CountDownLatch terminados = new CountDownLatch(clientes);
+        System.out.printf(Locale.ROOT, "%s: %d clientes, %d s de calentamiento, %d s medidos%n",
+                uri, clientes, calentamientoNanos / 1_000_000_000L, duracionNanos / 1_000_000_000L);
+        for (int i = 0; i < clientes; i++) {
+            siguiente(cliente, request, estado, terminados);
+        }
+        terminados.await();
+        estado.reportar(clientes);
+    }
+
+    private static void siguiente(HttpClient cliente, HttpRequest request, Estado estado, CountDownLatch terminados) {
+        long inicio = System.nanoTime();
+        if (inicio - estado.fin >= 0) {
+            terminados.countDown();
+            return;
+        }
+        cliente.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((respuesta, error) -> {
+            long fin = System.nanoTime();
+            if (inicio - estado.inicioMedicion >= 0 && fin - estado.fin < 0) {
+                estado.registrar(fin - inicio, error != null ? -1 : respuesta.statusCode());
+            }
+            siguiente(cliente, request, estado, terminados);
+        });
+    }
+
+    private static final class Estado {
+
+        private final long inicioMedicion;
+        private final long fin;
+        private final long duracionNanos;
+        private final Map<Integer, LongAdder> estados = new ConcurrentHashMap<>();
+        private final AtomicLong total = new AtomicLong();
+        private long[] latencias = new long[1 << 20];
+
+        private Estado(long inicioMedicion, long duracionNanos) {
+            this.inicioMedicion = inicioMedicion;
+            this.fin = inicioMedicion + duracionNanos;
+            this.duracionNanos = duracionNanos;
+        }
+
+        private void registrar(long nanos, int status) {
+            estados.computeIfAbsent(status, s -> new LongAdder()).increment();
+            if (status != 200 && status != 304) {
+                return;
+            }
+            int posicion = (int) total.getAndIncrement();
+            synchronized (this) {
+                if (posicion >= latencias.length) {
+                    latencias = Arrays.copyOf(latencias, Math.max(latencias.length * 2, posicion + 1));
+                }
+                latencias[posicion] = nanos;
+            }
+        }
+
+        private synchronized void reportar(int clientes) {
+            int n = (int) total.get();
+            long[] ordenadas = Arrays.copyOf(latencias, n);
+            Arrays.sort(ordenadas);
+            double segundos = duracionNanos / 1e9;
+            System.out.printf(Locale.ROOT, "clientes=%d  exitosos=%d  throughput=%.1f req/s%n", clientes, n, n / segundos);
+            if (n > 0) {
+                System.out.printf(Locale.ROOT, "p50=%.2f ms  p99=%.2f ms  p99.9=%.2f ms  max=%.2f ms%n",
+                        percentil(ordenadas, 0.50), percentil(ordenadas, 0.99),
+                        percentil(ordenadas, 0.999), ordenadas[n - 1] / 1e6);
+            }
+            Map<Integer, Long> porEstado = new TreeMap<>();
+            estados.forEach((status, cuenta) -> porEstado.put(status, cuenta.sum()));
+            System.out.println("estados (-1 = error de conexión/timeout): " + porEstado);
+        }
+
+        private static double percentil(long[] ordenadas, double p) {
+            int indice = (int) Math.min(ordenadas.length - 1, Math.ceil(p * ordenadas.length) - 1);
+            return ordenadas[Math.max(0, indice)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.maingest.bench;
+
+import com.example.maingest.repository.ProductoRepository;
+import com.example.maingest.service.CatalogoBusquedaService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CatalogoBusquedaService.buscar sobre el índice en memoria de una empresa con {@code productos}
+ * SKUs (500k por defecto). El índice se arma con el camino real (construcción en segundo plano
+ * desde ProductoRepository), pero el repositorio devuelve un catálogo sintético determinista en
+ * vez de ir a la base: lo que se mide es la consulta, no PostgreSQL.
+ * <p>
+ * En modo SampleTime: JMH informa p50/p99/p99.9 por tipo de consulta. Objetivo: p99 &lt; 5 ms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class CatalogoBusquedaBenchmark {
+
+    private static final long EMPRESA_ID = 1L;
+    private static final String[] TIPOS = {
+            "laptop", "monitor", "teclado", "mouse", "cable", "silla", "escritorio", "impresora", "router",
+            "parlante", "audifonos", "camara", "tablet", "cargador", "disco", "memoria", "proyector", "lampara"
+    };
+    private static final String[] MARCAS = {
+            "dell", "lenovo", "samsung", "logitech", "hp", "asus", "acer", "xiaomi", "sony", "epson",
+            "kingston", "tp-link", "philips", "genius", "lg", "canon"
+    };
+    private static final String[] ATRIBUTOS = {
+            "negro", "blanco", "gris", "inalambrico", "usb-c", "hdmi", "gamer", "oficina", "pro", "mini",
+            "ergonomico", "portatil", "reforzado", "led", "bluetooth", "economico"
+    };
+
+    @Param({"500000"})
+    public int productos;
+
+    private CatalogoBusquedaService servicio;
+    private String[] skus;
+    private String[] prefijos;
+    private String[] errores;
+    private String[] frases;
+    private int siguiente;
+
+    private record Fila(Long getId, String getSku, String getNombre, String getDescripcion)
+            implements ProductoRepository.ProductoIndexable {
+    }
+
+    @Setup(Level.Trial)
+    public void preparar() throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(Long.getLong("bench.semilla", 20240601L));
+        List<ProductoRepository.ProductoIndexable> catalogo = new ArrayList<>(productos);
+        for (int i = 0; i < productos; i++) {
+            String tipo = TIPOS[random.nextInt(TIPOS.length)];
+            String marca = MARCAS[random.nextInt(MARCAS.length)];
+            String atributo = ATRIBUTOS[random.nextInt(ATRIBUTOS.length)];
+            String nombre = tipo + " " + marca + " " + atributo + " " + (100 + random.nextInt(900));
+            String descripcion = "Producto " + tipo + " marca " + marca + ", modelo " + Integer.toHexString(i)
+                    + ", acabado " + ATRIBUTOS[random.nextInt(ATRIBUTOS.length)];
+            catalogo.add(new Fila((long) i + 1, String.format("SKU-%07d", i), nombre, descripcion));
+        }
+
+        ProductoRepository repositorio = (ProductoRepository) Proxy.newProxyInstance(
+                ProductoRepository.class.getClassLoader(), new Class<?>[]{ProductoRepository.class},
+                (proxy, metodo, argumentos) -> {
+                    if (metodo.getName().equals("findIndexablesByEmpresaId")) {
+                        return catalogo;
+                    }
+                    throw new UnsupportedOperationException(metodo.getName());
+                });
+        servicio = new CatalogoBusquedaService(repositorio, 1, 0.5);
+        long limite = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+        while (servicio.buscar(EMPRESA_ID, "laptop", 20).isEmpty()) {
+            if (System.nanoTime() > limite) {
+                throw new IllegalStateException("El índice no se construyó en 5 minutos");
+            }
+            Thread.sleep(100);
+        }
+
+        int muestras = 1024;
+        skus = new String[muestras];
+        prefijos = new String[muestras];
+        errores = new String[muestras];
+        frases = new String[muestras];
+        for (int i = 0; i < muestras; i++) {
+            ProductoRepository.ProductoIndexable fila = catalogo.get(random.nextInt(productos));
+            String[] palabras = fila.getNombre().split(" ");
+            skus[i] = fila.getSku();
+            prefijos[i] = palabras[0].substring(0, Math.min(4, palabras[0].length()));
+            errores[i] = transponer(palabras[0], random) + " " + palabras[1];
+            frases[i] = palabras[0] + " " + palabras[1] + " " + palabras[2];
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        servicio.destroy();
+    }
+
+    @Benchmark
+    public Optional<CatalogoBusquedaService.Resultado> skuExacto() {
+        return servicio.buscar(EMPRESA_ID, skus[siguiente++ & 1023], 20);
+    }
+
+    @Benchmark
+    public Optional<CatalogoBusquedaService.Resultado> prefijo() {
+        return servicio.buscar(EMPRESA_ID, prefijos[siguiente++ & 1023], 20);
+    }
+
+    @Benchmark
+    public Optional<CatalogoBusquedaService.Resultado> conErrorDeTipeo() {
+        return servicio.buscar(EMPRESA_ID, errores[siguiente++ & 1023], 20);
+    }
+
+    @Benchmark
+    public Optional<CatalogoBusquedaService.Resultado> variasPalabras() {
+        return servicio.buscar(EMPRESA_ID, frases[siguiente++ & 1023], 20);
+    }
+
+    // Dos letras vecinas intercambiadas: "laptop" -> "lpatop"
+    private static String transponer(String palabra, SplittableRandom random) {
+        if (palabra.length() < 3) {
+            return palabra;
+        }
+        int i = 1 + random.nextInt(palabra.length() - 2);
+        char[] letras = palabra.toCharArray();
+        char c = letras[i];
+        letras[i] = letras[i + 1];
+        letras[i + 1] = c;
+        return new String(letras);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.maingest.bench;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Punto de entrada de benchmarks.jar. Acepta las mismas opciones que JMH; si no se indica
+ * formato de resultado, publica JSON en target/jmh-result.json para comparar entre builds.
+ */
+public final class EjecutarBenchmarks {
+
+    private EjecutarBenchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> opciones = new ArrayList<>(Arrays.asList(args));
+        if (!opciones.contains("-rf")) {
+            opciones.addAll(List.of("-rf", "json"));
+        }
+        if (!opciones.contains("-rff")) {
+            opciones.addAll(List.of("-rff", System.getProperty("bench.resultado", "target/jmh-result.json")));
+        }
+        Main.main(opciones.toArray(String[]::new));
+    }
+}
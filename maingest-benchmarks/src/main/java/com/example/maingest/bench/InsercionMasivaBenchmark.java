@@ -0,0 +1,93 @@
+package com.example.maingest.bench;
+
+import com.example.maingest.domain.Empresa;
+import com.example.maingest.domain.Producto;
+import com.example.maingest.domain.UnidadMedida;
+import com.example.maingest.repository.ProductoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Alta masiva de productos en una transacción, antes y después de pasar los ids a secuencia.
+ * {@code identityFilaPorFila} reproduce lo que hacía Hibernate con IDENTITY: un INSERT ... RETURNING
+ * por fila. {@code secuenciaPorLotes} es el camino actual: saveAll con ids pooled-lo y
+ * batch_size/order_inserts, que termina en INSERT por lotes. El tiempo es por lote de {@code filas}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class InsercionMasivaBenchmark {
+
+    @Param({"1000"})
+    public int filas;
+
+    private ProductoRepository productoRepository;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private Empresa empresa;
+    private long secuencia;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        BenchmarkEntorno entorno = BenchmarkEntorno.iniciar();
+        productoRepository = entorno.bean(ProductoRepository.class);
+        jdbcTemplate = entorno.bean(JdbcTemplate.class);
+        transactionTemplate = new TransactionTemplate(entorno.bean(PlatformTransactionManager.class));
+        empresa = entorno.datos().empresa();
+    }
+
+    @Benchmark
+    public long identityFilaPorFila() {
+        return transactionTemplate.execute(status -> {
+            long ultimo = 0;
+            for (int i = 0; i < filas; i++) {
+                long n = ++secuencia;
+                ultimo = jdbcTemplate.queryForObject(
+                        "INSERT INTO producto (empresa_id, sku, nombre, precio_base, unidad_medida, activo) "
+                                + "VALUES (?, ?, ?, ?, 'UNIDAD', true) RETURNING id",
+                        Long.class, empresa.getId(), "MASIVO-" + n, "Producto masivo " + n, BigDecimal.TEN);
+            }
+            return ultimo;
+        });
+    }
+
+    @Benchmark
+    public long secuenciaPorLotes() {
+        return transactionTemplate.execute(status -> {
+            List<Producto> productos = new ArrayList<>(filas);
+            for (int i = 0; i < filas; i++) {
+                long n = ++secuencia;
+                Producto producto = new Producto();
+                producto.setEmpresa(empresa);
+                producto.setSku("MASIVO-" + n);
+                producto.setNombre("Producto masivo " + n);
+                producto.setUnidadMedida(UnidadMedida.UNIDAD);
+                producto.setPrecioBase(BigDecimal.TEN);
+                productos.add(producto);
+            }
+            List<Producto> guardados = productoRepository.saveAll(productos);
+            return guardados.get(guardados.size() - 1).getId();
+        });
+    }
+}
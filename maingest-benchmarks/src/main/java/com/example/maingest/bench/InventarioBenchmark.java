@@ -0,0 +1,67 @@
+package com.example.maingest.bench;
+
+import com.example.maingest.domain.MovimientoInventario;
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.service.InventarioService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Movimientos de kardex contra PostgreSQL: cada operación es una transacción completa
+ * (bloqueo del slot, item, movimiento y auditoría). Entrada y salida van en par para que
+ * el stock no crezca sin límite entre iteraciones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class InventarioBenchmark {
+
+    private InventarioService inventarioService;
+    private Usuario actor;
+    private List<Long> productoIds;
+    private List<Long> repisaIds;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        BenchmarkEntorno entorno = BenchmarkEntorno.iniciar();
+        inventarioService = entorno.bean(InventarioService.class);
+        actor = entorno.datos().usuario();
+        productoIds = entorno.datos().productoIds();
+        repisaIds = entorno.datos().repisaIds();
+        random = new SplittableRandom(BenchmarkEntorno.SEMILLA);
+    }
+
+    @Benchmark
+    public MovimientoInventario entradaYSalida() {
+        Long productoId = productoIds.get(random.nextInt(productoIds.size()));
+        Long repisaId = repisaIds.get(random.nextInt(repisaIds.size()));
+        inventarioService.registrarEntrada(productoId, repisaId, 5, null, "bench", actor);
+        return inventarioService.registrarSalida(productoId, repisaId, 5, "bench", actor);
+    }
+
+    @Benchmark
+    public MovimientoInventario traslado() {
+        Long productoId = productoIds.get(random.nextInt(productoIds.size()));
+        int origen = random.nextInt(repisaIds.size());
+        int destino = (origen + 1 + random.nextInt(repisaIds.size() - 1)) % repisaIds.size();
+        inventarioService.registrarEntrada(productoId, repisaIds.get(origen), 3, null, "bench", actor);
+        return inventarioService.registrarTraslado(productoId, repisaIds.get(origen), repisaIds.get(destino), 3, "bench", actor);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.maingest.bench;
+
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.security.JwtService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Emisión de tokens (incluye el cálculo de roles y permisos del usuario) y su validación.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+    private JwtService jwtService;
+    private Usuario usuario;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        BenchmarkEntorno entorno = BenchmarkEntorno.iniciar();
+        jwtService = entorno.bean(JwtService.class);
+        usuario = entorno.datos().usuario();
+        token = jwtService.generateToken(usuario);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(usuario);
+    }
+
+    @Benchmark
+    public Long extractUsuarioId() {
+        return jwtService.extractUsuarioId(token);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.maingest.bench;
+
+import com.example.maingest.controller.KardexController;
+import com.example.maingest.domain.Empresa;
+import com.example.maingest.domain.MovimientoInventario;
+import com.example.maingest.domain.Producto;
+import com.example.maingest.domain.Repisa;
+import com.example.maingest.domain.TipoMovimiento;
+import com.example.maingest.domain.Usuario;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapeo MovimientoInventario → MovimientoDto de una página de kardex, sobre entidades ya
+ * cargadas en memoria: mide solo el mapeo, no la consulta ni la serialización.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KardexMappingBenchmark {
+
+    @Param({"50", "1000"})
+    private int tamanioPagina;
+
+    private Object controller;
+    private MethodHandle toDto;
+    private List<MovimientoInventario> pagina;
+
+    @Setup(Level.Trial)
+    public void preparar() throws ReflectiveOperationException {
+        BenchmarkEntorno entorno = BenchmarkEntorno.iniciar();
+        controller = entorno.objetivo(KardexController.class);
+        toDto = MethodHandles.privateLookupIn(KardexController.class, MethodHandles.lookup())
+                .findVirtual(KardexController.class, "toDto",
+                        MethodType.methodType(KardexController.MovimientoDto.class, MovimientoInventario.class));
+
+        BenchmarkEntorno.Datos datos = entorno.datos();
+        Random random = new Random(BenchmarkEntorno.SEMILLA);
+        TipoMovimiento[] tipos = TipoMovimiento.values();
+        Instant base = Instant.parse("2024-01-01T00:00:00Z");
+        pagina = new ArrayList<>(tamanioPagina);
+        for (int i = 0; i < tamanioPagina; i++) {
+            Producto producto = new Producto();
+            producto.setId(datos.productoIds().get(random.nextInt(datos.productoIds().size())));
+            producto.setSku(String.format("BENCH-%06d", i));
+            producto.setNombre("Producto " + i);
+            Repisa repisa = new Repisa();
+            repisa.setId(datos.repisaIds().get(random.nextInt(datos.repisaIds().size())));
+            Empresa empresa = new Empresa();
+            empresa.setId(datos.empresa().getId());
+            Usuario usuario = new Usuario();
+            usuario.setId(datos.usuario().getId());
+            usuario.setNombre(datos.usuario().getNombre());
+
+            MovimientoInventario mov = new MovimientoInventario();
+            mov.setId((long) i + 1);
+            mov.setEmpresa(empresa);
+            mov.setProducto(producto);
+            mov.setRepisaDestino(repisa);
+            mov.setCantidadMovida(1 + random.nextInt(100));
+            mov.setTipo(tipos[random.nextInt(tipos.length)]);
+            mov.setObservacion(random.nextBoolean() ? "bench" : null);
+            mov.setUsuario(usuario);
+            mov.setFecha(base.plusSeconds(i * 60L));
+            pagina.add(mov);
+        }
+    }
+
+    @Benchmark
+    public void toDto(Blackhole blackhole) throws Throwable {
+        for (MovimientoInventario mov : pagina) {
+            blackhole.consume((KardexController.MovimientoDto) toDto.invoke(controller, mov));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.maingest.bench;
+
+import com.example.maingest.domain.Empresa;
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.service.PermissionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * hasPermissionForEmpresa con el scope compilado en cache (camino de cada request) y tras
+ * invalidar al usuario (primer request después de un cambio de roles).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PermissionBenchmark {
+
+    private static final String[] AREAS = {"ALMACEN", "ARMARIO", "REPISA", "ITEM", "PRODUCTO", "INVENTARIO", "USUARIO", "ROL"};
+
+    private PermissionService permissionService;
+    private Usuario usuario;
+    private Empresa empresa;
+    private int siguiente;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        BenchmarkEntorno entorno = BenchmarkEntorno.iniciar();
+        permissionService = entorno.bean(PermissionService.class);
+        usuario = entorno.datos().usuario();
+        empresa = entorno.datos().empresa();
+        permissionService.hasPermissionForEmpresa(usuario, empresa, "ITEM", 1);
+    }
+
+    @Benchmark
+    public boolean cacheCaliente() {
+        int i = siguiente++ & 31;
+        return permissionService.hasPermissionForEmpresa(usuario, empresa, AREAS[i >> 2], (i & 3) + 1);
+    }
+
+    @Benchmark
+    public boolean cacheFria() {
+        permissionService.invalidarCacheUsuario(usuario.getId());
+        return permissionService.hasPermissionForEmpresa(usuario, empresa, "INVENTARIO", 2);
+    }
+}
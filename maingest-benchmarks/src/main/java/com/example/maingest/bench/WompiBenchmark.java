@@ -0,0 +1,82 @@
+package com.example.maingest.bench;
+
+import com.example.maingest.service.WompiService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Firma de integridad (sha256Hex) y verificación del checksum de un evento de Wompi con
+ * un payload fijo, igual al que llega por webhook.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WompiBenchmark {
+
+    private static final String SECRETO = "bench_events_secret";
+    private static final String EVENTO = """
+            {"event":"transaction.updated",
+             "data":{"transaction":{"id":"1234-1610641025-49201","amount_in_cents":4490000,
+              "reference":"MAINGEST-1-2-1700000000000","customer_email":"bench@maingest.local",
+              "currency":"COP","payment_method_type":"CARD","status":"APPROVED"}},
+             "environment":"test",
+             "signature":{"properties":["transaction.id","transaction.status","transaction.amount_in_cents"],
+              "timestamp":1530291411},
+             "timestamp":1530291411,"sent_at":"2018-07-20T16:45:05.000Z"}
+            """;
+
+    private Object wompiService;
+    private MethodHandle sha256Hex;
+    private MethodHandle verifyEventChecksum;
+    private JsonNode evento;
+    private String checksum;
+    private String cadenaIntegridad;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Throwable {
+        BenchmarkEntorno entorno = BenchmarkEntorno.iniciar();
+        wompiService = entorno.objetivo(WompiService.class);
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(WompiService.class, MethodHandles.lookup());
+        sha256Hex = lookup.findVirtual(WompiService.class, "sha256Hex",
+                MethodType.methodType(String.class, String.class));
+        verifyEventChecksum = lookup.findVirtual(WompiService.class, "verifyEventChecksum",
+                MethodType.methodType(boolean.class, JsonNode.class, String.class, String.class));
+
+        evento = new ObjectMapper().readTree(EVENTO);
+        checksum = (String) sha256Hex.invoke(wompiService,
+                "1234-1610641025-49201" + "APPROVED" + "4490000" + 1530291411L + SECRETO);
+        cadenaIntegridad = "MAINGEST-1-2-1700000000000" + 4490000 + "COP" + "bench_integrity_secret";
+        if (!(boolean) verifyEventChecksum.invoke(wompiService, evento, checksum, SECRETO)) {
+            throw new IllegalStateException("El checksum del evento de prueba no verifica");
+        }
+    }
+
+    @Benchmark
+    public String sha256Hex() throws Throwable {
+        return (String) sha256Hex.invoke(wompiService, cadenaIntegridad);
+    }
+
+    @Benchmark
+    public boolean verifyEventChecksum() throws Throwable {
+        return (boolean) verifyEventChecksum.invoke(wompiService, evento, checksum, SECRETO);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.maingest.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cuenta las sentencias JDBC y el tiempo en base del hilo actual mientras hay una medición
+ * abierta. La abre {@link PresupuestoSqlFilter} por request y la pueden abrir los tests para
+ * fijar cuántas consultas hace un endpoint. Las mediciones se anidan: una sentencia suma en
+ * todas las abiertas del hilo.
+ * <p>
+ * Solo ve lo que corre en el hilo que abrió la medición; el trabajo que un request deja a otros
+ * hilos (reportes en streaming, trabajos) no se cuenta.
+ */
+public final class ConsultasSql {
+
+    // Textos SQL distintos que se recuerdan por medición para detectar N+1
+    private static final int MAX_TEXTOS = 256;
+
+    private static final ThreadLocal<Medicion> ACTUAL = new ThreadLocal<>();
+
+    public record Repetida(String sql, int veces) {
+    }
+
+    public static final class Medicion implements AutoCloseable {
+        private final Medicion padre;
+        private final Map<String, Integer> porTexto = new HashMap<>();
+        private int sentencias;
+        private long nanos;
+        private String masRepetida;
+        private int vecesMasRepetida;
+        private boolean cerrada;
+
+        private Medicion(Medicion padre) {
+            this.padre = padre;
+        }
+
+        public int sentencias() {
+            return sentencias;
+        }
+
+        public long duracionNanos() {
+            return nanos;
+        }
+
+        public double duracionMs() {
+            return nanos / 1_000_000.0;
+        }
+
+        /**
+         * Sentencia que más veces se ejecutó con el mismo texto. Un SELECT parametrizado repetido
+         * decenas de veces en un request suele ser un N+1.
+         */
+        public Repetida masRepetida() {
+            return masRepetida != null ? new Repetida(masRepetida, vecesMasRepetida) : null;
+        }
+
+        /**
+         * Textos SQL distintos que se ejecutaron (se recuerdan hasta 256).
+         */
+        public Set<String> textos() {
+            return Set.copyOf(porTexto.keySet());
+        }
+
+        private void sumar(String sql, long duracion) {
+            sentencias++;
+            nanos += duracion;
+            if (sql == null) {
+                return;
+            }
+            Integer veces = porTexto.get(sql);
+            if (veces == null) {
+                if (porTexto.size() >= MAX_TEXTOS) {
+                    return;
+                }
+                veces = 0;
+            }
+            veces++;
+            porTexto.put(sql, veces);
+            if (veces > vecesMasRepetida) {
+                vecesMasRepetida = veces;
+                masRepetida = sql;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (cerrada) {
+                return;
+            }
+            cerrada = true;
+            if (ACTUAL.get() == this) {
+                if (padre != null) {
+                    ACTUAL.set(padre);
+                } else {
+                    ACTUAL.remove();
+                }
+            }
+        }
+    }
+
+    private ConsultasSql() {
+    }
+
+    public static Medicion iniciar() {
+        Medicion medicion = new Medicion(ACTUAL.get());
+        ACTUAL.set(medicion);
+        return medicion;
+    }
+
+    public static boolean activa() {
+        return ACTUAL.get() != null;
+    }
+
+    static void registrar(String sql, long nanos) {
+        for (Medicion m = ACTUAL.get(); m != null; m = m.padre) {
+            m.sumar(sql, nanos);
+        }
+    }
+}
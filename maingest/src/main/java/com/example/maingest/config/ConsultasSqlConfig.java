@@ -0,0 +1,42 @@
+package com.example.maingest.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * Con {@code app.sql.presupuesto.activo} envuelve el DataSource (ya enrutado a réplicas si las
+ * hay) en un {@link ConsultasSqlDataSource} para contar sentencias por request.
+ */
+@Configuration
+public class ConsultasSqlConfig {
+
+    private interface PostProcesadorOrdenado extends BeanPostProcessor, Ordered {
+    }
+
+    @Bean
+    public static BeanPostProcessor consultasSqlPostProcessor(Environment environment) {
+        return new PostProcesadorOrdenado() {
+            @Override
+            public int getOrder() {
+                return Ordered.LOWEST_PRECEDENCE;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!"dataSource".equals(beanName) || !(bean instanceof DataSource dataSource)
+                        || bean instanceof ConsultasSqlDataSource) {
+                    return bean;
+                }
+                if (!environment.getProperty("app.sql.presupuesto.activo", Boolean.class, true)) {
+                    return bean;
+                }
+                return new ConsultasSqlDataSource(dataSource);
+            }
+        };
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.maingest.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Envuelve conexiones y sentencias para sumar cada ejecución en la {@link ConsultasSql} abierta.
+ * Sin medición abierta al pedir la conexión (hilos de fondo, arranque) se entrega la conexión
+ * tal cual, así que fuera de los requests no hay costo.
+ */
+public class ConsultasSqlDataSource extends DelegatingDataSource implements DisposableBean {
+
+    public ConsultasSqlDataSource(DataSource destino) {
+        super(destino);
+    }
+
+    // Spring cierra el bean expuesto; el pool (o el enrutador de réplicas) queda detrás
+    @Override
+    public void destroy() throws Exception {
+        DataSource destino = obtainTargetDataSource();
+        if (destino instanceof DisposableBean disposable) {
+            disposable.destroy();
+        } else if (destino instanceof AutoCloseable cerrable) {
+            cerrable.close();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return envolver(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return envolver(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    private static Connection envolver(Connection conexion) {
+        if (!ConsultasSql.activa()) {
+            return conexion;
+        }
+        return (Connection) Proxy.newProxyInstance(
+                ConsultasSqlDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new ConexionMedida(conexion)
+        );
+    }
+
+    private record ConexionMedida(Connection conexion) implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String nombre = method.getName();
+            if (esIdentidad(method)) {
+                return identidad(proxy, method, args);
+            }
+            Object resultado = invocar(conexion, method, args);
+            if (resultado instanceof Statement sentencia
+                    && ("createStatement".equals(nombre) || "prepareStatement".equals(nombre) || "prepareCall".equals(nombre))) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+                return Proxy.newProxyInstance(
+                        ConsultasSqlDataSource.class.getClassLoader(),
+                        new Class<?>[]{method.getReturnType()},
+                        new SentenciaMedida(sentencia, sql)
+                );
+            }
+            return resultado;
+        }
+    }
+
+    private record SentenciaMedida(Statement sentencia, String sqlPreparado) implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (esIdentidad(method)) {
+                return identidad(proxy, method, args);
+            }
+            if (!method.getName().startsWith("execute")) {
+                return invocar(sentencia, method, args);
+            }
+            // Statement.execute*(sql) trae el texto; en PreparedStatement es el de prepareStatement
+            String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : sqlPreparado;
+            long inicio = System.nanoTime();
+            try {
+                return invocar(sentencia, method, args);
+            } finally {
+                ConsultasSql.registrar(sql, System.nanoTime() - inicio);
+            }
+        }
+    }
+
+    // Hibernate guarda conexiones y sentencias en mapas: equals/hashCode deben ser los del proxy
+    private static boolean esIdentidad(Method method) {
+        return method.getDeclaringClass() == Object.class
+                && ("equals".equals(method.getName()) || "hashCode".equals(method.getName()));
+    }
+
+    private static Object identidad(Object proxy, Method method, Object[] args) {
+        return "equals".equals(method.getName()) ? proxy == args[0] : System.identityHashCode(proxy);
+    }
+
+    private static Object invocar(Object destino, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(destino, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.maingest.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tope de requests en curso, proporcional al pool de conexiones. Con hilos virtuales Tomcat ya no
+ * limita la concurrencia: miles de requests llegarían a la vez a Hikari y vencerían su
+ * connection-timeout. Aquí esperan hasta {@code espera-ms} por un turno y si no lo consiguen
+ * reciben 503 con Retry-After, sin tocar la base.
+ * <p>
+ * Un request asíncrono (StreamingResponseBody, DeferredResult) conserva el turno hasta que termina
+ * el ciclo async, no hasta que vuelve el primer dispatch: el streaming sigue usando la conexión.
+ * Health y el scrape de Prometheus no pasan por el límite, para que un servidor saturado no
+ * aparezca caído ni deje de reportar métricas justo cuando más se necesitan.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class LimiteConcurrenciaFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(LimiteConcurrenciaFilter.class);
+
+    private final boolean activo;
+    private final int permisos;
+    private final long esperaMs;
+    private final Semaphore turnos;
+    private final AtomicLong rechazados = new AtomicLong();
+
+    public LimiteConcurrenciaFilter(
+            DataSource dataSource,
+            @Value("${app.concurrencia.limitar:false}") boolean activo,
+            @Value("${app.concurrencia.max-requests:0}") int maxRequests,
+            @Value("${app.concurrencia.por-conexion:4}") int porConexion,
+            @Value("${app.concurrencia.espera-ms:2000}") long esperaMs
+    ) {
+        this.activo = activo;
+        this.permisos = maxRequests > 0 ? maxRequests : tamanioPool(dataSource) * Math.max(1, porConexion);
+        this.esperaMs = Math.max(0, esperaMs);
+        this.turnos = new Semaphore(permisos, true);
+        if (activo) {
+            log.info("Límite de concurrencia: {} requests en curso, espera máxima {} ms", permisos, this.esperaMs);
+        }
+    }
+
+    public long rechazados() {
+        return rechazados.get();
+    }
+
+    public int enCurso() {
+        return permisos - turnos.availablePermits();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !activo || excluida(request);
+    }
+
+    private static boolean excluida(HttpServletRequest request) {
+        String ruta = request.getRequestURI().substring(request.getContextPath().length());
+        return ruta.equals("/actuator/prometheus")
+                || ruta.equals("/actuator/health")
+                || ruta.startsWith("/actuator/health/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean adquirido;
+        try {
+            adquirido = turnos.tryAcquire(esperaMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            adquirido = false;
+        }
+        if (!adquirido) {
+            rechazados.incrementAndGet();
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write("{\"error\":\"Servidor ocupado, reintente en un momento\"}");
+            return;
+        }
+        boolean asincrono = false;
+        try {
+            filterChain.doFilter(request, response);
+            asincrono = liberarAlTerminarAsync(request);
+        } finally {
+            if (!asincrono) {
+                turnos.release();
+            }
+        }
+    }
+
+    // Los dispatch async posteriores no pasan por este filtro: el turno se devuelve en el listener
+    private boolean liberarAlTerminarAsync(HttpServletRequest request) {
+        if (!request.isAsyncStarted()) {
+            return false;
+        }
+        AtomicBoolean liberado = new AtomicBoolean();
+        try {
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    liberar();
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    liberar();
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    liberar();
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                    // Un nuevo startAsync descarta los listeners: hay que volver a registrarse
+                    event.getAsyncContext().addListener(this);
+                }
+
+                private void liberar() {
+                    if (liberado.compareAndSet(false, true)) {
+                        turnos.release();
+                    }
+                }
+            });
+            return true;
+        } catch (IllegalStateException e) {
+            // El ciclo async ya terminó
+            return false;
+        }
+    }
+
+    private static int tamanioPool(DataSource dataSource) {
+        try {
+            return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+        } catch (SQLException | RuntimeException e) {
+            return 10;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.maingest.config;
+
+import com.example.maingest.service.AuditoriaWriter;
+import com.example.maingest.service.TrabajoService;
+import com.example.maingest.service.WompiWebhookInbox;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas propias sobre Micrometer. Las de Hikari, Hibernate, JVM y {@code http.server.requests}
+ * las registra Spring Boot; acá van las colas de la aplicación, los pools de réplica (Spring Boot
+ * solo ve el DataSource principal) y el tope de series por URI. Prometheus las lee en
+ * {@code /actuator/prometheus}.
+ */
+@Configuration
+public class MetricasConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricasConfig.class);
+
+    @Bean
+    public MeterBinder metricasAplicacion(
+            LimiteConcurrenciaFilter limiteConcurrenciaFilter,
+            TrabajoService trabajoService
+    ) {
+        return registry -> {
+            Gauge.builder("http.concurrencia.en.curso", limiteConcurrenciaFilter, LimiteConcurrenciaFilter::enCurso)
+                    .description("Requests dentro del límite de concurrencia")
+                    .register(registry);
+            FunctionCounter.builder("http.concurrencia.rechazados", limiteConcurrenciaFilter, LimiteConcurrenciaFilter::rechazados)
+                    .description("Requests rechazados con 503 por el límite de concurrencia")
+                    .register(registry);
+            Gauge.builder("trabajos.en.cola", trabajoService, TrabajoService::enCola)
+                    .description("Trabajos en segundo plano esperando worker en este nodo")
+                    .register(registry);
+            Gauge.builder("trabajos.en.curso", trabajoService, TrabajoService::enCurso)
+                    .description("Trabajos en segundo plano ejecutándose en este nodo")
+                    .register(registry);
+        };
+    }
+
+    // Lo mismo que /api/auditoria/pipeline, para graficarlo y alertar sin sondear el endpoint
+    @Bean
+    public MeterBinder metricasAuditoria(AuditoriaWriter auditoriaWriter) {
+        return registry -> {
+            Gauge.builder("auditoria.en.cola", auditoriaWriter, w -> w.estadisticas().enCola())
+                    .description("Eventos de auditoría esperando el próximo flush")
+                    .register(registry);
+            Gauge.builder("auditoria.cola.capacidad", auditoriaWriter, w -> w.estadisticas().capacidad())
+                    .register(registry);
+            FunctionTimer.builder("auditoria.flush", auditoriaWriter,
+                            w -> w.estadisticas().flushes(), w -> w.estadisticas().totalFlushMs(), TimeUnit.MILLISECONDS)
+                    .description("Inserción por lotes de la cola de auditoría")
+                    .register(registry);
+            Gauge.builder("auditoria.flush.max", auditoriaWriter, w -> w.estadisticas().maxFlushMs())
+                    .baseUnit("milliseconds")
+                    .register(registry);
+            FunctionCounter.builder("auditoria.escritos", auditoriaWriter, w -> w.estadisticas().escritos())
+                    .register(registry);
+            FunctionCounter.builder("auditoria.descartados", auditoriaWriter, w -> w.estadisticas().descartados())
+                    .description("Eventos perdidos: cola llena con DESCARTAR o archivo de respaldo sin escribir")
+                    .register(registry);
+            FunctionCounter.builder("auditoria.en.archivo", auditoriaWriter, w -> w.estadisticas().enArchivo())
+                    .description("Eventos que fueron al archivo de respaldo")
+                    .register(registry);
+            FunctionCounter.builder("auditoria.rechazados", auditoriaWriter, w -> w.estadisticas().rechazados())
+                    .description("Líneas del archivo de respaldo movidas al .rechazado")
+                    .register(registry);
+            Gauge.builder("auditoria.archivo.pendiente", auditoriaWriter, w -> w.estadisticas().archivoPendiente() ? 1 : 0)
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder metricasWompi(WompiWebhookInbox wompiWebhookInbox) {
+        return registry -> {
+            FunctionCounter.builder("wompi.webhook.recibidos", wompiWebhookInbox, WompiWebhookInbox::recibidos)
+                    .register(registry);
+            FunctionCounter.builder("wompi.webhook.duplicados", wompiWebhookInbox, WompiWebhookInbox::duplicados)
+                    .register(registry);
+            FunctionCounter.builder("wompi.webhook.procesados", wompiWebhookInbox, WompiWebhookInbox::procesados)
+                    .description("Eventos de Wompi aplicados por este nodo")
+                    .register(registry);
+            FunctionCounter.builder("wompi.webhook.fallidos", wompiWebhookInbox, WompiWebhookInbox::fallidos)
+                    .description("Eventos de Wompi que agotaron los reintentos en este nodo")
+                    .register(registry);
+            // Un COUNT por scrape: la bandeja es compartida, el valor es el de todos los nodos
+            Gauge.builder("wompi.webhook.pendientes", wompiWebhookInbox, MetricasConfig::pendientesWompi)
+                    .description("Eventos en la bandeja sin aplicar, incluidos los que esperan reintento")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder metricasPoolsReplica(DataSource dataSource) {
+        return registry -> {
+            for (HikariDataSource pool : pools(dataSource)) {
+                // El principal ya lo puede haber tomado Spring Boot; Hikari acepta una sola fábrica
+                if (pool.getMetricsTrackerFactory() == null && pool.getMetricRegistry() == null) {
+                    pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+                }
+            }
+        };
+    }
+
+    // Pasado el tope, las URIs nuevas no generan series (un 404 por ruta inventada no debe crear una)
+    @Bean
+    public MeterFilter topeSeriesPorUri(@Value("${app.metricas.max-series:500}") int maxSeries) {
+        return MeterFilter.maximumAllowableTags("", "uri", Math.max(1, maxSeries), MeterFilter.deny());
+    }
+
+    private static double pendientesWompi(WompiWebhookInbox inbox) {
+        try {
+            return inbox.pendientes();
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static List<HikariDataSource> pools(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(ReplicaRoutingDataSource.class)) {
+                return dataSource.unwrap(ReplicaRoutingDataSource.class).pools();
+            }
+            return List.of(dataSource.unwrap(HikariDataSource.class));
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Métricas: el DataSource no es Hikari, sin métricas de pool");
+            return List.of();
+        }
+    }
+}
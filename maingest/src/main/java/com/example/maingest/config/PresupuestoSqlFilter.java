@@ -0,0 +1,139 @@
+package com.example.maingest.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.web.util.OnCommittedResponseWrapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Presupuesto de SQL por request. Cuenta sentencias y tiempo en base con {@link ConsultasSql},
+ * opcionalmente lo publica en {@code Server-Timing} (visible en la pestaña de red del navegador;
+ * apagado por defecto porque revela la forma de las consultas a cualquier cliente) y deja un
+ * WARN cuando el request pasa de {@code max-sentencias} o {@code max-ms}, o repite la misma
+ * sentencia {@code repeticiones-n1} veces o más, que es la firma de un N+1.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 6)
+public class PresupuestoSqlFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(PresupuestoSqlFilter.class);
+
+    private static final int MAX_SQL_LOG = 200;
+
+    private final MeterRegistry meterRegistry;
+    private final boolean activo;
+    private final boolean serverTiming;
+    private final int maxSentencias;
+    private final long maxNanos;
+    private final int repeticionesN1;
+
+    public PresupuestoSqlFilter(
+            MeterRegistry meterRegistry,
+            @Value("${app.sql.presupuesto.activo:true}") boolean activo,
+            @Value("${app.sql.presupuesto.server-timing:false}") boolean serverTiming,
+            @Value("${app.sql.presupuesto.max-sentencias:30}") int maxSentencias,
+            @Value("${app.sql.presupuesto.max-ms:500}") long maxMs,
+            @Value("${app.sql.presupuesto.repeticiones-n1:10}") int repeticionesN1
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.activo = activo;
+        this.serverTiming = serverTiming;
+        this.maxSentencias = Math.max(1, maxSentencias);
+        this.maxNanos = Math.max(1, maxMs) * 1_000_000L;
+        this.repeticionesN1 = Math.max(2, repeticionesN1);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !activo;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try (ConsultasSql.Medicion medicion = ConsultasSql.iniciar()) {
+            HttpServletResponse salida = response;
+            if (serverTiming) {
+                // La cabecera tiene que ir antes de que se escriba el cuerpo
+                salida = new OnCommittedResponseWrapper(response) {
+                    @Override
+                    protected void onResponseCommitted() {
+                        agregarServerTiming(response, medicion);
+                    }
+                };
+            }
+            try {
+                filterChain.doFilter(request, salida);
+            } finally {
+                if (serverTiming && !response.isCommitted()) {
+                    agregarServerTiming(response, medicion);
+                }
+                evaluar(request, response, medicion);
+            }
+        }
+    }
+
+    private static void agregarServerTiming(HttpServletResponse response, ConsultasSql.Medicion medicion) {
+        if (response.containsHeader("Server-Timing")) {
+            return;
+        }
+        response.setHeader("Server-Timing", String.format(Locale.ROOT, "db;desc=\"%d sentencias\";dur=%.1f",
+                medicion.sentencias(), medicion.duracionMs()));
+    }
+
+    private void evaluar(HttpServletRequest request, HttpServletResponse response, ConsultasSql.Medicion medicion) {
+        ConsultasSql.Repetida repetida = medicion.masRepetida();
+        boolean excedeSentencias = medicion.sentencias() > maxSentencias;
+        boolean excedeTiempo = medicion.duracionNanos() > maxNanos;
+        boolean n1 = repetida != null && repetida.veces() >= repeticionesN1;
+        if (!excedeSentencias && !excedeTiempo && !n1) {
+            return;
+        }
+        String ruta = ruta(request);
+        if (excedeSentencias || excedeTiempo) {
+            Counter.builder("sql.presupuesto.excedido")
+                    .description("Requests que pasaron el presupuesto de sentencias o de tiempo en base")
+                    .tag("uri", ruta)
+                    .register(meterRegistry)
+                    .increment();
+        }
+        if (n1) {
+            Counter.builder("sql.n1.sospechoso")
+                    .description("Requests que repitieron la misma sentencia por encima del umbral de N+1")
+                    .tag("uri", ruta)
+                    .register(meterRegistry)
+                    .increment();
+            log.warn("Posible N+1: {} {} -> {} ejecutó {} veces: {} ({} sentencias, {} ms en base)",
+                    request.getMethod(), ruta, response.getStatus(), repetida.veces(), recortar(repetida.sql()),
+                    medicion.sentencias(), Math.round(medicion.duracionMs()));
+        } else {
+            log.warn("Presupuesto SQL excedido: {} {} -> {} {} sentencias (máx {}), {} ms en base (máx {})",
+                    request.getMethod(), ruta, response.getStatus(), medicion.sentencias(), maxSentencias,
+                    Math.round(medicion.duracionMs()), maxNanos / 1_000_000L);
+        }
+    }
+
+    private static String ruta(HttpServletRequest request) {
+        Object patron = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return patron instanceof String p && !p.isBlank() ? p : "UNKNOWN";
+    }
+
+    private static String recortar(String sql) {
+        String limpio = sql.replaceAll("\\s+", " ").trim();
+        return limpio.length() > MAX_SQL_LOG ? limpio.substring(0, MAX_SQL_LOG) + "..." : limpio;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.maingest.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Con {@code app.datasource.replicas.urls} envuelve el DataSource de Spring Boot (el principal,
+ * configurado por {@code spring.datasource.*}) en un {@link ReplicaRoutingDataSource}. Sin réplicas
+ * el DataSource queda tal cual.
+ */
+@Configuration
+public class ReplicaDataSourceConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaDataSourceConfig.class);
+
+    // Antes que cualquier otro envoltorio del DataSource: necesita ver el HikariDataSource
+    private interface PostProcesadorOrdenado extends BeanPostProcessor, Ordered {
+    }
+
+    @Bean
+    public static BeanPostProcessor replicaDataSourcePostProcessor(Environment environment) {
+        return new PostProcesadorOrdenado() {
+            @Override
+            public int getOrder() {
+                return Ordered.HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!"dataSource".equals(beanName) || !(bean instanceof HikariDataSource primario)) {
+                    return bean;
+                }
+                List<String> urls = List.of(environment.getProperty("app.datasource.replicas.urls", "").split(","))
+                        .stream()
+                        .map(String::trim)
+                        .filter(s -> !s.isBlank())
+                        .toList();
+                if (urls.isEmpty()) {
+                    return bean;
+                }
+                String usuario = environment.getProperty("app.datasource.replicas.username", "");
+                String clave = environment.getProperty("app.datasource.replicas.password", "");
+                int tamanio = environment.getProperty("app.datasource.replicas.pool-size", Integer.class, 10);
+                List<HikariDataSource> replicas = new ArrayList<>(urls.size());
+                for (int i = 0; i < urls.size(); i++) {
+                    HikariConfig config = new HikariConfig();
+                    primario.copyStateTo(config);
+                    config.setJdbcUrl(urls.get(i));
+                    config.setPoolName("replica-" + (i + 1));
+                    config.setMaximumPoolSize(Math.max(1, tamanio));
+                    config.setReadOnly(true);
+                    // Una réplica caída al arrancar no debe impedir el arranque: el monitor la marca como no sana
+                    config.setInitializationFailTimeout(-1);
+                    if (!usuario.isBlank()) {
+                        config.setUsername(usuario);
+                        config.setPassword(clave);
+                    }
+                    replicas.add(new HikariDataSource(config));
+                }
+                log.info("DataSource: {} réplica(s) de lectura configuradas", replicas.size());
+                return new ReplicaRoutingDataSource(
+                        primario,
+                        replicas,
+                        environment.getProperty("app.datasource.replicas.max-lag-ms", Long.class, 5000L),
+                        environment.getProperty("app.datasource.replicas.sticky-ms", Long.class, 5000L),
+                        environment.getProperty("app.datasource.replicas.lag-check-ms", Long.class, 1000L),
+                        environment.getProperty("app.datasource.replicas.max-sticky-entries", Integer.class, 10000)
+                );
+            }
+        };
+    }
+}
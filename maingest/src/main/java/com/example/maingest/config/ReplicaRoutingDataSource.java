@@ -0,0 +1,258 @@
+package com.example.maingest.config;
+
+import com.example.maingest.domain.Usuario;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * DataSource principal con réplicas de lectura. Las conexiones se piden de forma perezosa, así
+ * que una transacción {@code readOnly = true} (o una lectura de Spring Data fuera de transacción)
+ * ya marcó la conexión como solo lectura cuando se elige el destino.
+ * <p>
+ * Una lectura va a réplica solo si: hay una réplica sana con retraso bajo {@code max-lag-ms},
+ * el request es GET/HEAD (o no hay request, p. ej. hilos de reportes), el usuario no escribió
+ * en los últimos {@code sticky-ms} (leer lo propio) y no se forzó el principal con
+ * {@link #enPrimario(Supplier)}. Todo lo demás va al principal.
+ */
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final ThreadLocal<Integer> FORZAR_PRIMARIO = new ThreadLocal<>();
+
+    private static final String SQL_RETRASO = "SELECT CASE "
+            + "WHEN NOT pg_is_in_recovery() THEN 0 "
+            + "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE COALESCE(EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())) * 1000, 0) END";
+
+    private static final class Replica {
+        private final HikariDataSource dataSource;
+        private volatile boolean sana;
+        private volatile long retrasoMs;
+
+        private Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+
+    private final HikariDataSource primario;
+    private final List<Replica> replicas;
+    private final long maxRetrasoMs;
+    private final long stickyNanos;
+    private final int maxUsuariosSticky;
+    private final Map<Long, Long> stickyHasta;
+    private final AtomicInteger siguiente = new AtomicInteger();
+    private final ScheduledExecutorService monitor;
+
+    public ReplicaRoutingDataSource(
+            HikariDataSource primario,
+            List<HikariDataSource> replicas,
+            long maxRetrasoMs,
+            long stickyMs,
+            long intervaloChequeoMs,
+            int maxUsuariosSticky
+    ) {
+        this.primario = primario;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.maxRetrasoMs = Math.max(0, maxRetrasoMs);
+        this.stickyNanos = Math.max(0, stickyMs) * 1_000_000L;
+        this.maxUsuariosSticky = Math.max(16, maxUsuariosSticky);
+        this.stickyHasta = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > ReplicaRoutingDataSource.this.maxUsuariosSticky;
+            }
+        };
+        setTargetDataSource(new PrimarioMarcado(primario));
+        setReadOnlyDataSource(new Lectura());
+        afterPropertiesSet();
+        this.monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "replicas-retraso");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        // Las réplicas empiezan como no sanas hasta la primera medición, que no bloquea el arranque
+        long intervalo = Math.max(100, intervaloChequeoMs);
+        monitor.scheduleWithFixedDelay(this::medirRetraso, 0, intervalo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ejecuta la operación leyendo siempre del principal. Para lecturas que alimentan caches
+     * (un dato viejo de réplica quedaría cacheado) o que deben ver una escritura de otro usuario.
+     * No cambia una conexión ya tomada por una transacción exterior.
+     */
+    public static <T> T enPrimario(Supplier<T> operacion) {
+        Integer previo = FORZAR_PRIMARIO.get();
+        FORZAR_PRIMARIO.set(previo == null ? 1 : previo + 1);
+        try {
+            return operacion.get();
+        } finally {
+            if (previo == null) {
+                FORZAR_PRIMARIO.remove();
+            } else {
+                FORZAR_PRIMARIO.set(previo);
+            }
+        }
+    }
+
+    /**
+     * Pools físicos, el principal primero. Para métricas.
+     */
+    public List<HikariDataSource> pools() {
+        List<HikariDataSource> pools = new ArrayList<>(replicas.size() + 1);
+        pools.add(primario);
+        for (Replica replica : replicas) {
+            pools.add(replica.dataSource);
+        }
+        return pools;
+    }
+
+    @Override
+    public void destroy() {
+        monitor.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.dataSource.close();
+        }
+        primario.close();
+    }
+
+    private void medirRetraso() {
+        for (Replica replica : replicas) {
+            boolean sanaAntes = replica.sana;
+            try (Connection conexion = replica.dataSource.getConnection();
+                 Statement st = conexion.createStatement();
+                 ResultSet rs = st.executeQuery(SQL_RETRASO)) {
+                long retraso = rs.next() ? (long) rs.getDouble(1) : Long.MAX_VALUE;
+                replica.retrasoMs = retraso;
+                replica.sana = retraso <= maxRetrasoMs;
+            } catch (SQLException | RuntimeException e) {
+                replica.sana = false;
+                replica.retrasoMs = -1;
+                if (sanaAntes) {
+                    log.warn("Réplica {} fuera de servicio: {}", replica.dataSource.getPoolName(), e.getMessage());
+                }
+                continue;
+            }
+            if (sanaAntes && !replica.sana) {
+                log.warn("Réplica {} con retraso de {} ms, lecturas al principal",
+                        replica.dataSource.getPoolName(), replica.retrasoMs);
+            } else if (!sanaAntes && replica.sana) {
+                log.info("Réplica {} disponible (retraso {} ms)", replica.dataSource.getPoolName(), replica.retrasoMs);
+            }
+        }
+    }
+
+    private DataSource elegirLectura() {
+        if (FORZAR_PRIMARIO.get() != null || !requestDeLectura()) {
+            return primario;
+        }
+        Long usuarioId = usuarioActual();
+        if (usuarioId != null && stickyNanos > 0) {
+            Long hasta;
+            synchronized (stickyHasta) {
+                hasta = stickyHasta.get(usuarioId);
+            }
+            if (hasta != null && System.nanoTime() - hasta < 0) {
+                return primario;
+            }
+        }
+        int total = replicas.size();
+        int inicio = Math.floorMod(siguiente.getAndIncrement(), total);
+        for (int i = 0; i < total; i++) {
+            Replica replica = replicas.get((inicio + i) % total);
+            if (replica.sana) {
+                return replica.dataSource;
+            }
+        }
+        return primario;
+    }
+
+    private void marcarEscritura() {
+        Long usuarioId = usuarioActual();
+        if (usuarioId == null || stickyNanos == 0) {
+            return;
+        }
+        long hasta = System.nanoTime() + stickyNanos;
+        synchronized (stickyHasta) {
+            stickyHasta.put(usuarioId, hasta);
+        }
+    }
+
+    private static boolean requestDeLectura() {
+        RequestAttributes atributos = RequestContextHolder.getRequestAttributes();
+        if (!(atributos instanceof ServletRequestAttributes servlet)) {
+            return true;
+        }
+        String metodo = servlet.getRequest().getMethod();
+        return "GET".equals(metodo) || "HEAD".equals(metodo);
+    }
+
+    private static Long usuarioActual() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof Usuario usuario) {
+            return usuario.getId();
+        }
+        return null;
+    }
+
+    /**
+     * Destino de lectura/escritura: cada conexión pedida por un usuario lo deja leyendo
+     * del principal durante {@code sticky-ms}.
+     */
+    private final class PrimarioMarcado extends DelegatingDataSource {
+
+        private PrimarioMarcado(DataSource primario) {
+            super(primario);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            marcarEscritura();
+            return super.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            marcarEscritura();
+            return super.getConnection(username, password);
+        }
+    }
+
+    private final class Lectura extends AbstractDataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return elegirLectura().getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return elegirLectura().getConnection(username, password);
+        }
+    }
+}
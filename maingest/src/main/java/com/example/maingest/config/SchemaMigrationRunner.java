@@ -1,91 +1,410 @@
 package com.example.maingest.config;
 
+import com.example.maingest.service.AccessControlService;
+import com.example.maingest.service.OnboardingDefaultsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.CommandLineRunner;
-import org.springframework.core.annotation.Order;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Migraciones versionadas del esquema y datos base. Cada paso aplicado queda en SCHEMA_MIGRACION
+ * con el checksum de su SQL; al arrancar basta una consulta a esa tabla para saber que no hay
+ * nada que hacer, sin importar cuántas sentencias tengan los pasos.
+ * <p>
+ * Los pasos son idempotentes: uno pendiente o cuyo SQL cambió se aplica (o reaplica) en su
+ * propia transacción bajo un advisory lock, para que varias instancias no migren a la vez. Si
+ * falla, se registra en el log y se reintenta en el próximo arranque, salvo los pasos
+ * obligatorios (el código depende de ellos), cuya falla detiene el arranque. Corre cuando todos
+ * los singletons están creados, antes de que el servidor web acepte requests.
+ */
 @Component
-@Order(1)
-public class SchemaMigrationRunner implements CommandLineRunner {
+public class SchemaMigrationRunner implements SmartInitializingSingleton {
 
     private static final Logger log = LoggerFactory.getLogger(SchemaMigrationRunner.class);
 
+    private static final long LOCK_MIGRACION = 0x4D494752L;
+    private static final int INCREMENTO_IDS = 50;
+
+    private static final String CREAR_TABLA = """
+            CREATE TABLE IF NOT EXISTS schema_migracion (
+                version varchar(50) PRIMARY KEY,
+                descripcion varchar(255) NOT NULL,
+                checksum varchar(64) NOT NULL,
+                aplicada_en timestamp NOT NULL,
+                duracion_ms bigint NOT NULL
+            )""";
+
+    @FunctionalInterface
+    private interface Accion {
+        void aplicar(Connection conexion) throws Exception;
+    }
+
+    private record Paso(String version, String descripcion, String checksum, Accion accion, boolean obligatorio) {
+
+        Paso(String version, String descripcion, String checksum, Accion accion) {
+            this(version, descripcion, checksum, accion, false);
+        }
+    }
+
     private final JdbcTemplate jdbcTemplate;
+    private final AccessControlService accessControlService;
+    private final OnboardingDefaultsService onboardingDefaultsService;
+    private final List<Paso> pasos;
 
-    public SchemaMigrationRunner(JdbcTemplate jdbcTemplate) {
+    public SchemaMigrationRunner(
+            JdbcTemplate jdbcTemplate,
+            AccessControlService accessControlService,
+            OnboardingDefaultsService onboardingDefaultsService
+    ) {
         this.jdbcTemplate = jdbcTemplate;
+        this.accessControlService = accessControlService;
+        this.onboardingDefaultsService = onboardingDefaultsService;
+        this.pasos = List.of(
+                sql("1", "empresa_suscripcion: auto_renovar y created_at",
+                        List.of("empresa_suscripcion", "\"EMPRESA_SUSCRIPCION\""),
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS auto_renovar boolean",
+                        "UPDATE {t} SET auto_renovar = false WHERE auto_renovar IS NULL",
+                        "ALTER TABLE {t} ALTER COLUMN auto_renovar SET DEFAULT false",
+                        "ALTER TABLE {t} ALTER COLUMN auto_renovar SET NOT NULL",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS created_at timestamp",
+                        "UPDATE {t} SET created_at = now() WHERE created_at IS NULL"),
+                sql("2", "pago_wompi: columnas y aplicada por defecto",
+                        List.of("pago_wompi", "\"PAGO_WOMPI\""),
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS empresa_id bigint",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS plan_id bigint",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS reference varchar(255)",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS amount_in_cents bigint",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS currency varchar(3)",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS duracion_meses integer",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS estado varchar(50)",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS wompi_transaction_id varchar(255)",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS wompi_status varchar(255)",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS aplicada boolean",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS empresa_suscripcion_id bigint",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS created_at timestamp",
+                        "ALTER TABLE {t} ADD COLUMN IF NOT EXISTS updated_at timestamp",
+                        "UPDATE {t} SET aplicada = false WHERE aplicada IS NULL",
+                        "ALTER TABLE {t} ALTER COLUMN aplicada SET DEFAULT false"),
+                itemSlotUnico("3"),
+                // Respaldo de la búsqueda de catálogo mientras el índice en memoria está frío: LIKE '%q%' usa GIN
+                sql("4", "producto: índices de trigramas",
+                        List.of("producto"),
+                        "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+                        "CREATE INDEX IF NOT EXISTS idx_producto_nombre_trgm ON {t} USING gin (lower(nombre) gin_trgm_ops)",
+                        "CREATE INDEX IF NOT EXISTS idx_producto_sku_trgm ON {t} USING gin (lower(sku) gin_trgm_ops)"),
+                auditoriaBusqueda("5"),
+                secuenciaPooled("6", "item"),
+                secuenciaPooled("7", "producto"),
+                secuenciaPooled("8", "movimiento_inventario"),
+                secuenciaPooled("9", "auditoria_evento"),
+                // Keyset del kardex: (fecha, id) < (?, ?) necesita el id en el índice para arrancar en el cursor
+                sql("10", "movimiento_inventario: idx_mov_empresa_fecha_id",
+                        List.of("movimiento_inventario"),
+                        "CREATE INDEX IF NOT EXISTS idx_mov_empresa_fecha_id ON {t} (empresa_id, fecha, id)",
+                        "DROP INDEX IF EXISTS idx_mov_empresa_fecha"),
+                // InventarioService toma el saldo de la empresa de este contador: tiene que arrancar cuadrado con los items
+                obligatorio(sql("11", "producto_saldo: total por producto desde item",
+                        List.of("item"),
+                        "CREATE TABLE IF NOT EXISTS producto_saldo (producto_id bigint PRIMARY KEY, total bigint NOT NULL)",
+                        "LOCK TABLE {t} IN SHARE MODE",
+                        "INSERT INTO producto_saldo (producto_id, total) "
+                                + "SELECT producto_id, sum(cantidad) FROM {t} WHERE producto_id IS NOT NULL GROUP BY producto_id "
+                                + "ON CONFLICT (producto_id) DO UPDATE SET total = EXCLUDED.total")),
+                datosBase("datos-base")
+        );
     }
 
     @Override
-    public void run(String... args) {
-        migrateEmpresaSuscripcion("empresa_suscripcion");
-        migrateEmpresaSuscripcion("\"EMPRESA_SUSCRIPCION\"");
-
-        migratePagoWompi("pago_wompi");
-        migratePagoWompi("\"PAGO_WOMPI\"");
+    public void afterSingletonsInstantiated() {
+        long inicio = System.nanoTime();
+        Map<String, String> aplicados = leerAplicados();
+        List<Paso> pendientes = pendientes(aplicados);
+        if (pendientes.isEmpty()) {
+            log.info("SchemaMigrationRunner: esquema al día ({} pasos) en {} ms",
+                    pasos.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) conexion -> {
+            aplicar(conexion);
+            return null;
+        });
+        log.info("SchemaMigrationRunner: migración terminada en {} ms",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
     }
 
-    private void migrateEmpresaSuscripcion(String tableName) {
+    private Map<String, String> leerAplicados() {
         try {
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS auto_renovar boolean");
-            jdbcTemplate.execute("UPDATE " + tableName + " SET auto_renovar = false WHERE auto_renovar IS NULL");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ALTER COLUMN auto_renovar SET DEFAULT false");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ALTER COLUMN auto_renovar SET NOT NULL");
-
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS created_at timestamp");
-            jdbcTemplate.execute("UPDATE " + tableName + " SET created_at = now() WHERE created_at IS NULL");
-        } catch (Exception e) {
-            log.debug("SchemaMigrationRunner: No se pudo migrar {}: {}", tableName, e.getMessage());
+            return consultarAplicados();
+        } catch (DataAccessException e) {
+            // Primera vez: la tabla no existe
+            jdbcTemplate.execute(CREAR_TABLA);
+            return consultarAplicados();
         }
     }
 
-    private void migratePagoWompi(String tableName) {
+    private Map<String, String> consultarAplicados() {
+        Map<String, String> aplicados = new HashMap<>();
+        jdbcTemplate.query("SELECT version, checksum FROM schema_migracion",
+                rs -> {
+                    aplicados.put(rs.getString(1), rs.getString(2));
+                });
+        return aplicados;
+    }
+
+    private List<Paso> pendientes(Map<String, String> aplicados) {
+        return pasos.stream()
+                .filter(paso -> !paso.checksum().equals(aplicados.get(paso.version())))
+                .toList();
+    }
+
+    private void aplicar(Connection conexion) throws SQLException {
+        boolean autoCommit = conexion.getAutoCommit();
+        try (Statement bloqueo = conexion.createStatement()) {
+            bloqueo.execute("SELECT pg_advisory_lock(" + LOCK_MIGRACION + ")");
+        }
         try {
-            jdbcTemplate.execute(
-                    "CREATE TABLE IF NOT EXISTS " + tableName + " (" +
-                            "id bigserial PRIMARY KEY," +
-                            "empresa_id bigint NOT NULL," +
-                            "plan_id bigint NOT NULL," +
-                            "reference varchar(255) NOT NULL," +
-                            "amount_in_cents bigint NOT NULL," +
-                            "currency varchar(3) NOT NULL DEFAULT 'COP'," +
-                            "duracion_meses integer NOT NULL," +
-                            "estado varchar(50) NOT NULL," +
-                            "wompi_transaction_id varchar(255)," +
-                            "wompi_status varchar(255)," +
-                            "aplicada boolean NOT NULL DEFAULT false," +
-                            "empresa_suscripcion_id bigint," +
-                            "created_at timestamp," +
-                            "updated_at timestamp" +
-                            ")"
-            );
-        } catch (Exception e) {
-            log.debug("SchemaMigrationRunner: No se pudo crear tabla {}: {}", tableName, e.getMessage());
-            return;
+            // Releer bajo el lock: otra instancia pudo haber migrado mientras esperábamos
+            Map<String, String> aplicados = new HashMap<>();
+            try (Statement consulta = conexion.createStatement();
+                 ResultSet rs = consulta.executeQuery("SELECT version, checksum FROM schema_migracion")) {
+                while (rs.next()) {
+                    aplicados.put(rs.getString(1), rs.getString(2));
+                }
+            }
+            conexion.setAutoCommit(false);
+            for (Paso paso : pendientes(aplicados)) {
+                long inicio = System.nanoTime();
+                try {
+                    paso.accion().aplicar(conexion);
+                    long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+                    registrar(conexion, paso, ms);
+                    conexion.commit();
+                    log.info("SchemaMigrationRunner: paso {} aplicado ({}) en {} ms", paso.version(), paso.descripcion(), ms);
+                } catch (Exception e) {
+                    conexion.rollback();
+                    if (paso.obligatorio()) {
+                        throw new IllegalStateException("SchemaMigrationRunner: paso obligatorio " + paso.version()
+                                + " (" + paso.descripcion() + ") falló: " + e.getMessage(), e);
+                    }
+                    log.warn("SchemaMigrationRunner: paso {} ({}) falló, se reintentará en el próximo arranque: {}",
+                            paso.version(), paso.descripcion(), e.getMessage());
+                }
+            }
+        } finally {
+            conexion.setAutoCommit(autoCommit);
+            try (Statement desbloqueo = conexion.createStatement()) {
+                desbloqueo.execute("SELECT pg_advisory_unlock(" + LOCK_MIGRACION + ")");
+            }
         }
+    }
+
+    private static void registrar(Connection conexion, Paso paso, long ms) throws SQLException {
+        try (PreparedStatement insert = conexion.prepareStatement("""
+                INSERT INTO schema_migracion (version, descripcion, checksum, aplicada_en, duracion_ms)
+                VALUES (?, ?, ?, ?, ?)
+                ON CONFLICT (version) DO UPDATE SET descripcion = EXCLUDED.descripcion, checksum = EXCLUDED.checksum,
+                    aplicada_en = EXCLUDED.aplicada_en, duracion_ms = EXCLUDED.duracion_ms
+                """)) {
+            insert.setString(1, paso.version());
+            insert.setString(2, paso.descripcion());
+            insert.setString(3, paso.checksum());
+            insert.setTimestamp(4, Timestamp.from(Instant.now()));
+            insert.setLong(5, ms);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Paso de SQL plano. {@code {t}} se reemplaza por cada nombre de tabla que exista (instalaciones
+     * viejas pueden tener la versión entre comillas en mayúsculas).
+     */
+    private static Paso sql(String version, String descripcion, List<String> tablas, String... sentencias) {
+        String fuente = String.join(";\n", tablas) + "\n" + String.join(";\n", sentencias);
+        return new Paso(version, descripcion, checksum(fuente), conexion -> {
+            for (String tabla : tablas) {
+                if (!existe(conexion, tabla)) {
+                    continue;
+                }
+                try (Statement statement = conexion.createStatement()) {
+                    for (String sentencia : sentencias) {
+                        statement.execute(sentencia.replace("{t}", tabla));
+                    }
+                }
+            }
+        });
+    }
+
+    private static Paso obligatorio(Paso paso) {
+        return new Paso(paso.version(), paso.descripcion(), paso.checksum(), paso.accion(), true);
+    }
+
+    /**
+     * Un solo item por (producto, repisa): InventarioService bloquea y actualiza el slot asumiendo
+     * una fila. Instalaciones viejas pueden tener el mismo producto repartido en varias filas de
+     * una repisa; se fusionan en la de menor id sumando cantidades antes de crear el índice, con
+     * la tabla bloqueada para escritura para que otra instancia no cree duplicados entre medio.
+     * Los items legados sin producto quedan fuera del índice. Es obligatorio: sin el índice dos
+     * entradas concurrentes al mismo slot vacío crearían dos filas.
+     */
+    private static Paso itemSlotUnico(String version) {
+        List<String> tablas = List.of("item", "\"ITEM\"");
+        List<String> sentencias = List.of(
+                "LOCK TABLE {t} IN SHARE ROW EXCLUSIVE MODE",
+                "UPDATE {t} i SET cantidad = d.total FROM ("
+                        + "SELECT min(id) AS id, sum(cantidad) AS total FROM {t} WHERE producto_id IS NOT NULL "
+                        + "GROUP BY producto_id, repisa_id HAVING count(*) > 1) d WHERE i.id = d.id",
+                "DELETE FROM {t} i USING {t} k WHERE i.producto_id IS NOT NULL AND i.producto_id = k.producto_id "
+                        + "AND i.repisa_id = k.repisa_id AND i.id > k.id",
+                "CREATE UNIQUE INDEX IF NOT EXISTS uk_item_producto_repisa ON {t} (producto_id, repisa_id) "
+                        + "WHERE producto_id IS NOT NULL");
+        String fuente = String.join(";\n", tablas) + "\n" + String.join(";\n", sentencias);
+        return new Paso(version, "item: fusionar duplicados y uk_item_producto_repisa", checksum(fuente), conexion -> {
+            for (String tabla : tablas) {
+                if (!existe(conexion, tabla)) {
+                    continue;
+                }
+                try (Statement statement = conexion.createStatement()) {
+                    int fusionados = 0;
+                    for (String sentencia : sentencias) {
+                        int filas = statement.executeUpdate(sentencia.replace("{t}", tabla));
+                        if (sentencia.startsWith("DELETE")) {
+                            fusionados = filas;
+                        }
+                    }
+                    if (fusionados > 0) {
+                        log.warn("SchemaMigrationRunner: {} items duplicados por (producto, repisa) fusionados en {}",
+                                fusionados, tabla);
+                    }
+                }
+            }
+        }, true);
+    }
+
+    private static Paso auditoriaBusqueda(String version) {
+        String tabla = "auditoria_evento";
+        List<String> sentencias = List.of(
+                // Texto completo sobre la descripción y los valores de los detalles; la configuración
+                // 'spanish' debe coincidir con AuditoriaService
+                "ALTER TABLE " + tabla + " ADD COLUMN IF NOT EXISTS busqueda_tsv tsvector "
+                        + "GENERATED ALWAYS AS (to_tsvector('spanish', coalesce(descripcion, '')) || "
+                        + "jsonb_to_tsvector('spanish', coalesce(detalles_json, '{}'::jsonb), '[\"string\", \"numeric\"]')) STORED",
+                "CREATE INDEX IF NOT EXISTS idx_auditoria_busqueda_tsv ON " + tabla + " USING gin (busqueda_tsv)",
+                "CREATE INDEX IF NOT EXISTS idx_auditoria_detalles ON " + tabla + " USING gin (detalles_json jsonb_path_ops)",
+                "CREATE INDEX IF NOT EXISTS idx_auditoria_correo ON " + tabla + " (lower(usuario_correo) text_pattern_ops)");
+        String fuente = "detalles_json -> jsonb (oid|texto)\n" + String.join(";\n", sentencias);
+        return new Paso(version, "auditoria_evento: detalles_json jsonb y búsqueda", checksum(fuente), conexion -> {
+            String tipo = null;
+            try (PreparedStatement consulta = conexion.prepareStatement(
+                    "SELECT data_type FROM information_schema.columns WHERE lower(table_name) = ? AND column_name = 'detalles_json'")) {
+                consulta.setString(1, tabla);
+                try (ResultSet rs = consulta.executeQuery()) {
+                    if (rs.next()) {
+                        tipo = rs.getString(1);
+                    }
+                }
+            }
+            if (tipo == null) {
+                return;
+            }
+            try (Statement statement = conexion.createStatement()) {
+                if (!"jsonb".equalsIgnoreCase(tipo)) {
+                    // El antiguo @Lob quedó como oid; los large objects viejos quedan huérfanos (vacuumlo los limpia)
+                    String texto = "oid".equalsIgnoreCase(tipo)
+                            ? "convert_from(lo_get(detalles_json), 'UTF8')"
+                            : "CAST(detalles_json AS text)";
+                    // Fila por fila: lo que no es JSON válido queda como string JSON y el resto conserva su estructura
+                    statement.execute("CREATE OR REPLACE FUNCTION pg_temp.detalles_a_jsonb(valor text) RETURNS jsonb "
+                            + "LANGUAGE plpgsql AS $$ BEGIN RETURN CAST(valor AS jsonb); "
+                            + "EXCEPTION WHEN invalid_text_representation THEN RETURN to_jsonb(valor); END $$");
+                    statement.execute("ALTER TABLE " + tabla + " ALTER COLUMN detalles_json TYPE jsonb USING "
+                            + "CASE WHEN detalles_json IS NULL THEN NULL ELSE pg_temp.detalles_a_jsonb(" + texto + ") END");
+                }
+                for (String sentencia : sentencias) {
+                    statement.execute(sentencia);
+                }
+            }
+        });
+    }
+
+    /**
+     * Lleva el id de la tabla a {@code <tabla>_id_seq} con incremento {@value #INCREMENTO_IDS} (el
+     * allocationSize de la entidad, optimizador pooled-lo) sin tocar los ids existentes. Las
+     * columnas identity de instalaciones viejas conservan su secuencia; en las nuevas la secuencia
+     * la crea Hibernate y aquí se pone como default de la columna para los INSERT por JDBC.
+     */
+    private static Paso secuenciaPooled(String version, String tabla) {
+        return sql(version, tabla + ": id por secuencia con incremento " + INCREMENTO_IDS,
+                List.of(tabla),
+                """
+                DO $$
+                DECLARE
+                    secuencia text;
+                    maximo bigint;
+                BEGIN
+                    IF EXISTS (SELECT 1 FROM pg_attribute WHERE attrelid = '{t}'::regclass AND attname = 'id' AND attidentity <> '') THEN
+                        ALTER TABLE {t} ALTER COLUMN id SET INCREMENT BY %1$d;
+                    ELSE
+                        CREATE SEQUENCE IF NOT EXISTS {t}_id_seq INCREMENT BY %1$d;
+                        ALTER SEQUENCE {t}_id_seq INCREMENT BY %1$d;
+                        ALTER TABLE {t} ALTER COLUMN id SET DEFAULT nextval('{t}_id_seq');
+                    END IF;
+                    secuencia := coalesce(pg_get_serial_sequence('{t}', 'id'), '{t}_id_seq');
+                    SELECT coalesce(max(id), 0) INTO maximo FROM {t};
+                    IF maximo > 0 THEN
+                        PERFORM setval(secuencia, greatest(maximo, (SELECT last_value FROM pg_sequences
+                            WHERE schemaname = current_schema() AND sequencename = split_part(secuencia, '.', 2))));
+                    END IF;
+                END $$""".formatted(INCREMENTO_IDS));
+    }
+
+    /**
+     * Permisos base, plan por defecto y rol propietario. El checksum cubre la lista de permisos y
+     * los nombres configurados, así que solo se reaplica cuando alguno cambia.
+     */
+    private Paso datosBase(String version) {
+        String fuente = AccessControlService.PERMISOS_BASE + "\n" + onboardingDefaultsService.huellaDefaults();
+        return new Paso(version, "permisos base, plan y rol propietario", checksum(fuente), conexion -> {
+            // Van por sus propios servicios (y conexión): son idempotentes, no necesitan esta transacción
+            accessControlService.ensureBasePermissions();
+            onboardingDefaultsService.initDefaults();
+        });
+    }
+
+    private static boolean existe(Connection conexion, String tabla) throws SQLException {
+        try (PreparedStatement consulta = conexion.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            consulta.setString(1, tabla);
+            try (ResultSet rs = consulta.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
 
+    private static String checksum(String fuente) {
         try {
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS empresa_id bigint");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS plan_id bigint");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS reference varchar(255)");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS amount_in_cents bigint");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS currency varchar(3)");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS duracion_meses integer");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS estado varchar(50)");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS wompi_transaction_id varchar(255)");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS wompi_status varchar(255)");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS aplicada boolean");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS empresa_suscripcion_id bigint");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS created_at timestamp");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS updated_at timestamp");
-
-            jdbcTemplate.execute("UPDATE " + tableName + " SET aplicada = false WHERE aplicada IS NULL");
-            jdbcTemplate.execute("ALTER TABLE " + tableName + " ALTER COLUMN aplicada SET DEFAULT false");
-        } catch (Exception e) {
-            log.debug("SchemaMigrationRunner: No se pudo migrar {}: {}", tableName, e.getMessage());
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(fuente.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
 }
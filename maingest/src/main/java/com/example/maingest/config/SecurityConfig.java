@@ -4,6 +4,7 @@ import com.example.maingest.domain.Usuario;
 import com.example.maingest.repository.UsuarioRepository;
 import com.example.maingest.security.JwtAuthenticationFilter;
 import com.example.maingest.security.JwtService;
+import com.example.maingest.security.UsuarioSnapshotCache;
 import com.example.maingest.service.AccessControlService;
 import com.example.maingest.service.PermissionService;
 import jakarta.servlet.FilterChain;
@@ -17,12 +18,15 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.authentication.HttpStatusEntryPoint;
@@ -38,6 +42,7 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -67,7 +72,8 @@ public class SecurityConfig {
             UsuarioRepository usuarioRepository,
             JwtService jwtService,
             AccessControlService accessControlService,
-            PermissionService permissionService
+            PermissionService permissionService,
+            UsuarioSnapshotCache usuarioSnapshotCache
     ) {
         return (request, response, authentication) -> {
             if (!(authentication instanceof OAuth2AuthenticationToken oauthToken)) {
@@ -104,6 +110,7 @@ public class SecurityConfig {
             if (picture != null && !picture.equals(usuario.getFoto())) {
                 usuario.setFoto(picture);
                 usuario = usuarioRepository.save(usuario);
+                usuarioSnapshotCache.invalidar(usuario.getId());
             }
 
             accessControlService.ensureInitialSuperAdmin(usuario);
@@ -126,7 +133,9 @@ public class SecurityConfig {
     @Bean
     public SecurityFilterChain securityFilterChain(
             HttpSecurity http,
-            AuthenticationSuccessHandler oauth2AuthenticationSuccessHandler
+            AuthenticationSuccessHandler oauth2AuthenticationSuccessHandler,
+            AccessControlService accessControlService,
+            @Value("${app.metricas.token:}") String tokenMetricas
     ) throws Exception {
         http
                 .csrf(csrf -> csrf.disable())
@@ -138,7 +147,7 @@ public class SecurityConfig {
                                 new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED),
                                 request -> {
                                     String uri = request.getRequestURI();
-                                    return uri != null && uri.startsWith("/api/");
+                                    return uri != null && (uri.startsWith("/api/") || uri.startsWith("/actuator/"));
                                 }
                         )
                 )
@@ -146,6 +155,9 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
                         .requestMatchers("/api/auth/login").permitAll()
                         .requestMatchers("/api/pagos/wompi/webhook").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/actuator/health").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/actuator/prometheus")
+                        .access(accesoMetricas(accessControlService, tokenMetricas))
                         .requestMatchers("/oauth2/authorization/**", "/login/oauth2/code/**").permitAll()
                         .anyRequest().authenticated()
                 )
@@ -157,6 +169,24 @@ public class SecurityConfig {
         return http.build();
     }
 
+    // Scrape de Prometheus: el token de app.metricas.token en X-Metricas-Token o un superadmin con su JWT
+    private static AuthorizationManager<RequestAuthorizationContext> accesoMetricas(
+            AccessControlService accessControlService,
+            String tokenMetricas
+    ) {
+        byte[] esperado = tokenMetricas.isBlank() ? null : tokenMetricas.getBytes(StandardCharsets.UTF_8);
+        return (authentication, contexto) -> {
+            String token = contexto.getRequest().getHeader("X-Metricas-Token");
+            if (esperado != null && token != null
+                    && MessageDigest.isEqual(esperado, token.getBytes(StandardCharsets.UTF_8))) {
+                return new AuthorizationDecision(true);
+            }
+            Authentication auth = authentication.get();
+            return new AuthorizationDecision(auth != null && auth.getPrincipal() instanceof Usuario usuario
+                    && accessControlService.isSuperAdmin(usuario));
+        };
+    }
+
     private OncePerRequestFilter requestLoggingFilter() {
         return new OncePerRequestFilter() {
             @Override
@@ -165,6 +195,11 @@ public class SecurityConfig {
                     HttpServletResponse response,
                     FilterChain filterChain
             ) throws ServletException, IOException {
+                // Las latencias van a http.server.requests (actuator); este log es solo para depurar auth y CORS
+                if (!log.isDebugEnabled()) {
+                    filterChain.doFilter(request, response);
+                    return;
+                }
                 long start = System.currentTimeMillis();
                 try {
                     filterChain.doFilter(request, response);
@@ -179,7 +214,7 @@ public class SecurityConfig {
                         Object principal = auth != null ? auth.getPrincipal() : null;
                         String actor = principal instanceof Usuario u ? String.valueOf(u.getId()) : "anon";
                         long ms = System.currentTimeMillis() - start;
-                        log.info("api {} {} -> {} actor={} authHeader={} bearer={} origin={} {}ms",
+                        log.debug("api {} {} -> {} actor={} authHeader={} bearer={} origin={} {}ms",
                                 request.getMethod(),
                                 uri,
                                 response.getStatus(),
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -13,9 +14,14 @@ import java.util.List;
 public class WebConfig implements WebMvcConfigurer {
 
     private final String corsAllowedOrigins;
+    private final long streamTimeoutMs;
 
-    public WebConfig(@Value("${app.cors.allowed-origins}") String corsAllowedOrigins) {
+    public WebConfig(
+            @Value("${app.cors.allowed-origins}") String corsAllowedOrigins,
+            @Value("${app.reportes.stream-timeout-ms:1800000}") long streamTimeoutMs
+    ) {
         this.corsAllowedOrigins = corsAllowedOrigins;
+        this.streamTimeoutMs = streamTimeoutMs;
     }
 
     @Bean
@@ -23,6 +29,16 @@ public class WebConfig implements WebMvcConfigurer {
         return new ObjectMapper();
     }
 
+    /**
+     * Los únicos handlers async son las exportaciones con StreamingResponseBody de
+     * ReporteController, así que este timeout es en la práctica el de la descarga completa.
+     * El de Tomcat (30 s) cortaba exportaciones grandes a mitad de archivo. 0 o menos = sin límite.
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(streamTimeoutMs > 0 ? streamTimeoutMs : -1);
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         List<String> origins = List.of(corsAllowedOrigins.split(","))
@@ -1,33 +1,26 @@
 package com.example.maingest.controller;
 
-import com.example.maingest.domain.Almacen;
 import com.example.maingest.domain.AlmacenUsuario;
-import com.example.maingest.domain.Armario;
 import com.example.maingest.domain.Empresa;
 import com.example.maingest.domain.EmpresaUsuario;
-import com.example.maingest.domain.EmpresaUsuarioId;
-import com.example.maingest.domain.Item;
-import com.example.maingest.domain.Repisa;
-import com.example.maingest.domain.Rol;
-import com.example.maingest.domain.RolPermiso;
 import com.example.maingest.domain.Usuario;
 import com.example.maingest.domain.UsuarioRol;
 import com.example.maingest.repository.AlmacenRepository;
 import com.example.maingest.repository.AlmacenUsuarioRepository;
-import com.example.maingest.repository.ArmarioRepository;
 import com.example.maingest.repository.EmpresaRepository;
 import com.example.maingest.repository.EmpresaSuscripcionRepository;
 import com.example.maingest.repository.EmpresaUsuarioRepository;
-import com.example.maingest.repository.ItemRepository;
 import com.example.maingest.repository.MovimientoInventarioRepository;
 import com.example.maingest.repository.PagoWompiRepository;
 import com.example.maingest.repository.ProductoRepository;
-import com.example.maingest.repository.RepisaRepository;
-import com.example.maingest.repository.RolPermisoRepository;
 import com.example.maingest.repository.RolRepository;
 import com.example.maingest.repository.UsuarioRepository;
 import com.example.maingest.repository.UsuarioRolRepository;
+import com.example.maingest.security.UsuarioSnapshotCache;
 import com.example.maingest.service.AccessControlService;
+import com.example.maingest.service.BorradoCascadaService;
+import com.example.maingest.service.PermissionCacheService;
+import com.example.maingest.service.UsoEmpresaService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -54,16 +47,16 @@ public class AdminDeleteController {
     private final EmpresaUsuarioRepository empresaUsuarioRepository;
     private final AlmacenUsuarioRepository almacenUsuarioRepository;
     private final RolRepository rolRepository;
-    private final RolPermisoRepository rolPermisoRepository;
     private final MovimientoInventarioRepository movimientoInventarioRepository;
     private final ProductoRepository productoRepository;
     private final AlmacenRepository almacenRepository;
-    private final ArmarioRepository armarioRepository;
-    private final RepisaRepository repisaRepository;
-    private final ItemRepository itemRepository;
     private final EmpresaSuscripcionRepository empresaSuscripcionRepository;
     private final PagoWompiRepository pagoWompiRepository;
     private final AccessControlService accessControlService;
+    private final PermissionCacheService permissionCacheService;
+    private final UsuarioSnapshotCache usuarioSnapshotCache;
+    private final UsoEmpresaService usoEmpresaService;
+    private final BorradoCascadaService borradoCascadaService;
 
     public AdminDeleteController(
             UsuarioRepository usuarioRepository,
@@ -72,16 +65,16 @@ public class AdminDeleteController {
             EmpresaUsuarioRepository empresaUsuarioRepository,
             AlmacenUsuarioRepository almacenUsuarioRepository,
             RolRepository rolRepository,
-            RolPermisoRepository rolPermisoRepository,
             MovimientoInventarioRepository movimientoInventarioRepository,
             ProductoRepository productoRepository,
             AlmacenRepository almacenRepository,
-            ArmarioRepository armarioRepository,
-            RepisaRepository repisaRepository,
-            ItemRepository itemRepository,
             EmpresaSuscripcionRepository empresaSuscripcionRepository,
             PagoWompiRepository pagoWompiRepository,
-            AccessControlService accessControlService
+            AccessControlService accessControlService,
+            PermissionCacheService permissionCacheService,
+            UsuarioSnapshotCache usuarioSnapshotCache,
+            UsoEmpresaService usoEmpresaService,
+            BorradoCascadaService borradoCascadaService
     ) {
         this.usuarioRepository = usuarioRepository;
         this.usuarioRolRepository = usuarioRolRepository;
@@ -89,16 +82,16 @@ public class AdminDeleteController {
         this.empresaUsuarioRepository = empresaUsuarioRepository;
         this.almacenUsuarioRepository = almacenUsuarioRepository;
         this.rolRepository = rolRepository;
-        this.rolPermisoRepository = rolPermisoRepository;
         this.movimientoInventarioRepository = movimientoInventarioRepository;
         this.productoRepository = productoRepository;
         this.almacenRepository = almacenRepository;
-        this.armarioRepository = armarioRepository;
-        this.repisaRepository = repisaRepository;
-        this.itemRepository = itemRepository;
         this.empresaSuscripcionRepository = empresaSuscripcionRepository;
         this.pagoWompiRepository = pagoWompiRepository;
         this.accessControlService = accessControlService;
+        this.permissionCacheService = permissionCacheService;
+        this.usuarioSnapshotCache = usuarioSnapshotCache;
+        this.usoEmpresaService = usoEmpresaService;
+        this.borradoCascadaService = borradoCascadaService;
     }
 
     public record UsuarioDeletePreview(
@@ -227,6 +220,9 @@ public class AdminDeleteController {
         }
 
         usuarioRepository.delete(usuario);
+        permissionCacheService.invalidarUsuario(id);
+        usoEmpresaService.invalidarTodo();
+        usuarioSnapshotCache.invalidar(id);
         return ResponseEntity.noContent().build();
     }
 
@@ -256,9 +252,12 @@ public class AdminDeleteController {
         return ResponseEntity.ok(new EmpresaDeletePreview(id, almacenes, armarios, repisas, items, productos, movimientos, usuarios, roles, suscripciones, pagosWompi));
     }
 
+    /**
+     * Borra la empresa con {@link BorradoCascadaService} y responde las filas borradas por tabla.
+     * No es transaccional: las tablas grandes se vacían en lotes con commit propio.
+     */
     @PostMapping("/empresas/{id}/delete")
-    @Transactional
-    public ResponseEntity<Void> deleteEmpresa(
+    public ResponseEntity<BorradoCascadaService.Resultado> deleteEmpresa(
             @PathVariable("id") Long id,
             @RequestBody EmpresaDeleteRequest request
     ) {
@@ -272,136 +271,19 @@ public class AdminDeleteController {
         }
         Empresa empresa = empresaOpt.get();
 
-        String usuariosStrategy = request.usuariosStrategy() != null ? request.usuariosStrategy().trim().toUpperCase() : "";
-
-        List<EmpresaUsuario> relacionesEmpresa = empresaUsuarioRepository.findByEmpresa(empresa);
-        List<Usuario> usuarios = relacionesEmpresa.stream()
-                .map(EmpresaUsuario::getUsuario)
-                .filter(Objects::nonNull)
-                .distinct()
-                .toList();
-
-        if (!usuarios.isEmpty()) {
-            if ("MOVE".equals(usuariosStrategy)) {
-                if (request.nuevoEmpresaId() == null || Objects.equals(request.nuevoEmpresaId(), id)) {
-                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
-                }
-                Optional<Empresa> nuevoEmpresaOpt = empresaRepository.findById(request.nuevoEmpresaId());
-                if (nuevoEmpresaOpt.isEmpty()) {
-                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
-                }
-                Empresa nuevoEmpresa = nuevoEmpresaOpt.get();
-
-                Rol nuevoRol = null;
-                if (request.nuevoRolId() != null) {
-                    Optional<Rol> nuevoRolOpt = rolRepository.findById(request.nuevoRolId());
-                    if (nuevoRolOpt.isEmpty()) {
-                        return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
-                    }
-                    nuevoRol = nuevoRolOpt.get();
-                }
-
-                for (Usuario usuario : usuarios) {
-                    accessControlService.removeEmpresaUsuarioAndAlmacenAccesos(empresa, usuario);
-                    EmpresaUsuarioId euId = new EmpresaUsuarioId(nuevoEmpresa.getId(), usuario.getId());
-                    EmpresaUsuario eu = new EmpresaUsuario();
-                    eu.setId(euId);
-                    eu.setEmpresa(nuevoEmpresa);
-                    eu.setUsuario(usuario);
-                    eu.setRol(nuevoRol);
-                    empresaUsuarioRepository.save(eu);
-                }
-            } else if ("DETACH".equals(usuariosStrategy)) {
-                for (Usuario usuario : usuarios) {
-                    accessControlService.removeEmpresaUsuarioAndAlmacenAccesos(empresa, usuario);
-                }
-            } else if ("DELETE_USERS".equals(usuariosStrategy)) {
-                for (Usuario usuario : usuarios) {
-                    accessControlService.removeEmpresaUsuarioAndAlmacenAccesos(empresa, usuario);
-                }
-            } else {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
-            }
-        }
-
-        empresaSuscripcionRepository.deleteAll(empresaSuscripcionRepository.findByEmpresa(empresa));
-        pagoWompiRepository.deleteAll(pagoWompiRepository.findByEmpresa(empresa));
-
-        movimientoInventarioRepository.deleteByEmpresa(empresa);
-
-        List<Almacen> almacenes = almacenRepository.findByEmpresa(empresa);
-        for (Almacen almacen : almacenes) {
-            almacenUsuarioRepository.deleteAll(almacenUsuarioRepository.findByAlmacen(almacen));
-            List<Armario> armarios = armarioRepository.findByAlmacen(almacen);
-            for (Armario armario : armarios) {
-                List<Repisa> repisas = repisaRepository.findByArmario(armario);
-                for (Repisa repisa : repisas) {
-                    List<Item> items = itemRepository.findByRepisa(repisa);
-                    if (!items.isEmpty()) {
-                        itemRepository.deleteAll(items);
-                    }
-                }
-                if (!repisas.isEmpty()) {
-                    repisaRepository.deleteAll(repisas);
-                }
-            }
-            if (!armarios.isEmpty()) {
-                armarioRepository.deleteAll(armarios);
-            }
-            almacenRepository.delete(almacen);
-        }
-
-        productoRepository.deleteAll(productoRepository.findByEmpresa(empresa));
-
-        if (!usuarios.isEmpty() && "DELETE_USERS".equals(usuariosStrategy)) {
-            for (Usuario usuario : usuarios) {
-                List<UsuarioRol> roles = usuarioRolRepository.findByUsuario(usuario);
-                if (!roles.isEmpty()) {
-                    usuarioRolRepository.deleteAll(roles);
-                }
-                List<AlmacenUsuario> almacenesUsuario = almacenUsuarioRepository.findByUsuario(usuario);
-                if (!almacenesUsuario.isEmpty()) {
-                    almacenUsuarioRepository.deleteAll(almacenesUsuario);
-                }
-                List<EmpresaUsuario> empresasUsuario = empresaUsuarioRepository.findByUsuario(usuario);
-                if (!empresasUsuario.isEmpty()) {
-                    empresaUsuarioRepository.deleteAll(empresasUsuario);
-                }
-                if (movimientoInventarioRepository.countByUsuarioId(usuario.getId()) > 0) {
-                    movimientoInventarioRepository.deleteByUsuario(usuario);
-                }
-                usuarioRepository.delete(usuario);
-            }
+        BorradoCascadaService.PlanBorradoEmpresa plan;
+        try {
+            plan = borradoCascadaService.planificarBorradoEmpresa(
+                    empresa,
+                    request.usuariosStrategy(),
+                    request.nuevoEmpresaId(),
+                    request.nuevoRolId()
+            );
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
-
-        List<Rol> rolesEmpresa = rolRepository.findByEmpresa(empresa);
-        for (Rol rol : rolesEmpresa) {
-            List<UsuarioRol> usuarioRoles = usuarioRolRepository.findByRol(rol);
-            if (!usuarioRoles.isEmpty()) {
-                usuarioRolRepository.deleteAll(usuarioRoles);
-            }
-            List<EmpresaUsuario> empresaUsuarios = empresaUsuarioRepository.findByRol(rol);
-            if (!empresaUsuarios.isEmpty()) {
-                empresaUsuarioRepository.deleteAll(empresaUsuarios);
-            }
-            List<AlmacenUsuario> almacenUsuarios = almacenUsuarioRepository.findByRol(rol);
-            if (!almacenUsuarios.isEmpty()) {
-                almacenUsuarioRepository.deleteAll(almacenUsuarios);
-            }
-            List<RolPermiso> enlaces = rolPermisoRepository.findByRol(rol);
-            if (!enlaces.isEmpty()) {
-                rolPermisoRepository.deleteAll(enlaces);
-            }
-            rolRepository.delete(rol);
-        }
-
-        List<EmpresaUsuario> relacionesRestantes = empresaUsuarioRepository.findByEmpresa(empresa);
-        if (!relacionesRestantes.isEmpty()) {
-            empresaUsuarioRepository.deleteAll(relacionesRestantes);
-        }
-
-        empresaRepository.delete(empresa);
-        return ResponseEntity.noContent().build();
+        BorradoCascadaService.Resultado resultado = borradoCascadaService.borrarEmpresa(plan, null);
+        return ResponseEntity.ok(resultado);
     }
 
     private Usuario currentUsuario() {
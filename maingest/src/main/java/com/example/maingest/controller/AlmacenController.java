@@ -3,7 +3,6 @@ package com.example.maingest.controller;
 import com.example.maingest.domain.Almacen;
 import com.example.maingest.domain.Armario;
 import com.example.maingest.domain.Empresa;
-import com.example.maingest.domain.Item;
 import com.example.maingest.domain.Repisa;
 import com.example.maingest.domain.Usuario;
 import com.example.maingest.repository.AlmacenRepository;
@@ -11,31 +10,38 @@ import com.example.maingest.repository.AlmacenUsuarioRepository;
 import com.example.maingest.repository.ArmarioRepository;
 import com.example.maingest.repository.EmpresaRepository;
 import com.example.maingest.repository.EmpresaUsuarioRepository;
-import com.example.maingest.repository.ItemRepository;
 import com.example.maingest.repository.RepisaRepository;
 import com.example.maingest.service.AccessControlService;
+import com.example.maingest.service.BorradoCascadaService;
 import com.example.maingest.service.PermissionService;
 import com.example.maingest.service.SuscripcionValidationService;
+import com.example.maingest.service.UsoEmpresaService;
 import com.example.maingest.domain.EmpresaUsuario;
 import com.example.maingest.domain.AlmacenUsuario;
+import com.example.maingest.service.VersionRespuestaService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @RestController
@@ -49,35 +55,41 @@ public class AlmacenController {
     private final EmpresaRepository empresaRepository;
     private final ArmarioRepository armarioRepository;
     private final RepisaRepository repisaRepository;
-    private final ItemRepository itemRepository;
     private final AlmacenUsuarioRepository almacenUsuarioRepository;
     private final EmpresaUsuarioRepository empresaUsuarioRepository;
     private final AccessControlService accessControlService;
     private final PermissionService permissionService;
     private final SuscripcionValidationService suscripcionValidationService;
+    private final UsoEmpresaService usoEmpresaService;
+    private final VersionRespuestaService versionRespuestaService;
+    private final BorradoCascadaService borradoCascadaService;
 
     public AlmacenController(
             AlmacenRepository almacenRepository,
             EmpresaRepository empresaRepository,
             ArmarioRepository armarioRepository,
             RepisaRepository repisaRepository,
-            ItemRepository itemRepository,
             AlmacenUsuarioRepository almacenUsuarioRepository,
             EmpresaUsuarioRepository empresaUsuarioRepository,
             AccessControlService accessControlService,
             PermissionService permissionService,
-            SuscripcionValidationService suscripcionValidationService
+            SuscripcionValidationService suscripcionValidationService,
+            UsoEmpresaService usoEmpresaService,
+            VersionRespuestaService versionRespuestaService,
+            BorradoCascadaService borradoCascadaService
     ) {
         this.almacenRepository = almacenRepository;
         this.empresaRepository = empresaRepository;
         this.armarioRepository = armarioRepository;
         this.repisaRepository = repisaRepository;
-        this.itemRepository = itemRepository;
         this.almacenUsuarioRepository = almacenUsuarioRepository;
         this.empresaUsuarioRepository = empresaUsuarioRepository;
         this.accessControlService = accessControlService;
         this.permissionService = permissionService;
         this.suscripcionValidationService = suscripcionValidationService;
+        this.usoEmpresaService = usoEmpresaService;
+        this.versionRespuestaService = versionRespuestaService;
+        this.borradoCascadaService = borradoCascadaService;
     }
 
     public record AlmacenDto(
@@ -106,7 +118,8 @@ public class AlmacenController {
             Long id,
             Integer nivel,
             Integer capacidad,
-            Long itemsOcupados
+            Long itemsOcupados,
+            Long cantidadTotal
     ) {
     }
 
@@ -171,7 +184,8 @@ public class AlmacenController {
             Long repisaId,
             Integer repisaNivel,
             Integer repisaCapacidad,
-            Long itemsOcupados
+            Long itemsOcupados,
+            Long cantidadTotal
     ) {
     }
 
@@ -218,6 +232,7 @@ public class AlmacenController {
             almacen.setEstilos(dto.estilos());
         }
         Almacen guardado = almacenRepository.save(almacen);
+        usoEmpresaService.registrarAlta(empresa.getId(), UsoEmpresaService.Recurso.ALMACENES);
         AlmacenDto respuesta = toDto(guardado);
         return ResponseEntity.created(URI.create("/api/almacenes/" + guardado.getId())).body(respuesta);
     }
@@ -255,12 +270,16 @@ public class AlmacenController {
             almacen.setEstilos(dto.estilos());
         }
         Almacen guardado = almacenRepository.save(almacen);
+        versionRespuestaService.incrementar(VersionRespuestaService.Recurso.ALMACEN, guardado.getId());
         return ResponseEntity.ok(toDto(guardado));
     }
 
+    /**
+     * Borrado por conjuntos con {@link BorradoCascadaService}; sin transacción exterior porque
+     * los items se borran en lotes con commit propio.
+     */
     @DeleteMapping("/{almacenId}")
-    @Transactional
-    public ResponseEntity<Void> eliminar(@PathVariable("almacenId") Long almacenId) {
+    public ResponseEntity<?> eliminar(@PathVariable("almacenId") Long almacenId) {
         Usuario actor = currentUsuario();
         if (actor == null) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
@@ -277,35 +296,33 @@ public class AlmacenController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
-        almacenUsuarioRepository.deleteAll(almacenUsuarioRepository.findByAlmacen(almacen));
-
-        List<Armario> armarios = armarioRepository.findByAlmacen(almacen);
-        for (Armario armario : armarios) {
-            List<Repisa> repisas = repisaRepository.findByArmario(armario);
-            for (Repisa repisa : repisas) {
-                List<Item> items = itemRepository.findByRepisa(repisa);
-                if (!items.isEmpty()) {
-                    itemRepository.deleteAll(items);
-                }
-            }
-            if (!repisas.isEmpty()) {
-                repisaRepository.deleteAll(repisas);
-            }
+        try {
+            borradoCascadaService.borrarAlmacen(almacenId);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
         }
-        if (!armarios.isEmpty()) {
-            armarioRepository.deleteAll(armarios);
-        }
-
-        almacenRepository.delete(almacen);
+        usoEmpresaService.invalidarUso(empresa.getId());
+        versionRespuestaService.incrementar(VersionRespuestaService.Recurso.ALMACEN, almacenId);
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Responde 304 sin consultar la base si {@code If-None-Match} trae el ETag vigente
+     * (ver {@link VersionRespuestaService}).
+     */
     @GetMapping("/{almacenId}/estructura")
-    public ResponseEntity<AlmacenEstructuraDto> obtenerEstructura(@PathVariable("almacenId") Long almacenId) {
+    public ResponseEntity<AlmacenEstructuraDto> obtenerEstructura(
+            @PathVariable("almacenId") Long almacenId,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
         Usuario actor = currentUsuario();
         if (actor == null) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
+        String etag = versionRespuestaService.etag(VersionRespuestaService.Recurso.ALMACEN, almacenId, actor.getId(), null);
+        if (versionRespuestaService.coincide(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).build();
+        }
         Almacen almacen = almacenRepository.findById(almacenId).orElse(null);
         if (almacen == null) {
             return ResponseEntity.notFound().build();
@@ -314,36 +331,9 @@ public class AlmacenController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
         Empresa empresa = almacen.getEmpresa();
-        List<Armario> armarios = armarioRepository.findByAlmacen(almacen);
-        List<ArmarioDto> armariosDto = armarios.stream()
-                .map(armario -> {
-                    List<Repisa> repisas = repisaRepository.findByArmario(armario);
-                    List<RepisaDto> repisasDto = repisas.stream()
-                            .map(repisa -> {
-                                long itemsCount = itemRepository.findByRepisa(repisa).size();
-                                return new RepisaDto(
-                                        repisa.getId(),
-                                        repisa.getNivel(),
-                                        repisa.getCapacidad(),
-                                        itemsCount
-                                );
-                            })
-                            .toList();
-                    return new ArmarioDto(
-                            armario.getId(),
-                            armario.getNombre(),
-                            armario.getTamanioTotal(),
-                            armario.getPosX(),
-                            armario.getPosY(),
-                            armario.getAncho(),
-                            armario.getAlto(),
-                            armario.getDisplayAncho(),
-                            armario.getDisplayAlto(),
-                            armario.getRotacion(),
-                            repisasDto
-                    );
-                })
-                .toList();
+        List<ArmarioDto> armariosDto = armariosDesdeFilas(
+                armarioRepository.findEstructuraByAlmacenIds(List.of(almacen.getId()))
+        );
         AlmacenEstructuraDto respuesta = new AlmacenEstructuraDto(
                 almacen.getId(),
                 almacen.getNombre(),
@@ -352,7 +342,7 @@ public class AlmacenController {
                 almacen.getEstilos(),
                 armariosDto
         );
-        return ResponseEntity.ok(respuesta);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).body(respuesta);
     }
 
     @GetMapping("/estructura-global")
@@ -383,65 +373,33 @@ public class AlmacenController {
             }
         }
 
-        List<Almacen> todosAlmacenes = almacenRepository.findAll();
-        List<RepisaGlobalDto> resultado = new ArrayList<>();
-
-        for (Almacen almacen : todosAlmacenes) {
-            Empresa empresa = almacen.getEmpresa();
-            boolean permitido = false;
-
-            if (isSuperAdmin) {
-                permitido = true;
-            } else {
-                if (almacenesPermitidos.contains(almacen.getId())) {
-                    permitido = true;
-                } else if (empresa != null && empresa.getId() != null && empresasPermitidas.contains(empresa.getId())) {
-                    permitido = true;
-                }
-            }
-
-            if (!permitido) {
-                continue;
-            }
-
-            List<Armario> armarios = armarioRepository.findByAlmacen(almacen);
-            for (Armario armario : armarios) {
-                List<Repisa> repisas = repisaRepository.findByArmario(armario);
-                for (Repisa repisa : repisas) {
-                    long itemsCount = itemRepository.findByRepisa(repisa).size();
-                    resultado.add(new RepisaGlobalDto(
-                            empresa != null ? empresa.getId() : null,
-                            empresa != null ? empresa.getNombre() : null,
-                            almacen.getId(),
-                            almacen.getNombre(),
-                            armario.getId(),
-                            armario.getNombre(),
-                            repisa.getId(),
-                            repisa.getNivel(),
-                            repisa.getCapacidad(),
-                            itemsCount
-                    ));
-                }
-                // Si el armario no tiene repisas, podríamos querer mostrarlo también,
-                // pero la DTO está centrada en repisas. Si se requiere mostrar armarios vacíos,
-                // se podría agregar una entrada con repisaId = null o similar.
-                // Por ahora, asumimos que "Armarios y repisas" se enfoca en repisas disponibles.
-                if (repisas.isEmpty()) {
-                     resultado.add(new RepisaGlobalDto(
-                            empresa != null ? empresa.getId() : null,
-                            empresa != null ? empresa.getNombre() : null,
-                            almacen.getId(),
-                            almacen.getNombre(),
-                            armario.getId(),
-                            armario.getNombre(),
-                            null,
-                            null,
-                            null,
-                            0L
-                    ));
-                }
+        List<ArmarioRepository.EstructuraFila> filas;
+        if (isSuperAdmin) {
+            filas = armarioRepository.findEstructuraCompleta();
+        } else {
+            Set<Long> almacenIds = new HashSet<>(almacenesPermitidos);
+            if (!empresasPermitidas.isEmpty()) {
+                almacenIds.addAll(almacenRepository.findIdsByEmpresaIds(empresasPermitidas));
             }
-        }
+            filas = almacenIds.isEmpty() ? List.of() : armarioRepository.findEstructuraByAlmacenIds(almacenIds);
+        }
+
+        // Un armario sin repisas llega como una fila con repisaId = null y 0 items
+        List<RepisaGlobalDto> resultado = filas.stream()
+                .map(fila -> new RepisaGlobalDto(
+                        fila.getEmpresaId(),
+                        fila.getEmpresaNombre(),
+                        fila.getAlmacenId(),
+                        fila.getAlmacenNombre(),
+                        fila.getArmarioId(),
+                        fila.getArmarioNombre(),
+                        fila.getRepisaId(),
+                        fila.getRepisaNivel(),
+                        fila.getRepisaCapacidad(),
+                        fila.getItemsOcupados(),
+                        fila.getCantidadTotal()
+                ))
+                .toList();
 
         return ResponseEntity.ok(resultado);
     }
@@ -461,32 +419,11 @@ public class AlmacenController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
-        List<RepisaDto> repisasDto = repisaRepository.findByArmario(armario).stream()
-                .map(repisa -> {
-                    long itemsCount = itemRepository.findByRepisa(repisa).size();
-                    return new RepisaDto(
-                            repisa.getId(),
-                            repisa.getNivel(),
-                            repisa.getCapacidad(),
-                            itemsCount
-                    );
-                })
-                .toList();
-
-        ArmarioDto respuesta = new ArmarioDto(
-                armario.getId(),
-                armario.getNombre(),
-                armario.getTamanioTotal(),
-                armario.getPosX(),
-                armario.getPosY(),
-                armario.getAncho(),
-                armario.getAlto(),
-                armario.getDisplayAncho(),
-                armario.getDisplayAlto(),
-                armario.getRotacion(),
-                repisasDto
-        );
-        return ResponseEntity.ok(respuesta);
+        List<ArmarioDto> estructura = armariosDesdeFilas(armarioRepository.findEstructuraByArmarioId(armario.getId()));
+        if (estructura.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(estructura.get(0));
     }
 
     @PostMapping("/{almacenId}/armarios")
@@ -527,6 +464,10 @@ public class AlmacenController {
         armario.setRotacion(dto.rotacion() != null ? dto.rotacion() : 0.0);
         armario.setAlmacen(almacen);
         Armario guardado = armarioRepository.save(armario);
+        versionRespuestaService.incrementar(VersionRespuestaService.Recurso.ALMACEN, almacenId);
+        if (empresa != null) {
+            usoEmpresaService.registrarAlta(empresa.getId(), UsoEmpresaService.Recurso.ARMARIOS);
+        }
         ArmarioDto respuesta = new ArmarioDto(
                 guardado.getId(),
                 guardado.getNombre(),
@@ -586,18 +527,14 @@ public class AlmacenController {
         armario.setDisplayAlto(displayAlto);
         armario.setRotacion(rotacion);
         Armario guardado = armarioRepository.save(armario);
+        if (armario.getAlmacen() != null) {
+            versionRespuestaService.incrementar(VersionRespuestaService.Recurso.ALMACEN, armario.getAlmacen().getId());
+        }
 
-        List<RepisaDto> repisasDto = repisaRepository.findByArmario(guardado).stream()
-                .map(repisa -> {
-                    long itemsCount = itemRepository.findByRepisa(repisa).size();
-                    return new RepisaDto(
-                            repisa.getId(),
-                            repisa.getNivel(),
-                            repisa.getCapacidad(),
-                            itemsCount
-                    );
-                })
-                .toList();
+        List<RepisaDto> repisasDto = armariosDesdeFilas(armarioRepository.findEstructuraByArmarioId(guardado.getId())).stream()
+                .findFirst()
+                .map(ArmarioDto::repisas)
+                .orElse(List.of());
 
         ArmarioDto respuesta = new ArmarioDto(
                 guardado.getId(),
@@ -647,16 +584,58 @@ public class AlmacenController {
         repisa.setCapacidad(dto.capacidad());
         repisa.setArmario(armario);
         Repisa guardada = repisaRepository.save(repisa);
+        if (almacen != null) {
+            versionRespuestaService.incrementar(VersionRespuestaService.Recurso.ALMACEN, almacen.getId());
+        }
+        if (empresa != null) {
+            usoEmpresaService.registrarAlta(empresa.getId(), UsoEmpresaService.Recurso.REPISAS);
+        }
         RepisaDto respuesta = new RepisaDto(
                 guardada.getId(),
                 guardada.getNivel(),
                 guardada.getCapacidad(),
+                0L,
                 0L
         );
         return ResponseEntity.created(URI.create("/api/almacenes/armarios/" + armarioId + "/repisas/" + guardada.getId()))
                 .body(respuesta);
     }
 
+    private List<ArmarioDto> armariosDesdeFilas(List<ArmarioRepository.EstructuraFila> filas) {
+        Map<Long, ArmarioRepository.EstructuraFila> armarios = new LinkedHashMap<>();
+        Map<Long, List<RepisaDto>> repisasPorArmario = new HashMap<>();
+        for (ArmarioRepository.EstructuraFila fila : filas) {
+            armarios.putIfAbsent(fila.getArmarioId(), fila);
+            List<RepisaDto> repisas = repisasPorArmario.computeIfAbsent(fila.getArmarioId(), id -> new ArrayList<>());
+            if (fila.getRepisaId() != null) {
+                repisas.add(new RepisaDto(
+                        fila.getRepisaId(),
+                        fila.getRepisaNivel(),
+                        fila.getRepisaCapacidad(),
+                        fila.getItemsOcupados(),
+                        fila.getCantidadTotal()
+                ));
+            }
+        }
+        List<ArmarioDto> resultado = new ArrayList<>(armarios.size());
+        for (ArmarioRepository.EstructuraFila fila : armarios.values()) {
+            resultado.add(new ArmarioDto(
+                    fila.getArmarioId(),
+                    fila.getArmarioNombre(),
+                    fila.getTamanioTotal(),
+                    fila.getPosX(),
+                    fila.getPosY(),
+                    fila.getAncho(),
+                    fila.getAlto(),
+                    fila.getDisplayAncho(),
+                    fila.getDisplayAlto(),
+                    fila.getRotacion(),
+                    repisasPorArmario.get(fila.getArmarioId())
+            ));
+        }
+        return resultado;
+    }
+
     private AlmacenDto toDto(Almacen almacen) {
         Empresa empresa = almacen.getEmpresa();
         Long empresaId = empresa != null ? empresa.getId() : null;
@@ -1,12 +1,13 @@
 package com.example.maingest.controller;
 
 import com.example.maingest.domain.AuditoriaEvento;
-import com.example.maingest.domain.Empresa;
-import com.example.maingest.domain.EmpresaUsuario;
 import com.example.maingest.domain.Usuario;
+import com.example.maingest.dto.CursorDtos.Cursor;
+import com.example.maingest.dto.CursorDtos.PaginaCursorDto;
 import com.example.maingest.repository.EmpresaUsuarioRepository;
 import com.example.maingest.service.AccessControlService;
 import com.example.maingest.service.AuditoriaService;
+import com.example.maingest.service.AuditoriaWriter;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -21,7 +22,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.time.Instant;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -65,14 +66,25 @@ public class AuditoriaController {
     ) {
     }
 
+    /**
+     * Con {@code after} (vacío para la primera página) pagina por cursor {@code fecha,id} y
+     * devuelve {@link PaginaCursorDto}; el total solo se cuenta con {@code conTotal=true}.
+     * Sin {@code after} conserva la paginación por página.
+     * accion y objetoTipo filtran por igualdad, usuarioCorreo por prefijo, texto es búsqueda
+     * de texto completo (sintaxis web: comillas, {@code or}, {@code -palabra}) sobre la
+     * descripción y los valores de los detalles, y detalles es un JSON que el evento debe contener.
+     */
     @GetMapping
-    public ResponseEntity<AuditoriaPaginadaDto> listar(
+    public ResponseEntity<?> listar(
             @RequestParam(name = "usuarioCorreo", required = false) String usuarioCorreo,
             @RequestParam(name = "objetoTipo", required = false) String objetoTipo,
             @RequestParam(name = "accion", required = false) String accion,
             @RequestParam(name = "texto", required = false) String texto,
+            @RequestParam(name = "detalles", required = false) String detalles,
             @RequestParam(name = "page", defaultValue = "0") int page,
-            @RequestParam(name = "size", defaultValue = "50") int size
+            @RequestParam(name = "size", defaultValue = "50") int size,
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "conTotal", defaultValue = "false") boolean conTotal
     ) {
         Usuario actor = currentUsuario();
         if (actor == null) {
@@ -80,37 +92,48 @@ public class AuditoriaController {
         }
 
         int safeSize = Math.min(Math.max(size, 1), 200);
-        Pageable pageable = PageRequest.of(Math.max(page, 0), safeSize);
-
-        Page<AuditoriaEvento> eventos;
-        if (accessControlService.isSuperAdmin(actor)) {
-            eventos = auditoriaService.buscar(usuarioCorreo, objetoTipo, accion, texto, pageable);
-        } else {
-            List<EmpresaUsuario> relacionesActor = empresaUsuarioRepository.findByUsuario(actor);
-            if (relacionesActor.isEmpty()) {
+        AuditoriaService.Filtros filtros;
+        try {
+            filtros = auditoriaService.filtros(usuarioCorreo, objetoTipo, accion, texto, detalles);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        Set<Long> usuarioIdsPermitidos = null;
+        if (!accessControlService.isSuperAdmin(actor)) {
+            usuarioIdsPermitidos = usuarioIdsVisibles(actor);
+            if (usuarioIdsPermitidos.isEmpty()) {
+                if (after != null) {
+                    return ResponseEntity.ok(new PaginaCursorDto<AuditoriaEventoDto>(List.of(), safeSize, null, conTotal ? 0L : null));
+                }
                 return ResponseEntity.ok(new AuditoriaPaginadaDto(List.of(), 0, safeSize, 0, 0));
             }
-            List<Empresa> empresasActor = relacionesActor.stream()
-                    .map(EmpresaUsuario::getEmpresa)
-                    .filter(Objects::nonNull)
-                    .distinct()
-                    .toList();
-            if (empresasActor.isEmpty()) {
-                return ResponseEntity.ok(new AuditoriaPaginadaDto(List.of(), 0, safeSize, 0, 0));
+        }
+
+        if (after != null) {
+            Cursor cursor;
+            try {
+                cursor = Cursor.parse(after);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
             }
-            Set<Long> usuarioIdsPermitidos = empresasActor.stream()
-                    .flatMap(empresa -> empresaUsuarioRepository.findByEmpresa(empresa).stream())
-                    .map(EmpresaUsuario::getUsuario)
-                    .filter(Objects::nonNull)
-                    .map(Usuario::getId)
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toSet());
-            if (usuarioIdsPermitidos.isEmpty()) {
-                return ResponseEntity.ok(new AuditoriaPaginadaDto(List.of(), 0, safeSize, 0, 0));
+            List<AuditoriaEvento> filas = auditoriaService.buscarKeyset(usuarioIdsPermitidos, filtros, cursor, safeSize);
+            boolean hayMas = filas.size() > safeSize;
+            List<AuditoriaEvento> pagina = hayMas ? filas.subList(0, safeSize) : filas;
+            String siguiente = null;
+            if (hayMas) {
+                AuditoriaEvento ultimo = pagina.get(pagina.size() - 1);
+                siguiente = new Cursor(ultimo.getCreadoEn(), ultimo.getId()).valor();
             }
-            eventos = auditoriaService.buscarPorUsuarios(usuarioIdsPermitidos, usuarioCorreo, objetoTipo, accion, texto, pageable);
+            Long total = conTotal
+                    ? auditoriaService.contar(usuarioIdsPermitidos, filtros)
+                    : null;
+            return ResponseEntity.ok(new PaginaCursorDto<>(
+                    pagina.stream().map(this::toDto).toList(), safeSize, siguiente, total));
         }
 
+        Pageable pageable = PageRequest.of(Math.max(page, 0), safeSize);
+        Page<AuditoriaEvento> eventos = auditoriaService.buscar(usuarioIdsPermitidos, filtros, pageable);
+
         List<AuditoriaEventoDto> content = eventos.getContent().stream()
                 .map(this::toDto)
                 .toList();
@@ -120,6 +143,21 @@ public class AuditoriaController {
         return ResponseEntity.ok(respuesta);
     }
 
+    @GetMapping("/pipeline")
+    public ResponseEntity<AuditoriaWriter.Estadisticas> pipeline() {
+        Usuario actor = currentUsuario();
+        if (actor == null || !accessControlService.isSuperAdmin(actor)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(auditoriaService.estadisticas());
+    }
+
+    private Set<Long> usuarioIdsVisibles(Usuario actor) {
+        return empresaUsuarioRepository.findUsuariosDeEmpresasDe(actor.getId()).stream()
+                .map(Usuario::getId)
+                .collect(Collectors.toSet());
+    }
+
     private AuditoriaEventoDto toDto(AuditoriaEvento evento) {
         return new AuditoriaEventoDto(
                 evento.getId(),
@@ -4,6 +4,7 @@ import com.example.maingest.domain.Usuario;
 import com.example.maingest.dto.UsuarioDtos.UsuarioDto;
 import com.example.maingest.repository.UsuarioRepository;
 import com.example.maingest.security.JwtService;
+import com.example.maingest.security.UsuarioSnapshotCache;
 import com.example.maingest.service.AccessControlService;
 import com.example.maingest.service.PermissionService;
 import org.springframework.http.HttpStatus;
@@ -30,19 +31,22 @@ public class AuthController {
     private final AccessControlService accessControlService;
     private final PermissionService permissionService;
     private final PasswordEncoder passwordEncoder;
+    private final UsuarioSnapshotCache usuarioSnapshotCache;
 
     public AuthController(
             UsuarioRepository usuarioRepository,
             JwtService jwtService,
             AccessControlService accessControlService,
             PermissionService permissionService,
-            PasswordEncoder passwordEncoder
+            PasswordEncoder passwordEncoder,
+            UsuarioSnapshotCache usuarioSnapshotCache
     ) {
         this.usuarioRepository = usuarioRepository;
         this.jwtService = jwtService;
         this.accessControlService = accessControlService;
         this.permissionService = permissionService;
         this.passwordEncoder = passwordEncoder;
+        this.usuarioSnapshotCache = usuarioSnapshotCache;
     }
 
     public record LoginRequest(String correo, String clave) {
@@ -68,6 +72,7 @@ public class AuthController {
             String encoded = passwordEncoder.encode(request.clave());
             usuario.setClave(encoded);
             usuario = usuarioRepository.save(usuario);
+            usuarioSnapshotCache.invalidar(usuario.getId());
             passwordMatches = true;
         }
         if (!passwordMatches) {
@@ -0,0 +1,123 @@
+package com.example.maingest.controller;
+
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.service.AccessControlService;
+import com.example.maingest.service.AuditoriaService;
+import com.example.maingest.service.GrabacionJfrService;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Grabaciones JFR a demanda, solo superadmin. La grabación vive en el nodo que atendió el
+ * inicio: detener y descargar deben llegar al mismo nodo (el estado devuelve cuál es).
+ */
+@RestController
+@RequestMapping("/api/admin/jfr")
+public class DiagnosticoController {
+
+    private final GrabacionJfrService grabacionJfrService;
+    private final AccessControlService accessControlService;
+    private final AuditoriaService auditoriaService;
+
+    public DiagnosticoController(
+            GrabacionJfrService grabacionJfrService,
+            AccessControlService accessControlService,
+            AuditoriaService auditoriaService
+    ) {
+        this.grabacionJfrService = grabacionJfrService;
+        this.accessControlService = accessControlService;
+        this.auditoriaService = auditoriaService;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> estado() {
+        Usuario actor = currentUsuario();
+        if (actor == null || !accessControlService.isSuperAdmin(actor)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(grabacionJfrService.estado());
+    }
+
+    @PostMapping("/iniciar")
+    public ResponseEntity<?> iniciar(
+            @RequestParam(value = "segundos", defaultValue = "60") int segundos,
+            @RequestParam(value = "perfil", required = false) String perfil
+    ) {
+        Usuario actor = currentUsuario();
+        if (actor == null || !accessControlService.isSuperAdmin(actor)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            GrabacionJfrService.Estado estado = grabacionJfrService.iniciar(segundos, perfil, actor.getId());
+            auditoriaService.registrar(actor, "INICIAR_GRABACION_JFR", "JFR", null,
+                    "Grabación JFR de " + segundos + " s (" + estado.perfil() + ") en nodo " + estado.nodo(), null);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(estado);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/detener")
+    public ResponseEntity<?> detener() {
+        Usuario actor = currentUsuario();
+        if (actor == null || !accessControlService.isSuperAdmin(actor)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            return ResponseEntity.ok(grabacionJfrService.detener());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/descarga")
+    public ResponseEntity<?> descargar() {
+        Usuario actor = currentUsuario();
+        if (actor == null || !accessControlService.isSuperAdmin(actor)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Optional<Path> archivo = grabacionJfrService.archivoListo();
+        if (archivo.isEmpty()) {
+            // En curso, nunca iniciada o iniciada en otro nodo
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "No hay una grabación terminada en este nodo",
+                            "nodo", grabacionJfrService.nodo()));
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(archivo.get().getFileName().toString())
+                        .build()
+                        .toString())
+                .body(new FileSystemResource(archivo.get()));
+    }
+
+    private Usuario currentUsuario() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            return null;
+        }
+        Object principal = authentication.getPrincipal();
+        if (principal instanceof Usuario usuario) {
+            return usuario;
+        }
+        return null;
+    }
+}
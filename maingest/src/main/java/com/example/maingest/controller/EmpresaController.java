@@ -15,19 +15,22 @@ import com.example.maingest.dto.EmpresaSuscripcionDtos.EmpresaSuscripcionCreateD
 import com.example.maingest.dto.EmpresaSuscripcionDtos.EmpresaSuscripcionDto;
 import com.example.maingest.dto.EmpresaUsuarioDto;
 import com.example.maingest.dto.PlanSuscripcionDtos.PlanSuscripcionDto;
-import com.example.maingest.repository.AlmacenRepository;
 import com.example.maingest.repository.EmpresaRepository;
 import com.example.maingest.repository.EmpresaSuscripcionRepository;
 import com.example.maingest.repository.EmpresaUsuarioRepository;
 import com.example.maingest.repository.PlanSuscripcionRepository;
 import com.example.maingest.repository.RolRepository;
-import com.example.maingest.repository.ProductoRepository;
 import com.example.maingest.repository.UsuarioRepository;
 import com.example.maingest.service.AccessControlService;
 import com.example.maingest.service.AuditoriaService;
+import com.example.maingest.service.CatalogoBusquedaService;
 import com.example.maingest.service.PermissionService;
+import com.example.maingest.service.UsoEmpresaService;
+import com.example.maingest.service.VersionRespuestaService;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
@@ -50,11 +53,12 @@ public class EmpresaController {
     private final EmpresaUsuarioRepository empresaUsuarioRepository;
     private final EmpresaSuscripcionRepository empresaSuscripcionRepository;
     private final PlanSuscripcionRepository planSuscripcionRepository;
-    private final AlmacenRepository almacenRepository;
-    private final ProductoRepository productoRepository;
     private final AccessControlService accessControlService;
     private final PermissionService permissionService;
     private final AuditoriaService auditoriaService;
+    private final UsoEmpresaService usoEmpresaService;
+    private final CatalogoBusquedaService catalogoBusquedaService;
+    private final VersionRespuestaService versionRespuestaService;
 
     public EmpresaController(
             EmpresaRepository empresaRepository,
@@ -63,11 +67,12 @@ public class EmpresaController {
             EmpresaUsuarioRepository empresaUsuarioRepository,
             EmpresaSuscripcionRepository empresaSuscripcionRepository,
             PlanSuscripcionRepository planSuscripcionRepository,
-            AlmacenRepository almacenRepository,
-            ProductoRepository productoRepository,
             AccessControlService accessControlService,
             PermissionService permissionService,
-            AuditoriaService auditoriaService
+            AuditoriaService auditoriaService,
+            UsoEmpresaService usoEmpresaService,
+            CatalogoBusquedaService catalogoBusquedaService,
+            VersionRespuestaService versionRespuestaService
     ) {
         this.empresaRepository = empresaRepository;
         this.usuarioRepository = usuarioRepository;
@@ -75,11 +80,12 @@ public class EmpresaController {
         this.empresaUsuarioRepository = empresaUsuarioRepository;
         this.empresaSuscripcionRepository = empresaSuscripcionRepository;
         this.planSuscripcionRepository = planSuscripcionRepository;
-        this.almacenRepository = almacenRepository;
-        this.productoRepository = productoRepository;
         this.accessControlService = accessControlService;
         this.permissionService = permissionService;
         this.auditoriaService = auditoriaService;
+        this.usoEmpresaService = usoEmpresaService;
+        this.catalogoBusquedaService = catalogoBusquedaService;
+        this.versionRespuestaService = versionRespuestaService;
     }
 
     private Usuario currentUsuario() {
@@ -164,14 +170,9 @@ public class EmpresaController {
             }
         }
 
-        long almacenes = almacenRepository.countByEmpresaId(id);
-        long armarios = almacenRepository.countArmariosByEmpresaId(id);
-        long repisas = almacenRepository.countRepisasByEmpresaId(id);
-        long items = almacenRepository.countItemsByEmpresaId(id);
-        long productos = productoRepository.countByEmpresaId(id);
-        long usuarios = empresaUsuarioRepository.findByEmpresa(empresa).size();
-
-        return ResponseEntity.ok(new EmpresaUsageDto(id, almacenes, armarios, repisas, items, productos, usuarios));
+        UsoEmpresaService.Uso uso = usoEmpresaService.uso(id);
+        return ResponseEntity.ok(new EmpresaUsageDto(id, uso.almacenes(), uso.armarios(), uso.repisas(),
+                uso.items(), uso.productos(), uso.usuarios()));
     }
 
     @PostMapping
@@ -216,6 +217,8 @@ public class EmpresaController {
         Empresa empresa = existente.get();
         empresa.setNombre(actualizacion.nombre());
         Empresa guardada = empresaRepository.save(empresa);
+        // El nombre de la empresa aparece en la estructura de todos sus almacenes
+        versionRespuestaService.incrementarTodo();
         auditoriaService.registrar(
                 actor,
                 "EMPRESA_EDITAR",
@@ -242,6 +245,11 @@ public class EmpresaController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
         empresaRepository.deleteById(id);
+        permissionService.invalidarCache();
+        usoEmpresaService.invalidarUso(id);
+        usoEmpresaService.invalidarPlan(id);
+        catalogoBusquedaService.invalidar(id);
+        versionRespuestaService.incrementarTodo();
         auditoriaService.registrar(
                 actor,
                 "EMPRESA_ELIMINAR",
@@ -323,6 +331,7 @@ public class EmpresaController {
                     }
                 }
                 empresaUsuarioRepository.flush();
+                permissionService.invalidarCacheUsuario(usuario.getId());
                 auditoriaService.registrar(
                         actor,
                         "EMPRESA_ACTUALIZAR_ROL_USUARIO",
@@ -360,6 +369,8 @@ public class EmpresaController {
         empresaUsuario.setUsuario(usuario);
         empresaUsuario.setRol(rol);
         empresaUsuarioRepository.save(empresaUsuario);
+        permissionService.invalidarCacheUsuario(usuario.getId());
+        usoEmpresaService.invalidarUso(empresa.getId());
         auditoriaService.registrar(
                 actor,
                 "EMPRESA_ASIGNAR_USUARIO",
@@ -395,6 +406,7 @@ public class EmpresaController {
             return ResponseEntity.notFound().build();
         }
         accessControlService.removeEmpresaUsuarioAndAlmacenAccesos(empresa, usuario);
+        permissionService.invalidarCacheUsuario(usuario.getId());
         auditoriaService.registrar(
                 actor,
                 "EMPRESA_QUITAR_USUARIO",
@@ -528,6 +540,7 @@ public class EmpresaController {
         nueva.setEstado("ACTIVA");
         nueva.setAutoRenovar(dto.autoRenovar() != null && dto.autoRenovar());
         EmpresaSuscripcion guardada = empresaSuscripcionRepository.save(nueva);
+        usoEmpresaService.invalidarPlan(empresa.getId());
 
         auditoriaService.registrar(
                     actor,
@@ -594,6 +607,7 @@ public class EmpresaController {
         nueva.setEstado("ACTIVA");
         nueva.setAutoRenovar(false);
         EmpresaSuscripcion guardada = empresaSuscripcionRepository.save(nueva);
+        usoEmpresaService.invalidarPlan(empresa.getId());
 
         auditoriaService.registrar(
                 actor,
@@ -635,13 +649,22 @@ public class EmpresaController {
         return ResponseEntity.ok(toDto(empresa));
     }
 
+    /**
+     * Igual para todos los usuarios: un solo ETag para la lista, 304 sin consultar la base.
+     */
     @GetMapping("/planes-disponibles")
-    public ResponseEntity<List<PlanSuscripcionDto>> planesDisponibles() {
+    public ResponseEntity<List<PlanSuscripcionDto>> planesDisponibles(
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        String etag = versionRespuestaService.etag(VersionRespuestaService.Recurso.PLANES, 0L, null, null);
+        if (versionRespuestaService.coincide(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
         List<PlanSuscripcionDto> planes = planSuscripcionRepository.findAll()
                 .stream()
                 .filter(p -> Boolean.TRUE.equals(p.getActivo()))
                 .map(this::planToDto)
                 .toList();
-        return ResponseEntity.ok(planes);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(planes);
     }
 }
@@ -13,6 +13,8 @@ import com.example.maingest.repository.RepisaRepository;
 import com.example.maingest.service.AccessControlService;
 import com.example.maingest.service.PermissionService;
 import com.example.maingest.service.SuscripcionValidationService;
+import com.example.maingest.service.UsoEmpresaService;
+import com.example.maingest.service.VersionRespuestaService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -42,6 +44,8 @@ public class ItemController {
     private final AccessControlService accessControlService;
     private final PermissionService permissionService;
     private final SuscripcionValidationService suscripcionValidationService;
+    private final UsoEmpresaService usoEmpresaService;
+    private final VersionRespuestaService versionRespuestaService;
 
     public ItemController(
             ItemRepository itemRepository,
@@ -49,7 +53,9 @@ public class ItemController {
             EmpresaRepository empresaRepository,
             AccessControlService accessControlService,
             PermissionService permissionService,
-            SuscripcionValidationService suscripcionValidationService
+            SuscripcionValidationService suscripcionValidationService,
+            UsoEmpresaService usoEmpresaService,
+            VersionRespuestaService versionRespuestaService
     ) {
         this.itemRepository = itemRepository;
         this.repisaRepository = repisaRepository;
@@ -57,6 +63,8 @@ public class ItemController {
         this.accessControlService = accessControlService;
         this.permissionService = permissionService;
         this.suscripcionValidationService = suscripcionValidationService;
+        this.usoEmpresaService = usoEmpresaService;
+        this.versionRespuestaService = versionRespuestaService;
     }
 
     public record ItemDto(
@@ -172,6 +180,8 @@ public class ItemController {
         item.setPrecio(dto.precio());
 
         Item guardado = itemRepository.save(item);
+        usoEmpresaService.registrarAlta(empresa.getId(), UsoEmpresaService.Recurso.ITEMS);
+        versionRespuestaService.incrementar(VersionRespuestaService.Recurso.ALMACEN, almacen.getId());
         ItemDto respuesta = toItemDto(guardado);
         return ResponseEntity.created(URI.create("/api/items/" + guardado.getId())).body(respuesta);
     }
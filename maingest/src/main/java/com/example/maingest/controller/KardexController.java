@@ -6,14 +6,18 @@ import com.example.maingest.domain.Producto;
 import com.example.maingest.domain.Repisa;
 import com.example.maingest.domain.TipoMovimiento;
 import com.example.maingest.domain.Usuario;
+import com.example.maingest.dto.CursorDtos.Cursor;
+import com.example.maingest.dto.CursorDtos.PaginaCursorDto;
 import com.example.maingest.repository.EmpresaRepository;
 import com.example.maingest.repository.MovimientoInventarioRepository;
 import com.example.maingest.service.AccessControlService;
 import com.example.maingest.service.AuditoriaService;
 import com.example.maingest.service.InventarioService;
 import com.example.maingest.service.PermissionService;
+import com.example.maingest.service.SaldoKardexService;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -30,7 +34,11 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 @RestController
@@ -43,6 +51,7 @@ public class KardexController {
     private final AccessControlService accessControlService;
     private final PermissionService permissionService;
     private final AuditoriaService auditoriaService;
+    private final SaldoKardexService saldoKardexService;
 
     public KardexController(
             InventarioService inventarioService,
@@ -50,7 +59,8 @@ public class KardexController {
             EmpresaRepository empresaRepository,
             AccessControlService accessControlService,
             PermissionService permissionService,
-            AuditoriaService auditoriaService
+            AuditoriaService auditoriaService,
+            SaldoKardexService saldoKardexService
     ) {
         this.inventarioService = inventarioService;
         this.movimientoRepository = movimientoRepository;
@@ -58,6 +68,7 @@ public class KardexController {
         this.accessControlService = accessControlService;
         this.permissionService = permissionService;
         this.auditoriaService = auditoriaService;
+        this.saldoKardexService = saldoKardexService;
     }
 
     // --- DTOs ---
@@ -76,7 +87,10 @@ public class KardexController {
             String observacion,
             Long usuarioId,
             String usuarioNombre,
-            Instant fecha
+            Instant fecha,
+            Integer saldoOrigen,
+            Integer saldoDestino,
+            Long saldoEmpresa
     ) {
     }
 
@@ -89,6 +103,20 @@ public class KardexController {
     ) {
     }
 
+    public record SaldoRepisaDto(Long repisaId, int cantidad) {
+    }
+
+    public record SaldoProductoDto(Long productoId, long total, List<SaldoRepisaDto> repisas) {
+    }
+
+    public record SaldoKardexDto(
+            Long empresaId,
+            Instant fecha,
+            LocalDate snapshot,
+            List<SaldoProductoDto> productos
+    ) {
+    }
+
     public record EntradaDto(
             @NotNull(message = "productoId es requerido") Long productoId,
             @NotNull(message = "repisaDestinoId es requerido") Long repisaDestinoId,
@@ -123,15 +151,57 @@ public class KardexController {
     ) {
     }
 
+    public record LoteLineaDto(
+            String tipo,
+            Long productoId,
+            Long repisaOrigenId,
+            Long repisaDestinoId,
+            Integer cantidad,
+            Integer nuevaCantidad,
+            String lote,
+            String observacion
+    ) {
+    }
+
+    public record LoteDto(
+            String modo,
+            @NotEmpty(message = "movimientos es requerido") List<LoteLineaDto> movimientos
+    ) {
+    }
+
+    public record LoteLineaResultadoDto(
+            int indice,
+            String estado,
+            MovimientoDto movimiento,
+            String error
+    ) {
+    }
+
+    public record LoteResultadoDto(
+            String modo,
+            boolean confirmado,
+            int aplicados,
+            int fallidos,
+            List<LoteLineaResultadoDto> lineas
+    ) {
+    }
+
     // --- Consultas ---
 
+    /**
+     * Con {@code after} (vacío para la primera página) pagina por cursor {@code fecha,id} sobre
+     * idx_mov_empresa_fecha_id y devuelve {@link PaginaCursorDto}; el total solo se cuenta con
+     * {@code conTotal=true}. Sin {@code after} conserva la paginación por página.
+     */
     @GetMapping
-    public ResponseEntity<KardexPaginadoDto> listar(
+    public ResponseEntity<?> listar(
             @RequestParam("empresaId") Long empresaId,
             @RequestParam(name = "productoId", required = false) Long productoId,
             @RequestParam(name = "tipo", required = false) String tipo,
             @RequestParam(name = "page", defaultValue = "0") int page,
-            @RequestParam(name = "size", defaultValue = "50") int size
+            @RequestParam(name = "size", defaultValue = "50") int size,
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "conTotal", defaultValue = "false") boolean conTotal
     ) {
         Usuario actor = currentUsuario();
         if (actor == null) {
@@ -149,6 +219,9 @@ public class KardexController {
         }
 
         int safeSize = Math.min(Math.max(size, 1), 200);
+        if (after != null) {
+            return listarPorCursor(empresaId, productoId, tipo, after, safeSize, conTotal);
+        }
         Pageable pageable = PageRequest.of(Math.max(page, 0), safeSize);
 
         Page<MovimientoInventario> movimientos;
@@ -175,6 +248,81 @@ public class KardexController {
         return ResponseEntity.ok(respuesta);
     }
 
+    /**
+     * Stock por producto y repisa a una fecha (yyyy-MM-dd = cierre del día, o instante ISO-8601).
+     */
+    @GetMapping("/saldo")
+    public ResponseEntity<?> saldo(
+            @RequestParam("empresaId") Long empresaId,
+            @RequestParam("fecha") String fecha,
+            @RequestParam(name = "productoId", required = false) Long productoId
+    ) {
+        Usuario actor = currentUsuario();
+        if (actor == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        Empresa empresa = empresaRepository.findById(empresaId).orElse(null);
+        if (empresa == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        if (!accessControlService.isSuperAdmin(actor)
+                && !permissionService.hasPermissionForEmpresa(actor, empresa, "KARDEX", 1)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        Instant instante;
+        try {
+            instante = saldoKardexService.resolverFecha(fecha);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+
+        SaldoKardexService.SaldoFecha saldo = saldoKardexService.saldoA(empresaId, instante, productoId);
+        Map<Long, List<SaldoRepisaDto>> porProducto = new LinkedHashMap<>();
+        for (SaldoKardexService.SaldoSlot slot : saldo.slots()) {
+            porProducto.computeIfAbsent(slot.productoId(), id -> new ArrayList<>())
+                    .add(new SaldoRepisaDto(slot.repisaId(), slot.cantidad()));
+        }
+        List<SaldoProductoDto> productos = porProducto.entrySet().stream()
+                .map(e -> new SaldoProductoDto(e.getKey(),
+                        e.getValue().stream().mapToLong(SaldoRepisaDto::cantidad).sum(),
+                        e.getValue()))
+                .toList();
+        return ResponseEntity.ok(new SaldoKardexDto(empresaId, saldo.fecha(), saldo.snapshot(), productos));
+    }
+
+    private ResponseEntity<?> listarPorCursor(
+            Long empresaId, Long productoId, String tipo, String after, int size, boolean conTotal
+    ) {
+        Cursor cursor;
+        TipoMovimiento tipoEnum = null;
+        try {
+            cursor = Cursor.parse(after);
+            if (tipo != null && !tipo.isBlank()) {
+                tipoEnum = TipoMovimiento.valueOf(tipo.trim().toUpperCase());
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+
+        List<MovimientoInventario> filas = cursor == null
+                ? movimientoRepository.findPrimeraPaginaKeyset(empresaId, productoId, tipoEnum, PageRequest.of(0, size + 1))
+                : movimientoRepository.findPaginaKeysetDespues(empresaId, productoId, tipoEnum,
+                        cursor.fecha(), cursor.id(), PageRequest.of(0, size + 1));
+        boolean hayMas = filas.size() > size;
+        List<MovimientoInventario> pagina = hayMas ? filas.subList(0, size) : filas;
+        String siguiente = null;
+        if (hayMas) {
+            MovimientoInventario ultimo = pagina.get(pagina.size() - 1);
+            siguiente = new Cursor(ultimo.getFecha(), ultimo.getId()).valor();
+        }
+        Long total = conTotal ? movimientoRepository.contarFiltrados(empresaId, productoId, tipoEnum) : null;
+        return ResponseEntity.ok(new PaginaCursorDto<>(
+                pagina.stream().map(this::toDto).toList(), size, siguiente, total));
+    }
+
     // --- Operaciones de inventario ---
 
     @PostMapping("/entrada")
@@ -289,6 +437,84 @@ public class KardexController {
         }
     }
 
+    @PostMapping("/lote")
+    public ResponseEntity<?> registrarLote(@Valid @RequestBody LoteDto dto) {
+        Usuario actor = currentUsuario();
+        if (actor == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        InventarioService.ModoLote modo;
+        try {
+            modo = dto.modo() == null || dto.modo().isBlank()
+                    ? InventarioService.ModoLote.TODO_O_NADA
+                    : InventarioService.ModoLote.valueOf(dto.modo().trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "modo debe ser TODO_O_NADA o MEJOR_ESFUERZO"));
+        }
+
+        List<InventarioService.LineaLote> lineas = new ArrayList<>(dto.movimientos().size());
+        for (LoteLineaDto linea : dto.movimientos()) {
+            lineas.add(toLineaLote(linea));
+        }
+
+        boolean superAdmin = accessControlService.isSuperAdmin(actor);
+        try {
+            InventarioService.ResultadoLote resultado = inventarioService.registrarLote(lineas, modo, actor,
+                    empresa -> superAdmin || permissionService.hasPermissionForEmpresa(actor, empresa, "KARDEX", 2));
+
+            List<LoteLineaResultadoDto> detalle = new ArrayList<>(resultado.lineas().size());
+            int aplicados = 0;
+            int fallidos = 0;
+            for (InventarioService.ResultadoLinea linea : resultado.lineas()) {
+                String estado;
+                if (linea.error() != null) {
+                    estado = "ERROR";
+                    fallidos++;
+                } else if (linea.movimiento() != null) {
+                    estado = "APLICADO";
+                    aplicados++;
+                } else {
+                    estado = "REVERTIDO";
+                }
+                detalle.add(new LoteLineaResultadoDto(
+                        linea.indice(),
+                        estado,
+                        linea.movimiento() != null ? toDto(linea.movimiento()) : null,
+                        linea.error()
+                ));
+            }
+            LoteResultadoDto respuesta = new LoteResultadoDto(modo.name(), resultado.confirmado(), aplicados, fallidos, detalle);
+            if (!resultado.confirmado()) {
+                return ResponseEntity.badRequest().body(respuesta);
+            }
+            return ResponseEntity.status(HttpStatus.CREATED).body(respuesta);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private InventarioService.LineaLote toLineaLote(LoteLineaDto dto) {
+        if (dto == null) {
+            return null;
+        }
+        TipoMovimiento tipo = null;
+        if (dto.tipo() != null && !dto.tipo().isBlank()) {
+            try {
+                tipo = TipoMovimiento.valueOf(dto.tipo().trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                tipo = null;
+            }
+        }
+        Integer cantidad = tipo == TipoMovimiento.AJUSTE && dto.nuevaCantidad() != null
+                ? dto.nuevaCantidad()
+                : dto.cantidad();
+        return new InventarioService.LineaLote(
+                tipo, dto.productoId(), dto.repisaOrigenId(), dto.repisaDestinoId(),
+                cantidad, dto.lote(), dto.observacion()
+        );
+    }
+
     // --- Mapping ---
 
     private MovimientoDto toDto(MovimientoInventario mov) {
@@ -310,7 +536,10 @@ public class KardexController {
                 mov.getObservacion(),
                 usuario != null ? usuario.getId() : null,
                 usuario != null ? usuario.getNombre() : null,
-                mov.getFecha()
+                mov.getFecha(),
+                mov.getSaldoOrigen(),
+                mov.getSaldoDestino(),
+                mov.getSaldoEmpresa()
         );
     }
 
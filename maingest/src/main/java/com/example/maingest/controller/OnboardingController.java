@@ -12,6 +12,7 @@ import com.example.maingest.repository.EmpresaRepository;
 import com.example.maingest.repository.EmpresaSuscripcionRepository;
 import com.example.maingest.repository.EmpresaUsuarioRepository;
 import com.example.maingest.service.OnboardingDefaultsService;
+import com.example.maingest.service.PermissionCacheService;
 import com.example.maingest.service.AuditoriaService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -35,19 +36,22 @@ public class OnboardingController {
     private final EmpresaSuscripcionRepository empresaSuscripcionRepository;
     private final OnboardingDefaultsService onboardingDefaultsService;
     private final AuditoriaService auditoriaService;
+    private final PermissionCacheService permissionCacheService;
 
     public OnboardingController(
             EmpresaRepository empresaRepository,
             EmpresaUsuarioRepository empresaUsuarioRepository,
             EmpresaSuscripcionRepository empresaSuscripcionRepository,
             OnboardingDefaultsService onboardingDefaultsService,
-            AuditoriaService auditoriaService
+            AuditoriaService auditoriaService,
+            PermissionCacheService permissionCacheService
     ) {
         this.empresaRepository = empresaRepository;
         this.empresaUsuarioRepository = empresaUsuarioRepository;
         this.empresaSuscripcionRepository = empresaSuscripcionRepository;
         this.onboardingDefaultsService = onboardingDefaultsService;
         this.auditoriaService = auditoriaService;
+        this.permissionCacheService = permissionCacheService;
     }
 
     public record CreateEmpresaRequest(String nombre) {
@@ -86,6 +90,7 @@ public class OnboardingController {
         eu.setUsuario(actor);
         eu.setRol(rolOwner);
         empresaUsuarioRepository.save(eu);
+        permissionCacheService.invalidarUsuario(actor.getId());
 
         EmpresaSuscripcion sus = new EmpresaSuscripcion();
         sus.setEmpresa(guardada);
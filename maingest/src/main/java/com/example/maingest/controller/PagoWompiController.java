@@ -6,8 +6,10 @@ import com.example.maingest.dto.PagoWompiDtos.WompiCheckoutCreateResponse;
 import com.example.maingest.dto.PagoWompiDtos.WompiConfirmRequest;
 import com.example.maingest.dto.PagoWompiDtos.WompiConfirmResponse;
 import com.example.maingest.service.WompiService;
+import com.example.maingest.service.WompiWebhookInbox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -21,9 +23,11 @@ public class PagoWompiController {
     private static final Logger log = LoggerFactory.getLogger(PagoWompiController.class);
 
     private final WompiService wompiService;
+    private final WompiWebhookInbox wompiWebhookInbox;
 
-    public PagoWompiController(WompiService wompiService) {
+    public PagoWompiController(WompiService wompiService, WompiWebhookInbox wompiWebhookInbox) {
         this.wompiService = wompiService;
+        this.wompiWebhookInbox = wompiWebhookInbox;
     }
 
     private Usuario currentUsuario() {
@@ -109,7 +113,11 @@ public class PagoWompiController {
             @RequestHeader(value = "X-Event-Checksum", required = false) String checksum
     ) {
         try {
-            wompiService.procesarWebhook(body, checksum);
+            wompiWebhookInbox.recibir(body, checksum);
+        } catch (DataAccessException e) {
+            // Sin 2xx Wompi reenvía el evento más tarde
+            log.warn("Webhook Wompi no se pudo guardar en la bandeja: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception ignored) {
         }
         return ResponseEntity.ok().build();
@@ -6,6 +6,7 @@ import com.example.maingest.dto.PermisoDtos.PermisoDto;
 import com.example.maingest.repository.PermisoRepository;
 import com.example.maingest.domain.Usuario;
 import com.example.maingest.service.AccessControlService;
+import com.example.maingest.service.PermissionCacheService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -21,10 +22,16 @@ public class PermisoController {
 
     private final PermisoRepository permisoRepository;
     private final AccessControlService accessControlService;
+    private final PermissionCacheService permissionCacheService;
 
-    public PermisoController(PermisoRepository permisoRepository, AccessControlService accessControlService) {
+    public PermisoController(
+            PermisoRepository permisoRepository,
+            AccessControlService accessControlService,
+            PermissionCacheService permissionCacheService
+    ) {
         this.permisoRepository = permisoRepository;
         this.accessControlService = accessControlService;
+        this.permissionCacheService = permissionCacheService;
     }
 
     private Usuario currentUsuario() {
@@ -72,6 +79,7 @@ public class PermisoController {
         permiso.setArea(dto.area());
         permiso.setCodigo(dto.codigo());
         Permiso guardado = permisoRepository.save(permiso);
+        permissionCacheService.invalidarCatalogo();
         return ResponseEntity.created(URI.create("/api/permisos/" + guardado.getId())).body(toDto(guardado));
     }
 
@@ -85,6 +93,7 @@ public class PermisoController {
             return ResponseEntity.notFound().build();
         }
         permisoRepository.deleteById(id);
+        permissionCacheService.invalidarCatalogo();
         return ResponseEntity.noContent().build();
     }
 
@@ -7,6 +7,8 @@ import com.example.maingest.dto.PlanSuscripcionDtos.PlanSuscripcionDto;
 import com.example.maingest.repository.EmpresaSuscripcionRepository;
 import com.example.maingest.repository.PlanSuscripcionRepository;
 import com.example.maingest.service.AccessControlService;
+import com.example.maingest.service.UsoEmpresaService;
+import com.example.maingest.service.VersionRespuestaService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -23,15 +25,21 @@ public class PlanSuscripcionController {
     private final PlanSuscripcionRepository planRepository;
     private final EmpresaSuscripcionRepository empresaSuscripcionRepository;
     private final AccessControlService accessControlService;
+    private final UsoEmpresaService usoEmpresaService;
+    private final VersionRespuestaService versionRespuestaService;
 
     public PlanSuscripcionController(
             PlanSuscripcionRepository planRepository,
             EmpresaSuscripcionRepository empresaSuscripcionRepository,
-            AccessControlService accessControlService
+            AccessControlService accessControlService,
+            UsoEmpresaService usoEmpresaService,
+            VersionRespuestaService versionRespuestaService
     ) {
         this.planRepository = planRepository;
         this.empresaSuscripcionRepository = empresaSuscripcionRepository;
         this.accessControlService = accessControlService;
+        this.usoEmpresaService = usoEmpresaService;
+        this.versionRespuestaService = versionRespuestaService;
     }
 
     private Usuario currentUsuario() {
@@ -102,6 +110,7 @@ public class PlanSuscripcionController {
         plan.setLimiteUsuarios(dto.limiteUsuarios());
         plan.setActivo(true);
         PlanSuscripcion guardado = planRepository.save(plan);
+        versionRespuestaService.incrementar(VersionRespuestaService.Recurso.PLANES, 0L);
         return ResponseEntity.created(URI.create("/api/planes-suscripcion/" + guardado.getId()))
                 .body(toDto(guardado));
     }
@@ -135,6 +144,8 @@ public class PlanSuscripcionController {
                     plan.setLimiteItems(dto.limiteItems());
                     plan.setLimiteUsuarios(dto.limiteUsuarios());
                     PlanSuscripcion guardado = planRepository.save(plan);
+                    usoEmpresaService.invalidarTodo();
+                    versionRespuestaService.incrementar(VersionRespuestaService.Recurso.PLANES, 0L);
                     return ResponseEntity.ok(toDto(guardado));
                 })
                 .orElse(ResponseEntity.notFound().build());
@@ -155,9 +166,11 @@ public class PlanSuscripcionController {
                     if (enUso > 0) {
                         plan.setActivo(false);
                         planRepository.save(plan);
+                        versionRespuestaService.incrementar(VersionRespuestaService.Recurso.PLANES, 0L);
                         return ResponseEntity.ok().<Void>build();
                     }
                     planRepository.delete(plan);
+                    versionRespuestaService.incrementar(VersionRespuestaService.Recurso.PLANES, 0L);
                     return ResponseEntity.noContent().<Void>build();
                 })
                 .orElse(ResponseEntity.notFound().build());
@@ -11,40 +11,57 @@ import com.example.maingest.repository.EmpresaRepository;
 import com.example.maingest.repository.ProductoRepository;
 import com.example.maingest.service.AccessControlService;
 import com.example.maingest.service.AuditoriaService;
+import com.example.maingest.service.CatalogoBusquedaService;
 import com.example.maingest.service.PermissionService;
 import com.example.maingest.service.SuscripcionValidationService;
+import com.example.maingest.service.UsoEmpresaService;
+import com.example.maingest.service.VersionRespuestaService;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/productos")
 public class ProductoController {
 
+    private static final int MAX_RESULTADOS_BUSQUEDA = 1000;
+
     private final ProductoRepository productoRepository;
     private final EmpresaRepository empresaRepository;
     private final AccessControlService accessControlService;
     private final PermissionService permissionService;
     private final AuditoriaService auditoriaService;
     private final SuscripcionValidationService suscripcionValidationService;
+    private final UsoEmpresaService usoEmpresaService;
+    private final CatalogoBusquedaService catalogoBusquedaService;
+    private final VersionRespuestaService versionRespuestaService;
 
     public ProductoController(
             ProductoRepository productoRepository,
@@ -52,7 +69,10 @@ public class ProductoController {
             AccessControlService accessControlService,
             PermissionService permissionService,
             AuditoriaService auditoriaService,
-            SuscripcionValidationService suscripcionValidationService
+            SuscripcionValidationService suscripcionValidationService,
+            UsoEmpresaService usoEmpresaService,
+            CatalogoBusquedaService catalogoBusquedaService,
+            VersionRespuestaService versionRespuestaService
     ) {
         this.productoRepository = productoRepository;
         this.empresaRepository = empresaRepository;
@@ -60,6 +80,9 @@ public class ProductoController {
         this.permissionService = permissionService;
         this.auditoriaService = auditoriaService;
         this.suscripcionValidationService = suscripcionValidationService;
+        this.usoEmpresaService = usoEmpresaService;
+        this.catalogoBusquedaService = catalogoBusquedaService;
+        this.versionRespuestaService = versionRespuestaService;
     }
 
     public record ProductoPaginadoDto(
@@ -71,17 +94,27 @@ public class ProductoController {
     ) {
     }
 
+    /**
+     * El ETag depende de la versión del catálogo de la empresa, el usuario y los parámetros;
+     * con {@code If-None-Match} vigente responde 304 sin consultar la base.
+     */
     @GetMapping
     public ResponseEntity<ProductoPaginadoDto> listar(
             @RequestParam("empresaId") Long empresaId,
             @RequestParam(name = "query", required = false) String query,
             @RequestParam(name = "page", defaultValue = "0") int page,
-            @RequestParam(name = "size", defaultValue = "50") int size
+            @RequestParam(name = "size", defaultValue = "50") int size,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
     ) {
         Usuario actor = currentUsuario();
         if (actor == null) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
+        String etag = versionRespuestaService.etag(VersionRespuestaService.Recurso.CATALOGO, empresaId, actor.getId(),
+                (query != null ? query.trim() : "") + '|' + page + '|' + size);
+        if (versionRespuestaService.coincide(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).build();
+        }
 
         Empresa empresa = empresaRepository.findById(empresaId).orElse(null);
         if (empresa == null) {
@@ -98,6 +131,13 @@ public class ProductoController {
 
         Page<Producto> productos;
         if (query != null && !query.isBlank()) {
+            int limite = Math.min((Math.max(page, 0) + 1) * safeSize, MAX_RESULTADOS_BUSQUEDA);
+            Optional<CatalogoBusquedaService.Resultado> resultado =
+                    catalogoBusquedaService.buscar(empresaId, query.trim(), limite);
+            if (resultado.isPresent()) {
+                return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate())
+                        .body(paginaRanqueada(resultado.get(), Math.max(page, 0), safeSize));
+            }
             productos = productoRepository.buscar(empresaId, query.trim(), pageable);
         } else {
             productos = productoRepository.findByEmpresa(empresa, pageable);
@@ -110,7 +150,49 @@ public class ProductoController {
                 content, productos.getNumber(), productos.getSize(),
                 productos.getTotalElements(), productos.getTotalPages()
         );
-        return ResponseEntity.ok(respuesta);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).body(respuesta);
+    }
+
+    /**
+     * Sugerencias por prefijo para el buscador del catálogo, servidas desde el índice en memoria.
+     * Con el índice frío responde con la búsqueda en base de datos.
+     */
+    @GetMapping("/autocompletar")
+    public ResponseEntity<List<CatalogoBusquedaService.Sugerencia>> autocompletar(
+            @RequestParam("empresaId") Long empresaId,
+            @RequestParam("q") String q,
+            @RequestParam(name = "limite", defaultValue = "10") int limite
+    ) {
+        Usuario actor = currentUsuario();
+        if (actor == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        Empresa empresa = empresaRepository.findById(empresaId).orElse(null);
+        if (empresa == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        if (!accessControlService.isSuperAdmin(actor)
+                && !permissionService.hasPermissionForEmpresa(actor, empresa, "PRODUCTO", 1)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        if (q == null || q.isBlank()) {
+            return ResponseEntity.ok(List.of());
+        }
+        int safeLimite = Math.min(Math.max(limite, 1), 50);
+        Optional<CatalogoBusquedaService.Resultado> resultado =
+                catalogoBusquedaService.buscar(empresaId, q.trim(), safeLimite);
+        if (resultado.isPresent()) {
+            return ResponseEntity.ok(resultado.get().sugerencias());
+        }
+        List<CatalogoBusquedaService.Sugerencia> sugerencias = productoRepository
+                .buscar(empresaId, q.trim(), PageRequest.of(0, safeLimite, Sort.by(Sort.Direction.ASC, "nombre")))
+                .stream()
+                .map(p -> new CatalogoBusquedaService.Sugerencia(p.getId(), p.getSku(), p.getNombre()))
+                .toList();
+        return ResponseEntity.ok(sugerencias);
     }
 
     @GetMapping("/{id}")
@@ -183,6 +265,11 @@ public class ProductoController {
         producto.setUnidadMedida(unidadMedida);
 
         Producto guardado = productoRepository.save(producto);
+        usoEmpresaService.registrarAlta(empresa.getId(), UsoEmpresaService.Recurso.PRODUCTOS);
+        catalogoBusquedaService.indexar(guardado);
+        if (guardado.getEmpresa() != null) {
+            versionRespuestaService.incrementar(VersionRespuestaService.Recurso.CATALOGO, guardado.getEmpresa().getId());
+        }
 
         auditoriaService.registrar(actor, "CREAR", "PRODUCTO", guardado.getId(),
                 "Producto creado: " + guardado.getSku() + " - " + guardado.getNombre(), null);
@@ -229,6 +316,10 @@ public class ProductoController {
         }
 
         Producto guardado = productoRepository.save(producto);
+        catalogoBusquedaService.indexar(guardado);
+        if (guardado.getEmpresa() != null) {
+            versionRespuestaService.incrementar(VersionRespuestaService.Recurso.CATALOGO, guardado.getEmpresa().getId());
+        }
 
         auditoriaService.registrar(actor, "EDITAR", "PRODUCTO", guardado.getId(),
                 "Producto actualizado: " + guardado.getSku(), null);
@@ -237,6 +328,7 @@ public class ProductoController {
     }
 
     @DeleteMapping("/{id}")
+    @Transactional
     public ResponseEntity<Void> eliminar(@PathVariable("id") Long id) {
         Usuario actor = currentUsuario();
         if (actor == null) {
@@ -255,7 +347,16 @@ public class ProductoController {
         }
 
         String info = producto.getSku() + " - " + producto.getNombre();
+        // El contador y las fotos de stock no tienen FK al producto: se borran en la misma transacción
+        productoRepository.deleteSaldo(id);
+        productoRepository.deleteSaldosDiarios(id);
         productoRepository.delete(producto);
+        productoRepository.flush();
+        if (empresa != null) {
+            usoEmpresaService.invalidarUso(empresa.getId());
+            catalogoBusquedaService.eliminar(empresa.getId(), id);
+            versionRespuestaService.incrementar(VersionRespuestaService.Recurso.CATALOGO, empresa.getId());
+        }
 
         auditoriaService.registrar(actor, "ELIMINAR", "PRODUCTO", id,
                 "Producto eliminado: " + info, null);
@@ -263,6 +364,24 @@ public class ProductoController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Página de un resultado ya ordenado por relevancia: carga solo los productos de la página.
+     */
+    private ProductoPaginadoDto paginaRanqueada(CatalogoBusquedaService.Resultado resultado, int page, int size) {
+        List<Long> ids = resultado.ids();
+        int desde = Math.min(page * size, ids.size());
+        List<Long> idsPagina = ids.subList(desde, Math.min(desde + size, ids.size()));
+        Map<Long, Producto> porId = productoRepository.findAllById(idsPagina).stream()
+                .collect(Collectors.toMap(Producto::getId, Function.identity()));
+        List<ProductoResponseDto> content = idsPagina.stream()
+                .map(porId::get)
+                .filter(Objects::nonNull)
+                .map(this::toResponseDto)
+                .toList();
+        int total = Math.min(resultado.total(), MAX_RESULTADOS_BUSQUEDA);
+        return new ProductoPaginadoDto(content, page, size, total, (total + size - 1) / size);
+    }
+
     private String generarSku(Empresa empresa) {
         int maxNum = 0;
         try {
@@ -1,20 +1,18 @@
 package com.example.maingest.controller;
 
-import com.example.maingest.domain.Almacen;
-import com.example.maingest.domain.AlmacenUsuario;
-import com.example.maingest.domain.Armario;
 import com.example.maingest.domain.Empresa;
 import com.example.maingest.domain.EmpresaUsuario;
-import com.example.maingest.domain.Item;
-import com.example.maingest.domain.Repisa;
 import com.example.maingest.domain.Reporte;
 import com.example.maingest.domain.Usuario;
-import com.example.maingest.repository.AlmacenUsuarioRepository;
 import com.example.maingest.repository.EmpresaUsuarioRepository;
-import com.example.maingest.repository.ItemRepository;
 import com.example.maingest.repository.ReporteRepository;
 import com.example.maingest.service.AccessControlService;
+import com.example.maingest.service.ReporteInventarioService;
+import com.example.maingest.service.ReporteInventarioService.InventarioRowDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -22,56 +20,40 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.HashSet;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Set;
 
 @RestController
 @RequestMapping("/api/reportes")
 public class ReporteController {
 
-    private final ItemRepository itemRepository;
     private final EmpresaUsuarioRepository empresaUsuarioRepository;
-    private final AlmacenUsuarioRepository almacenUsuarioRepository;
     private final ReporteRepository reporteRepository;
     private final AccessControlService accessControlService;
+    private final ReporteInventarioService reporteInventarioService;
+    private final ObjectMapper objectMapper;
 
     public ReporteController(
-            ItemRepository itemRepository,
             EmpresaUsuarioRepository empresaUsuarioRepository,
-            AlmacenUsuarioRepository almacenUsuarioRepository,
             ReporteRepository reporteRepository,
-            AccessControlService accessControlService
+            AccessControlService accessControlService,
+            ReporteInventarioService reporteInventarioService,
+            ObjectMapper objectMapper
     ) {
-        this.itemRepository = itemRepository;
         this.empresaUsuarioRepository = empresaUsuarioRepository;
-        this.almacenUsuarioRepository = almacenUsuarioRepository;
         this.reporteRepository = reporteRepository;
         this.accessControlService = accessControlService;
-    }
-
-    public record InventarioRowDto(
-            Long empresaId,
-            String empresaNombre,
-            Long almacenId,
-            String almacenNombre,
-            Long armarioId,
-            String armarioNombre,
-            Long repisaId,
-            Integer repisaNivel,
-            Integer repisaCapacidad,
-            Long itemId,
-            String itemNombre,
-            String itemEstado,
-            Integer itemTamanio,
-            Long productoId,
-            String productoSku,
-            Integer cantidad,
-            String estadoStock,
-            String lote
-    ) {
+        this.reporteInventarioService = reporteInventarioService;
+        this.objectMapper = objectMapper;
     }
 
     public record UsuarioEmpresaRowDto(
@@ -105,83 +87,83 @@ public class ReporteController {
     ) {
     }
 
+    public record InventarioPaginaDto(
+            List<InventarioRowDto> content,
+            Long nextAfter,
+            int size
+    ) {
+    }
+
     @GetMapping("/inventario")
-    public ResponseEntity<List<InventarioRowDto>> reporteInventario() {
+    public ResponseEntity<StreamingResponseBody> reporteInventario() {
         Usuario actor = currentUsuario();
         if (actor == null) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
-        boolean isSuperAdmin = accessControlService.isSuperAdmin(actor);
-        Set<Long> empresasPermitidas = new HashSet<>();
-        Set<Long> almacenesPermitidos = new HashSet<>();
-        if (!isSuperAdmin) {
-            List<EmpresaUsuario> empresas = empresaUsuarioRepository.findByUsuario(actor);
-            for (EmpresaUsuario relacion : empresas) {
-                Empresa empresa = relacion.getEmpresa();
-                if (empresa != null && empresa.getId() != null) {
-                    empresasPermitidas.add(empresa.getId());
-                }
-            }
-            List<AlmacenUsuario> almacenes = almacenUsuarioRepository.findByUsuario(actor);
-            for (AlmacenUsuario relacion : almacenes) {
-                Almacen almacen = relacion.getAlmacen();
-                if (almacen != null && almacen.getId() != null) {
-                    almacenesPermitidos.add(almacen.getId());
+        ReporteInventarioService.Alcance alcance = reporteInventarioService.resolverAlcance(actor);
+        // Mismo JSON (arreglo) que antes, pero escrito fila a fila desde el cursor.
+        // Corre como request async: el límite es app.reportes.stream-timeout-ms (WebConfig)
+        StreamingResponseBody cuerpo = salida -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8));
+            boolean[] primera = {true};
+            writer.write('[');
+            reporteInventarioService.recorrer(alcance, fila -> {
+                try {
+                    if (!primera[0]) {
+                        writer.write(',');
+                    }
+                    primera[0] = false;
+                    writer.write(objectMapper.writeValueAsString(ReporteInventarioService.toRowDto(fila)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-            }
+            });
+            writer.write(']');
+            writer.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(cuerpo);
+    }
+
+    @GetMapping("/inventario/pagina")
+    public ResponseEntity<InventarioPaginaDto> reporteInventarioPagina(
+            @RequestParam(name = "after", required = false) Long after,
+            @RequestParam(name = "size", defaultValue = "100") int size
+    ) {
+        Usuario actor = currentUsuario();
+        if (actor == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
-        List<Item> items = itemRepository.findAll();
-        List<InventarioRowDto> filas = items.stream()
-                .filter(item -> {
-                    if (isSuperAdmin) {
-                        return true;
-                    }
-                    Repisa repisa = item.getRepisa();
-                    if (repisa == null) {
-                        return false;
-                    }
-                    Armario armario = repisa.getArmario();
-                    if (armario == null) {
-                        return false;
-                    }
-                    Almacen almacen = armario.getAlmacen();
-                    if (almacen == null || almacen.getId() == null) {
-                        return false;
-                    }
-                    if (almacenesPermitidos.contains(almacen.getId())) {
-                        return true;
-                    }
-                    Empresa empresa = almacen.getEmpresa();
-                    return empresa != null && empresa.getId() != null && empresasPermitidas.contains(empresa.getId());
-                })
-                .map(item -> {
-                    Repisa repisa = item.getRepisa();
-                    Armario armario = repisa.getArmario();
-                    Almacen almacen = armario.getAlmacen();
-                    Empresa empresa = almacen.getEmpresa();
-                    return new InventarioRowDto(
-                            empresa.getId(),
-                            empresa.getNombre(),
-                            almacen.getId(),
-                            almacen.getNombre(),
-                            armario.getId(),
-                            armario.getNombre(),
-                            repisa.getId(),
-                            repisa.getNivel(),
-                            repisa.getCapacidad(),
-                            item.getId(),
-                            item.getProducto() != null ? item.getProducto().getNombre() : item.getNombre(),
-                            item.getEstadoStock() != null ? item.getEstadoStock().name() : item.getEstado(),
-                            item.getTamanio(),
-                            item.getProducto() != null ? item.getProducto().getId() : null,
-                            item.getProducto() != null ? item.getProducto().getSku() : null,
-                            item.getCantidad(),
-                            item.getEstadoStock() != null ? item.getEstadoStock().name() : null,
-                            item.getLote()
-                    );
-                })
+        ReporteInventarioService.Alcance alcance = reporteInventarioService.resolverAlcance(actor);
+        int limite = Math.max(1, Math.min(size, ReporteInventarioService.MAX_PAGE_SIZE));
+        List<InventarioRowDto> filas = reporteInventarioService.pagina(alcance, after, limite).stream()
+                .map(ReporteInventarioService::toRowDto)
                 .toList();
-        return ResponseEntity.ok(filas);
+        Long nextAfter = filas.size() == limite ? filas.get(filas.size() - 1).itemId() : null;
+        return ResponseEntity.ok(new InventarioPaginaDto(filas, nextAfter, limite));
+    }
+
+    @GetMapping("/inventario/export")
+    public ResponseEntity<StreamingResponseBody> exportarInventario(
+            @RequestParam(name = "formato", defaultValue = "ndjson") String formato
+    ) {
+        Usuario actor = currentUsuario();
+        if (actor == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        boolean csv = "csv".equalsIgnoreCase(formato);
+        if (!csv && !"ndjson".equalsIgnoreCase(formato)) {
+            return ResponseEntity.badRequest().build();
+        }
+        ReporteInventarioService.Alcance alcance = reporteInventarioService.resolverAlcance(actor);
+        StreamingResponseBody cuerpo = salida -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8));
+            reporteInventarioService.exportar(alcance, csv, writer, null);
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8) : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"inventario." + (csv ? "csv" : "ndjson") + "\"")
+                .body(cuerpo);
     }
 
     @GetMapping("/usuarios")
@@ -190,7 +172,7 @@ public class ReporteController {
         if (actor == null || !accessControlService.isSuperAdmin(actor)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
-        List<EmpresaUsuario> relaciones = empresaUsuarioRepository.findAll();
+        List<EmpresaUsuario> relaciones = empresaUsuarioRepository.findAllConEmpresaUsuarioYRol();
         List<UsuarioEmpresaRowDto> filas = relaciones.stream()
                 .map(rel -> {
                     Empresa empresa = rel.getEmpresa();
@@ -195,6 +195,7 @@ public class RolController {
             rol.setEmpresa(null);
         }
         Rol guardado = rolRepository.save(rol);
+        permissionService.invalidarCache();
         auditoriaService.registrar(
                 actor,
                 "ROL_EDITAR",
@@ -234,6 +235,7 @@ public class RolController {
             rolPermisoRepository.flush();
         }
         rolRepository.deleteById(id);
+        permissionService.invalidarCache();
         auditoriaService.registrar(
                 actor,
                 "ROL_ELIMINAR",
@@ -396,6 +398,7 @@ public class RolController {
             rolPermisoRepository.flush();
         }
         rolRepository.deleteById(rol.getId());
+        permissionService.invalidarCache();
         auditoriaService.registrar(
                 actor,
                 "ROL_ELIMINAR",
@@ -432,6 +435,7 @@ public class RolController {
         rolPermiso.setRol(rol);
         rolPermiso.setPermiso(permiso);
         rolPermisoRepository.save(rolPermiso);
+        permissionService.invalidarCache();
         auditoriaService.registrar(
                 actor,
                 "ROL_ASIGNAR_PERMISO",
@@ -461,6 +465,7 @@ public class RolController {
         Rol rol = rolPermiso.getRol();
         Permiso permiso = rolPermiso.getPermiso();
         rolPermisoRepository.deleteById(rolPermisoId);
+        permissionService.invalidarCache();
         Long rolId = rol != null ? rol.getId() : id;
         auditoriaService.registrar(
                 actor,
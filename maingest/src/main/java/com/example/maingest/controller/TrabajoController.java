@@ -0,0 +1,217 @@
+package com.example.maingest.controller;
+
+import com.example.maingest.domain.Trabajo;
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.dto.TrabajoDtos.TrabajoCreateRequest;
+import com.example.maingest.dto.TrabajoDtos.TrabajoDto;
+import com.example.maingest.service.AccessControlService;
+import com.example.maingest.service.TrabajoService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Trabajos en segundo plano: se crean con 202 y se consultan por id hasta que terminan. Cada
+ * usuario ve los suyos; un superadmin ve todos.
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class TrabajoController {
+
+    private final TrabajoService trabajoService;
+    private final AccessControlService accessControlService;
+    private final ObjectMapper objectMapper;
+
+    public TrabajoController(
+            TrabajoService trabajoService,
+            AccessControlService accessControlService,
+            ObjectMapper objectMapper
+    ) {
+        this.trabajoService = trabajoService;
+        this.accessControlService = accessControlService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> crear(@RequestBody TrabajoCreateRequest request) {
+        Usuario actor = currentUsuario();
+        if (actor == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (request == null || request.tipo() == null || request.tipo().isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "tipo es obligatorio"));
+        }
+        Trabajo trabajo;
+        try {
+            trabajo = trabajoService.encolar(actor, request.tipo(),
+                    request.parametros() != null ? objectMapper.valueToTree(request.parametros()) : null);
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + trabajo.getId()))
+                .body(toDto(trabajo));
+    }
+
+    @GetMapping
+    public ResponseEntity<List<TrabajoDto>> listar() {
+        Usuario actor = currentUsuario();
+        if (actor == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        boolean todos = accessControlService.isSuperAdmin(actor);
+        return ResponseEntity.ok(trabajoService.recientes(actor, todos).stream().map(this::toDto).toList());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<TrabajoDto> obtener(@PathVariable("id") Long id) {
+        Usuario actor = currentUsuario();
+        if (actor == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Optional<Trabajo> trabajoOpt = trabajoService.buscar(id);
+        if (trabajoOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!puedeVer(actor, trabajoOpt.get())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(toDto(trabajoOpt.get()));
+    }
+
+    @GetMapping("/{id}/resultado")
+    public ResponseEntity<?> descargar(@PathVariable("id") Long id) {
+        Usuario actor = currentUsuario();
+        if (actor == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Optional<Trabajo> trabajoOpt = trabajoService.buscar(id);
+        if (trabajoOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Trabajo trabajo = trabajoOpt.get();
+        if (!puedeVer(actor, trabajo)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!TrabajoService.COMPLETADO.equals(trabajo.getEstado())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "El trabajo no ha terminado", "estado", trabajo.getEstado()));
+        }
+        Optional<Path> archivo = trabajoService.archivo(trabajo);
+        if (archivo.isEmpty()) {
+            // Sin archivo, ya limpiado, o generado en otro nodo
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Resultado no disponible en este nodo", "nodo", trabajo.getNodo()));
+        }
+        Resource recurso = new FileSystemResource(archivo.get());
+        MediaType tipo = trabajo.getArchivoTipo() != null
+                ? MediaType.parseMediaType(trabajo.getArchivoTipo())
+                : MediaType.APPLICATION_OCTET_STREAM;
+        return ResponseEntity.ok()
+                .contentType(tipo)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(trabajo.getArchivoNombre(), StandardCharsets.UTF_8)
+                        .build()
+                        .toString())
+                .body(recurso);
+    }
+
+    @PostMapping("/{id}/cancelar")
+    public ResponseEntity<?> cancelar(@PathVariable("id") Long id) {
+        Usuario actor = currentUsuario();
+        if (actor == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        Optional<Trabajo> trabajoOpt = trabajoService.buscar(id);
+        if (trabajoOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Trabajo trabajo = trabajoOpt.get();
+        if (!puedeVer(actor, trabajo)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!trabajoService.cancelar(trabajo)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "El trabajo ya terminó", "estado", trabajo.getEstado()));
+        }
+        return ResponseEntity.accepted().build();
+    }
+
+    private boolean puedeVer(Usuario actor, Trabajo trabajo) {
+        return Objects.equals(trabajo.getUsuarioId(), actor.getId()) || accessControlService.isSuperAdmin(actor);
+    }
+
+    private TrabajoDto toDto(Trabajo trabajo) {
+        String descargaUrl = TrabajoService.COMPLETADO.equals(trabajo.getEstado()) && trabajo.getArchivoRuta() != null
+                ? "/api/jobs/" + trabajo.getId() + "/resultado"
+                : null;
+        return new TrabajoDto(
+                trabajo.getId(),
+                trabajo.getTipo(),
+                trabajo.getEstado(),
+                trabajo.getProgreso(),
+                trabajo.getMensaje(),
+                trabajo.getError(),
+                leerJson(trabajo.getParametrosJson()),
+                leerJson(trabajo.getResultadoJson()),
+                trabajo.getArchivoNombre(),
+                trabajo.getArchivoBytes(),
+                descargaUrl,
+                trabajo.getCreadoEn(),
+                trabajo.getIniciadoEn(),
+                trabajo.getFinalizadoEn()
+        );
+    }
+
+    // Como Map/List: el body lo escribe el conversor HTTP de Spring, que no conoce el JsonNode de ObjectMapper
+    private Object leerJson(String json) {
+        if (json == null || json.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, Object.class);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private Usuario currentUsuario() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            return null;
+        }
+        Object principal = authentication.getPrincipal();
+        if (principal instanceof Usuario usuario) {
+            return usuario;
+        }
+        return null;
+    }
+}
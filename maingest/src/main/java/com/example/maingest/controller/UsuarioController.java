@@ -15,10 +15,12 @@ import com.example.maingest.repository.EmpresaUsuarioRepository;
 import com.example.maingest.repository.RolRepository;
 import com.example.maingest.repository.UsuarioRepository;
 import com.example.maingest.repository.UsuarioRolRepository;
+import com.example.maingest.security.UsuarioSnapshotCache;
 import com.example.maingest.service.AccessControlService;
 import com.example.maingest.service.AuditoriaService;
 import com.example.maingest.service.PermissionService;
 import com.example.maingest.service.SuscripcionValidationService;
+import com.example.maingest.service.UsoEmpresaService;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -28,7 +30,10 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -37,6 +42,8 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/usuarios")
 public class UsuarioController {
 
+    private static final int TRAMO_IDS = 1000;
+
     private final UsuarioRepository usuarioRepository;
     private final RolRepository rolRepository;
     private final UsuarioRolRepository usuarioRolRepository;
@@ -45,8 +52,10 @@ public class UsuarioController {
     private final AccessControlService accessControlService;
     private final PermissionService permissionService;
     private final AuditoriaService auditoriaService;
+    private final UsoEmpresaService usoEmpresaService;
     private final SuscripcionValidationService suscripcionValidationService;
     private final PasswordEncoder passwordEncoder;
+    private final UsuarioSnapshotCache usuarioSnapshotCache;
 
     public UsuarioController(
             UsuarioRepository usuarioRepository,
@@ -57,8 +66,10 @@ public class UsuarioController {
             AccessControlService accessControlService,
             PermissionService permissionService,
             AuditoriaService auditoriaService,
+            UsoEmpresaService usoEmpresaService,
             SuscripcionValidationService suscripcionValidationService,
-            PasswordEncoder passwordEncoder
+            PasswordEncoder passwordEncoder,
+            UsuarioSnapshotCache usuarioSnapshotCache
     ) {
         this.usuarioRepository = usuarioRepository;
         this.rolRepository = rolRepository;
@@ -68,8 +79,10 @@ public class UsuarioController {
         this.accessControlService = accessControlService;
         this.permissionService = permissionService;
         this.auditoriaService = auditoriaService;
+        this.usoEmpresaService = usoEmpresaService;
         this.suscripcionValidationService = suscripcionValidationService;
         this.passwordEncoder = passwordEncoder;
+        this.usuarioSnapshotCache = usuarioSnapshotCache;
     }
 
     private Usuario currentUsuario() {
@@ -94,29 +107,9 @@ public class UsuarioController {
             return List.of();
         }
         if (accessControlService.isSuperAdmin(actor)) {
-            return usuarioRepository.findAll().stream()
-                    .map(this::toUsuarioDto)
-                    .collect(Collectors.toList());
-        }
-        List<EmpresaUsuario> relacionesActor = empresaUsuarioRepository.findByUsuario(actor);
-        if (relacionesActor.isEmpty()) {
-            return List.of();
-        }
-        List<Empresa> empresasActor = relacionesActor.stream()
-                .map(EmpresaUsuario::getEmpresa)
-                .filter(Objects::nonNull)
-                .distinct()
-                .toList();
-        if (empresasActor.isEmpty()) {
-            return List.of();
+            return toUsuarioDtos(usuarioRepository.findAll());
         }
-        return empresasActor.stream()
-                .flatMap(empresa -> empresaUsuarioRepository.findByEmpresa(empresa).stream())
-                .map(EmpresaUsuario::getUsuario)
-                .filter(Objects::nonNull)
-                .distinct()
-                .map(this::toUsuarioDto)
-                .collect(Collectors.toList());
+        return toUsuarioDtos(empresaUsuarioRepository.findUsuariosDeEmpresasDe(actor.getId()));
     }
 
     @GetMapping("/{id}")
@@ -186,6 +179,7 @@ public class UsuarioController {
             usuario.setEstado(actualizacion.estado());
         }
         Usuario guardado = usuarioRepository.save(usuario);
+        usuarioSnapshotCache.invalidar(guardado.getId());
         auditoriaService.registrar(
                 actor,
                 "USUARIO_EDITAR",
@@ -212,6 +206,9 @@ public class UsuarioController {
         }
         Usuario usuario = usuarioOpt.get();
         usuarioRepository.deleteById(id);
+        usuarioSnapshotCache.invalidar(id);
+        usoEmpresaService.invalidarTodo();
+        permissionService.invalidarCacheUsuario(usuario.getId());
         auditoriaService.registrar(
                 actor,
                 "USUARIO_ELIMINAR",
@@ -267,6 +264,7 @@ public class UsuarioController {
                 }
             }
             usuarioRolRepository.deleteAll(rolesActuales);
+            permissionService.invalidarCacheUsuario(usuario.getId());
             auditoriaService.registrar(
                     actor,
                     "USUARIO_QUITAR_ROLES_GLOBALES",
@@ -295,6 +293,7 @@ public class UsuarioController {
         usuarioRol.setUsuario(usuario);
         usuarioRol.setRol(rol);
         usuarioRolRepository.save(usuarioRol);
+        permissionService.invalidarCacheUsuario(usuario.getId());
         auditoriaService.registrar(
                 actor,
                 "USUARIO_ASIGNAR_ROL_GLOBAL",
@@ -336,6 +335,7 @@ public class UsuarioController {
         }
         UsuarioRol usuarioRol = usuarioRolOpt.get();
         usuarioRolRepository.deleteById(usuarioRolId);
+        permissionService.invalidarCacheUsuario(objetivo.getId());
         auditoriaService.registrar(
                 actor,
                 "USUARIO_QUITAR_ROL_GLOBAL",
@@ -376,15 +376,9 @@ public class UsuarioController {
             return null;
         }
         
-        List<String> roles = List.of();
+        List<UsuarioRol> roles = List.of();
         try {
-            roles = usuarioRolRepository.findByUsuario(usuario).stream()
-                    .map(UsuarioRol::getRol)
-                    .filter(Objects::nonNull)
-                    .map(Rol::getNombre)
-                    .filter(Objects::nonNull)
-                    .distinct()
-                    .toList();
+            roles = usuarioRolRepository.findByUsuario(usuario);
         } catch (Exception e) {
             // Log and continue with empty roles
         }
@@ -395,6 +389,42 @@ public class UsuarioController {
         } catch (Exception e) {
             // Log and continue with empty relations
         }
+        return toUsuarioDto(usuario, roles, relaciones);
+    }
+
+    /**
+     * Roles y relaciones de todo el listado en dos consultas con JOIN FETCH, por tramos para no
+     * pasar el límite de parámetros del IN; el orden de los usuarios se mantiene.
+     */
+    private List<UsuarioDto> toUsuarioDtos(List<Usuario> usuarios) {
+        Map<Long, List<UsuarioRol>> rolesPorUsuario = new HashMap<>();
+        Map<Long, List<EmpresaUsuario>> relacionesPorUsuario = new HashMap<>();
+        List<Long> ids = usuarios.stream().map(Usuario::getId).toList();
+        for (int desde = 0; desde < ids.size(); desde += TRAMO_IDS) {
+            List<Long> tramo = ids.subList(desde, Math.min(desde + TRAMO_IDS, ids.size()));
+            for (UsuarioRol ur : usuarioRolRepository.findConRolByUsuarioIdIn(tramo)) {
+                rolesPorUsuario.computeIfAbsent(ur.getId().getUsuarioId(), k -> new ArrayList<>()).add(ur);
+            }
+            for (EmpresaUsuario eu : empresaUsuarioRepository.findConEmpresaYRolByUsuarioIdIn(tramo)) {
+                relacionesPorUsuario.computeIfAbsent(eu.getId().getUsuarioId(), k -> new ArrayList<>()).add(eu);
+            }
+        }
+        return usuarios.stream()
+                .map(usuario -> toUsuarioDto(
+                        usuario,
+                        rolesPorUsuario.getOrDefault(usuario.getId(), List.of()),
+                        relacionesPorUsuario.getOrDefault(usuario.getId(), List.of())))
+                .collect(Collectors.toList());
+    }
+
+    private UsuarioDto toUsuarioDto(Usuario usuario, List<UsuarioRol> usuarioRoles, List<EmpresaUsuario> relaciones) {
+        List<String> roles = usuarioRoles.stream()
+                .map(UsuarioRol::getRol)
+                .filter(Objects::nonNull)
+                .map(Rol::getNombre)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
         
         EmpresaUsuario relacionEmpresa = relaciones.isEmpty() ? null : relaciones.get(0);
         Empresa empresaAsignada = relacionEmpresa != null ? relacionEmpresa.getEmpresa() : null;
@@ -462,6 +492,7 @@ public class UsuarioController {
             actual.setNombre(actualizacion.nombre());
         }
         Usuario guardado = usuarioRepository.save(actual);
+        usuarioSnapshotCache.invalidar(guardado.getId());
         return ResponseEntity.ok(new PerfilDto(
                 guardado.getId(),
                 guardado.getCorreo(),
@@ -547,6 +578,7 @@ public class UsuarioController {
                 String mensajeAuditoria = rol != null 
                     ? "Actualizó el rol del usuario \"" + usuario.getCorreo() + "\" en la empresa \"" + empresa.getNombre() + "\" a \"" + rol.getNombre() + "\""
                     : "Actualizó el rol del usuario \"" + usuario.getCorreo() + "\" en la empresa \"" + empresa.getNombre() + "\" a sin rol";
+                permissionService.invalidarCacheUsuario(usuario.getId());
                 auditoriaService.registrar(
                         actor,
                         "USUARIO_ACTUALIZAR_ROL_EMPRESA",
@@ -584,9 +616,11 @@ public class UsuarioController {
         empresaUsuario.setUsuario(usuario);
         empresaUsuario.setRol(rol);
         empresaUsuarioRepository.save(empresaUsuario);
+        usoEmpresaService.invalidarUso(empresa.getId());
         String mensajeAuditoriaNuevo = rol != null 
             ? "Asignó al usuario \"" + usuario.getCorreo() + "\" a la empresa \"" + empresa.getNombre() + "\" con rol \"" + rol.getNombre() + "\""
             : "Asignó al usuario \"" + usuario.getCorreo() + "\" a la empresa \"" + empresa.getNombre() + "\" sin rol";
+        permissionService.invalidarCacheUsuario(usuario.getId());
         auditoriaService.registrar(
                 actor,
                 "USUARIO_ASIGNAR_EMPRESA",
@@ -622,6 +656,7 @@ public class UsuarioController {
             return ResponseEntity.notFound().build();
         }
         accessControlService.removeEmpresaUsuarioAndAlmacenAccesos(empresa, usuario);
+        permissionService.invalidarCacheUsuario(usuario.getId());
         auditoriaService.registrar(
                 actor,
                 "USUARIO_QUITAR_EMPRESA",
@@ -665,6 +700,7 @@ public class UsuarioController {
             empresaUsuarioRepository.save(relacion);
         }
         
+        permissionService.invalidarCacheUsuario(usuario.getId());
         auditoriaService.registrar(
                 actor,
                 "USUARIO_QUITAR_ROL_EMPRESA",
@@ -6,8 +6,10 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Index;
-import jakarta.persistence.Lob;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.time.Instant;
 
@@ -15,12 +17,14 @@ import java.time.Instant;
 @Table(name = "AUDITORIA_EVENTO", indexes = {
         @Index(name = "idx_auditoria_creado", columnList = "creado_en"),
         @Index(name = "idx_auditoria_usuario", columnList = "usuario_id"),
-        @Index(name = "idx_auditoria_objeto_tipo", columnList = "objeto_tipo")
+        @Index(name = "idx_auditoria_objeto_tipo", columnList = "objeto_tipo"),
+        @Index(name = "idx_auditoria_accion", columnList = "accion")
 })
 public class AuditoriaEvento {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "auditoria_evento_seq")
+    @SequenceGenerator(name = "auditoria_evento_seq", sequenceName = "auditoria_evento_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "usuario_id")
@@ -41,8 +45,9 @@ public class AuditoriaEvento {
     @Column
     private String descripcion;
 
-    @Lob
-    @Column(name = "detalles_json")
+    // jsonb con índice GIN (SchemaMigrationRunner); la columna busqueda_tsv se genera en la base
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "detalles_json", columnDefinition = "jsonb")
     private String detallesJson;
 
     @Column(name = "creado_en", nullable = false)
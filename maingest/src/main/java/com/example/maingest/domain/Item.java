@@ -13,17 +13,20 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
 @Entity
 @Table(name = "ITEM", indexes = {
         @Index(name = "idx_item_repisa", columnList = "repisa_id"),
-        @Index(name = "idx_item_producto", columnList = "producto_id")
+        @Index(name = "idx_item_producto", columnList = "producto_id"),
+        @Index(name = "idx_item_producto_repisa", columnList = "producto_id, repisa_id")
 })
 public class Item {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_seq")
+    @SequenceGenerator(name = "item_seq", sequenceName = "item_id_seq", allocationSize = 50)
     private Long id;
 
     // --- Campos legacy (se mantienen para compatibilidad durante migración) ---
@@ -0,0 +1,85 @@
+package com.example.maingest.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Avance persistido de una migración de datos. La fila de la migración ({@code clave} = nombre)
+ * dice si terminó; las filas {@code nombre:empresa:<id>} guardan el último item procesado de
+ * cada empresa para retomar tras una caída.
+ */
+@Entity
+@Table(name = "MIGRACION_CHECKPOINT")
+public class MigracionCheckpoint {
+
+    @Id
+    @Column(length = 120)
+    private String clave;
+
+    @Column(name = "ultimo_id", nullable = false)
+    private Long ultimoId = 0L;
+
+    @Column(nullable = false)
+    private Boolean completada = false;
+
+    @Column(name = "items_migrados", nullable = false)
+    private Long itemsMigrados = 0L;
+
+    @Column(name = "productos_creados", nullable = false)
+    private Long productosCreados = 0L;
+
+    @Column(name = "actualizado_en", nullable = false)
+    private Instant actualizadoEn;
+
+    public String getClave() {
+        return clave;
+    }
+
+    public void setClave(String clave) {
+        this.clave = clave;
+    }
+
+    public Long getUltimoId() {
+        return ultimoId;
+    }
+
+    public void setUltimoId(Long ultimoId) {
+        this.ultimoId = ultimoId;
+    }
+
+    public Boolean getCompletada() {
+        return completada;
+    }
+
+    public void setCompletada(Boolean completada) {
+        this.completada = completada;
+    }
+
+    public Long getItemsMigrados() {
+        return itemsMigrados;
+    }
+
+    public void setItemsMigrados(Long itemsMigrados) {
+        this.itemsMigrados = itemsMigrados;
+    }
+
+    public Long getProductosCreados() {
+        return productosCreados;
+    }
+
+    public void setProductosCreados(Long productosCreados) {
+        this.productosCreados = productosCreados;
+    }
+
+    public Instant getActualizadoEn() {
+        return actualizadoEn;
+    }
+
+    public void setActualizadoEn(Instant actualizadoEn) {
+        this.actualizadoEn = actualizadoEn;
+    }
+}
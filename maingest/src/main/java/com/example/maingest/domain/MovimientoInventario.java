@@ -11,21 +11,26 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
 import java.time.Instant;
 
 @Entity
 @Table(name = "MOVIMIENTO_INVENTARIO", indexes = {
-        @Index(name = "idx_mov_empresa_fecha", columnList = "empresa_id, fecha"),
+        @Index(name = "idx_mov_empresa_fecha_id", columnList = "empresa_id, fecha, id"),
         @Index(name = "idx_mov_producto", columnList = "producto_id"),
         @Index(name = "idx_mov_usuario", columnList = "usuario_id"),
+        // Sin estos índices cada DELETE de repisa revisa la FK recorriendo toda la tabla
+        @Index(name = "idx_mov_repisa_origen", columnList = "repisa_origen_id"),
+        @Index(name = "idx_mov_repisa_destino", columnList = "repisa_destino_id"),
         @Index(name = "idx_mov_fecha", columnList = "fecha")
 })
 public class MovimientoInventario {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movimiento_inventario_seq")
+    @SequenceGenerator(name = "movimiento_inventario_seq", sequenceName = "movimiento_inventario_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -64,6 +69,18 @@ public class MovimientoInventario {
     @Column(nullable = false)
     private Instant fecha;
 
+    /** Cantidad del producto en la repisa origen después del movimiento; null en movimientos anteriores al saldo. */
+    @Column(name = "saldo_origen")
+    private Integer saldoOrigen;
+
+    /** Cantidad del producto en la repisa destino después del movimiento. */
+    @Column(name = "saldo_destino")
+    private Integer saldoDestino;
+
+    /** Cantidad total del producto en la empresa (todas sus repisas) después del movimiento. */
+    @Column(name = "saldo_empresa")
+    private Long saldoEmpresa;
+
     public MovimientoInventario() {
         this.fecha = Instant.now();
     }
@@ -155,4 +172,28 @@ public class MovimientoInventario {
     public void setFecha(Instant fecha) {
         this.fecha = fecha;
     }
+
+    public Integer getSaldoOrigen() {
+        return saldoOrigen;
+    }
+
+    public void setSaldoOrigen(Integer saldoOrigen) {
+        this.saldoOrigen = saldoOrigen;
+    }
+
+    public Integer getSaldoDestino() {
+        return saldoDestino;
+    }
+
+    public void setSaldoDestino(Integer saldoDestino) {
+        this.saldoDestino = saldoDestino;
+    }
+
+    public Long getSaldoEmpresa() {
+        return saldoEmpresa;
+    }
+
+    public void setSaldoEmpresa(Long saldoEmpresa) {
+        this.saldoEmpresa = saldoEmpresa;
+    }
 }
@@ -0,0 +1,40 @@
+package com.example.maingest.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Stock total de un producto en su empresa (suma de sus items). InventarioService la actualiza
+ * en el mismo UPDATE que devuelve el saldo del movimiento, en vez de bloquear el producto y sumar
+ * sus items: dos movimientos del mismo producto solo se esperan en esta fila y recién al final.
+ * Se escribe por JDBC; la entidad existe para el esquema.
+ */
+@Entity
+@Table(name = "PRODUCTO_SALDO")
+public class ProductoSaldo {
+
+    @Id
+    @Column(name = "producto_id")
+    private Long productoId;
+
+    @Column(nullable = false)
+    private Long total = 0L;
+
+    public Long getProductoId() {
+        return productoId;
+    }
+
+    public void setProductoId(Long productoId) {
+        this.productoId = productoId;
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public void setTotal(Long total) {
+        this.total = total;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.maingest.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+import java.time.LocalDate;
+
+/**
+ * Foto del stock por (producto, repisa) al cierre de un día. Solo se guardan los slots con
+ * cantidad distinta de cero; un slot ausente en la foto vale cero ese día.
+ */
+@Entity
+@Table(name = "SALDO_DIARIO",
+        uniqueConstraints = @UniqueConstraint(name = "uk_saldo_diario_slot", columnNames = {"fecha", "producto_id", "repisa_id"}),
+        indexes = {
+                @Index(name = "idx_saldo_diario_empresa_fecha", columnList = "empresa_id, fecha")
+        })
+public class SaldoDiario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate fecha;
+
+    @Column(name = "empresa_id", nullable = false)
+    private Long empresaId;
+
+    @Column(name = "producto_id", nullable = false)
+    private Long productoId;
+
+    @Column(name = "repisa_id", nullable = false)
+    private Long repisaId;
+
+    @Column(nullable = false)
+    private Integer cantidad;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    public void setFecha(LocalDate fecha) {
+        this.fecha = fecha;
+    }
+
+    public Long getEmpresaId() {
+        return empresaId;
+    }
+
+    public void setEmpresaId(Long empresaId) {
+        this.empresaId = empresaId;
+    }
+
+    public Long getProductoId() {
+        return productoId;
+    }
+
+    public void setProductoId(Long productoId) {
+        this.productoId = productoId;
+    }
+
+    public Long getRepisaId() {
+        return repisaId;
+    }
+
+    public void setRepisaId(Long repisaId) {
+        this.repisaId = repisaId;
+    }
+
+    public Integer getCantidad() {
+        return cantidad;
+    }
+
+    public void setCantidad(Integer cantidad) {
+        this.cantidad = cantidad;
+    }
+}
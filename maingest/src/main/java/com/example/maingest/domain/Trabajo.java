@@ -0,0 +1,241 @@
+package com.example.maingest.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+
+/**
+ * Operación pesada en segundo plano (reporte, borrado de empresa, migración). El archivo de
+ * resultado queda en el disco del nodo que la ejecutó ({@code nodo}). Mientras está pendiente o en
+ * curso, ese nodo renueva {@code latido_en}; si deja de hacerlo, cualquier nodo lo marca FALLIDO.
+ */
+@Entity
+@Table(name = "TRABAJO", indexes = {
+        @Index(name = "idx_trabajo_usuario_creado", columnList = "usuario_id,creado_en"),
+        @Index(name = "idx_trabajo_nodo_estado", columnList = "nodo,estado"),
+        @Index(name = "idx_trabajo_estado_latido", columnList = "estado,latido_en")
+})
+public class Trabajo {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 64)
+    private String tipo;
+
+    // PENDIENTE, EN_CURSO, COMPLETADO, FALLIDO o CANCELADO
+    @Column(nullable = false, length = 20)
+    private String estado = "PENDIENTE";
+
+    // null para trabajos del sistema (p. ej. la migración al arrancar)
+    @Column(name = "usuario_id")
+    private Long usuarioId;
+
+    @Column(nullable = false)
+    private String nodo;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "parametros_json", columnDefinition = "jsonb")
+    private String parametrosJson;
+
+    @Column(nullable = false)
+    private Integer progreso = 0;
+
+    @Column(length = 500)
+    private String mensaje;
+
+    @Column(name = "cancelacion_solicitada", nullable = false)
+    private Boolean cancelacionSolicitada = false;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "resultado_json", columnDefinition = "jsonb")
+    private String resultadoJson;
+
+    @Column(name = "archivo_ruta", length = 1000)
+    private String archivoRuta;
+
+    @Column(name = "archivo_nombre")
+    private String archivoNombre;
+
+    @Column(name = "archivo_tipo")
+    private String archivoTipo;
+
+    @Column(name = "archivo_bytes")
+    private Long archivoBytes;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(name = "creado_en", nullable = false)
+    private Instant creadoEn;
+
+    @Column(name = "iniciado_en")
+    private Instant iniciadoEn;
+
+    @Column(name = "finalizado_en")
+    private Instant finalizadoEn;
+
+    @Column(name = "latido_en")
+    private Instant latidoEn;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTipo() {
+        return tipo;
+    }
+
+    public void setTipo(String tipo) {
+        this.tipo = tipo;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    public void setEstado(String estado) {
+        this.estado = estado;
+    }
+
+    public Long getUsuarioId() {
+        return usuarioId;
+    }
+
+    public void setUsuarioId(Long usuarioId) {
+        this.usuarioId = usuarioId;
+    }
+
+    public String getNodo() {
+        return nodo;
+    }
+
+    public void setNodo(String nodo) {
+        this.nodo = nodo;
+    }
+
+    public String getParametrosJson() {
+        return parametrosJson;
+    }
+
+    public void setParametrosJson(String parametrosJson) {
+        this.parametrosJson = parametrosJson;
+    }
+
+    public Integer getProgreso() {
+        return progreso;
+    }
+
+    public void setProgreso(Integer progreso) {
+        this.progreso = progreso;
+    }
+
+    public String getMensaje() {
+        return mensaje;
+    }
+
+    public void setMensaje(String mensaje) {
+        this.mensaje = mensaje;
+    }
+
+    public Boolean getCancelacionSolicitada() {
+        return cancelacionSolicitada;
+    }
+
+    public void setCancelacionSolicitada(Boolean cancelacionSolicitada) {
+        this.cancelacionSolicitada = cancelacionSolicitada;
+    }
+
+    public String getResultadoJson() {
+        return resultadoJson;
+    }
+
+    public void setResultadoJson(String resultadoJson) {
+        this.resultadoJson = resultadoJson;
+    }
+
+    public String getArchivoRuta() {
+        return archivoRuta;
+    }
+
+    public void setArchivoRuta(String archivoRuta) {
+        this.archivoRuta = archivoRuta;
+    }
+
+    public String getArchivoNombre() {
+        return archivoNombre;
+    }
+
+    public void setArchivoNombre(String archivoNombre) {
+        this.archivoNombre = archivoNombre;
+    }
+
+    public String getArchivoTipo() {
+        return archivoTipo;
+    }
+
+    public void setArchivoTipo(String archivoTipo) {
+        this.archivoTipo = archivoTipo;
+    }
+
+    public Long getArchivoBytes() {
+        return archivoBytes;
+    }
+
+    public void setArchivoBytes(Long archivoBytes) {
+        this.archivoBytes = archivoBytes;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Instant getCreadoEn() {
+        return creadoEn;
+    }
+
+    public void setCreadoEn(Instant creadoEn) {
+        this.creadoEn = creadoEn;
+    }
+
+    public Instant getIniciadoEn() {
+        return iniciadoEn;
+    }
+
+    public void setIniciadoEn(Instant iniciadoEn) {
+        this.iniciadoEn = iniciadoEn;
+    }
+
+    public Instant getFinalizadoEn() {
+        return finalizadoEn;
+    }
+
+    public void setFinalizadoEn(Instant finalizadoEn) {
+        this.finalizadoEn = finalizadoEn;
+    }
+
+    public Instant getLatidoEn() {
+        return latidoEn;
+    }
+
+    public void setLatidoEn(Instant latidoEn) {
+        this.latidoEn = latidoEn;
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.maingest.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+import java.time.Instant;
+
+/**
+ * Bandeja de entrada de eventos de Wompi. El webhook solo inserta aquí; WompiWebhookInbox los
+ * aplica en segundo plano. Un reenvío del mismo estado de una transacción choca con la clave
+ * única y se ignora.
+ */
+@Entity
+@Table(name = "WOMPI_EVENTO",
+        uniqueConstraints = @UniqueConstraint(name = "uk_wompi_evento_tx_status",
+                columnNames = {"wompi_transaction_id", "status"}),
+        indexes = {
+                @Index(name = "idx_wompi_evento_pendiente", columnList = "estado,siguiente_intento_en"),
+                @Index(name = "idx_wompi_evento_reference", columnList = "reference,evento_en")
+        })
+public class WompiEvento {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "wompi_transaction_id", nullable = false)
+    private String wompiTransactionId;
+
+    @Column(nullable = false)
+    private String reference;
+
+    @Column(nullable = false)
+    private String status;
+
+    @Column(name = "amount_in_cents")
+    private Long amountInCents;
+
+    @Column(length = 3)
+    private String currency;
+
+    @Column(columnDefinition = "text")
+    private String payload;
+
+    @Column(name = "evento_en", nullable = false)
+    private Instant eventoEn;
+
+    @Column(name = "recibido_en", nullable = false)
+    private Instant recibidoEn;
+
+    // PENDIENTE, PROCESADO, DESCARTADO o FALLIDO (agotó los reintentos)
+    @Column(nullable = false)
+    private String estado = "PENDIENTE";
+
+    @Column(nullable = false)
+    private Integer intentos = 0;
+
+    @Column(name = "siguiente_intento_en", nullable = false)
+    private Instant siguienteIntentoEn;
+
+    @Column(name = "procesado_en")
+    private Instant procesadoEn;
+
+    @Column(name = "ultimo_error", length = 1000)
+    private String ultimoError;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getWompiTransactionId() {
+        return wompiTransactionId;
+    }
+
+    public void setWompiTransactionId(String wompiTransactionId) {
+        this.wompiTransactionId = wompiTransactionId;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public void setReference(String reference) {
+        this.reference = reference;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Long getAmountInCents() {
+        return amountInCents;
+    }
+
+    public void setAmountInCents(Long amountInCents) {
+        this.amountInCents = amountInCents;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public Instant getEventoEn() {
+        return eventoEn;
+    }
+
+    public void setEventoEn(Instant eventoEn) {
+        this.eventoEn = eventoEn;
+    }
+
+    public Instant getRecibidoEn() {
+        return recibidoEn;
+    }
+
+    public void setRecibidoEn(Instant recibidoEn) {
+        this.recibidoEn = recibidoEn;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    public void setEstado(String estado) {
+        this.estado = estado;
+    }
+
+    public Integer getIntentos() {
+        return intentos;
+    }
+
+    public void setIntentos(Integer intentos) {
+        this.intentos = intentos;
+    }
+
+    public Instant getSiguienteIntentoEn() {
+        return siguienteIntentoEn;
+    }
+
+    public void setSiguienteIntentoEn(Instant siguienteIntentoEn) {
+        this.siguienteIntentoEn = siguienteIntentoEn;
+    }
+
+    public Instant getProcesadoEn() {
+        return procesadoEn;
+    }
+
+    public void setProcesadoEn(Instant procesadoEn) {
+        this.procesadoEn = procesadoEn;
+    }
+
+    public String getUltimoError() {
+        return ultimoError;
+    }
+
+    public void setUltimoError(String ultimoError) {
+        this.ultimoError = ultimoError;
+    }
+}
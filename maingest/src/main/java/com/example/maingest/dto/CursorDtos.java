@@ -0,0 +1,48 @@
+package com.example.maingest.dto;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+public class CursorDtos {
+
+    /**
+     * Posición de keyset {@code fecha,id}: la página siguiente empieza estrictamente después
+     * de esta fila en orden (fecha DESC, id DESC). El id desempata filas con la misma fecha.
+     */
+    public record Cursor(Instant fecha, Long id) {
+
+        public static Cursor parse(String valor) {
+            if (valor == null || valor.isBlank()) {
+                return null;
+            }
+            int coma = valor.lastIndexOf(',');
+            if (coma <= 0 || coma == valor.length() - 1) {
+                throw new IllegalArgumentException("Cursor inválido, se espera <fecha,id>");
+            }
+            try {
+                Instant fecha = Instant.parse(valor.substring(0, coma).trim());
+                Long id = Long.valueOf(valor.substring(coma + 1).trim());
+                return new Cursor(fecha, id);
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("Cursor inválido, se espera <fecha,id>");
+            }
+        }
+
+        public String valor() {
+            return fecha + "," + id;
+        }
+    }
+
+    /**
+     * Página por cursor. {@code siguiente} es null en la última página; {@code totalElements}
+     * solo se calcula si se pide, porque el COUNT es justo lo que el cursor evita.
+     */
+    public record PaginaCursorDto<T>(
+            List<T> content,
+            int size,
+            String siguiente,
+            Long totalElements
+    ) {
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.maingest.dto;
+
+import java.time.Instant;
+import java.util.Map;
+
+public class TrabajoDtos {
+
+    public record TrabajoCreateRequest(
+            String tipo,
+            Map<String, Object> parametros
+    ) {
+    }
+
+    public record TrabajoDto(
+            Long id,
+            String tipo,
+            String estado,
+            Integer progreso,
+            String mensaje,
+            String error,
+            Object parametros,
+            Object resultado,
+            String archivoNombre,
+            Long archivoBytes,
+            String descargaUrl,
+            Instant creadoEn,
+            Instant iniciadoEn,
+            Instant finalizadoEn
+    ) {
+    }
+}
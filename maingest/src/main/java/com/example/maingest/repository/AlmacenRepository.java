@@ -6,12 +6,16 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface AlmacenRepository extends JpaRepository<Almacen, Long> {
 
     List<Almacen> findByEmpresa(Empresa empresa);
 
+    @Query("SELECT a.id FROM Almacen a WHERE a.empresa.id IN :empresaIds")
+    List<Long> findIdsByEmpresaIds(@Param("empresaIds") Collection<Long> empresaIds);
+
     @Query("SELECT COUNT(a) FROM Almacen a WHERE a.empresa.id = :empresaId")
     long countByEmpresaId(@Param("empresaId") Long empresaId);
 
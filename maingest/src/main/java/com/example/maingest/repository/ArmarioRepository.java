@@ -3,11 +3,64 @@ package com.example.maingest.repository;
 import com.example.maingest.domain.Almacen;
 import com.example.maingest.domain.Armario;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ArmarioRepository extends JpaRepository<Armario, Long> {
 
+    /**
+     * Una fila por repisa (o una por armario sin repisas) con los items agregados,
+     * para armar la estructura completa de uno o varios almacenes en una sola consulta.
+     */
+    String ESTRUCTURA_SELECT = "SELECT e.id AS empresaId, e.nombre AS empresaNombre, "
+            + "a.id AS almacenId, a.nombre AS almacenNombre, "
+            + "ar.id AS armarioId, ar.nombre AS armarioNombre, ar.tamanioTotal AS tamanioTotal, "
+            + "ar.posX AS posX, ar.posY AS posY, ar.ancho AS ancho, ar.alto AS alto, "
+            + "ar.displayAncho AS displayAncho, ar.displayAlto AS displayAlto, ar.rotacion AS rotacion, "
+            + "r.id AS repisaId, r.nivel AS repisaNivel, r.capacidad AS repisaCapacidad, "
+            + "COUNT(i.id) AS itemsOcupados, COALESCE(SUM(i.cantidad), 0) AS cantidadTotal "
+            + "FROM Armario ar JOIN ar.almacen a LEFT JOIN a.empresa e "
+            + "LEFT JOIN Repisa r ON r.armario = ar "
+            + "LEFT JOIN Item i ON i.repisa = r ";
+
+    String ESTRUCTURA_GROUP = " GROUP BY e.id, e.nombre, a.id, a.nombre, "
+            + "ar.id, ar.nombre, ar.tamanioTotal, ar.posX, ar.posY, ar.ancho, ar.alto, "
+            + "ar.displayAncho, ar.displayAlto, ar.rotacion, r.id, r.nivel, r.capacidad "
+            + "ORDER BY a.id, ar.id, r.id";
+
+    interface EstructuraFila {
+        Long getEmpresaId();
+        String getEmpresaNombre();
+        Long getAlmacenId();
+        String getAlmacenNombre();
+        Long getArmarioId();
+        String getArmarioNombre();
+        Integer getTamanioTotal();
+        Double getPosX();
+        Double getPosY();
+        Double getAncho();
+        Double getAlto();
+        Double getDisplayAncho();
+        Double getDisplayAlto();
+        Double getRotacion();
+        Long getRepisaId();
+        Integer getRepisaNivel();
+        Integer getRepisaCapacidad();
+        Long getItemsOcupados();
+        Long getCantidadTotal();
+    }
+
     List<Armario> findByAlmacen(Almacen almacen);
-}
 
+    @Query(ESTRUCTURA_SELECT + "WHERE a.id IN :almacenIds" + ESTRUCTURA_GROUP)
+    List<EstructuraFila> findEstructuraByAlmacenIds(@Param("almacenIds") Collection<Long> almacenIds);
+
+    @Query(ESTRUCTURA_SELECT + "WHERE ar.id = :armarioId" + ESTRUCTURA_GROUP)
+    List<EstructuraFila> findEstructuraByArmarioId(@Param("armarioId") Long armarioId);
+
+    @Query(ESTRUCTURA_SELECT + ESTRUCTURA_GROUP)
+    List<EstructuraFila> findEstructuraCompleta();
+}
@@ -2,7 +2,35 @@ package com.example.maingest.repository;
 
 import com.example.maingest.domain.Empresa;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface EmpresaRepository extends JpaRepository<Empresa, Long> {
-}
 
+    interface UsoFila {
+        long getAlmacenes();
+
+        long getArmarios();
+
+        long getRepisas();
+
+        long getItems();
+
+        long getProductos();
+
+        long getUsuarios();
+    }
+
+    /**
+     * Todos los contadores de uso de una empresa en un solo round trip.
+     */
+    @Query("SELECT "
+            + "(SELECT COUNT(a) FROM Almacen a WHERE a.empresa.id = :empresaId) AS almacenes, "
+            + "(SELECT COUNT(ar) FROM Armario ar JOIN ar.almacen a WHERE a.empresa.id = :empresaId) AS armarios, "
+            + "(SELECT COUNT(r) FROM Repisa r JOIN r.armario ar JOIN ar.almacen a WHERE a.empresa.id = :empresaId) AS repisas, "
+            + "(SELECT COUNT(i) FROM Item i JOIN i.repisa r JOIN r.armario ar JOIN ar.almacen a WHERE a.empresa.id = :empresaId) AS items, "
+            + "(SELECT COUNT(p) FROM Producto p WHERE p.empresa.id = :empresaId) AS productos, "
+            + "(SELECT COUNT(eu) FROM EmpresaUsuario eu WHERE eu.empresa.id = :empresaId) AS usuarios "
+            + "FROM Empresa e WHERE e.id = :empresaId")
+    UsoFila contarUso(@Param("empresaId") Long empresaId);
+}
@@ -2,7 +2,10 @@ package com.example.maingest.repository;
 
 import com.example.maingest.domain.Empresa;
 import com.example.maingest.domain.EmpresaSuscripcion;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -11,4 +14,12 @@ public interface EmpresaSuscripcionRepository extends JpaRepository<EmpresaSuscr
     List<EmpresaSuscripcion> findByEmpresaOrderByCreatedAtDesc(Empresa empresa);
     Optional<EmpresaSuscripcion> findFirstByEmpresaAndEstadoOrderByCreatedAtDesc(Empresa empresa, String estado);
     List<EmpresaSuscripcion> findByEmpresa(Empresa empresa);
+
+    @Query("SELECT s FROM EmpresaSuscripcion s LEFT JOIN FETCH s.plan "
+            + "WHERE s.empresa.id = :empresaId AND s.estado = :estado ORDER BY s.createdAt DESC")
+    List<EmpresaSuscripcion> findConPlanByEmpresaIdAndEstado(
+            @Param("empresaId") Long empresaId,
+            @Param("estado") String estado,
+            Pageable pageable
+    );
 }
@@ -6,7 +6,10 @@ import com.example.maingest.domain.EmpresaUsuarioId;
 import com.example.maingest.domain.Usuario;
 import com.example.maingest.domain.Rol;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +21,17 @@ public interface EmpresaUsuarioRepository extends JpaRepository<EmpresaUsuario,
 
     List<EmpresaUsuario> findByRol(Rol rol);
 
+    @Query("SELECT eu FROM EmpresaUsuario eu JOIN FETCH eu.empresa JOIN FETCH eu.usuario LEFT JOIN FETCH eu.rol")
+    List<EmpresaUsuario> findAllConEmpresaUsuarioYRol();
+
+    @Query("SELECT eu FROM EmpresaUsuario eu JOIN FETCH eu.empresa LEFT JOIN FETCH eu.rol WHERE eu.usuario.id IN :usuarioIds")
+    List<EmpresaUsuario> findConEmpresaYRolByUsuarioIdIn(@Param("usuarioIds") Collection<Long> usuarioIds);
+
+    @Query("SELECT u FROM Usuario u WHERE u.id IN (SELECT eu.usuario.id FROM EmpresaUsuario eu WHERE eu.empresa.id IN "
+            + "(SELECT propia.empresa.id FROM EmpresaUsuario propia WHERE propia.usuario.id = :usuarioId)) "
+            + "ORDER BY u.id")
+    List<Usuario> findUsuariosDeEmpresasDe(@Param("usuarioId") Long usuarioId);
+
     Optional<EmpresaUsuario> findByEmpresaAndUsuario(Empresa empresa, Usuario usuario);
 
     List<EmpresaUsuario> findAllByEmpresaAndUsuario(Empresa empresa, Usuario usuario);
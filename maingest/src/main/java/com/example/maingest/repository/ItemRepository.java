@@ -1,13 +1,114 @@
 package com.example.maingest.repository;
 
+import com.example.maingest.domain.EstadoStock;
 import com.example.maingest.domain.Item;
 import com.example.maingest.domain.Repisa;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ItemRepository extends JpaRepository<Item, Long> {
 
+    /**
+     * Fila plana del reporte de inventario. El alcance (todos / empresas / almacenes)
+     * se filtra en la base de datos y el orden es siempre por item id para keyset.
+     */
+    String INVENTARIO_SELECT = "SELECT e.id AS empresaId, e.nombre AS empresaNombre, "
+            + "a.id AS almacenId, a.nombre AS almacenNombre, "
+            + "ar.id AS armarioId, ar.nombre AS armarioNombre, "
+            + "r.id AS repisaId, r.nivel AS repisaNivel, r.capacidad AS repisaCapacidad, "
+            + "i.id AS itemId, i.nombre AS itemNombre, i.estado AS itemEstado, i.tamanio AS itemTamanio, "
+            + "p.id AS productoId, p.sku AS productoSku, p.nombre AS productoNombre, "
+            + "i.cantidad AS cantidad, i.estadoStock AS estadoStock, i.lote AS lote "
+            + "FROM Item i JOIN i.repisa r JOIN r.armario ar JOIN ar.almacen a JOIN a.empresa e "
+            + "LEFT JOIN i.producto p "
+            + "WHERE (:todos = true OR a.id IN :almacenIds OR e.id IN :empresaIds) ";
+
+    interface InventarioFila {
+        Long getEmpresaId();
+        String getEmpresaNombre();
+        Long getAlmacenId();
+        String getAlmacenNombre();
+        Long getArmarioId();
+        String getArmarioNombre();
+        Long getRepisaId();
+        Integer getRepisaNivel();
+        Integer getRepisaCapacidad();
+        Long getItemId();
+        String getItemNombre();
+        String getItemEstado();
+        Integer getItemTamanio();
+        Long getProductoId();
+        String getProductoSku();
+        String getProductoNombre();
+        Integer getCantidad();
+        EstadoStock getEstadoStock();
+        String getLote();
+    }
+
     List<Item> findByRepisa(Repisa repisa);
-}
 
+    /**
+     * Slot de stock de un producto en una repisa, bloqueado hasta el fin de la transacción.
+     * Se devuelve lista porque datos legados pueden tener más de un item por slot.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM Item i WHERE i.producto.id = :productoId AND i.repisa.id = :repisaId ORDER BY i.id")
+    List<Item> findSlotForUpdate(@Param("productoId") Long productoId, @Param("repisaId") Long repisaId);
+
+    /**
+     * Bloquea de una vez los slots que toca un lote: solo los pares (producto, repisa) indicados,
+     * posición a posición en los dos arreglos, y siempre en orden de (repisa, producto): el mismo
+     * que siguen los traslados sueltos y otros lotes, así ninguno espera al otro en círculo.
+     */
+    @Query(value = """
+            SELECT i.* FROM item i
+            JOIN unnest(CAST(:productoIds AS bigint[]), CAST(:repisaIds AS bigint[])) AS s(producto_id, repisa_id)
+              ON i.producto_id = s.producto_id AND i.repisa_id = s.repisa_id
+            ORDER BY i.repisa_id, i.producto_id
+            FOR UPDATE OF i
+            """, nativeQuery = true)
+    List<Item> findSlotsForUpdate(
+            @Param("productoIds") Long[] productoIds,
+            @Param("repisaIds") Long[] repisaIds
+    );
+
+    @Query(INVENTARIO_SELECT + "AND i.id > :afterId ORDER BY i.id")
+    List<InventarioFila> findInventarioPagina(
+            @Param("todos") boolean todos,
+            @Param("empresaIds") Collection<Long> empresaIds,
+            @Param("almacenIds") Collection<Long> almacenIds,
+            @Param("afterId") Long afterId,
+            Pageable pageable
+    );
+
+    @Query("SELECT COUNT(i) FROM Item i JOIN i.repisa r JOIN r.armario ar JOIN ar.almacen a JOIN a.empresa e "
+            + "WHERE (:todos = true OR a.id IN :almacenIds OR e.id IN :empresaIds)")
+    long contarInventario(
+            @Param("todos") boolean todos,
+            @Param("empresaIds") Collection<Long> empresaIds,
+            @Param("almacenIds") Collection<Long> almacenIds
+    );
+
+    @Query(INVENTARIO_SELECT + "ORDER BY i.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    Stream<InventarioFila> streamInventario(
+            @Param("todos") boolean todos,
+            @Param("empresaIds") Collection<Long> empresaIds,
+            @Param("almacenIds") Collection<Long> almacenIds
+    );
+}
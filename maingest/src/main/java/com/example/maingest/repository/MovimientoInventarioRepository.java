@@ -12,6 +12,9 @@ import org.springframework.data.repository.query.Param;
 
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.List;
+
 public interface MovimientoInventarioRepository extends JpaRepository<MovimientoInventario, Long> {
 
     @Query("SELECT m FROM MovimientoInventario m "
@@ -48,6 +51,59 @@ public interface MovimientoInventarioRepository extends JpaRepository<Movimiento
             @Param("tipo") com.example.maingest.domain.TipoMovimiento tipo,
             Pageable pageable);
 
+    /**
+     * Primera página del keyset sobre idx_mov_empresa_fecha_id (empresa_id, fecha, id). Pedir
+     * size + 1 para saber si hay más.
+     */
+    @Query("SELECT m FROM MovimientoInventario m "
+            + "JOIN FETCH m.producto "
+            + "JOIN FETCH m.usuario "
+            + "LEFT JOIN FETCH m.repisaOrigen "
+            + "LEFT JOIN FETCH m.repisaDestino "
+            + "WHERE m.empresa.id = :empresaId "
+            + "AND (:productoId IS NULL OR m.producto.id = :productoId) "
+            + "AND (:tipo IS NULL OR m.tipo = :tipo) "
+            + "ORDER BY m.fecha DESC, m.id DESC")
+    List<MovimientoInventario> findPrimeraPaginaKeyset(
+            @Param("empresaId") Long empresaId,
+            @Param("productoId") Long productoId,
+            @Param("tipo") com.example.maingest.domain.TipoMovimiento tipo,
+            Pageable pageable);
+
+    /**
+     * Filas estrictamente anteriores a (fecha, id). La comparación de filas se traduce a
+     * {@code (fecha, id) < (?, ?)} en PostgreSQL, que arranca el recorrido del índice en el
+     * cursor en vez de saltar las filas ya vistas; {@code fecha <= ?} es redundante y acota el
+     * rango aunque el dialecto expandiera la comparación.
+     */
+    @Query("SELECT m FROM MovimientoInventario m "
+            + "JOIN FETCH m.producto "
+            + "JOIN FETCH m.usuario "
+            + "LEFT JOIN FETCH m.repisaOrigen "
+            + "LEFT JOIN FETCH m.repisaDestino "
+            + "WHERE m.empresa.id = :empresaId "
+            + "AND (:productoId IS NULL OR m.producto.id = :productoId) "
+            + "AND (:tipo IS NULL OR m.tipo = :tipo) "
+            + "AND m.fecha <= :despuesFecha "
+            + "AND (m.fecha, m.id) < (:despuesFecha, :despuesId) "
+            + "ORDER BY m.fecha DESC, m.id DESC")
+    List<MovimientoInventario> findPaginaKeysetDespues(
+            @Param("empresaId") Long empresaId,
+            @Param("productoId") Long productoId,
+            @Param("tipo") com.example.maingest.domain.TipoMovimiento tipo,
+            @Param("despuesFecha") Instant despuesFecha,
+            @Param("despuesId") Long despuesId,
+            Pageable pageable);
+
+    @Query("SELECT COUNT(m) FROM MovimientoInventario m "
+            + "WHERE m.empresa.id = :empresaId "
+            + "AND (:productoId IS NULL OR m.producto.id = :productoId) "
+            + "AND (:tipo IS NULL OR m.tipo = :tipo)")
+    long contarFiltrados(
+            @Param("empresaId") Long empresaId,
+            @Param("productoId") Long productoId,
+            @Param("tipo") com.example.maingest.domain.TipoMovimiento tipo);
+
     @Query("SELECT COUNT(m) FROM MovimientoInventario m WHERE m.empresa.id = :empresaId")
     long countByEmpresaId(@Param("empresaId") Long empresaId);
 
@@ -5,6 +5,7 @@ import com.example.maingest.domain.Producto;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -13,6 +14,13 @@ import java.util.Optional;
 
 public interface ProductoRepository extends JpaRepository<Producto, Long> {
 
+    interface ProductoIndexable {
+        Long getId();
+        String getSku();
+        String getNombre();
+        String getDescripcion();
+    }
+
     List<Producto> findByEmpresa(Empresa empresa);
 
     Page<Producto> findByEmpresa(Empresa empresa, Pageable pageable);
@@ -33,4 +41,16 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
             + "(LOWER(p.nombre) LIKE LOWER(CONCAT('%', :query, '%')) OR "
             + "LOWER(p.sku) LIKE LOWER(CONCAT('%', :query, '%')))")
     Page<Producto> buscar(@Param("empresaId") Long empresaId, @Param("query") String query, Pageable pageable);
+
+    @Query("SELECT p.id AS id, p.sku AS sku, p.nombre AS nombre, p.descripcion AS descripcion "
+            + "FROM Producto p WHERE p.empresa.id = :empresaId ORDER BY p.id")
+    List<ProductoIndexable> findIndexablesByEmpresaId(@Param("empresaId") Long empresaId);
+
+    @Modifying
+    @Query(value = "DELETE FROM producto_saldo WHERE producto_id = :productoId", nativeQuery = true)
+    int deleteSaldo(@Param("productoId") Long productoId);
+
+    @Modifying
+    @Query(value = "DELETE FROM saldo_diario WHERE producto_id = :productoId", nativeQuery = true)
+    int deleteSaldosDiarios(@Param("productoId") Long productoId);
 }
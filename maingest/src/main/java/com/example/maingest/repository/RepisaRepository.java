@@ -3,11 +3,16 @@ package com.example.maingest.repository;
 import com.example.maingest.domain.Armario;
 import com.example.maingest.domain.Repisa;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface RepisaRepository extends JpaRepository<Repisa, Long> {
 
     List<Repisa> findByArmario(Armario armario);
-}
 
+    @Query("SELECT r FROM Repisa r JOIN FETCH r.armario ar JOIN FETCH ar.almacen a LEFT JOIN FETCH a.empresa WHERE r.id IN :ids")
+    List<Repisa> findAllConEmpresaByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -4,10 +4,16 @@ import com.example.maingest.domain.Rol;
 import com.example.maingest.domain.RolPermiso;
 import com.example.maingest.domain.RolPermisoId;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface RolPermisoRepository extends JpaRepository<RolPermiso, RolPermisoId> {
 
     List<RolPermiso> findByRol(Rol rol);
+
+    @Query("SELECT DISTINCT rp.id.permisoId FROM RolPermiso rp WHERE rp.id.rolId IN :rolIds")
+    List<Long> findPermisoIdsByRolIds(@Param("rolIds") Collection<Long> rolIds);
 }
@@ -0,0 +1,17 @@
+package com.example.maingest.repository;
+
+import com.example.maingest.domain.SaldoDiario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+
+public interface SaldoDiarioRepository extends JpaRepository<SaldoDiario, Long> {
+
+    @Query("SELECT MAX(s.fecha) FROM SaldoDiario s")
+    LocalDate ultimaFecha();
+
+    @Query("SELECT MAX(s.fecha) FROM SaldoDiario s WHERE s.fecha < :fecha")
+    LocalDate ultimaFechaAntesDe(@Param("fecha") LocalDate fecha);
+}
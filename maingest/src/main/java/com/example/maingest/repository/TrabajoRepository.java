@@ -0,0 +1,13 @@
+package com.example.maingest.repository;
+
+import com.example.maingest.domain.Trabajo;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface TrabajoRepository extends JpaRepository<Trabajo, Long> {
+
+    List<Trabajo> findTop50ByUsuarioIdOrderByCreadoEnDesc(Long usuarioId);
+
+    List<Trabajo> findTop50ByOrderByCreadoEnDesc();
+}
@@ -5,7 +5,10 @@ import com.example.maingest.domain.Usuario;
 import com.example.maingest.domain.UsuarioRol;
 import com.example.maingest.domain.UsuarioRolId;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface UsuarioRolRepository extends JpaRepository<UsuarioRol, UsuarioRolId> {
@@ -14,5 +17,8 @@ public interface UsuarioRolRepository extends JpaRepository<UsuarioRol, UsuarioR
 
     List<UsuarioRol> findByRol(Rol rol);
 
+    @Query("SELECT ur FROM UsuarioRol ur JOIN FETCH ur.rol WHERE ur.usuario.id IN :usuarioIds")
+    List<UsuarioRol> findConRolByUsuarioIdIn(@Param("usuarioIds") Collection<Long> usuarioIds);
+
     long countByRol(Rol rol);
 }
@@ -1,8 +1,10 @@
 package com.example.maingest.security;
 
 import com.example.maingest.domain.Usuario;
-import com.example.maingest.repository.UsuarioRepository;
-import com.example.maingest.service.PermissionService;
+import com.example.maingest.service.EventosJfr;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -19,6 +21,7 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -26,17 +29,30 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private static final Logger log = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
 
     private final JwtService jwtService;
-    private final UsuarioRepository usuarioRepository;
-    private final PermissionService permissionService;
+    private final UsuarioSnapshotCache usuarioSnapshotCache;
+    private final Timer verificacionOk;
+    private final Timer verificacionInvalida;
+    private final Timer verificacionSinUsuario;
 
     public JwtAuthenticationFilter(
             JwtService jwtService,
-            UsuarioRepository usuarioRepository,
-            PermissionService permissionService
+            UsuarioSnapshotCache usuarioSnapshotCache,
+            MeterRegistry meterRegistry
     ) {
         this.jwtService = jwtService;
-        this.usuarioRepository = usuarioRepository;
-        this.permissionService = permissionService;
+        this.usuarioSnapshotCache = usuarioSnapshotCache;
+        // Firma, claims y búsqueda del usuario en el snapshot cache
+        this.verificacionOk = verificacion(meterRegistry, "ok");
+        this.verificacionInvalida = verificacion(meterRegistry, "invalido");
+        this.verificacionSinUsuario = verificacion(meterRegistry, "usuario_desconocido");
+    }
+
+    private static Timer verificacion(MeterRegistry meterRegistry, String resultado) {
+        return Timer.builder("auth.jwt.verificacion")
+                .description("Verificación del token JWT y carga del usuario")
+                .tag("resultado", resultado)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
     @Override
@@ -55,19 +71,25 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             filterChain.doFilter(request, response);
             return;
         }
+        EventosJfr.JwtEvento evento = new EventosJfr.JwtEvento();
+        evento.begin();
+        long inicio = System.nanoTime();
         try {
-            Long usuarioId = jwtService.extractUsuarioId(token);
+            Claims claims = jwtService.parseClaims(token);
+            Long usuarioId = jwtService.extractUsuarioId(claims);
             if (usuarioId != null) {
                 // Si el request trae Bearer token, este debe ser la fuente de verdad.
                 // Esto evita que una sesión OAuth2 (principal != Usuario) bloquee llamadas API con JWT.
-                Optional<Usuario> usuarioOpt = usuarioRepository.findById(usuarioId);
+                Optional<Usuario> usuarioOpt = usuarioSnapshotCache.obtener(usuarioId);
                 if (usuarioOpt.isEmpty()) {
+                    verificacionSinUsuario.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+                    emitir(evento, usuarioId, "usuario_desconocido");
                     filterChain.doFilter(request, response);
                     return;
                 }
                 Usuario usuario = usuarioOpt.get();
 
-                List<String> permisos = jwtService.extractPermissions(token);
+                List<String> permisos = jwtService.extractPermissions(claims);
                 List<SimpleGrantedAuthority> authorities = permisos.stream()
                         .map(SimpleGrantedAuthority::new)
                         .toList();
@@ -75,8 +97,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                         new UsernamePasswordAuthenticationToken(usuario, null, authorities);
                 authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authenticationToken);
+                verificacionOk.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+                emitir(evento, usuarioId, "ok");
             }
         } catch (Exception e) {
+            verificacionInvalida.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            emitir(evento, null, "invalido");
             SecurityContextHolder.clearContext();
             String uri = request.getRequestURI();
             if (uri != null && uri.startsWith("/api/")) {
@@ -85,4 +111,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(request, response);
     }
+
+    private static void emitir(EventosJfr.JwtEvento evento, Long usuarioId, String resultado) {
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.usuarioId = usuarioId != null ? usuarioId : 0;
+            evento.resultado = resultado;
+            evento.commit();
+        }
+    }
 }
@@ -3,6 +3,7 @@ package com.example.maingest.security;
 import com.example.maingest.domain.Usuario;
 import com.example.maingest.service.PermissionService;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -26,6 +27,8 @@ public class JwtService {
     private final String secretKey;
     private final long expirationMs;
     private final PermissionService permissionService;
+    private Key signingKey;
+    private JwtParser jwtParser;
 
     public JwtService(
             @Value("${app.jwt.secret}") String secretKey,
@@ -47,6 +50,9 @@ public class JwtService {
                     + "Configure una clave segura en application.properties o variables de entorno."
             );
         }
+        // La clave y el parser son inmutables y thread-safe: se construyen una sola vez
+        this.signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.jwtParser = Jwts.parserBuilder().setSigningKey(signingKey).build();
         log.info("JWT secret validado correctamente ({} bytes)", secret.getBytes(StandardCharsets.UTF_8).length);
     }
 
@@ -59,16 +65,19 @@ public class JwtService {
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
                 .claim("permisos", permisos)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    public Claims parseClaims(String token) {
+        return jwtParser.parseClaimsJws(token).getBody();
+    }
+
     public Long extractUsuarioId(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return extractUsuarioId(parseClaims(token));
+    }
+
+    public Long extractUsuarioId(Claims claims) {
         String subject = claims.getSubject();
         if (subject == null) {
             return null;
@@ -76,23 +85,16 @@ public class JwtService {
         return Long.parseLong(subject);
     }
 
-    @SuppressWarnings("unchecked")
     public List<String> extractPermissions(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return extractPermissions(parseClaims(token));
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<String> extractPermissions(Claims claims) {
         Object permisos = claims.get("permisos");
         if (permisos instanceof List) {
             return (List<String>) permisos;
         }
         return List.of();
     }
-
-    private Key getSigningKey() {
-        String secret = secretKey != null ? secretKey.trim() : "";
-        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
-    }
 }
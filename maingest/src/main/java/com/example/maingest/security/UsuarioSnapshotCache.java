@@ -0,0 +1,132 @@
+package com.example.maingest.security;
+
+import com.example.maingest.config.ReplicaRoutingDataSource;
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.repository.UsuarioRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copias cortas en memoria de los usuarios autenticados por JWT, para no consultar
+ * USUARIO en cada request. Cada llamada devuelve una instancia nueva (desacoplada),
+ * así que un controlador puede modificar su principal sin afectar a otros requests.
+ */
+@Component
+public class UsuarioSnapshotCache {
+
+    private final UsuarioRepository usuarioRepository;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<Long, Snapshot> snapshots;
+    private final AtomicLong generacion = new AtomicLong();
+
+    public UsuarioSnapshotCache(
+            UsuarioRepository usuarioRepository,
+            @Value("${app.jwt.usuario-cache.ttl-ms:30000}") long ttlMs,
+            @Value("${app.jwt.usuario-cache.max-entries:5000}") int maxEntries
+    ) {
+        this.usuarioRepository = usuarioRepository;
+        this.ttlNanos = Math.max(0, ttlMs) * 1_000_000L;
+        this.maxEntries = Math.max(16, maxEntries);
+        this.snapshots = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Snapshot> eldest) {
+                return size() > UsuarioSnapshotCache.this.maxEntries;
+            }
+        };
+    }
+
+    private record Snapshot(
+            Long id,
+            String correo,
+            String clave,
+            String nombre,
+            String estado,
+            String foto,
+            long expiraEn
+    ) {
+        Usuario toUsuario() {
+            Usuario usuario = new Usuario();
+            usuario.setId(id);
+            usuario.setCorreo(correo);
+            usuario.setClave(clave);
+            usuario.setNombre(nombre);
+            usuario.setEstado(estado);
+            usuario.setFoto(foto);
+            return usuario;
+        }
+    }
+
+    public Optional<Usuario> obtener(Long usuarioId) {
+        if (usuarioId == null) {
+            return Optional.empty();
+        }
+        long ahora = System.nanoTime();
+        Snapshot snapshot;
+        synchronized (snapshots) {
+            snapshot = snapshots.get(usuarioId);
+            if (snapshot != null && ahora - snapshot.expiraEn() >= 0) {
+                snapshots.remove(usuarioId);
+                snapshot = null;
+            }
+        }
+        if (snapshot != null) {
+            return Optional.of(snapshot.toUsuario());
+        }
+        long generacionInicial = generacion.get();
+        // Un usuario recién creado puede no haber llegado aún a la réplica
+        Optional<Usuario> usuarioOpt = ReplicaRoutingDataSource.enPrimario(() -> usuarioRepository.findById(usuarioId));
+        if (usuarioOpt.isEmpty() || ttlNanos == 0) {
+            return usuarioOpt;
+        }
+        Usuario usuario = usuarioOpt.get();
+        Snapshot nuevo = new Snapshot(
+                usuario.getId(),
+                usuario.getCorreo(),
+                usuario.getClave(),
+                usuario.getNombre(),
+                usuario.getEstado(),
+                usuario.getFoto(),
+                ahora + ttlNanos
+        );
+        synchronized (snapshots) {
+            // Si hubo una invalidación mientras se leía, no se guarda una fila posiblemente vieja
+            if (generacion.get() == generacionInicial) {
+                snapshots.put(usuarioId, nuevo);
+            }
+        }
+        return Optional.of(nuevo.toUsuario());
+    }
+
+    public void invalidar(Long usuarioId) {
+        if (usuarioId == null) {
+            return;
+        }
+        ejecutarAhoraYTrasCommit(() -> {
+            synchronized (snapshots) {
+                generacion.incrementAndGet();
+                snapshots.remove(usuarioId);
+            }
+        });
+    }
+
+    private void ejecutarAhoraYTrasCommit(Runnable accion) {
+        accion.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Otra petición pudo cachear la fila antes de que se confirmara el cambio
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    accion.run();
+                }
+            });
+        }
+    }
+}
@@ -4,7 +4,6 @@ import com.example.maingest.domain.Almacen;
 import com.example.maingest.domain.AlmacenUsuario;
 import com.example.maingest.domain.Empresa;
 import com.example.maingest.domain.EmpresaUsuario;
-import com.example.maingest.domain.Permiso;
 import com.example.maingest.domain.Rol;
 import com.example.maingest.domain.Usuario;
 import com.example.maingest.domain.UsuarioRol;
@@ -13,14 +12,14 @@ import com.example.maingest.repository.AlmacenRepository;
 import com.example.maingest.repository.AlmacenUsuarioRepository;
 import com.example.maingest.repository.EmpresaRepository;
 import com.example.maingest.repository.EmpresaUsuarioRepository;
-import com.example.maingest.repository.PermisoRepository;
 import com.example.maingest.repository.RolRepository;
 import com.example.maingest.repository.UsuarioRepository;
 import com.example.maingest.repository.UsuarioRolRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import jakarta.annotation.PostConstruct;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
@@ -36,6 +35,58 @@ public class AccessControlService {
         SUPER_ADMIN
     }
 
+    public record PermisoBase(String area, int codigo, String nombre) {
+    }
+
+    public static final List<PermisoBase> PERMISOS_BASE = List.of(
+            new PermisoBase("USUARIO", 1, "usuario.ver"),
+            new PermisoBase("USUARIO", 2, "usuario.crear"),
+            new PermisoBase("USUARIO", 3, "usuario.editar"),
+            new PermisoBase("USUARIO", 4, "usuario.eliminar"),
+            new PermisoBase("USUARIO", 5, "usuario.roles"),
+
+            new PermisoBase("EMPRESA", 1, "empresa.ver"),
+            new PermisoBase("EMPRESA", 2, "empresa.crear"),
+            new PermisoBase("EMPRESA", 3, "empresa.editar"),
+            new PermisoBase("EMPRESA", 4, "empresa.eliminar"),
+
+            new PermisoBase("ROL", 1, "rol.ver"),
+            new PermisoBase("ROL", 2, "rol.crear"),
+            new PermisoBase("ROL", 3, "rol.editar"),
+            new PermisoBase("ROL", 4, "rol.eliminar"),
+
+            new PermisoBase("ITEM", 1, "item.ver"),
+            new PermisoBase("ITEM", 2, "item.crear"),
+            new PermisoBase("ITEM", 3, "item.editar"),
+            new PermisoBase("ITEM", 4, "item.eliminar"),
+
+            new PermisoBase("ALMACEN", 1, "almacen.ver"),
+            new PermisoBase("ALMACEN", 2, "almacen.crear"),
+            new PermisoBase("ALMACEN", 3, "almacen.editar"),
+            new PermisoBase("ALMACEN", 4, "almacen.eliminar"),
+
+            new PermisoBase("ARMARIO", 1, "armario.ver"),
+            new PermisoBase("ARMARIO", 2, "armario.crear"),
+            new PermisoBase("ARMARIO", 3, "armario.editar"),
+            new PermisoBase("ARMARIO", 4, "armario.eliminar"),
+
+            new PermisoBase("REPISA", 1, "repisa.ver"),
+            new PermisoBase("REPISA", 2, "repisa.crear"),
+            new PermisoBase("REPISA", 3, "repisa.editar"),
+            new PermisoBase("REPISA", 4, "repisa.eliminar"),
+
+            new PermisoBase("REPORTE", 1, "reporte.ver"),
+            new PermisoBase("REPORTE", 2, "reporte.crear"),
+
+            new PermisoBase("PRODUCTO", 1, "producto.ver"),
+            new PermisoBase("PRODUCTO", 2, "producto.crear"),
+            new PermisoBase("PRODUCTO", 3, "producto.editar"),
+            new PermisoBase("PRODUCTO", 4, "producto.eliminar"),
+
+            new PermisoBase("KARDEX", 1, "kardex.ver"),
+            new PermisoBase("KARDEX", 2, "kardex.crear")
+    );
+
     private final UsuarioRepository usuarioRepository;
     private final UsuarioRolRepository usuarioRolRepository;
     private final EmpresaUsuarioRepository empresaUsuarioRepository;
@@ -43,7 +94,9 @@ public class AccessControlService {
     private final RolRepository rolRepository;
     private final EmpresaRepository empresaRepository;
     private final AlmacenRepository almacenRepository;
-    private final PermisoRepository permisoRepository;
+    private final PermissionCacheService permissionCacheService;
+    private final UsoEmpresaService usoEmpresaService;
+    private final JdbcTemplate jdbcTemplate;
 
     public AccessControlService(
             UsuarioRepository usuarioRepository,
@@ -53,7 +106,9 @@ public class AccessControlService {
             RolRepository rolRepository,
             EmpresaRepository empresaRepository,
             AlmacenRepository almacenRepository,
-            PermisoRepository permisoRepository
+            PermissionCacheService permissionCacheService,
+            UsoEmpresaService usoEmpresaService,
+            JdbcTemplate jdbcTemplate
     ) {
         this.usuarioRepository = usuarioRepository;
         this.usuarioRolRepository = usuarioRolRepository;
@@ -62,12 +117,9 @@ public class AccessControlService {
         this.rolRepository = rolRepository;
         this.empresaRepository = empresaRepository;
         this.almacenRepository = almacenRepository;
-        this.permisoRepository = permisoRepository;
-    }
-
-    @PostConstruct
-    public void initBasePermissions() {
-        ensureBasePermissions();
+        this.permissionCacheService = permissionCacheService;
+        this.usoEmpresaService = usoEmpresaService;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     public Optional<Usuario> findActor(Long actorId) {
@@ -126,70 +178,35 @@ public class AccessControlService {
                 usuarioRol.setUsuario(usuario);
                 usuarioRol.setRol(superRol);
                 usuarioRolRepository.save(usuarioRol);
+                permissionCacheService.invalidarUsuario(usuario.getId());
             }
         }
         ensureBasePermissions();
     }
 
-    private void ensureBasePermissions() {
-        ensurePermiso("USUARIO", 1, "usuario.ver");
-        ensurePermiso("USUARIO", 2, "usuario.crear");
-        ensurePermiso("USUARIO", 3, "usuario.editar");
-        ensurePermiso("USUARIO", 4, "usuario.eliminar");
-        ensurePermiso("USUARIO", 5, "usuario.roles");
-
-        ensurePermiso("EMPRESA", 1, "empresa.ver");
-        ensurePermiso("EMPRESA", 2, "empresa.crear");
-        ensurePermiso("EMPRESA", 3, "empresa.editar");
-        ensurePermiso("EMPRESA", 4, "empresa.eliminar");
-
-        ensurePermiso("ROL", 1, "rol.ver");
-        ensurePermiso("ROL", 2, "rol.crear");
-        ensurePermiso("ROL", 3, "rol.editar");
-        ensurePermiso("ROL", 4, "rol.eliminar");
-
-        ensurePermiso("ITEM", 1, "item.ver");
-        ensurePermiso("ITEM", 2, "item.crear");
-        ensurePermiso("ITEM", 3, "item.editar");
-        ensurePermiso("ITEM", 4, "item.eliminar");
-
-        ensurePermiso("ALMACEN", 1, "almacen.ver");
-        ensurePermiso("ALMACEN", 2, "almacen.crear");
-        ensurePermiso("ALMACEN", 3, "almacen.editar");
-        ensurePermiso("ALMACEN", 4, "almacen.eliminar");
-
-        ensurePermiso("ARMARIO", 1, "armario.ver");
-        ensurePermiso("ARMARIO", 2, "armario.crear");
-        ensurePermiso("ARMARIO", 3, "armario.editar");
-        ensurePermiso("ARMARIO", 4, "armario.eliminar");
-
-        ensurePermiso("REPISA", 1, "repisa.ver");
-        ensurePermiso("REPISA", 2, "repisa.crear");
-        ensurePermiso("REPISA", 3, "repisa.editar");
-        ensurePermiso("REPISA", 4, "repisa.eliminar");
-
-        ensurePermiso("REPORTE", 1, "reporte.ver");
-        ensurePermiso("REPORTE", 2, "reporte.crear");
-
-        ensurePermiso("PRODUCTO", 1, "producto.ver");
-        ensurePermiso("PRODUCTO", 2, "producto.crear");
-        ensurePermiso("PRODUCTO", 3, "producto.editar");
-        ensurePermiso("PRODUCTO", 4, "producto.eliminar");
-
-        ensurePermiso("KARDEX", 1, "kardex.ver");
-        ensurePermiso("KARDEX", 2, "kardex.crear");
-    }
-
-    private void ensurePermiso(String area, int codigo, String nombre) {
-        Optional<Permiso> existente = permisoRepository.findByAreaAndCodigo(area, codigo);
-        if (existente.isPresent()) {
-            return;
-        }
-        Permiso permiso = new Permiso();
-        permiso.setArea(area);
-        permiso.setCodigo(codigo);
-        permiso.setNombre(nombre);
-        permisoRepository.save(permiso);
+    /**
+     * Inserta en una sola sentencia los permisos base que falten (por área y código). Devuelve
+     * cuántos creó.
+     */
+    public int ensureBasePermissions() {
+        StringBuilder valores = new StringBuilder();
+        List<Object> args = new ArrayList<>(PERMISOS_BASE.size() * 3);
+        for (PermisoBase permiso : PERMISOS_BASE) {
+            valores.append(valores.isEmpty() ? "" : ", ").append("(?, ?, ?)");
+            args.add(permiso.area());
+            args.add(permiso.codigo());
+            args.add(permiso.nombre());
+        }
+        int creados = jdbcTemplate.update(
+                "INSERT INTO permiso (area, codigo, nombre) "
+                        + "SELECT v.area, v.codigo, v.nombre FROM (VALUES " + valores + ") AS v(area, codigo, nombre) "
+                        + "WHERE NOT EXISTS (SELECT 1 FROM permiso p WHERE p.area = v.area AND p.codigo = v.codigo) "
+                        + "ON CONFLICT (nombre) DO NOTHING",
+                args.toArray());
+        if (creados > 0) {
+            permissionCacheService.invalidarCatalogo();
+        }
+        return creados;
     }
 
     public RoleLevel highestGlobalRole(Usuario usuario) {
@@ -371,6 +388,8 @@ public class AccessControlService {
             almacenUsuarioRepository.deleteByAlmacenAndUsuario(almacen, usuario);
         }
         empresaUsuarioRepository.deleteByEmpresaAndUsuario(empresa, usuario);
+        permissionCacheService.invalidarUsuario(usuario.getId());
+        usoEmpresaService.invalidarUso(empresa.getId());
     }
 
     private RoleLevel maxLevel(RoleLevel a, RoleLevel b) {
@@ -2,21 +2,91 @@ package com.example.maingest.service;
 
 import com.example.maingest.domain.AuditoriaEvento;
 import com.example.maingest.domain.Usuario;
+import com.example.maingest.dto.CursorDtos.Cursor;
 import com.example.maingest.repository.AuditoriaEventoRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
 @Service
 public class AuditoriaService {
 
+    private static final String COLUMNAS =
+            "id, usuario_id, usuario_correo, accion, objeto_tipo, objeto_id, descripcion, detalles_json, creado_en";
+    // Debe coincidir con la configuración de busqueda_tsv en SchemaMigrationRunner
+    private static final String CONFIG_TEXTO = "spanish";
+
     private final AuditoriaEventoRepository auditoriaEventoRepository;
+    private final AuditoriaWriter auditoriaWriter;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private volatile Boolean busquedaTsv;
 
-    public AuditoriaService(AuditoriaEventoRepository auditoriaEventoRepository) {
+    public AuditoriaService(
+            AuditoriaEventoRepository auditoriaEventoRepository,
+            AuditoriaWriter auditoriaWriter,
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper
+    ) {
         this.auditoriaEventoRepository = auditoriaEventoRepository;
+        this.auditoriaWriter = auditoriaWriter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    public record EventoLote(String accion, String objetoTipo, Long objetoId, String descripcion) {
+    }
+
+    /**
+     * Filtros de búsqueda ya normalizados. detalles es un JSON que el evento debe contener
+     * (operador {@code @>}), p. ej. {@code {"planId": 3}}.
+     */
+    public record Filtros(String usuarioCorreo, String objetoTipo, String accion, String texto, String detalles) {
+    }
+
+    private record Condicion(String where, List<Object> args) {
+    }
+
+    public Filtros filtros(String usuarioCorreo, String objetoTipo, String accion, String texto, String detalles) {
+        String tipo = normalizar(objetoTipo);
+        String acc = normalizar(accion);
+        String det = normalizar(detalles);
+        if (det != null) {
+            JsonNode arbol;
+            try {
+                arbol = objectMapper.readTree(det);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("detalles debe ser un objeto JSON válido");
+            }
+            if (arbol == null || !arbol.isContainerNode()) {
+                throw new IllegalArgumentException("detalles debe ser un objeto JSON válido");
+            }
+            det = arbol.toString();
+        }
+        return new Filtros(
+                normalizar(usuarioCorreo),
+                tipo != null ? tipo.toUpperCase(Locale.ROOT) : null,
+                acc != null ? acc.toUpperCase(Locale.ROOT) : null,
+                normalizar(texto),
+                det
+        );
     }
 
     public void registrar(Usuario actor, String accion, String objetoTipo, Long objetoId, String descripcion, String detallesJson) {
@@ -30,25 +100,208 @@ public class AuditoriaService {
         evento.setObjetoTipo(objetoTipo);
         evento.setObjetoId(objetoId);
         evento.setDescripcion(descripcion);
-        evento.setDetallesJson(detallesJson);
+        evento.setDetallesJson(detallesComoJson(detallesJson));
         evento.setCreadoEn(Instant.now());
-        auditoriaEventoRepository.save(evento);
+        if (!auditoriaWriter.isRunning()) {
+            auditoriaEventoRepository.save(evento);
+            return;
+        }
+        encolarTrasCommit(List.of(evento));
     }
 
-    public Page<AuditoriaEvento> buscar(String usuarioCorreo, String objetoTipo, String accion, String texto, Pageable pageable) {
-        String correoParam = (usuarioCorreo != null && !usuarioCorreo.isBlank()) ? usuarioCorreo.trim() : null;
-        String tipoParam = (objetoTipo != null && !objetoTipo.isBlank()) ? objetoTipo.trim() : null;
-        String accionParam = (accion != null && !accion.isBlank()) ? accion.trim() : null;
-        String textoParam = (texto != null && !texto.isBlank()) ? texto.trim() : null;
-        return auditoriaEventoRepository.buscarConFiltros(correoParam, tipoParam, accionParam, textoParam, pageable);
+    /**
+     * Registra varios eventos del mismo actor. Con el writer asíncrono activo se escriben
+     * por lotes JDBC en segundo plano; si no, se guardan con saveAll.
+     */
+    public void registrarLote(Usuario actor, List<EventoLote> eventos) {
+        if (actor == null || eventos == null || eventos.isEmpty()) {
+            return;
+        }
+        Instant creadoEn = Instant.now();
+        List<AuditoriaEvento> entidades = new ArrayList<>(eventos.size());
+        for (EventoLote e : eventos) {
+            AuditoriaEvento evento = new AuditoriaEvento();
+            evento.setUsuarioId(actor.getId());
+            evento.setUsuarioCorreo(actor.getCorreo());
+            evento.setAccion(e.accion());
+            evento.setObjetoTipo(e.objetoTipo());
+            evento.setObjetoId(e.objetoId());
+            evento.setDescripcion(e.descripcion());
+            evento.setCreadoEn(creadoEn);
+            entidades.add(evento);
+        }
+        if (!auditoriaWriter.isRunning()) {
+            auditoriaEventoRepository.saveAll(entidades);
+            return;
+        }
+        encolarTrasCommit(entidades);
     }
 
-    public Page<AuditoriaEvento> buscarPorUsuarios(Set<Long> usuarioIds, String usuarioCorreo, String objetoTipo, String accion, String texto, Pageable pageable) {
-        String correoParam = (usuarioCorreo != null && !usuarioCorreo.isBlank()) ? usuarioCorreo.trim() : null;
-        String tipoParam = (objetoTipo != null && !objetoTipo.isBlank()) ? objetoTipo.trim() : null;
-        String accionParam = (accion != null && !accion.isBlank()) ? accion.trim() : null;
-        String textoParam = (texto != null && !texto.isBlank()) ? texto.trim() : null;
-        return auditoriaEventoRepository.buscarConFiltrosYUsuarios(usuarioIds, correoParam, tipoParam, accionParam, textoParam, pageable);
+    public AuditoriaWriter.Estadisticas estadisticas() {
+        return auditoriaWriter.estadisticas();
+    }
+
+    private void encolarTrasCommit(List<AuditoriaEvento> eventos) {
+        // Un evento de una transacción que se revierte no debe quedar auditado
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eventos.forEach(auditoriaWriter::encolar);
+                }
+            });
+            return;
+        }
+        eventos.forEach(auditoriaWriter::encolar);
+    }
+
+    /**
+     * Página por offset. usuarioIds null significa sin restricción de usuarios (super admin);
+     * el total solo se cuenta cuando la página no alcanza a deducirlo.
+     */
+    public Page<AuditoriaEvento> buscar(Set<Long> usuarioIds, Filtros filtros, Pageable pageable) {
+        Condicion condicion = condicion(usuarioIds, filtros);
+        List<Object> args = new ArrayList<>(condicion.args());
+        args.add(pageable.getPageSize());
+        args.add(pageable.getOffset());
+        List<AuditoriaEvento> contenido = jdbcTemplate.query(
+                "SELECT " + COLUMNAS + " FROM auditoria_evento" + condicion.where()
+                        + " ORDER BY creado_en DESC, id DESC LIMIT ? OFFSET ?",
+                this::mapear, args.toArray());
+        return PageableExecutionUtils.getPage(contenido, pageable, () -> contar(condicion));
+    }
+
+    /**
+     * Página por keyset: trae limite + 1 filas para que el llamador sepa si hay siguiente.
+     */
+    public List<AuditoriaEvento> buscarKeyset(Set<Long> usuarioIds, Filtros filtros, Cursor despues, int limite) {
+        Condicion condicion = condicion(usuarioIds, filtros);
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNAS).append(" FROM auditoria_evento")
+                .append(condicion.where());
+        List<Object> args = new ArrayList<>(condicion.args());
+        if (despues != null) {
+            sql.append(" AND (creado_en, id) < (?, ?)");
+            args.add(Timestamp.from(despues.fecha()));
+            args.add(despues.id());
+        }
+        sql.append(" ORDER BY creado_en DESC, id DESC LIMIT ?");
+        args.add(limite + 1);
+        return jdbcTemplate.query(sql.toString(), this::mapear, args.toArray());
     }
-}
 
+    public long contar(Set<Long> usuarioIds, Filtros filtros) {
+        return contar(condicion(usuarioIds, filtros));
+    }
+
+    private long contar(Condicion condicion) {
+        Long total = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM auditoria_evento" + condicion.where(), Long.class, condicion.args().toArray());
+        return total != null ? total : 0L;
+    }
+
+    /**
+     * Solo entran al WHERE los filtros presentes. accion y objetoTipo son igualdad exacta
+     * (idx_auditoria_accion, idx_auditoria_objeto_tipo), el correo es prefijo sobre
+     * lower(usuario_correo), el texto va contra busqueda_tsv y detalles por contención jsonb.
+     */
+    private Condicion condicion(Set<Long> usuarioIds, Filtros filtros) {
+        StringBuilder where = new StringBuilder(" WHERE TRUE");
+        List<Object> args = new ArrayList<>();
+        if (usuarioIds != null) {
+            if (usuarioIds.isEmpty()) {
+                where.append(" AND FALSE");
+            } else {
+                where.append(" AND usuario_id IN (")
+                        .append(String.join(", ", Collections.nCopies(usuarioIds.size(), "?")))
+                        .append(')');
+                args.addAll(usuarioIds);
+            }
+        }
+        if (filtros.usuarioCorreo() != null) {
+            where.append(" AND lower(usuario_correo) LIKE ?");
+            args.add(escaparLike(filtros.usuarioCorreo().toLowerCase(Locale.ROOT)) + "%");
+        }
+        if (filtros.objetoTipo() != null) {
+            where.append(" AND objeto_tipo = ?");
+            args.add(filtros.objetoTipo());
+        }
+        if (filtros.accion() != null) {
+            where.append(" AND accion = ?");
+            args.add(filtros.accion());
+        }
+        if (filtros.texto() != null) {
+            if (tieneBusquedaTsv()) {
+                where.append(" AND busqueda_tsv @@ websearch_to_tsquery('" + CONFIG_TEXTO + "', ?)");
+                args.add(filtros.texto());
+            } else {
+                where.append(" AND lower(descripcion) LIKE ?");
+                args.add("%" + escaparLike(filtros.texto().toLowerCase(Locale.ROOT)) + "%");
+            }
+        }
+        if (filtros.detalles() != null) {
+            where.append(" AND detalles_json @> CAST(? AS jsonb)");
+            args.add(filtros.detalles());
+        }
+        return new Condicion(where.toString(), args);
+    }
+
+    /**
+     * Si la migración no pudo crear busqueda_tsv (p. ej. PostgreSQL viejo) el texto
+     * cae a LIKE sobre la descripción.
+     */
+    private boolean tieneBusquedaTsv() {
+        Boolean tiene = busquedaTsv;
+        if (tiene == null) {
+            Integer columnas = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.columns "
+                            + "WHERE lower(table_name) = 'auditoria_evento' AND column_name = 'busqueda_tsv'",
+                    Integer.class);
+            tiene = columnas != null && columnas > 0;
+            busquedaTsv = tiene;
+        }
+        return tiene;
+    }
+
+    private AuditoriaEvento mapear(ResultSet rs, int fila) throws SQLException {
+        AuditoriaEvento evento = new AuditoriaEvento();
+        evento.setId(rs.getLong("id"));
+        evento.setUsuarioId(rs.getObject("usuario_id", Long.class));
+        evento.setUsuarioCorreo(rs.getString("usuario_correo"));
+        evento.setAccion(rs.getString("accion"));
+        evento.setObjetoTipo(rs.getString("objeto_tipo"));
+        evento.setObjetoId(rs.getObject("objeto_id", Long.class));
+        evento.setDescripcion(rs.getString("descripcion"));
+        evento.setDetallesJson(rs.getString("detalles_json"));
+        Timestamp creadoEn = rs.getTimestamp("creado_en");
+        evento.setCreadoEn(creadoEn != null ? creadoEn.toInstant() : null);
+        return evento;
+    }
+
+    /**
+     * Los detalles se guardan como jsonb: un texto que no es JSON se guarda como string JSON
+     * para que el INSERT por lotes no falle.
+     */
+    private String detallesComoJson(String detallesJson) {
+        if (detallesJson == null || detallesJson.isBlank()) {
+            return null;
+        }
+        try {
+            objectMapper.readTree(detallesJson);
+            return detallesJson;
+        } catch (JsonProcessingException e) {
+            try {
+                return objectMapper.writeValueAsString(detallesJson);
+            } catch (JsonProcessingException imposible) {
+                return null;
+            }
+        }
+    }
+
+    private static String escaparLike(String valor) {
+        return valor.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static String normalizar(String valor) {
+        return (valor != null && !valor.isBlank()) ? valor.trim() : null;
+    }
+}
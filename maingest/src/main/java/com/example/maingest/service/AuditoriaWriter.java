@@ -0,0 +1,556 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.AuditoriaEvento;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Escritor asíncrono de auditoría. Los eventos entran a una cola acotada (buffer circular)
+ * y un hilo propio los inserta por lotes JDBC, cada {@code flush-interval-ms} o al juntar
+ * {@code batch-size} eventos. Si la base no responde, el lote se guarda en un archivo
+ * NDJSON local que se reinserta cuando la base vuelve. Las líneas que no se pueden leer o que la
+ * base rechaza por sus datos pasan a {@code <archivo>.rechazado} para no frenar al resto.
+ */
+@Component
+public class AuditoriaWriter implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditoriaWriter.class);
+    private static final int LOTES_POR_PASADA = 20;
+
+    public enum PoliticaDesborde {
+        BLOQUEAR,
+        DESCARTAR
+    }
+
+    public record Estadisticas(
+            boolean asincrono,
+            int enCola,
+            int capacidad,
+            long encolados,
+            long escritos,
+            long descartados,
+            long enArchivo,
+            long flushes,
+            long ultimoFlushMs,
+            long maxFlushMs,
+            long promedioFlushMs,
+            long totalFlushMs,
+            long rechazados,
+            boolean archivoPendiente
+    ) {
+    }
+
+    private record LineaArchivo(
+            Long usuarioId,
+            String usuarioCorreo,
+            String accion,
+            String objetoTipo,
+            Long objetoId,
+            String descripcion,
+            String detallesJson,
+            long creadoEnMs
+    ) {
+    }
+
+    private record LineaLeida(long numero, String texto, AuditoriaEvento evento) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean asincrono;
+    private final int capacidad;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final long shutdownTimeoutMs;
+    private final PoliticaDesborde politica;
+    private final Path archivo;
+    private final BlockingQueue<AuditoriaEvento> cola;
+    private final Object archivoLock = new Object();
+
+    private final AtomicLong encolados = new AtomicLong();
+    private final AtomicLong escritos = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+    private final AtomicLong enArchivo = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushTotalMs = new AtomicLong();
+    private final AtomicLong ultimoFlushMs = new AtomicLong();
+    private final AtomicLong maxFlushMs = new AtomicLong();
+    private final AtomicLong rechazados = new AtomicLong();
+
+    private volatile boolean activo;
+    private volatile boolean archivoPendiente;
+    private volatile Thread worker;
+    private volatile String sqlInsert;
+    private volatile boolean detallesComoLargeObject;
+    private long proximoReintentoArchivo = System.nanoTime();
+
+    public AuditoriaWriter(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            @Value("${app.auditoria.async:true}") boolean asincrono,
+            @Value("${app.auditoria.queue-capacity:10000}") int capacidad,
+            @Value("${app.auditoria.batch-size:500}") int batchSize,
+            @Value("${app.auditoria.flush-interval-ms:200}") long flushIntervalMs,
+            @Value("${app.auditoria.offer-timeout-ms:50}") long offerTimeoutMs,
+            @Value("${app.auditoria.shutdown-timeout-ms:5000}") long shutdownTimeoutMs,
+            @Value("${app.auditoria.overflow:BLOQUEAR}") PoliticaDesborde politica,
+            @Value("${app.auditoria.fallback-file:auditoria-fallback.ndjson}") String archivo
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.asincrono = asincrono;
+        this.capacidad = Math.max(16, capacidad);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.offerTimeoutMs = Math.max(0, offerTimeoutMs);
+        this.shutdownTimeoutMs = Math.max(0, shutdownTimeoutMs);
+        this.politica = politica != null ? politica : PoliticaDesborde.BLOQUEAR;
+        this.archivo = Paths.get(archivo);
+        this.cola = new ArrayBlockingQueue<>(this.capacidad);
+    }
+
+    public boolean isAsincrono() {
+        return asincrono;
+    }
+
+    /**
+     * Encola un evento ya armado. Con la cola llena, BLOQUEAR espera {@code offer-timeout-ms}
+     * y luego manda el evento al archivo de respaldo; DESCARTAR lo cuenta como perdido.
+     */
+    public void encolar(AuditoriaEvento evento) {
+        if (evento == null) {
+            return;
+        }
+        encolados.incrementAndGet();
+        if (!activo) {
+            // Llegó tarde, con el writer ya detenido: queda en el archivo para el próximo arranque
+            archivar(List.of(evento));
+            return;
+        }
+        if (cola.offer(evento)) {
+            return;
+        }
+        if (politica == PoliticaDesborde.BLOQUEAR) {
+            try {
+                if (offerTimeoutMs > 0 && cola.offer(evento, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            archivar(List.of(evento));
+            return;
+        }
+        descartados.incrementAndGet();
+        log.warn("Auditoría: cola llena ({}), evento {} descartado", capacidad, evento.getAccion());
+    }
+
+    public Estadisticas estadisticas() {
+        long n = flushes.get();
+        return new Estadisticas(
+                asincrono,
+                cola.size(),
+                capacidad,
+                encolados.get(),
+                escritos.get(),
+                descartados.get(),
+                enArchivo.get(),
+                n,
+                ultimoFlushMs.get(),
+                maxFlushMs.get(),
+                n > 0 ? flushTotalMs.get() / n : 0,
+                flushTotalMs.get(),
+                rechazados.get(),
+                archivoPendiente
+        );
+    }
+
+    // --- Ciclo de vida ---
+
+    @Override
+    public void start() {
+        if (!asincrono || activo) {
+            return;
+        }
+        archivoPendiente = Files.exists(archivo) || Files.exists(archivoReinsertando());
+        activo = true;
+        Thread hilo = new Thread(this::ejecutar, "auditoria-writer");
+        hilo.setDaemon(true);
+        worker = hilo;
+        hilo.start();
+    }
+
+    @Override
+    public void stop() {
+        activo = false;
+        Thread hilo = worker;
+        if (hilo == null) {
+            return;
+        }
+        try {
+            hilo.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (hilo.isAlive()) {
+            hilo.interrupt();
+        }
+        List<AuditoriaEvento> restantes = new ArrayList<>();
+        cola.drainTo(restantes);
+        if (!restantes.isEmpty()) {
+            log.warn("Auditoría: {} eventos sin escribir al apagar, se guardan en {}", restantes.size(), archivo);
+            archivar(restantes);
+        }
+        worker = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return activo;
+    }
+
+    @Override
+    public int getPhase() {
+        // Se detiene después del servidor web, para drenar lo que dejaron los últimos requests
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void ejecutar() {
+        List<AuditoriaEvento> lote = new ArrayList<>(batchSize);
+        while (activo || !cola.isEmpty()) {
+            try {
+                AuditoriaEvento primero = cola.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (primero == null) {
+                    if (archivoPendiente && activo) {
+                        reinsertarArchivo();
+                    }
+                    continue;
+                }
+                lote.add(primero);
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (lote.size() < batchSize) {
+                    cola.drainTo(lote, batchSize - lote.size());
+                    long restante = limite - System.nanoTime();
+                    if (lote.size() >= batchSize || restante <= 0 || !activo) {
+                        break;
+                    }
+                    AuditoriaEvento siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+                    if (siguiente == null) {
+                        break;
+                    }
+                    lote.add(siguiente);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cola.drainTo(lote);
+                if (!lote.isEmpty()) {
+                    archivar(lote);
+                }
+                return;
+            }
+            escribir(lote);
+            lote.clear();
+        }
+    }
+
+    private void escribir(List<AuditoriaEvento> lote) {
+        long inicio = System.nanoTime();
+        try {
+            insertar(lote);
+        } catch (RuntimeException e) {
+            log.warn("Auditoría: no se pudo escribir un lote de {} eventos, se guarda en {}: {}",
+                    lote.size(), archivo, e.getMessage());
+            archivar(lote);
+            return;
+        }
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+        escritos.addAndGet(lote.size());
+        flushes.incrementAndGet();
+        flushTotalMs.addAndGet(ms);
+        ultimoFlushMs.set(ms);
+        maxFlushMs.accumulateAndGet(ms, Math::max);
+        if (archivoPendiente) {
+            reinsertarArchivo();
+        }
+    }
+
+    private void insertar(List<AuditoriaEvento> lote) {
+        String sql = sqlInsert();
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, lote, batchSize, this::bind));
+    }
+
+    private void bind(PreparedStatement ps, AuditoriaEvento evento) throws SQLException {
+        Instant creadoEn = evento.getCreadoEn() != null ? evento.getCreadoEn() : Instant.now();
+        ps.setObject(1, evento.getUsuarioId(), Types.BIGINT);
+        ps.setString(2, evento.getUsuarioCorreo());
+        ps.setString(3, evento.getAccion());
+        ps.setString(4, evento.getObjetoTipo());
+        ps.setObject(5, evento.getObjetoId(), Types.BIGINT);
+        ps.setString(6, evento.getDescripcion());
+        ps.setTimestamp(7, Timestamp.from(creadoEn));
+        ps.setString(8, evento.getDetallesJson());
+        if (detallesComoLargeObject) {
+            ps.setString(9, evento.getDetallesJson());
+        }
+    }
+
+    /**
+     * detalles_json es jsonb (SchemaMigrationRunner convierte la columna). Si la conversión
+     * no corrió y sigue siendo el oid del antiguo @Lob, el texto se guarda como large object
+     * desde el mismo INSERT.
+     */
+    private String sqlInsert() {
+        String sql = sqlInsert;
+        if (sql != null) {
+            return sql;
+        }
+        String tipo = jdbcTemplate.query(
+                "SELECT data_type FROM information_schema.columns "
+                        + "WHERE lower(table_name) = 'auditoria_evento' AND column_name = 'detalles_json'",
+                rs -> rs.next() ? rs.getString(1) : null);
+        boolean largeObject = "oid".equalsIgnoreCase(tipo);
+        String detalles;
+        if (largeObject) {
+            detalles = "CASE WHEN CAST(? AS text) IS NULL THEN NULL ELSE lo_from_bytea(0, convert_to(CAST(? AS text), 'UTF8')) END";
+        } else if ("jsonb".equalsIgnoreCase(tipo) || "json".equalsIgnoreCase(tipo)) {
+            detalles = "CAST(? AS " + tipo.toLowerCase() + ")";
+        } else {
+            detalles = "?";
+        }
+        detallesComoLargeObject = largeObject;
+        sql = "INSERT INTO auditoria_evento (usuario_id, usuario_correo, accion, objeto_tipo, objeto_id, descripcion, creado_en, detalles_json) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, " + detalles + ")";
+        sqlInsert = sql;
+        return sql;
+    }
+
+    // --- Archivo de respaldo ---
+
+    private void archivar(List<AuditoriaEvento> eventos) {
+        synchronized (archivoLock) {
+            try (BufferedWriter writer = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (AuditoriaEvento evento : eventos) {
+                    Instant creadoEn = evento.getCreadoEn() != null ? evento.getCreadoEn() : Instant.now();
+                    writer.write(objectMapper.writeValueAsString(new LineaArchivo(
+                            evento.getUsuarioId(),
+                            evento.getUsuarioCorreo(),
+                            evento.getAccion(),
+                            evento.getObjetoTipo(),
+                            evento.getObjetoId(),
+                            evento.getDescripcion(),
+                            evento.getDetallesJson(),
+                            creadoEn.toEpochMilli()
+                    )));
+                    writer.newLine();
+                }
+                enArchivo.addAndGet(eventos.size());
+                archivoPendiente = true;
+            } catch (IOException e) {
+                descartados.addAndGet(eventos.size());
+                log.error("Auditoría: no se pudo escribir el archivo de respaldo {}, {} eventos perdidos: {}",
+                        archivo, eventos.size(), e.getMessage());
+            }
+        }
+    }
+
+    private Path archivoReinsertando() {
+        return archivo.resolveSibling(archivo.getFileName() + ".reinsertando");
+    }
+
+    private Path archivoOffset() {
+        return archivo.resolveSibling(archivo.getFileName() + ".reinsertando.offset");
+    }
+
+    private Path archivoRechazado() {
+        return archivo.resolveSibling(archivo.getFileName() + ".rechazado");
+    }
+
+    /**
+     * Reinserta el .reinsertando leyéndolo línea a línea, en lotes de {@code batch-size} con un
+     * commit por lote. Tras cada commit se guarda en el .offset cuántas líneas ya quedaron en la
+     * base, así un fallo a la mitad retoma desde ahí sin duplicar lo ya insertado. Cada pasada
+     * procesa a lo sumo {@link #LOTES_POR_PASADA} lotes para no frenar el flush de la cola; el
+     * resto sigue en el próximo flush.
+     * <p>
+     * Una línea que no es JSON válido, o un lote que la base rechaza por sus datos, no detiene el
+     * archivo: el lote se parte hasta aislar las líneas culpables, que se copian tal cual al
+     * .rechazado, y el offset sigue de largo. Cualquier otro error (base caída) deja todo para el
+     * próximo intento.
+     */
+    private void reinsertarArchivo() {
+        long ahora = System.nanoTime();
+        if (ahora - proximoReintentoArchivo < 0) {
+            return;
+        }
+        proximoReintentoArchivo = ahora + TimeUnit.SECONDS.toNanos(5);
+        Path pendiente = archivoReinsertando();
+        Path offset = archivoOffset();
+        try {
+            synchronized (archivoLock) {
+                // Un .reinsertando que quedó de un intento previo se procesa antes de tomar el archivo actual
+                if (!Files.exists(pendiente)) {
+                    if (!Files.exists(archivo)) {
+                        archivoPendiente = false;
+                        return;
+                    }
+                    Files.deleteIfExists(offset);
+                    Files.move(archivo, pendiente, StandardCopyOption.ATOMIC_MOVE);
+                }
+                archivoPendiente = Files.exists(archivo);
+            }
+            long confirmadas = leerOffset(offset);
+            long leidas = 0;
+            long insertados = 0;
+            int lotes = 0;
+            List<LineaLeida> lote = new ArrayList<>(batchSize);
+            try (BufferedReader reader = Files.newBufferedReader(pendiente, StandardCharsets.UTF_8)) {
+                String linea;
+                while ((linea = reader.readLine()) != null) {
+                    leidas++;
+                    if (leidas <= confirmadas || linea.isBlank()) {
+                        continue;
+                    }
+                    LineaArchivo registro;
+                    try {
+                        registro = objectMapper.readValue(linea, LineaArchivo.class);
+                    } catch (JsonProcessingException e) {
+                        rechazar(leidas, linea, e.getOriginalMessage());
+                        continue;
+                    }
+                    lote.add(new LineaLeida(leidas, linea, aEvento(registro)));
+                    if (lote.size() >= batchSize) {
+                        insertados += insertarAislando(lote, offset);
+                        confirmadas = leidas;
+                        lote.clear();
+                        if (++lotes >= LOTES_POR_PASADA) {
+                            break;
+                        }
+                    }
+                }
+                if (linea == null && !lote.isEmpty()) {
+                    insertados += insertarAislando(lote, offset);
+                }
+                if (linea != null) {
+                    // Quedan líneas: seguir en el próximo flush sin esperar el intervalo de reintento
+                    escritos.addAndGet(insertados);
+                    archivoPendiente = true;
+                    proximoReintentoArchivo = System.nanoTime();
+                    log.info("Auditoría: {} eventos reinsertados desde {}, continúa desde la línea {}",
+                            insertados, pendiente, confirmadas + 1);
+                    return;
+                }
+            }
+            Files.delete(pendiente);
+            Files.deleteIfExists(offset);
+            escritos.addAndGet(insertados);
+            log.info("Auditoría: {} eventos reinsertados desde {}", insertados, archivo);
+        } catch (IOException | RuntimeException e) {
+            // Se reintenta en el próximo flush exitoso; la base puede seguir caída. Los lotes ya
+            // confirmados constan en el .offset y no se vuelven a insertar
+            archivoPendiente = true;
+            log.debug("Auditoría: reinserción desde {} pendiente: {}", pendiente, e.getMessage());
+        }
+    }
+
+    /**
+     * Inserta el lote con un commit. Si la base rechaza los datos (json inválido, columna
+     * obligatoria vacía) lo parte en mitades, en orden, hasta aislar las líneas que fallan solas.
+     * Cada tramo resuelto avanza el offset. Devuelve cuántos eventos quedaron en la base.
+     */
+    private long insertarAislando(List<LineaLeida> lote, Path offset) throws IOException {
+        try {
+            insertar(lote.stream().map(LineaLeida::evento).toList());
+        } catch (DataIntegrityViolationException e) {
+            if (lote.size() == 1) {
+                LineaLeida mala = lote.get(0);
+                rechazar(mala.numero(), mala.texto(), e.getMostSpecificCause().getMessage());
+                guardarOffset(offset, mala.numero());
+                return 0;
+            }
+            int mitad = lote.size() / 2;
+            return insertarAislando(lote.subList(0, mitad), offset)
+                    + insertarAislando(lote.subList(mitad, lote.size()), offset);
+        }
+        guardarOffset(offset, lote.get(lote.size() - 1).numero());
+        return lote.size();
+    }
+
+    private void rechazar(long numero, String linea, String motivo) throws IOException {
+        Path rechazado = archivoRechazado();
+        try (BufferedWriter writer = Files.newBufferedWriter(rechazado, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(linea);
+            writer.newLine();
+        }
+        rechazados.incrementAndGet();
+        log.warn("Auditoría: línea {} de {} rechazada, copiada a {}: {}",
+                numero, archivoReinsertando(), rechazado, motivo);
+    }
+
+    private AuditoriaEvento aEvento(LineaArchivo registro) {
+        AuditoriaEvento evento = new AuditoriaEvento();
+        evento.setUsuarioId(registro.usuarioId());
+        evento.setUsuarioCorreo(registro.usuarioCorreo());
+        evento.setAccion(registro.accion());
+        evento.setObjetoTipo(registro.objetoTipo());
+        evento.setObjetoId(registro.objetoId());
+        evento.setDescripcion(registro.descripcion());
+        evento.setDetallesJson(registro.detallesJson());
+        evento.setCreadoEn(Instant.ofEpochMilli(registro.creadoEnMs()));
+        return evento;
+    }
+
+    private long leerOffset(Path offset) throws IOException {
+        if (!Files.exists(offset)) {
+            return 0;
+        }
+        String texto = Files.readString(offset, StandardCharsets.UTF_8).trim();
+        try {
+            return texto.isEmpty() ? 0 : Long.parseLong(texto);
+        } catch (NumberFormatException e) {
+            throw new IOException("Offset de reinserción ilegible en " + offset + ": " + texto, e);
+        }
+    }
+
+    private void guardarOffset(Path offset, long lineas) throws IOException {
+        // Escritura atómica: un corte a mitad de escritura no deja un offset truncado
+        Path temporal = offset.resolveSibling(offset.getFileName() + ".tmp");
+        Files.writeString(temporal, Long.toString(lineas), StandardCharsets.UTF_8);
+        Files.move(temporal, offset, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
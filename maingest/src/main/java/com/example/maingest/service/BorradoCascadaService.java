@@ -0,0 +1,377 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.Empresa;
+import com.example.maingest.domain.EmpresaUsuario;
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.repository.EmpresaRepository;
+import com.example.maingest.repository.EmpresaUsuarioRepository;
+import com.example.maingest.repository.RolRepository;
+import com.example.maingest.security.UsuarioSnapshotCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Borrado en cascada por conjuntos de almacenes y empresas. En vez de cargar cada fila en el
+ * contexto de persistencia y borrarla una por una, se emiten pocos DELETE ... WHERE ... IN
+ * (subconsulta) en orden de dependencias.
+ * <p>
+ * Las tablas grandes (items, movimientos, fotos de saldo) se vacían primero en lotes de
+ * {@code app.borrado.lote} filas, cada lote en su propia transacción: así los locks y el WAL de
+ * cada commit quedan acotados. La estructura (repisas, armarios, almacenes, roles, la empresa)
+ * se borra al final en una sola transacción. Si algo falla a mitad, lo ya borrado eran hojas del
+ * mismo subárbol y repetir la operación la completa. Por eso no se debe llamar dentro de una
+ * transacción abierta. El borrado de almacén es la excepción: corre entero en una transacción
+ * (ver {@link #borrarAlmacen}).
+ */
+@Service
+public class BorradoCascadaService {
+
+    private static final Logger log = LoggerFactory.getLogger(BorradoCascadaService.class);
+
+    public enum EstrategiaUsuarios {
+        MOVE,
+        DETACH,
+        DELETE_USERS
+    }
+
+    /**
+     * Filas borradas (o movidas) por tabla, en el orden en que se tocaron.
+     */
+    public record Resultado(
+            Map<String, Long> filas,
+            long total,
+            long duracionMs
+    ) {
+    }
+
+    /**
+     * Borrado de empresa ya validado: miembros actuales y qué hacer con ellos.
+     */
+    public record PlanBorradoEmpresa(
+            Long empresaId,
+            List<Long> usuarioIds,
+            EstrategiaUsuarios estrategia,
+            Long nuevoEmpresaId,
+            Long nuevoRolId
+    ) {
+    }
+
+    private static final BiConsumer<Integer, String> SIN_AVANCE = (porcentaje, mensaje) -> {
+    };
+
+    private static final String REPISAS_DE_ALMACEN = "SELECT r.id FROM repisa r "
+            + "JOIN armario a ON a.id = r.armario_id WHERE a.almacen_id = ?";
+
+    private static final String REPISAS_DE_EMPRESA = "SELECT r.id FROM repisa r "
+            + "JOIN armario a ON a.id = r.armario_id "
+            + "JOIN almacen al ON al.id = a.almacen_id WHERE al.empresa_id = ?";
+
+    private static final String ALMACENES_DE_EMPRESA = "SELECT id FROM almacen WHERE empresa_id = ?";
+
+    private static final String ROLES_DE_EMPRESA = "SELECT id FROM rol WHERE empresa_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EmpresaRepository empresaRepository;
+    private final EmpresaUsuarioRepository empresaUsuarioRepository;
+    private final RolRepository rolRepository;
+    private final PermissionCacheService permissionCacheService;
+    private final UsuarioSnapshotCache usuarioSnapshotCache;
+    private final UsoEmpresaService usoEmpresaService;
+    private final CatalogoBusquedaService catalogoBusquedaService;
+    private final VersionRespuestaService versionRespuestaService;
+    private final int lote;
+    private final long pausaMs;
+
+    public BorradoCascadaService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            EmpresaRepository empresaRepository,
+            EmpresaUsuarioRepository empresaUsuarioRepository,
+            RolRepository rolRepository,
+            PermissionCacheService permissionCacheService,
+            UsuarioSnapshotCache usuarioSnapshotCache,
+            UsoEmpresaService usoEmpresaService,
+            CatalogoBusquedaService catalogoBusquedaService,
+            VersionRespuestaService versionRespuestaService,
+            @Value("${app.borrado.lote:5000}") int lote,
+            @Value("${app.borrado.pausa-ms:0}") long pausaMs
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.empresaRepository = empresaRepository;
+        this.empresaUsuarioRepository = empresaUsuarioRepository;
+        this.rolRepository = rolRepository;
+        this.permissionCacheService = permissionCacheService;
+        this.usuarioSnapshotCache = usuarioSnapshotCache;
+        this.usoEmpresaService = usoEmpresaService;
+        this.catalogoBusquedaService = catalogoBusquedaService;
+        this.versionRespuestaService = versionRespuestaService;
+        this.lote = Math.max(100, lote);
+        this.pausaMs = Math.max(0, pausaMs);
+    }
+
+    /**
+     * Borra un almacén con armarios, repisas, items y accesos. Si alguna repisa aparece en
+     * movimientos de inventario el almacén no se puede borrar (el kardex las referencia) y se
+     * lanza IllegalStateException antes de tocar nada.
+     * <p>
+     * A diferencia del borrado de empresa, todo corre en una transacción: el almacén y sus repisas
+     * se bloquean FOR UPDATE antes de verificar que no hay movimientos, y el lock se mantiene
+     * hasta el commit. Un movimiento concurrente espera y luego falla porque la repisa ya no
+     * existe; no puede quedar un kardex sobre items ya borrados. El orden de locks es el mismo
+     * que en InventarioService: repisas, después items y producto_saldo (el movimiento toma FOR KEY
+     * SHARE sobre sus repisas antes que nada), así ninguno de los dos espera al otro en círculo.
+     * Los items se siguen borrando con DELETE de {@code app.borrado.lote} filas.
+     */
+    public Resultado borrarAlmacen(Long almacenId) {
+        exigirSinTransaccion();
+        long inicio = System.nanoTime();
+        Map<String, Long> filas = new LinkedHashMap<>();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.queryForList("SELECT id FROM almacen WHERE id = ? FOR UPDATE", Long.class, almacenId);
+            jdbcTemplate.queryForList(REPISAS_DE_ALMACEN + " ORDER BY r.id FOR UPDATE OF r", Long.class, almacenId);
+            Boolean conMovimientos = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM movimiento_inventario m "
+                            + "WHERE m.repisa_origen_id IN (" + REPISAS_DE_ALMACEN + ") "
+                            + "OR m.repisa_destino_id IN (" + REPISAS_DE_ALMACEN + "))",
+                    Boolean.class, almacenId, almacenId);
+            if (Boolean.TRUE.equals(conMovimientos)) {
+                throw new IllegalStateException("El almacén tiene movimientos de inventario registrados");
+            }
+
+            // Los productos siguen existiendo: su total pierde lo que había en este almacén
+            jdbcTemplate.update("UPDATE producto_saldo s SET total = s.total - d.total FROM ("
+                    + "SELECT producto_id, sum(cantidad) AS total FROM item WHERE producto_id IS NOT NULL "
+                    + "AND repisa_id IN (" + REPISAS_DE_ALMACEN + ") GROUP BY producto_id) d "
+                    + "WHERE s.producto_id = d.producto_id", almacenId);
+            vaciarEnTransaccion(filas, "item", "SELECT id FROM item WHERE repisa_id IN (" + REPISAS_DE_ALMACEN + ")", almacenId);
+            vaciarEnTransaccion(filas, "saldo_diario", "SELECT id FROM saldo_diario "
+                    + "WHERE empresa_id = (SELECT empresa_id FROM almacen WHERE id = ?) "
+                    + "AND repisa_id IN (" + REPISAS_DE_ALMACEN + ")", almacenId, almacenId);
+            borrar(filas, "almacen_usuario", "DELETE FROM almacen_usuario WHERE almacen_id = ?", almacenId);
+            borrar(filas, "repisa", "DELETE FROM repisa WHERE armario_id IN (SELECT id FROM armario WHERE almacen_id = ?)", almacenId);
+            borrar(filas, "armario", "DELETE FROM armario WHERE almacen_id = ?", almacenId);
+            borrar(filas, "almacen", "DELETE FROM almacen WHERE id = ?", almacenId);
+        });
+        return resultado("almacén " + almacenId, filas, inicio);
+    }
+
+    /**
+     * Valida la estrategia para los miembros actuales de la empresa. Con miembros, MOVE exige
+     * {@code nuevoEmpresaId} distinto y existente (y {@code nuevoRolId} existente si viene);
+     * DETACH los desvincula y DELETE_USERS los borra junto con sus movimientos.
+     */
+    public PlanBorradoEmpresa planificarBorradoEmpresa(
+            Empresa empresa,
+            String usuariosStrategy,
+            Long nuevoEmpresaId,
+            Long nuevoRolId
+    ) {
+        Long empresaId = empresa.getId();
+        String strategy = usuariosStrategy != null ? usuariosStrategy.trim().toUpperCase(Locale.ROOT) : "";
+        List<Long> usuarioIds = empresaUsuarioRepository.findByEmpresa(empresa).stream()
+                .map(EmpresaUsuario::getUsuario)
+                .filter(Objects::nonNull)
+                .map(Usuario::getId)
+                .distinct()
+                .toList();
+        EstrategiaUsuarios estrategia = null;
+        if (!usuarioIds.isEmpty()) {
+            try {
+                estrategia = EstrategiaUsuarios.valueOf(strategy);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("usuariosStrategy debe ser MOVE, DETACH o DELETE_USERS");
+            }
+            if (estrategia == EstrategiaUsuarios.MOVE) {
+                if (nuevoEmpresaId == null || Objects.equals(nuevoEmpresaId, empresaId)
+                        || !empresaRepository.existsById(nuevoEmpresaId)) {
+                    throw new IllegalArgumentException("nuevoEmpresaId inválido");
+                }
+                if (nuevoRolId != null && !rolRepository.existsById(nuevoRolId)) {
+                    throw new IllegalArgumentException("nuevoRolId inválido");
+                }
+            }
+        }
+        return new PlanBorradoEmpresa(empresaId, usuarioIds, estrategia, nuevoEmpresaId, nuevoRolId);
+    }
+
+    /**
+     * Borra una empresa completa según el plan e invalida los caches afectados. {@code avance}
+     * recibe el porcentaje al terminar cada paso; si lanza una excepción (p. ej. cancelación)
+     * el borrado se detiene antes de la transacción final.
+     */
+    public Resultado borrarEmpresa(PlanBorradoEmpresa plan, BiConsumer<Integer, String> avance) {
+        exigirSinTransaccion();
+        BiConsumer<Integer, String> notificar = avance != null ? avance : SIN_AVANCE;
+        long inicio = System.nanoTime();
+        Map<String, Long> filas = new LinkedHashMap<>();
+        Long empresaId = plan.empresaId();
+        List<Long> usuarios = plan.usuarioIds() != null ? plan.usuarioIds() : Collections.emptyList();
+        EstrategiaUsuarios estrategia = plan.estrategia();
+        Long nuevoEmpresaId = plan.nuevoEmpresaId();
+        Long nuevoRolId = plan.nuevoRolId();
+        boolean borrarUsuarios = estrategia == EstrategiaUsuarios.DELETE_USERS && !usuarios.isEmpty();
+        int pasos = borrarUsuarios ? 6 : 5;
+
+        borrarPorLotes(filas, "item", "SELECT id FROM item WHERE repisa_id IN (" + REPISAS_DE_EMPRESA + ")", empresaId);
+        notificar.accept(100 / pasos, "Items de los almacenes borrados");
+        borrarPorLotes(filas, "item", "SELECT id FROM item WHERE producto_id IN "
+                + "(SELECT id FROM producto WHERE empresa_id = ?)", empresaId);
+        notificar.accept(200 / pasos, "Items de los productos borrados");
+        borrarPorLotes(filas, "movimiento_inventario", "SELECT id FROM movimiento_inventario WHERE empresa_id = ?", empresaId);
+        notificar.accept(300 / pasos, "Movimientos borrados");
+        borrarPorLotes(filas, "saldo_diario", "SELECT id FROM saldo_diario WHERE empresa_id = ?", empresaId);
+        notificar.accept(400 / pasos, "Fotos de saldo borradas");
+        if (borrarUsuarios) {
+            borrarPorLotes(filas, "movimiento_inventario", "SELECT id FROM movimiento_inventario WHERE usuario_id IN ("
+                    + marcadores(usuarios.size()) + ")", usuarios.toArray());
+            notificar.accept(500 / pasos, "Movimientos de los usuarios borrados");
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.queryForList("SELECT id FROM empresa WHERE id = ? FOR UPDATE", Long.class, empresaId);
+
+            if (estrategia == EstrategiaUsuarios.MOVE && !usuarios.isEmpty()) {
+                String sql = "UPDATE empresa_usuario SET empresa_id = ?, rol_id = ? "
+                        + "WHERE empresa_id = ? AND usuario_id IN (" + marcadores(usuarios.size()) + ")";
+                int n = jdbcTemplate.update(sql, ps -> {
+                    ps.setLong(1, nuevoEmpresaId);
+                    ps.setObject(2, nuevoRolId, Types.BIGINT);
+                    ps.setLong(3, empresaId);
+                    ligar(ps, 4, usuarios);
+                });
+                filas.merge("empresa_usuario (movidos)", (long) n, Long::sum);
+            }
+
+            borrar(filas, "empresa_suscripcion", "DELETE FROM empresa_suscripcion WHERE empresa_id = ?", empresaId);
+            borrar(filas, "pago_wompi", "DELETE FROM pago_wompi WHERE empresa_id = ?", empresaId);
+            borrar(filas, "movimiento_inventario", "DELETE FROM movimiento_inventario WHERE empresa_id = ?", empresaId);
+            borrar(filas, "item", "DELETE FROM item WHERE repisa_id IN (" + REPISAS_DE_EMPRESA + ")", empresaId);
+            borrar(filas, "almacen_usuario", "DELETE FROM almacen_usuario WHERE almacen_id IN (" + ALMACENES_DE_EMPRESA + ")", empresaId);
+            borrar(filas, "repisa", "DELETE FROM repisa WHERE id IN (" + REPISAS_DE_EMPRESA + ")", empresaId);
+            borrar(filas, "armario", "DELETE FROM armario WHERE almacen_id IN (" + ALMACENES_DE_EMPRESA + ")", empresaId);
+            borrar(filas, "almacen", "DELETE FROM almacen WHERE empresa_id = ?", empresaId);
+            borrar(filas, "item", "DELETE FROM item WHERE producto_id IN (SELECT id FROM producto WHERE empresa_id = ?)", empresaId);
+            borrar(filas, "producto_saldo", "DELETE FROM producto_saldo WHERE producto_id IN (SELECT id FROM producto WHERE empresa_id = ?)", empresaId);
+            borrar(filas, "producto", "DELETE FROM producto WHERE empresa_id = ?", empresaId);
+            borrar(filas, "saldo_diario", "DELETE FROM saldo_diario WHERE empresa_id = ?", empresaId);
+
+            if (borrarUsuarios) {
+                Object[] ids = usuarios.toArray();
+                String en = " IN (" + marcadores(usuarios.size()) + ")";
+                borrar(filas, "usuario_rol", "DELETE FROM usuario_rol WHERE usuario_id" + en, ids);
+                borrar(filas, "almacen_usuario", "DELETE FROM almacen_usuario WHERE usuario_id" + en, ids);
+                borrar(filas, "empresa_usuario", "DELETE FROM empresa_usuario WHERE usuario_id" + en, ids);
+                borrar(filas, "movimiento_inventario", "DELETE FROM movimiento_inventario WHERE usuario_id" + en, ids);
+                borrar(filas, "usuario", "DELETE FROM usuario WHERE id" + en, ids);
+            }
+
+            borrar(filas, "usuario_rol", "DELETE FROM usuario_rol WHERE rol_id IN (" + ROLES_DE_EMPRESA + ")", empresaId);
+            borrar(filas, "empresa_usuario", "DELETE FROM empresa_usuario WHERE rol_id IN (" + ROLES_DE_EMPRESA + ")", empresaId);
+            borrar(filas, "almacen_usuario", "DELETE FROM almacen_usuario WHERE rol_id IN (" + ROLES_DE_EMPRESA + ")", empresaId);
+            borrar(filas, "rol_permiso", "DELETE FROM rol_permiso WHERE rol_id IN (" + ROLES_DE_EMPRESA + ")", empresaId);
+            borrar(filas, "rol", "DELETE FROM rol WHERE empresa_id = ?", empresaId);
+            borrar(filas, "empresa_usuario", "DELETE FROM empresa_usuario WHERE empresa_id = ?", empresaId);
+            borrar(filas, "empresa", "DELETE FROM empresa WHERE id = ?", empresaId);
+        });
+
+        catalogoBusquedaService.invalidar(empresaId);
+        if (borrarUsuarios) {
+            for (Long usuarioId : usuarios) {
+                usuarioSnapshotCache.invalidar(usuarioId);
+            }
+        }
+        permissionCacheService.invalidarTodo();
+        usoEmpresaService.invalidarTodo();
+        versionRespuestaService.incrementarTodo();
+        notificar.accept(100, "Empresa borrada");
+        return resultado("empresa " + empresaId, filas, inicio);
+    }
+
+    private void borrarPorLotes(Map<String, Long> filas, String tabla, String ids, Object... args) {
+        String sql = "DELETE FROM " + tabla + " WHERE id IN (" + ids + " LIMIT " + lote + ")";
+        while (true) {
+            Integer n = transactionTemplate.execute(status -> jdbcTemplate.update(sql, args));
+            int borradas = n != null ? n : 0;
+            if (borradas > 0) {
+                filas.merge(tabla, (long) borradas, Long::sum);
+            }
+            if (borradas < lote) {
+                return;
+            }
+            if (pausaMs > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(pausaMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Borrado interrumpido", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Como {@link #borrarPorLotes} pero dentro de la transacción en curso: cada DELETE sigue
+     * acotado a {@code lote} filas, sin commits intermedios.
+     */
+    private void vaciarEnTransaccion(Map<String, Long> filas, String tabla, String ids, Object... args) {
+        String sql = "DELETE FROM " + tabla + " WHERE id IN (" + ids + " LIMIT " + lote + ")";
+        int borradas;
+        do {
+            borradas = jdbcTemplate.update(sql, args);
+            if (borradas > 0) {
+                filas.merge(tabla, (long) borradas, Long::sum);
+            }
+        } while (borradas >= lote);
+    }
+
+    private void borrar(Map<String, Long> filas, String tabla, String sql, Object... args) {
+        int n = jdbcTemplate.update(sql, args);
+        if (n > 0) {
+            filas.merge(tabla, (long) n, Long::sum);
+        }
+    }
+
+    private Resultado resultado(String objetivo, Map<String, Long> filas, long inicio) {
+        long total = filas.values().stream().mapToLong(Long::longValue).sum();
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+        log.info("Borrado en cascada de {}: {} filas en {} ms {}", objetivo, total, ms, filas);
+        return new Resultado(Collections.unmodifiableMap(filas), total, ms);
+    }
+
+    private static void exigirSinTransaccion() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("El borrado en cascada confirma por lotes y no puede correr dentro de otra transacción");
+        }
+    }
+
+    private static String marcadores(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    private static void ligar(PreparedStatement ps, int desde, List<Long> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            ps.setLong(desde + i, ids.get(i));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.Empresa;
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.repository.EmpresaRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.stereotype.Component;
+
+/**
+ * Borrado de una empresa completa (solo superadmin). El plan se valida al encolar y se vuelve a
+ * armar al ejecutar, por si cambiaron los miembros mientras esperaba en la cola.
+ */
+@Component
+public class BorradoEmpresaTrabajo implements TrabajoEjecutor {
+
+    public static final String TIPO = "BORRAR_EMPRESA";
+
+    private final BorradoCascadaService borradoCascadaService;
+    private final EmpresaRepository empresaRepository;
+    private final AccessControlService accessControlService;
+    private final ObjectMapper objectMapper;
+
+    public BorradoEmpresaTrabajo(
+            BorradoCascadaService borradoCascadaService,
+            EmpresaRepository empresaRepository,
+            AccessControlService accessControlService,
+            ObjectMapper objectMapper
+    ) {
+        this.borradoCascadaService = borradoCascadaService;
+        this.empresaRepository = empresaRepository;
+        this.accessControlService = accessControlService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String tipo() {
+        return TIPO;
+    }
+
+    @Override
+    public JsonNode validar(Usuario actor, JsonNode parametros) {
+        if (actor == null || !accessControlService.isSuperAdmin(actor)) {
+            throw new SecurityException("Solo un superadmin puede borrar empresas");
+        }
+        Long empresaId = idOpcional(parametros, "empresaId");
+        if (empresaId == null) {
+            throw new IllegalArgumentException("empresaId es obligatorio");
+        }
+        Empresa empresa = empresaRepository.findById(empresaId)
+                .orElseThrow(() -> new IllegalArgumentException("Empresa no encontrada"));
+        String strategy = parametros.hasNonNull("usuariosStrategy") ? parametros.get("usuariosStrategy").asText() : null;
+        Long nuevoEmpresaId = idOpcional(parametros, "nuevoEmpresaId");
+        Long nuevoRolId = idOpcional(parametros, "nuevoRolId");
+        borradoCascadaService.planificarBorradoEmpresa(empresa, strategy, nuevoEmpresaId, nuevoRolId);
+
+        ObjectNode normalizados = objectMapper.createObjectNode();
+        normalizados.put("empresaId", empresaId);
+        normalizados.put("empresaNombre", empresa.getNombre());
+        if (strategy != null) {
+            normalizados.put("usuariosStrategy", strategy.trim().toUpperCase());
+        }
+        if (nuevoEmpresaId != null) {
+            normalizados.put("nuevoEmpresaId", nuevoEmpresaId);
+        }
+        if (nuevoRolId != null) {
+            normalizados.put("nuevoRolId", nuevoRolId);
+        }
+        return normalizados;
+    }
+
+    @Override
+    public void ejecutar(TrabajoService.Contexto contexto) {
+        JsonNode parametros = contexto.parametros();
+        Empresa empresa = empresaRepository.findById(parametros.get("empresaId").asLong())
+                .orElseThrow(() -> new IllegalStateException("La empresa ya no existe"));
+        BorradoCascadaService.PlanBorradoEmpresa plan = borradoCascadaService.planificarBorradoEmpresa(
+                empresa,
+                parametros.hasNonNull("usuariosStrategy") ? parametros.get("usuariosStrategy").asText() : null,
+                idOpcional(parametros, "nuevoEmpresaId"),
+                idOpcional(parametros, "nuevoRolId"));
+        contexto.progreso(0, "Borrando empresa " + empresa.getNombre());
+        BorradoCascadaService.Resultado resultado = borradoCascadaService.borrarEmpresa(plan, contexto::progreso);
+        contexto.resultado(resultado);
+    }
+
+    private static Long idOpcional(JsonNode parametros, String campo) {
+        JsonNode valor = parametros.get(campo);
+        if (valor == null || valor.isNull()) {
+            return null;
+        }
+        if (!valor.canConvertToLong() && !valor.isTextual()) {
+            throw new IllegalArgumentException(campo + " inválido");
+        }
+        try {
+            return valor.isTextual() ? Long.valueOf(valor.asText().trim()) : valor.asLong();
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(campo + " inválido");
+        }
+    }
+}
@@ -0,0 +1,571 @@
+package com.example.maingest.service;
+
+import com.example.maingest.config.ReplicaRoutingDataSource;
+import com.example.maingest.domain.Producto;
+import com.example.maingest.repository.ProductoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Búsqueda de catálogo por empresa con un índice invertido de trigramas en memoria sobre
+ * sku, nombre y descripción. Los trigramas llevan relleno de inicio de palabra (como pg_trgm),
+ * así el mismo índice sirve para autocompletar por prefijo y para tolerar errores de tipeo.
+ * Mientras el índice de una empresa se construye, {@link #buscar} devuelve vacío y el llamador
+ * usa la búsqueda en base de datos (índices GIN de pg_trgm).
+ */
+@Service
+public class CatalogoBusquedaService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogoBusquedaService.class);
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern NO_ALFANUM = Pattern.compile("[^a-z0-9]+");
+    private static final int MAX_DESCRIPCION = 200;
+    private static final int MAX_TRIGRAMAS_CONSULTA = 100;
+    private static final int MAX_MEMORIAS = 8;
+
+    public record Sugerencia(Long id, String sku, String nombre) {
+    }
+
+    /**
+     * Ids ordenados por relevancia (como mucho {@code limite}) y total de coincidencias.
+     */
+    public record Resultado(List<Long> ids, List<Sugerencia> sugerencias, int total) {
+    }
+
+    private final ProductoRepository productoRepository;
+    private final int maxEmpresas;
+    private final double similitudMinima;
+    private final Map<Long, Indice> indices;
+    private final Map<Long, List<Cambio>> enConstruccion = new HashMap<>();
+    private final ExecutorService constructor;
+
+    public CatalogoBusquedaService(
+            ProductoRepository productoRepository,
+            @Value("${app.productos.busqueda.max-empresas:50}") int maxEmpresas,
+            @Value("${app.productos.busqueda.similitud-minima:0.5}") double similitudMinima
+    ) {
+        this.productoRepository = productoRepository;
+        this.maxEmpresas = Math.max(1, maxEmpresas);
+        this.similitudMinima = Math.min(1.0, Math.max(0.1, similitudMinima));
+        this.indices = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Indice> eldest) {
+                return size() > CatalogoBusquedaService.this.maxEmpresas;
+            }
+        };
+        this.constructor = Executors.newSingleThreadExecutor(r -> {
+            Thread hilo = new Thread(r, "catalogo-indice");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    /**
+     * Top-k de la empresa para {@code consulta}, o vacío si el índice todavía no está listo
+     * (en ese caso se agenda su construcción).
+     */
+    public Optional<Resultado> buscar(Long empresaId, String consulta, int limite) {
+        Indice indice;
+        synchronized (indices) {
+            indice = indices.get(empresaId);
+            if (indice == null) {
+                agendarConstruccion(empresaId);
+                return Optional.empty();
+            }
+        }
+        return Optional.of(indice.buscar(normalizar(consulta), Math.max(1, limite), similitudMinima));
+    }
+
+    public void indexar(Producto producto) {
+        if (producto == null || producto.getId() == null || producto.getEmpresa() == null) {
+            return;
+        }
+        Cambio cambio = new Cambio(producto.getId(), producto.getSku(), producto.getNombre(), producto.getDescripcion());
+        Long empresaId = producto.getEmpresa().getId();
+        trasCommit(() -> aplicar(empresaId, cambio));
+    }
+
+    public void eliminar(Long empresaId, Long productoId) {
+        if (empresaId == null || productoId == null) {
+            return;
+        }
+        trasCommit(() -> aplicar(empresaId, new Cambio(productoId, null, null, null)));
+    }
+
+    public void invalidar(Long empresaId) {
+        if (empresaId == null) {
+            return;
+        }
+        trasCommit(() -> {
+            synchronized (indices) {
+                indices.remove(empresaId);
+            }
+        });
+    }
+
+    public void invalidarTodo() {
+        trasCommit(() -> {
+            synchronized (indices) {
+                indices.clear();
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        constructor.shutdownNow();
+    }
+
+    private void aplicar(Long empresaId, Cambio cambio) {
+        Indice indice;
+        synchronized (indices) {
+            List<Cambio> pendientes = enConstruccion.get(empresaId);
+            if (pendientes != null) {
+                pendientes.add(cambio);
+                return;
+            }
+            indice = indices.get(empresaId);
+        }
+        if (indice != null) {
+            indice.aplicar(cambio);
+        }
+    }
+
+    private void agendarConstruccion(Long empresaId) {
+        if (enConstruccion.containsKey(empresaId)) {
+            return;
+        }
+        enConstruccion.put(empresaId, new ArrayList<>());
+        constructor.execute(() -> construir(empresaId));
+    }
+
+    private void construir(Long empresaId) {
+        long inicio = System.nanoTime();
+        try {
+            // Las altas posteriores llegan por la lista de pendientes; una réplica atrasada perdería las anteriores
+            List<ProductoRepository.ProductoIndexable> filas = ReplicaRoutingDataSource.enPrimario(
+                    () -> productoRepository.findIndexablesByEmpresaId(empresaId));
+            Indice indice = new Indice(filas.size());
+            for (ProductoRepository.ProductoIndexable fila : filas) {
+                indice.aplicar(new Cambio(fila.getId(), fila.getSku(), fila.getNombre(), fila.getDescripcion()));
+            }
+            synchronized (indices) {
+                // Los cambios confirmados durante la carga se aplican encima: upsert/borrado son idempotentes
+                List<Cambio> pendientes = enConstruccion.remove(empresaId);
+                if (pendientes != null) {
+                    pendientes.forEach(indice::aplicar);
+                }
+                indices.put(empresaId, indice);
+            }
+            log.info("Catálogo: índice de empresa {} construido ({} productos, {} ms)",
+                    empresaId, filas.size(), (System.nanoTime() - inicio) / 1_000_000);
+        } catch (RuntimeException e) {
+            synchronized (indices) {
+                enConstruccion.remove(empresaId);
+            }
+            log.warn("Catálogo: no se pudo construir el índice de empresa {}: {}", empresaId, e.getMessage());
+        }
+    }
+
+    static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String sinTildes = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return NO_ALFANUM.matcher(sinTildes.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    /**
+     * Trigramas de cada palabra con dos espacios al inicio y uno al final. Con {@code prefijo},
+     * la última palabra no cierra: "lap" también coincide con "laptop".
+     */
+    static long[] trigramas(String normalizado, boolean prefijo) {
+        if (normalizado.isEmpty()) {
+            return new long[0];
+        }
+        String[] palabras = normalizado.split(" ");
+        long[] buffer = new long[normalizado.length() * 3 + 3 * palabras.length];
+        int n = 0;
+        for (int p = 0; p < palabras.length; p++) {
+            boolean abierta = prefijo && p == palabras.length - 1;
+            String w = "  " + palabras[p] + (abierta ? "" : " ");
+            for (int i = 0; i + 3 <= w.length(); i++) {
+                buffer[n++] = ((long) w.charAt(i) << 32) | ((long) w.charAt(i + 1) << 16) | w.charAt(i + 2);
+            }
+        }
+        long[] unicos = Arrays.copyOf(buffer, n);
+        Arrays.sort(unicos);
+        int m = 0;
+        for (int i = 0; i < unicos.length; i++) {
+            if (i == 0 || unicos[i] != unicos[i - 1]) {
+                unicos[m++] = unicos[i];
+            }
+        }
+        return Arrays.copyOf(unicos, m);
+    }
+
+    private void trasCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+            return;
+        }
+        accion.run();
+    }
+
+    /**
+     * Alta o actualización si trae sku/nombre; baja si ambos son null.
+     */
+    private record Cambio(Long id, String sku, String nombre, String descripcion) {
+
+        boolean esBaja() {
+            return sku == null && nombre == null;
+        }
+    }
+
+    /**
+     * Índice de una empresa. Los documentos se agregan al final; una actualización marca el
+     * ordinal viejo como muerto y agrega uno nuevo, y el índice se compacta cuando los muertos
+     * superan un cuarto del total.
+     */
+    private static final class Indice {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // Buffers de conteo reutilizados entre consultas: con 500k productos son ~3 MB por consulta
+        private final BlockingQueue<Memoria> memorias = new ArrayBlockingQueue<>(MAX_MEMORIAS);
+        private Map<Long, Postings> postings = new HashMap<>();
+        private final Map<Long, Integer> ordinalPorId = new HashMap<>();
+        private long[] ids;
+        private String[] skus;
+        private String[] nombres;
+        private String[] skusNorm;
+        private String[] nombresNorm;
+        private String[] descripciones;
+        // Largo del nombre y hash del sku normalizados: acotan el puntaje sin leer los String
+        private int[] largosNombre;
+        private int[] hashesSku;
+        private final BitSet vivos = new BitSet();
+        private int tamanio;
+        private int muertos;
+
+        Indice(int capacidad) {
+            int inicial = Math.max(16, capacidad + capacidad / 8);
+            ids = new long[inicial];
+            skus = new String[inicial];
+            nombres = new String[inicial];
+            skusNorm = new String[inicial];
+            nombresNorm = new String[inicial];
+            descripciones = new String[inicial];
+            largosNombre = new int[inicial];
+            hashesSku = new int[inicial];
+        }
+
+        void aplicar(Cambio cambio) {
+            lock.writeLock().lock();
+            try {
+                Integer anterior = ordinalPorId.remove(cambio.id());
+                if (anterior != null) {
+                    vivos.clear(anterior);
+                    muertos++;
+                }
+                if (!cambio.esBaja()) {
+                    agregar(cambio);
+                }
+                if (muertos > 1024 && muertos * 4 > tamanio) {
+                    compactar();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void agregar(Cambio cambio) {
+            if (tamanio == ids.length) {
+                int nueva = ids.length * 2;
+                ids = Arrays.copyOf(ids, nueva);
+                skus = Arrays.copyOf(skus, nueva);
+                nombres = Arrays.copyOf(nombres, nueva);
+                skusNorm = Arrays.copyOf(skusNorm, nueva);
+                nombresNorm = Arrays.copyOf(nombresNorm, nueva);
+                descripciones = Arrays.copyOf(descripciones, nueva);
+                largosNombre = Arrays.copyOf(largosNombre, nueva);
+                hashesSku = Arrays.copyOf(hashesSku, nueva);
+            }
+            int ordinal = tamanio++;
+            String skuNorm = normalizar(cambio.sku());
+            String nombreNorm = normalizar(cambio.nombre());
+            String descripcion = cambio.descripcion() != null && cambio.descripcion().length() > MAX_DESCRIPCION
+                    ? cambio.descripcion().substring(0, MAX_DESCRIPCION)
+                    : cambio.descripcion();
+            ids[ordinal] = cambio.id();
+            skus[ordinal] = cambio.sku();
+            nombres[ordinal] = cambio.nombre();
+            skusNorm[ordinal] = skuNorm;
+            nombresNorm[ordinal] = nombreNorm;
+            descripciones[ordinal] = descripcion;
+            largosNombre[ordinal] = nombreNorm.length();
+            hashesSku[ordinal] = skuNorm.hashCode();
+            vivos.set(ordinal);
+            ordinalPorId.put(cambio.id(), ordinal);
+
+            String texto = (skuNorm + " " + nombreNorm + " " + normalizar(descripcion)).trim();
+            for (long trigrama : trigramas(texto, false)) {
+                postings.computeIfAbsent(trigrama, t -> new Postings()).agregar(ordinal);
+            }
+        }
+
+        private void compactar() {
+            long[] idsViejos = ids;
+            String[] skusViejos = skus;
+            String[] nombresViejos = nombres;
+            String[] descripcionesViejas = descripciones;
+            int tamanioViejo = tamanio;
+            BitSet vivosViejos = (BitSet) vivos.clone();
+
+            postings = new HashMap<>();
+            ordinalPorId.clear();
+            vivos.clear();
+            tamanio = 0;
+            muertos = 0;
+            int capacidad = Math.max(16, vivosViejos.cardinality() + vivosViejos.cardinality() / 8);
+            ids = new long[capacidad];
+            skus = new String[capacidad];
+            nombres = new String[capacidad];
+            skusNorm = new String[capacidad];
+            nombresNorm = new String[capacidad];
+            descripciones = new String[capacidad];
+            largosNombre = new int[capacidad];
+            hashesSku = new int[capacidad];
+            for (int i = vivosViejos.nextSetBit(0); i >= 0 && i < tamanioViejo; i = vivosViejos.nextSetBit(i + 1)) {
+                agregar(new Cambio(idsViejos[i], skusViejos[i], nombresViejos[i], descripcionesViejas[i]));
+            }
+        }
+
+        Resultado buscar(String consulta, int limite, double similitudMinima) {
+            long[] trigramasConsulta = trigramas(consulta, true);
+            if (trigramasConsulta.length == 0) {
+                return new Resultado(List.of(), List.of(), 0);
+            }
+            lock.readLock().lock();
+            try {
+                // Los trigramas presentes en más de un cuarto del catálogo ("prd", "  p") casi no
+                // discriminan y son los más caros de recorrer: no se cuentan, salvo que no haya otros
+                List<Postings> listas = new ArrayList<>(trigramasConsulta.length);
+                Postings masCorta = null;
+                int frecuente = Math.max(1024, tamanio / 4);
+                int ausentes = 0;
+                for (long trigrama : trigramasConsulta) {
+                    if (listas.size() + ausentes >= MAX_TRIGRAMAS_CONSULTA) {
+                        break;
+                    }
+                    Postings lista = postings.get(trigrama);
+                    if (lista == null) {
+                        ausentes++;
+                    } else if (lista.tamanio <= frecuente) {
+                        listas.add(lista);
+                    } else if (masCorta == null || lista.tamanio < masCorta.tamanio) {
+                        masCorta = lista;
+                    }
+                }
+                if (listas.isEmpty() && masCorta != null) {
+                    listas.add(masCorta);
+                }
+                int contados = listas.size() + ausentes;
+                if (listas.isEmpty()) {
+                    return new Resultado(List.of(), List.of(), 0);
+                }
+
+                // byte alcanza: una consulta tiene como mucho MAX_TRIGRAMAS_CONSULTA trigramas contados
+                Memoria memoria = memorias.poll();
+                if (memoria == null || memoria.aciertos.length < tamanio) {
+                    memoria = new Memoria(tamanio + tamanio / 8);
+                }
+                byte[] aciertos = memoria.aciertos;
+                int nTocados = 0;
+                try {
+                    int[] tocados = memoria.tocados;
+                    for (Postings lista : listas) {
+                        for (int i = 0; i < lista.tamanio; i++) {
+                            int ordinal = lista.ordinales[i];
+                            if (aciertos[ordinal]++ == 0) {
+                                if (nTocados == tocados.length) {
+                                    tocados = Arrays.copyOf(tocados, Math.min(tamanio, tocados.length * 2));
+                                    memoria.tocados = tocados;
+                                }
+                                tocados[nTocados++] = ordinal;
+                            }
+                        }
+                    }
+                    return seleccionar(consulta, limite, similitudMinima, listas.size(), contados,
+                            aciertos, tocados, nTocados, memoria);
+                } finally {
+                    // La memoria vuelve al pool limpia: solo se tocaron estas posiciones
+                    int[] tocados = memoria.tocados;
+                    for (int t = 0; t < nTocados; t++) {
+                        aciertos[tocados[t]] = 0;
+                    }
+                    memorias.offer(memoria);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private Resultado seleccionar(
+                String consulta, int limite, double similitudMinima, int completos, int contados,
+                byte[] aciertos, int[] tocados, int nTocados, Memoria memoria
+        ) {
+            // Candidatos agrupados por cantidad de aciertos (orden por conteo, de mayor a menor)
+            int minimo = Math.max(1, (int) Math.ceil(contados * similitudMinima));
+            int[] porAciertos = new int[completos + 2];
+            int total = 0;
+            for (int t = 0; t < nTocados; t++) {
+                int ordinal = tocados[t];
+                if (aciertos[ordinal] >= minimo && vivos.get(ordinal)) {
+                    porAciertos[aciertos[ordinal]]++;
+                    total++;
+                }
+            }
+            int[] inicioGrupo = new int[porAciertos.length];
+            for (int h = porAciertos.length - 2, acumulado = 0; h >= minimo; h--) {
+                inicioGrupo[h] = acumulado;
+                acumulado += porAciertos[h];
+            }
+            if (memoria.candidatos.length < total) {
+                memoria.candidatos = new int[Math.min(tamanio, Math.max(total, memoria.candidatos.length * 2))];
+            }
+            int[] candidatos = memoria.candidatos;
+            int[] llenado = inicioGrupo.clone();
+            for (int t = 0; t < nTocados; t++) {
+                int ordinal = tocados[t];
+                int hits = aciertos[ordinal];
+                if (hits >= minimo && vivos.get(ordinal)) {
+                    candidatos[llenado[hits]++] = ordinal;
+                }
+            }
+
+            PriorityQueue<Candidato> top = new PriorityQueue<>(limite + 1, Candidato.PEOR_PRIMERO);
+            int hashConsulta = consulta.hashCode();
+            for (int h = porAciertos.length - 2; h >= minimo; h--) {
+                double techo = (double) h / contados;
+                // Sin coincidencia completa no hay bono: si el grupo no puede superar al peor del top, se corta
+                if (h < completos && top.size() >= limite && top.peek().puntaje() >= techo) {
+                    break;
+                }
+                for (int c = inicioGrupo[h], fin = inicioGrupo[h] + porAciertos[h]; c < fin; c++) {
+                    int ordinal = candidatos[c];
+                    double penalizacion = largosNombre[ordinal] / 10_000.0;
+                    if (top.size() >= limite) {
+                        // Con el top lleno, primero la cota: el bono 2 solo es posible si coincide el hash del sku
+                        double cota = (h == completos ? techo + (hashesSku[ordinal] == hashConsulta ? 2.0 : 1.0) : techo)
+                                - penalizacion;
+                        if (cota <= top.peek().puntaje()) {
+                            continue;
+                        }
+                    }
+                    double puntaje = (h == completos ? techo + bono(ordinal, consulta) : techo) - penalizacion;
+                    if (top.size() >= limite && puntaje <= top.peek().puntaje()) {
+                        continue;
+                    }
+                    top.offer(new Candidato(ordinal, puntaje));
+                    if (top.size() > limite) {
+                        top.poll();
+                    }
+                }
+            }
+
+            List<Candidato> ordenados = new ArrayList<>(top);
+            ordenados.sort(Candidato.ORDEN);
+            List<Long> idsResultado = new ArrayList<>(ordenados.size());
+            List<Sugerencia> sugerencias = new ArrayList<>(ordenados.size());
+            for (Candidato c : ordenados) {
+                idsResultado.add(ids[c.ordinal()]);
+                sugerencias.add(new Sugerencia(ids[c.ordinal()], skus[c.ordinal()], nombres[c.ordinal()]));
+            }
+            return new Resultado(idsResultado, sugerencias, total);
+        }
+
+        /**
+         * Bono para los candidatos con todos los trigramas: sku exacto, prefijo o subcadena.
+         */
+        private double bono(int ordinal, String consulta) {
+            String sku = skusNorm[ordinal];
+            String nombre = nombresNorm[ordinal];
+            if (sku.equals(consulta)) {
+                return 2.0;
+            }
+            if (sku.startsWith(consulta) || nombre.startsWith(consulta)) {
+                return 1.0;
+            }
+            if (nombre.contains(consulta) || sku.contains(consulta)) {
+                return 0.5;
+            }
+            return 0.0;
+        }
+    }
+
+    private record Candidato(int ordinal, double puntaje) {
+
+        static final Comparator<Candidato> ORDEN = Comparator.comparingDouble(Candidato::puntaje).reversed()
+                .thenComparingInt(Candidato::ordinal);
+
+        // Inverso de ORDEN sin comparadores encadenados: es el del heap del top-k, el que más se llama
+        static final Comparator<Candidato> PEOR_PRIMERO = (a, b) -> a.puntaje() != b.puntaje()
+                ? Double.compare(a.puntaje(), b.puntaje())
+                : Integer.compare(b.ordinal(), a.ordinal());
+    }
+
+    private static final class Memoria {
+
+        private final byte[] aciertos;
+        private int[] tocados;
+        private int[] candidatos;
+
+        Memoria(int capacidad) {
+            aciertos = new byte[capacidad];
+            tocados = new int[Math.min(capacidad, 1 << 16)];
+            candidatos = new int[Math.min(capacidad, 1 << 12)];
+        }
+    }
+
+    private static final class Postings {
+
+        private int[] ordinales = new int[4];
+        private int tamanio;
+
+        void agregar(int ordinal) {
+            if (tamanio == ordinales.length) {
+                ordinales = Arrays.copyOf(ordinales, tamanio * 2);
+            }
+            ordinales[tamanio++] = ordinal;
+        }
+    }
+}
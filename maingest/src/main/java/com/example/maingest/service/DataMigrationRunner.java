@@ -1,121 +1,399 @@
 package com.example.maingest.service;
 
-import com.example.maingest.domain.Almacen;
-import com.example.maingest.domain.Armario;
-import com.example.maingest.domain.Empresa;
-import com.example.maingest.domain.EstadoStock;
-import com.example.maingest.domain.Item;
-import com.example.maingest.domain.Producto;
-import com.example.maingest.domain.Repisa;
-import com.example.maingest.domain.UnidadMedida;
-import com.example.maingest.repository.ItemRepository;
-import com.example.maingest.repository.ProductoRepository;
+import com.example.maingest.domain.Usuario;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.annotation.Order;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Migración Item→Producto: asigna a cada item sin producto uno de su empresa con el mismo
+ * nombre (sin mayúsculas ni espacios extremos), creándolo si no existe.
+ * <p>
+ * Al arrancar solo lee la fila de MIGRACION_CHECKPOINT; si la migración no consta como
+ * terminada, la encola como trabajo del sistema. El trabajo reparte las empresas con items
+ * pendientes entre {@code app.migracion.workers} hilos. Cada empresa carga sus productos con
+ * una consulta y recorre sus items por id en lotes de {@code app.migracion.lote}. Cada lote se
+ * confirma junto con su checkpoint, así que una caída retoma desde el último lote confirmado.
+ * Los items legados de un mismo producto en una repisa se fusionan en un solo slot.
+ * Un superadmin puede relanzarla desde /api/jobs con {@code {"reiniciar": true}}.
+ */
 @Component
 @Order(100)
-public class DataMigrationRunner implements CommandLineRunner {
+public class DataMigrationRunner implements CommandLineRunner, TrabajoEjecutor {
 
     private static final Logger log = LoggerFactory.getLogger(DataMigrationRunner.class);
 
-    private final ItemRepository itemRepository;
-    private final ProductoRepository productoRepository;
+    public static final String TIPO = "MIGRAR_ITEMS_PRODUCTOS";
+    private static final String CLAVE = "items-productos";
+
+    private static final String DESDE_ITEM_EMPRESA = """
+            FROM item i
+            JOIN repisa r ON r.id = i.repisa_id
+            JOIN armario ar ON ar.id = r.armario_id
+            JOIN almacen a ON a.id = ar.almacen_id
+            WHERE i.producto_id IS NULL AND i.nombre IS NOT NULL AND btrim(i.nombre) <> ''
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TrabajoService trabajoService;
+    private final AccessControlService accessControlService;
+    private final CatalogoBusquedaService catalogoBusquedaService;
+    private final UsoEmpresaService usoEmpresaService;
+    private final VersionRespuestaService versionRespuestaService;
+    private final int workers;
+    private final int lote;
 
     public DataMigrationRunner(
-            ItemRepository itemRepository,
-            ProductoRepository productoRepository
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            TrabajoService trabajoService,
+            AccessControlService accessControlService,
+            CatalogoBusquedaService catalogoBusquedaService,
+            UsoEmpresaService usoEmpresaService,
+            VersionRespuestaService versionRespuestaService,
+            @Value("${app.migracion.workers:4}") int workers,
+            @Value("${app.migracion.lote:1000}") int lote
     ) {
-        this.itemRepository = itemRepository;
-        this.productoRepository = productoRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.trabajoService = trabajoService;
+        this.accessControlService = accessControlService;
+        this.catalogoBusquedaService = catalogoBusquedaService;
+        this.usoEmpresaService = usoEmpresaService;
+        this.versionRespuestaService = versionRespuestaService;
+        this.workers = Math.max(1, workers);
+        this.lote = Math.max(1, lote);
     }
 
     @Override
-    @Transactional
     public void run(String... args) {
-        List<Item> itemsSinProducto = itemRepository.findAll().stream()
-                .filter(item -> item.getProducto() == null && item.getNombre() != null && !item.getNombre().isBlank())
-                .toList();
+        if (completada()) {
+            log.info("Migración Item→Producto: ya completada según checkpoint. Nada que hacer.");
+            return;
+        }
+        trabajoService.encolarSistema(TIPO, null);
+    }
+
+    @Override
+    public String tipo() {
+        return TIPO;
+    }
 
-        if (itemsSinProducto.isEmpty()) {
+    @Override
+    public JsonNode validar(Usuario actor, JsonNode parametros) {
+        if (actor == null || !accessControlService.isSuperAdmin(actor)) {
+            throw new SecurityException("Solo un superadmin puede lanzar la migración");
+        }
+        return parametros;
+    }
+
+    @Override
+    public void ejecutar(TrabajoService.Contexto contexto) throws Exception {
+        if (contexto.parametros().path("reiniciar").asBoolean(false)) {
+            jdbcTemplate.update("DELETE FROM migracion_checkpoint WHERE clave = ? OR clave LIKE ?", CLAVE, CLAVE + ":%");
+        }
+        guardarCheckpoint(CLAVE, 0L, false, 0, 0);
+
+        // Una consulta agrupada decide qué empresas tienen trabajo y cuánto
+        Map<Long, Long> pendientesPorEmpresa = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT a.empresa_id, count(*) " + DESDE_ITEM_EMPRESA + "GROUP BY a.empresa_id ORDER BY a.empresa_id",
+                rs -> {
+                    pendientesPorEmpresa.put(rs.getLong(1), rs.getLong(2));
+                });
+        long total = pendientesPorEmpresa.values().stream().mapToLong(Long::longValue).sum();
+        if (total == 0) {
             log.info("Migración Item→Producto: No hay items sin producto asignado. Nada que migrar.");
+            guardarCheckpoint(CLAVE, 0L, true, 0, 0);
+            contexto.resultado(Map.of("itemsMigrados", 0, "productosCreados", 0, "empresas", 0));
             return;
         }
+        log.info("Migración Item→Producto: {} items sin producto en {} empresas. Iniciando con {} hilos...",
+                total, pendientesPorEmpresa.size(), workers);
 
-        log.info("Migración Item→Producto: Encontrados {} items sin producto asignado. Iniciando migración...", itemsSinProducto.size());
+        AtomicLong procesados = new AtomicLong();
+        AtomicLong migrados = new AtomicLong();
+        AtomicLong productosCreados = new AtomicLong();
+        AtomicBoolean detener = new AtomicBoolean();
+        AtomicInteger contador = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, pendientesPorEmpresa.size()), r -> {
+            Thread hilo = new Thread(r, "migracion-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        List<Future<?>> tareas = new ArrayList<>();
+        try {
+            for (Long empresaId : pendientesPorEmpresa.keySet()) {
+                tareas.add(pool.submit(() -> {
+                    migrarEmpresa(empresaId, detener, procesados, migrados, productosCreados);
+                    return null;
+                }));
+            }
+            pool.shutdown();
+            // El hilo del trabajo solo publica avance; si cancelan, los workers paran al cerrar su lote
+            while (!pool.awaitTermination(500, TimeUnit.MILLISECONDS)) {
+                try {
+                    contexto.progreso((int) (procesados.get() * 100 / total),
+                            procesados.get() + " de " + total + " items");
+                } catch (RuntimeException e) {
+                    detener.set(true);
+                    pool.awaitTermination(1, TimeUnit.MINUTES);
+                    throw e;
+                }
+            }
+            for (Future<?> tarea : tareas) {
+                try {
+                    tarea.get();
+                } catch (ExecutionException e) {
+                    Throwable causa = e.getCause() != null ? e.getCause() : e;
+                    throw new IllegalStateException("Migración Item→Producto incompleta: " + causa.getMessage(), causa);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            if (migrados.get() > 0) {
+                versionRespuestaService.incrementarTodo();
+            }
+        }
 
-        // Agrupar items por empresa y nombre para crear productos únicos
-        Map<String, Producto> productoCache = new HashMap<>();
-        int migrados = 0;
+        contexto.verificarCancelacion();
+        guardarCheckpoint(CLAVE, 0L, true, migrados.get(), productosCreados.get());
+        log.info("Migración Item→Producto: Completada. {} items migrados, {} productos creados.",
+                migrados.get(), productosCreados.get());
+        contexto.resultado(Map.of(
+                "itemsMigrados", migrados.get(),
+                "productosCreados", productosCreados.get(),
+                "empresas", pendientesPorEmpresa.size()));
+    }
 
-        for (Item item : itemsSinProducto) {
-            Empresa empresa = resolveEmpresa(item);
-            if (empresa == null) {
-                log.warn("Migración: Item id={} no tiene empresa resoluble. Saltando.", item.getId());
-                continue;
-            }
+    private void migrarEmpresa(
+            Long empresaId,
+            AtomicBoolean detener,
+            AtomicLong procesados,
+            AtomicLong migrados,
+            AtomicLong productosCreados
+    ) {
+        String clave = CLAVE + ":empresa:" + empresaId;
+        long[] ultimoId = {ultimoId(clave)};
 
-            String nombreNormalizado = item.getNombre().trim().toLowerCase();
-            String cacheKey = empresa.getId() + "::" + nombreNormalizado;
-
-            Producto producto = productoCache.get(cacheKey);
-            if (producto == null) {
-                // Buscar si ya existe un producto con ese nombre en la empresa
-                producto = productoRepository.findByEmpresa(empresa).stream()
-                        .filter(p -> p.getNombre() != null && p.getNombre().trim().toLowerCase().equals(nombreNormalizado))
-                        .findFirst()
-                        .orElse(null);
-
-                if (producto == null) {
-                    producto = new Producto();
-                    producto.setEmpresa(empresa);
-                    producto.setNombre(item.getNombre().trim());
-                    producto.setSku(generarSku(empresa));
-                    producto.setUnidadMedida(UnidadMedida.UNIDAD);
-                    if (item.getPrecio() != null) {
-                        producto.setPrecioBase(item.getPrecio());
+        // Productos de la empresa por nombre normalizado: una consulta, no una por item
+        Map<String, Long> productoPorNombre = new HashMap<>();
+        jdbcTemplate.query("SELECT id, nombre FROM producto WHERE empresa_id = ? ORDER BY id",
+                rs -> {
+                    String nombre = rs.getString(2);
+                    if (nombre != null) {
+                        productoPorNombre.putIfAbsent(normalizar(nombre), rs.getLong(1));
                     }
-                    producto = productoRepository.save(producto);
-                    log.info("Migración: Producto creado - SKU={} nombre='{}' empresa={}", producto.getSku(), producto.getNombre(), empresa.getId());
-                }
-                productoCache.put(cacheKey, producto);
+                }, empresaId);
+        int[] siguienteSku = {maxSku(empresaId) + 1};
+        long creadosEmpresa = 0;
+        long migradosEmpresa = 0;
+
+        while (!detener.get()) {
+            List<Object[]> items = jdbcTemplate.query(
+                    "SELECT i.id, i.nombre, i.precio, i.repisa_id " + DESDE_ITEM_EMPRESA
+                            + "AND a.empresa_id = ? AND i.id > ? ORDER BY i.id LIMIT ?",
+                    (rs, n) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getBigDecimal(3), rs.getLong(4)},
+                    empresaId, ultimoId[0], lote);
+            if (items.isEmpty()) {
+                break;
             }
+            Map<String, Long> nuevos = new HashMap<>();
+            // {productos creados, items migrados} del lote
+            long[] resultado = transactionTemplate.execute(status -> {
+                // Otro proceso pudo asignar items desde la lectura: esos no se tocan ni cuentan como migrados
+                Set<Long> pendientes = new HashSet<>(jdbcTemplate.queryForList(
+                        "SELECT id FROM item WHERE id = ANY(?::bigint[]) AND producto_id IS NULL ORDER BY id FOR UPDATE",
+                        Long.class, (Object) items.stream().map(item -> (Long) item[0]).toArray(Long[]::new)));
+                long creadosLote = 0;
+                Map<Slot, List<Long>> porSlot = new LinkedHashMap<>();
+                for (Object[] item : items) {
+                    if (!pendientes.contains((Long) item[0])) {
+                        continue;
+                    }
+                    String nombre = ((String) item[1]).trim();
+                    String normalizado = normalizar(nombre);
+                    Long productoId = productoPorNombre.get(normalizado);
+                    if (productoId == null) {
+                        productoId = nuevos.get(normalizado);
+                    }
+                    if (productoId == null) {
+                        productoId = crearProducto(empresaId, nombre, (BigDecimal) item[2], siguienteSku[0]++);
+                        nuevos.put(normalizado, productoId);
+                        creadosLote++;
+                    }
+                    porSlot.computeIfAbsent(new Slot(productoId, (Long) item[3]), k -> new ArrayList<>()).add((Long) item[0]);
+                }
+                long migradosLote = asignarSlots(porSlot);
+                // Cada item legado es una unidad del producto (InventarioService lee el total de producto_saldo)
+                Map<Long, Long> unidades = new TreeMap<>();
+                porSlot.forEach((slot, ids) -> unidades.merge(slot.productoId(), (long) ids.size(), Long::sum));
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO producto_saldo (producto_id, total) VALUES (?, ?) "
+                                + "ON CONFLICT (producto_id) DO UPDATE SET total = producto_saldo.total + EXCLUDED.total",
+                        unidades.entrySet().stream().map(e -> new Object[]{e.getKey(), e.getValue()}).toList());
+                long ultimo = (Long) items.get(items.size() - 1)[0];
+                jdbcTemplate.update("""
+                        INSERT INTO migracion_checkpoint (clave, ultimo_id, completada, items_migrados, productos_creados, actualizado_en)
+                        VALUES (?, ?, false, ?, ?, ?)
+                        ON CONFLICT (clave) DO UPDATE SET ultimo_id = EXCLUDED.ultimo_id,
+                            items_migrados = migracion_checkpoint.items_migrados + EXCLUDED.items_migrados,
+                            productos_creados = migracion_checkpoint.productos_creados + EXCLUDED.productos_creados,
+                            actualizado_en = EXCLUDED.actualizado_en
+                        """, clave, ultimo, migradosLote, creadosLote, Timestamp.from(Instant.now()));
+                return new long[]{creadosLote, migradosLote};
+            });
+            // Solo tras el commit: si el lote se revierte, los productos nuevos tampoco existen
+            productoPorNombre.putAll(nuevos);
+            ultimoId[0] = (Long) items.get(items.size() - 1)[0];
+            creadosEmpresa += resultado[0];
+            migradosEmpresa += resultado[1];
+            productosCreados.addAndGet(resultado[0]);
+            migrados.addAndGet(resultado[1]);
+            procesados.addAndGet(items.size());
+        }
+        if (creadosEmpresa > 0 || migradosEmpresa > 0) {
+            catalogoBusquedaService.invalidar(empresaId);
+            usoEmpresaService.invalidarUso(empresaId);
+            log.info("Migración: {} items migrados y {} productos creados en empresa {}",
+                    migradosEmpresa, creadosEmpresa, empresaId);
+        }
+    }
 
-            item.setProducto(producto);
-            item.setCantidad(1);
-            item.setEstadoStock(EstadoStock.DISPONIBLE);
-            itemRepository.save(item);
-            migrados++;
+    /**
+     * Un solo item por (producto, repisa), como exige uk_item_producto_repisa: si el slot ya
+     * existe, los items legados se suman a su cantidad y se borran; si no, el de menor id pasa a
+     * ser el slot con la cantidad de todos. Los slots existentes se bloquean en el mismo orden
+     * que InventarioService (repisa, producto). Devuelve los items migrados.
+     */
+    private long asignarSlots(Map<Slot, List<Long>> porSlot) {
+        if (porSlot.isEmpty()) {
+            return 0;
         }
+        Map<Slot, Long> existentes = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT i.id, i.producto_id, i.repisa_id
+                FROM item i
+                JOIN unnest(?::bigint[], ?::bigint[]) AS s(producto_id, repisa_id)
+                  ON i.producto_id = s.producto_id AND i.repisa_id = s.repisa_id
+                ORDER BY i.repisa_id, i.producto_id
+                FOR UPDATE OF i
+                """, rs -> {
+                    existentes.put(new Slot(rs.getLong(2), rs.getLong(3)), rs.getLong(1));
+                },
+                porSlot.keySet().stream().map(Slot::productoId).toArray(Long[]::new),
+                porSlot.keySet().stream().map(Slot::repisaId).toArray(Long[]::new));
 
-        log.info("Migración Item→Producto: Completada. {} items migrados, {} productos creados.",
-                migrados, productoCache.values().stream().distinct().count());
+        List<Long> borrar = new ArrayList<>();
+        List<Object[]> cabezas = new ArrayList<>();
+        List<Object[]> sumas = new ArrayList<>();
+        long migradosLote = 0;
+        for (Map.Entry<Slot, List<Long>> entrada : porSlot.entrySet()) {
+            List<Long> ids = entrada.getValue();
+            Long existente = existentes.get(entrada.getKey());
+            if (existente != null) {
+                borrar.addAll(ids);
+                sumas.add(new Object[]{ids.size(), existente});
+            } else {
+                borrar.addAll(ids.subList(1, ids.size()));
+                cabezas.add(new Object[]{entrada.getKey().productoId(), ids.size(), ids.get(0)});
+            }
+            migradosLote += ids.size();
+        }
+        if (!borrar.isEmpty()) {
+            jdbcTemplate.update("DELETE FROM item WHERE id = ANY(?::bigint[])", (Object) borrar.toArray(Long[]::new));
+        }
+        jdbcTemplate.batchUpdate(
+                "UPDATE item SET producto_id = ?, cantidad = ?, estado_stock = 'DISPONIBLE' WHERE id = ?", cabezas);
+        jdbcTemplate.batchUpdate("UPDATE item SET cantidad = cantidad + ? WHERE id = ?", sumas);
+        return migradosLote;
     }
 
-    private Empresa resolveEmpresa(Item item) {
-        Repisa repisa = item.getRepisa();
-        if (repisa == null) return null;
-        Armario armario = repisa.getArmario();
-        if (armario == null) return null;
-        Almacen almacen = armario.getAlmacen();
-        if (almacen == null) return null;
-        return almacen.getEmpresa();
+    private Long crearProducto(Long empresaId, String nombre, BigDecimal precio, int numeroSku) {
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO producto (empresa_id, sku, nombre, precio_base, unidad_medida, activo, created_at)
+                VALUES (?, ?, ?, ?, 'UNIDAD', true, ?)
+                RETURNING id
+                """, Long.class,
+                empresaId, String.format("PRD-%04d", numeroSku), nombre, precio, Timestamp.valueOf(LocalDateTime.now()));
     }
 
-    private String generarSku(Empresa empresa) {
-        int maxNum = 0;
+    private int maxSku(Long empresaId) {
         try {
-            maxNum = productoRepository.findMaxSkuNumber(empresa.getId());
-        } catch (Exception ignored) {
+            Integer max = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(MAX(CAST(SUBSTRING(sku, 5) AS int)), 0) FROM producto WHERE empresa_id = ? AND sku ~ '^PRD-[0-9]+$'",
+                    Integer.class, empresaId);
+            return max != null ? max : 0;
+        } catch (RuntimeException e) {
+            return 0;
         }
-        return String.format("PRD-%04d", maxNum + 1);
+    }
+
+    private boolean completada() {
+        try {
+            Boolean completada = jdbcTemplate.queryForObject(
+                    "SELECT completada FROM migracion_checkpoint WHERE clave = ?", Boolean.class, CLAVE);
+            return Boolean.TRUE.equals(completada);
+        } catch (EmptyResultDataAccessException e) {
+            return false;
+        }
+    }
+
+    private long ultimoId(String clave) {
+        try {
+            Long ultimo = jdbcTemplate.queryForObject(
+                    "SELECT ultimo_id FROM migracion_checkpoint WHERE clave = ?", Long.class, clave);
+            return ultimo != null ? ultimo : 0L;
+        } catch (EmptyResultDataAccessException e) {
+            return 0L;
+        }
+    }
+
+    private void guardarCheckpoint(String clave, long ultimoId, boolean completada, long items, long productos) {
+        jdbcTemplate.update("""
+                INSERT INTO migracion_checkpoint (clave, ultimo_id, completada, items_migrados, productos_creados, actualizado_en)
+                VALUES (?, ?, ?, ?, ?, ?)
+                ON CONFLICT (clave) DO UPDATE SET completada = EXCLUDED.completada,
+                    items_migrados = EXCLUDED.items_migrados,
+                    productos_creados = EXCLUDED.productos_creados,
+                    actualizado_en = EXCLUDED.actualizado_en
+                """, clave, ultimoId, completada, items, productos, Timestamp.from(Instant.now()));
+    }
+
+    private record Slot(Long productoId, Long repisaId) {
+    }
+
+    private static String normalizar(String nombre) {
+        return nombre.trim().toLowerCase(Locale.ROOT);
     }
 }
@@ -0,0 +1,92 @@
+package com.example.maingest.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Eventos de Java Flight Recorder de la aplicación. Solo cuestan algo mientras hay una grabación
+ * que los tiene activos (ver {@link GrabacionJfrService}); en JDK Mission Control aparecen bajo
+ * la categoría Maingest con su duración. Un id 0 significa que no se conocía al emitir el evento.
+ */
+public final class EventosJfr {
+
+    private EventosJfr() {
+    }
+
+    @Name("maingest.InventarioMovimiento")
+    @Label("Movimiento de inventario")
+    @Category({"Maingest", "Inventario"})
+    @StackTrace(false)
+    public static class InventarioEvento extends Event {
+        @Label("Empresa")
+        public long empresaId;
+
+        @Label("Tipo")
+        @Description("ENTRADA, SALIDA, TRASLADO, AJUSTE o LOTE")
+        public String tipo;
+
+        @Label("Líneas")
+        public int lineas;
+
+        @Label("Resultado")
+        public String resultado;
+    }
+
+    @Name("maingest.Permiso")
+    @Label("Verificación de permiso")
+    @Category({"Maingest", "Seguridad"})
+    @Description("Solo las lentas por defecto: las resueltas desde la cache toman microsegundos")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static class PermisoEvento extends Event {
+        @Label("Usuario")
+        public long usuarioId;
+
+        @Label("Empresa")
+        public long empresaId;
+
+        @Label("Almacén")
+        public long almacenId;
+
+        @Label("Permiso")
+        public String permiso;
+
+        @Label("Concedido")
+        public boolean concedido;
+    }
+
+    @Name("maingest.JwtVerificacion")
+    @Label("Verificación de JWT")
+    @Category({"Maingest", "Seguridad"})
+    @StackTrace(false)
+    public static class JwtEvento extends Event {
+        @Label("Usuario")
+        public long usuarioId;
+
+        @Label("Resultado")
+        public String resultado;
+    }
+
+    @Name("maingest.WompiHttp")
+    @Label("Llamada HTTP a Wompi")
+    @Category({"Maingest", "Pagos"})
+    @StackTrace(false)
+    public static class WompiHttpEvento extends Event {
+        @Label("Operación")
+        public String operacion;
+
+        @Label("Transacción")
+        public String transaccion;
+
+        @Label("Estado HTTP")
+        public int estado;
+
+        @Label("Exitosa")
+        public boolean exitosa;
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.maingest.service;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Grabación de Java Flight Recorder a demanda, una a la vez por nodo, sin reiniciar ni
+ * conectar herramientas externas. La grabación es acotada: dura como mucho
+ * {@code app.jfr.max-segundos}, ocupa como mucho {@code app.jfr.max-bytes} en disco y se
+ * detiene sola al cumplir su duración. Al detenerse el archivo queda en
+ * {@code app.jfr.directorio} hasta la siguiente grabación.
+ */
+@Service
+public class GrabacionJfrService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(GrabacionJfrService.class);
+
+    // "default" ~1% de overhead; "profile" agrega muestreo de CPU/asignaciones más fino, ~2%
+    private static final Set<String> PERFILES = Set.of("default", "profile");
+
+    public record Estado(
+            String estado,
+            String nombre,
+            String perfil,
+            Instant inicio,
+            Long duracionSegundos,
+            Long bytes,
+            Long iniciadaPor,
+            String nodo,
+            boolean descargable
+    ) {
+    }
+
+    private final Path directorio;
+    private final int maxSegundos;
+    private final long maxBytes;
+    private final String nodo;
+
+    private Recording grabacion;
+    private Path archivo;
+    private String perfil;
+    private Long iniciadaPor;
+
+    public GrabacionJfrService(
+            @Value("${app.jfr.directorio:jfr}") String directorio,
+            @Value("${app.jfr.max-segundos:300}") int maxSegundos,
+            @Value("${app.jfr.max-bytes:104857600}") long maxBytes,
+            NodoLocal nodoLocal
+    ) {
+        this.directorio = Paths.get(directorio).toAbsolutePath();
+        this.maxSegundos = Math.max(1, maxSegundos);
+        this.maxBytes = Math.max(1024 * 1024, maxBytes);
+        this.nodo = nodoLocal.id();
+    }
+
+    public synchronized Estado iniciar(int segundos, String perfil, Long usuarioId) {
+        if (segundos < 1 || segundos > maxSegundos) {
+            throw new IllegalArgumentException("La duración debe estar entre 1 y " + maxSegundos + " segundos");
+        }
+        String perfilEfectivo = perfil == null || perfil.isBlank() ? "profile" : perfil.trim().toLowerCase();
+        if (!PERFILES.contains(perfilEfectivo)) {
+            throw new IllegalArgumentException("Perfil inválido: " + perfil + " (default o profile)");
+        }
+        if (grabacion != null && enCurso(grabacion)) {
+            throw new IllegalStateException("Ya hay una grabación en curso en este nodo");
+        }
+        descartarAnterior();
+
+        Configuration configuracion;
+        try {
+            configuracion = Configuration.getConfiguration(perfilEfectivo);
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("No se pudo cargar la configuración JFR " + perfilEfectivo, e);
+        }
+        Instant ahora = Instant.now();
+        Path destino = directorio.resolve("maingest-" + nodo + "-" + ahora.toEpochMilli() + ".jfr");
+        Recording nueva = new Recording(configuracion);
+        try {
+            Files.createDirectories(directorio);
+            nueva.setName("maingest-" + ahora.toEpochMilli());
+            nueva.setToDisk(true);
+            nueva.setMaxSize(maxBytes);
+            nueva.setDuration(Duration.ofSeconds(segundos));
+            // Al detenerse (a mano o al cumplir la duración) JFR escribe aquí la grabación
+            nueva.setDestination(destino);
+            nueva.start();
+        } catch (IOException | RuntimeException e) {
+            nueva.close();
+            throw new IllegalStateException("No se pudo iniciar la grabación JFR: " + e.getMessage(), e);
+        }
+        grabacion = nueva;
+        archivo = destino;
+        this.perfil = perfilEfectivo;
+        iniciadaPor = usuarioId;
+        log.info("JFR: grabación {} iniciada por usuario={} perfil={} duración={}s destino={}",
+                nueva.getName(), usuarioId, perfilEfectivo, segundos, destino);
+        return estado();
+    }
+
+    public synchronized Estado detener() {
+        if (grabacion == null || !enCurso(grabacion)) {
+            throw new IllegalStateException("No hay una grabación en curso en este nodo");
+        }
+        grabacion.stop();
+        log.info("JFR: grabación {} detenida, {} bytes en {}", grabacion.getName(), tamanio(), archivo);
+        return estado();
+    }
+
+    public synchronized Estado estado() {
+        if (grabacion == null) {
+            return new Estado("SIN_GRABACION", null, null, null, null, null, null, nodo, false);
+        }
+        Duration duracion = grabacion.getDuration();
+        return new Estado(
+                grabacion.getState().name(),
+                grabacion.getName(),
+                perfil,
+                grabacion.getStartTime(),
+                duracion != null ? duracion.toSeconds() : null,
+                enCurso(grabacion) ? grabacion.getSize() : tamanio(),
+                iniciadaPor,
+                nodo,
+                archivoListo().isPresent()
+        );
+    }
+
+    /**
+     * Archivo de la última grabación, si ya terminó y sigue en disco.
+     */
+    public synchronized Optional<Path> archivoListo() {
+        if (grabacion == null || enCurso(grabacion) || archivo == null || !Files.isRegularFile(archivo)) {
+            return Optional.empty();
+        }
+        return Optional.of(archivo);
+    }
+
+    public String nodo() {
+        return nodo;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (grabacion != null) {
+            grabacion.close();
+        }
+    }
+
+    private static boolean enCurso(Recording recording) {
+        RecordingState estado = recording.getState();
+        return estado == RecordingState.NEW || estado == RecordingState.DELAYED || estado == RecordingState.RUNNING;
+    }
+
+    private void descartarAnterior() {
+        if (grabacion != null) {
+            grabacion.close();
+            grabacion = null;
+        }
+        if (archivo != null) {
+            try {
+                Files.deleteIfExists(archivo);
+            } catch (IOException e) {
+                log.warn("JFR: no se pudo borrar la grabación anterior {}: {}", archivo, e.getMessage());
+            }
+            archivo = null;
+        }
+    }
+
+    private Long tamanio() {
+        try {
+            return archivo != null && Files.isRegularFile(archivo) ? Files.size(archivo) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -14,79 +14,189 @@ import com.example.maingest.repository.ItemRepository;
 import com.example.maingest.repository.MovimientoInventarioRepository;
 import com.example.maingest.repository.ProductoRepository;
 import com.example.maingest.repository.RepisaRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 public class InventarioService {
 
     private static final Logger log = LoggerFactory.getLogger(InventarioService.class);
+    private static final int LOTE_JDBC = 500;
 
     private final ItemRepository itemRepository;
     private final ProductoRepository productoRepository;
     private final RepisaRepository repisaRepository;
     private final MovimientoInventarioRepository movimientoRepository;
+    private final AuditoriaService auditoriaService;
+    private final UsoEmpresaService usoEmpresaService;
+    private final VersionRespuestaService versionRespuestaService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int maxIntentos;
+    private final int maxLineasLote;
+    private volatile long incrementoMovimientos;
 
     public InventarioService(
             ItemRepository itemRepository,
             ProductoRepository productoRepository,
             RepisaRepository repisaRepository,
-            MovimientoInventarioRepository movimientoRepository
+            MovimientoInventarioRepository movimientoRepository,
+            AuditoriaService auditoriaService,
+            UsoEmpresaService usoEmpresaService,
+            VersionRespuestaService versionRespuestaService,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.inventario.max-intentos:3}") int maxIntentos,
+            @Value("${app.inventario.lote.max-lineas:10000}") int maxLineasLote
     ) {
         this.itemRepository = itemRepository;
         this.productoRepository = productoRepository;
         this.repisaRepository = repisaRepository;
         this.movimientoRepository = movimientoRepository;
+        this.auditoriaService = auditoriaService;
+        this.usoEmpresaService = usoEmpresaService;
+        this.versionRespuestaService = versionRespuestaService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.maxIntentos = Math.max(1, maxIntentos);
+        this.maxLineasLote = Math.max(1, maxLineasLote);
+    }
+
+    public enum ModoLote {
+        TODO_O_NADA,
+        MEJOR_ESFUERZO
+    }
+
+    /**
+     * Una línea de un lote. Para AJUSTE, {@code cantidad} es la nueva cantidad y la repisa va en repisaDestinoId.
+     */
+    public record LineaLote(
+            TipoMovimiento tipo,
+            Long productoId,
+            Long repisaOrigenId,
+            Long repisaDestinoId,
+            Integer cantidad,
+            String lote,
+            String observacion
+    ) {
+    }
+
+    /**
+     * Resultado por línea: con movimiento si se aplicó, con error si falló,
+     * y sin ninguno de los dos si el lote completo se revirtió por otra línea.
+     */
+    public record ResultadoLinea(int indice, MovimientoInventario movimiento, String error) {
+    }
+
+    public record ResultadoLote(boolean confirmado, List<ResultadoLinea> lineas) {
+    }
+
+    private static final class LoteRevertidoException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ResultadoLote resultado;
+
+        LoteRevertidoException(ResultadoLote resultado) {
+            super("Lote revertido", null, false, false);
+            this.resultado = resultado;
+        }
+    }
+
+    private record Slot(Long productoId, Long repisaId) {
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public MovimientoInventario registrarEntrada(
             Long productoId, Long repisaDestinoId, int cantidad,
             String lote, String observacion, Usuario actor
+    ) {
+        return medir("ENTRADA", () -> entrada(productoId, repisaDestinoId, cantidad, lote, observacion, actor));
+    }
+
+    private MovimientoInventario entrada(
+            Long productoId, Long repisaDestinoId, int cantidad,
+            String lote, String observacion, Usuario actor
     ) {
         validarCantidadPositiva(cantidad);
         Producto producto = buscarProducto(productoId);
         Repisa destino = buscarRepisa(repisaDestinoId);
         Empresa empresa = resolverEmpresa(destino);
+        bloquearRepisas(List.of(destino.getId()));
 
         Item item = buscarOCrearItem(producto, destino);
         item.setCantidad(item.getCantidad() + cantidad);
         if (lote != null && !lote.isBlank()) {
             item.setLote(lote.trim());
         }
-        itemRepository.save(item);
+        guardarItem(item, empresa);
 
         MovimientoInventario mov = new MovimientoInventario();
         mov.setEmpresa(empresa);
         mov.setProducto(producto);
         mov.setRepisaDestino(destino);
         mov.setCantidadMovida(cantidad);
+        mov.setSaldoDestino(item.getCantidad());
+        mov.setSaldoEmpresa(saldoEmpresa(producto, cantidad));
         mov.setTipo(TipoMovimiento.ENTRADA);
         mov.setObservacion(observacion);
         mov.setUsuario(actor);
+        cambioEstructura(destino);
 
         MovimientoInventario guardado = movimientoRepository.save(mov);
         log.info("ENTRADA: producto={} cantidad={} destino=repisa:{} actor={}", productoId, cantidad, repisaDestinoId, actor.getId());
         return guardado;
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public MovimientoInventario registrarSalida(
             Long productoId, Long repisaOrigenId, int cantidad,
             String observacion, Usuario actor
+    ) {
+        return medir("SALIDA", () -> salida(productoId, repisaOrigenId, cantidad, observacion, actor));
+    }
+
+    private MovimientoInventario salida(
+            Long productoId, Long repisaOrigenId, int cantidad,
+            String observacion, Usuario actor
     ) {
         validarCantidadPositiva(cantidad);
         Producto producto = buscarProducto(productoId);
         Repisa origen = buscarRepisa(repisaOrigenId);
         Empresa empresa = resolverEmpresa(origen);
+        bloquearRepisas(List.of(origen.getId()));
 
         Item item = buscarItemExistente(producto, origen);
         if (item.getCantidad() < cantidad) {
-            throw new IllegalArgumentException(
+            throw stockInsuficiente("SALIDA",
                     "Stock insuficiente. Disponible: " + item.getCantidad() + ", solicitado: " + cantidad);
         }
         item.setCantidad(item.getCantidad() - cantidad);
@@ -97,19 +207,28 @@ public class InventarioService {
         mov.setProducto(producto);
         mov.setRepisaOrigen(origen);
         mov.setCantidadMovida(cantidad);
+        mov.setSaldoOrigen(item.getCantidad());
+        mov.setSaldoEmpresa(saldoEmpresa(producto, -cantidad));
         mov.setTipo(TipoMovimiento.SALIDA);
         mov.setObservacion(observacion);
         mov.setUsuario(actor);
+        cambioEstructura(origen);
 
         MovimientoInventario guardado = movimientoRepository.save(mov);
         log.info("SALIDA: producto={} cantidad={} origen=repisa:{} actor={}", productoId, cantidad, repisaOrigenId, actor.getId());
         return guardado;
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public MovimientoInventario registrarTraslado(
             Long productoId, Long repisaOrigenId, Long repisaDestinoId, int cantidad,
             String observacion, Usuario actor
+    ) {
+        return medir("TRASLADO", () -> traslado(productoId, repisaOrigenId, repisaDestinoId, cantidad, observacion, actor));
+    }
+
+    private MovimientoInventario traslado(
+            Long productoId, Long repisaOrigenId, Long repisaDestinoId, int cantidad,
+            String observacion, Usuario actor
     ) {
         validarCantidadPositiva(cantidad);
         if (repisaOrigenId.equals(repisaDestinoId)) {
@@ -120,18 +239,27 @@ public class InventarioService {
         Repisa origen = buscarRepisa(repisaOrigenId);
         Repisa destino = buscarRepisa(repisaDestinoId);
         Empresa empresa = resolverEmpresa(origen);
+        bloquearRepisas(List.of(origen.getId(), destino.getId()));
 
-        Item itemOrigen = buscarItemExistente(producto, origen);
+        // Los slots se bloquean siempre en orden de repisa id para evitar deadlocks entre traslados cruzados
+        Item itemOrigen;
+        Item itemDestino;
+        if (origen.getId() < destino.getId()) {
+            itemOrigen = buscarItemExistente(producto, origen);
+            itemDestino = buscarOCrearItem(producto, destino);
+        } else {
+            itemDestino = buscarOCrearItem(producto, destino);
+            itemOrigen = buscarItemExistente(producto, origen);
+        }
         if (itemOrigen.getCantidad() < cantidad) {
-            throw new IllegalArgumentException(
+            throw stockInsuficiente("TRASLADO",
                     "Stock insuficiente en origen. Disponible: " + itemOrigen.getCantidad() + ", solicitado: " + cantidad);
         }
         itemOrigen.setCantidad(itemOrigen.getCantidad() - cantidad);
         itemRepository.save(itemOrigen);
 
-        Item itemDestino = buscarOCrearItem(producto, destino);
         itemDestino.setCantidad(itemDestino.getCantidad() + cantidad);
-        itemRepository.save(itemDestino);
+        guardarItem(itemDestino, resolverEmpresa(destino));
 
         MovimientoInventario mov = new MovimientoInventario();
         mov.setEmpresa(empresa);
@@ -139,9 +267,14 @@ public class InventarioService {
         mov.setRepisaOrigen(origen);
         mov.setRepisaDestino(destino);
         mov.setCantidadMovida(cantidad);
+        mov.setSaldoOrigen(itemOrigen.getCantidad());
+        mov.setSaldoDestino(itemDestino.getCantidad());
+        mov.setSaldoEmpresa(saldoEmpresa(producto, 0));
         mov.setTipo(TipoMovimiento.TRASLADO);
         mov.setObservacion(observacion);
         mov.setUsuario(actor);
+        cambioEstructura(origen);
+        cambioEstructura(destino);
 
         MovimientoInventario guardado = movimientoRepository.save(mov);
         log.info("TRASLADO: producto={} cantidad={} origen=repisa:{} destino=repisa:{} actor={}",
@@ -149,10 +282,16 @@ public class InventarioService {
         return guardado;
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public MovimientoInventario registrarAjuste(
             Long productoId, Long repisaId, int nuevaCantidad,
             String observacion, Usuario actor
+    ) {
+        return medir("AJUSTE", () -> ajuste(productoId, repisaId, nuevaCantidad, observacion, actor));
+    }
+
+    private MovimientoInventario ajuste(
+            Long productoId, Long repisaId, int nuevaCantidad,
+            String observacion, Usuario actor
     ) {
         if (nuevaCantidad < 0) {
             throw new IllegalArgumentException("La cantidad ajustada no puede ser negativa");
@@ -161,21 +300,25 @@ public class InventarioService {
         Producto producto = buscarProducto(productoId);
         Repisa repisa = buscarRepisa(repisaId);
         Empresa empresa = resolverEmpresa(repisa);
+        bloquearRepisas(List.of(repisa.getId()));
 
         Item item = buscarOCrearItem(producto, repisa);
         int diferencia = nuevaCantidad - item.getCantidad();
         item.setCantidad(nuevaCantidad);
-        itemRepository.save(item);
+        guardarItem(item, empresa);
 
         MovimientoInventario mov = new MovimientoInventario();
         mov.setEmpresa(empresa);
         mov.setProducto(producto);
         mov.setRepisaDestino(repisa);
         mov.setCantidadMovida(Math.abs(diferencia));
+        mov.setSaldoDestino(nuevaCantidad);
+        mov.setSaldoEmpresa(saldoEmpresa(producto, diferencia));
         mov.setTipo(TipoMovimiento.AJUSTE);
         mov.setObservacion("Ajuste de " + (item.getCantidad() - Math.abs(diferencia)) + " a " + nuevaCantidad
                 + (observacion != null ? ". " + observacion : ""));
         mov.setUsuario(actor);
+        cambioEstructura(repisa);
 
         MovimientoInventario guardado = movimientoRepository.save(mov);
         log.info("AJUSTE: producto={} nuevaCantidad={} diferencia={} repisa:{} actor={}",
@@ -183,6 +326,445 @@ public class InventarioService {
         return guardado;
     }
 
+    /**
+     * Aplica una lista ordenada de movimientos en una sola transacción: carga productos, repisas
+     * y slots con pocas consultas IN, aplica las líneas en memoria y escribe movimientos y
+     * auditoría con inserts JDBC por lotes.
+     * En TODO_O_NADA la primera línea inválida revierte el lote; en MEJOR_ESFUERZO se omite y se sigue.
+     */
+    public ResultadoLote registrarLote(
+            List<LineaLote> lineas, ModoLote modo, Usuario actor, Predicate<Empresa> autorizado
+    ) {
+        if (lineas == null || lineas.isEmpty()) {
+            throw new IllegalArgumentException("El lote no tiene movimientos");
+        }
+        if (lineas.size() > maxLineasLote) {
+            throw new IllegalArgumentException("El lote excede el máximo de " + maxLineasLote + " movimientos");
+        }
+        ModoLote modoEfectivo = modo != null ? modo : ModoLote.TODO_O_NADA;
+        EventosJfr.InventarioEvento evento = new EventosJfr.InventarioEvento();
+        evento.begin();
+        long inicio = System.nanoTime();
+        ResultadoLote resultado;
+        try {
+            resultado = conReintentos(() -> aplicarLote(lineas, modoEfectivo, actor, autorizado));
+        } catch (LoteRevertidoException e) {
+            resultado = e.resultado;
+        } catch (RuntimeException e) {
+            terminar("LOTE", resultadoDeError(e), inicio, evento, null, lineas.size());
+            throw e;
+        }
+        terminar("LOTE", resultado.confirmado() ? "ok" : "revertido", inicio, evento,
+                resultado.lineas().stream()
+                        .map(ResultadoLinea::movimiento)
+                        .filter(m -> m != null && m.getEmpresa() != null)
+                        .map(m -> m.getEmpresa().getId())
+                        .findFirst()
+                        .orElse(null),
+                lineas.size());
+        return resultado;
+    }
+
+    private ResultadoLote aplicarLote(
+            List<LineaLote> lineas, ModoLote modo, Usuario actor, Predicate<Empresa> autorizado
+    ) {
+        Set<Long> productoIds = new HashSet<>();
+        Set<Long> repisaIds = new HashSet<>();
+        Set<Slot> tocados = new HashSet<>();
+        for (LineaLote linea : lineas) {
+            if (linea == null) {
+                continue;
+            }
+            if (linea.productoId() != null) productoIds.add(linea.productoId());
+            if (linea.repisaOrigenId() != null) repisaIds.add(linea.repisaOrigenId());
+            if (linea.repisaDestinoId() != null) repisaIds.add(linea.repisaDestinoId());
+            if (linea.productoId() != null && linea.repisaOrigenId() != null) {
+                tocados.add(new Slot(linea.productoId(), linea.repisaOrigenId()));
+            }
+            if (linea.productoId() != null && linea.repisaDestinoId() != null) {
+                tocados.add(new Slot(linea.productoId(), linea.repisaDestinoId()));
+            }
+        }
+
+        ContextoLote ctx = new ContextoLote(actor, autorizado);
+        ctx.productos.putAll(productoRepository.findAllById(productoIds).stream()
+                .collect(Collectors.toMap(Producto::getId, Function.identity())));
+        if (!repisaIds.isEmpty()) {
+            ctx.repisas.putAll(repisaRepository.findAllConEmpresaByIdIn(repisaIds).stream()
+                    .collect(Collectors.toMap(Repisa::getId, Function.identity())));
+        }
+        bloquearRepisas(ctx.repisas.keySet());
+        // Solo los pares que tocan las líneas (no producto x repisa), en un SELECT ... FOR UPDATE por id
+        tocados.removeIf(slot -> !ctx.productos.containsKey(slot.productoId()) || !ctx.repisas.containsKey(slot.repisaId()));
+        if (!tocados.isEmpty()) {
+            List<Slot> pares = List.copyOf(tocados);
+            Long[] slotProductos = pares.stream().map(Slot::productoId).toArray(Long[]::new);
+            Long[] slotRepisas = pares.stream().map(Slot::repisaId).toArray(Long[]::new);
+            for (Item item : itemRepository.findSlotsForUpdate(slotProductos, slotRepisas)) {
+                ctx.slots.putIfAbsent(new Slot(item.getProducto().getId(), item.getRepisa().getId()), item);
+            }
+        }
+
+        List<ResultadoLinea> resultados = new ArrayList<>(lineas.size());
+        List<MovimientoInventario> movimientos = new ArrayList<>(lineas.size());
+        for (int i = 0; i < lineas.size(); i++) {
+            try {
+                MovimientoInventario mov = aplicarLinea(lineas.get(i), ctx);
+                movimientos.add(mov);
+                resultados.add(new ResultadoLinea(i, mov, null));
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                if (modo == ModoLote.TODO_O_NADA) {
+                    List<ResultadoLinea> revertidos = new ArrayList<>(lineas.size());
+                    for (int j = 0; j < lineas.size(); j++) {
+                        revertidos.add(new ResultadoLinea(j, null, j == i ? e.getMessage() : null));
+                    }
+                    throw new LoteRevertidoException(new ResultadoLote(false, revertidos));
+                }
+                resultados.add(new ResultadoLinea(i, null, e.getMessage()));
+            }
+        }
+
+        if (!ctx.nuevos.isEmpty()) {
+            itemRepository.saveAll(ctx.nuevos);
+            Map<Long, Long> nuevosPorEmpresa = ctx.nuevos.stream()
+                    .collect(Collectors.groupingBy(item -> resolverEmpresa(item.getRepisa()).getId(), Collectors.counting()));
+            nuevosPorEmpresa.forEach((empresaId, cantidad) ->
+                    usoEmpresaService.registrarAlta(empresaId, UsoEmpresaService.Recurso.ITEMS, cantidad));
+        }
+        itemRepository.flush();
+        if (!movimientos.isEmpty()) {
+            // saldoEmpresa trae la variación acumulada del lote hasta ese movimiento; se suma al total previo
+            Map<Long, Long> previos = sumarSaldos(ctx.totales);
+            for (MovimientoInventario mov : movimientos) {
+                mov.setSaldoEmpresa(previos.get(mov.getProducto().getId()) + mov.getSaldoEmpresa());
+            }
+        }
+        insertarMovimientos(movimientos);
+        for (MovimientoInventario mov : movimientos) {
+            cambioEstructura(mov.getRepisaOrigen());
+            cambioEstructura(mov.getRepisaDestino());
+        }
+
+        List<AuditoriaService.EventoLote> eventos = new ArrayList<>(movimientos.size());
+        for (MovimientoInventario mov : movimientos) {
+            eventos.add(new AuditoriaService.EventoLote(
+                    mov.getTipo().name() + "_INVENTARIO", "MOVIMIENTO", mov.getId(),
+                    "Lote: " + mov.getTipo().name().toLowerCase() + " de " + mov.getCantidadMovida()
+                            + " uds de producto " + mov.getProducto().getId()));
+        }
+        auditoriaService.registrarLote(actor, eventos);
+
+        log.info("LOTE: {} lineas, {} aplicadas, modo={} actor={}",
+                lineas.size(), movimientos.size(), modo, actor.getId());
+        return new ResultadoLote(true, resultados);
+    }
+
+    private MovimientoInventario aplicarLinea(LineaLote linea, ContextoLote ctx) {
+        if (linea == null || linea.tipo() == null) {
+            throw new IllegalArgumentException("Tipo de movimiento requerido (ENTRADA, SALIDA, TRASLADO o AJUSTE)");
+        }
+        if (linea.cantidad() == null) {
+            throw new IllegalArgumentException("cantidad es requerida");
+        }
+        if (linea.observacion() != null && linea.observacion().length() > 500) {
+            throw new IllegalArgumentException("La observación no puede superar 500 caracteres");
+        }
+        int cantidad = linea.cantidad();
+        Producto producto = ctx.producto(linea.productoId());
+
+        MovimientoInventario mov = new MovimientoInventario();
+        mov.setProducto(producto);
+        mov.setTipo(linea.tipo());
+        mov.setObservacion(linea.observacion());
+        mov.setUsuario(ctx.actor);
+
+        switch (linea.tipo()) {
+            case ENTRADA -> {
+                validarCantidadPositiva(cantidad);
+                Repisa destino = ctx.repisa(linea.repisaDestinoId(), "repisaDestinoId");
+                Empresa empresa = ctx.empresaAutorizada(destino);
+                Item item = ctx.slotOCrear(producto, destino);
+                item.setCantidad(item.getCantidad() + cantidad);
+                if (linea.lote() != null && !linea.lote().isBlank()) {
+                    item.setLote(linea.lote().trim());
+                }
+                mov.setEmpresa(empresa);
+                mov.setRepisaDestino(destino);
+                mov.setCantidadMovida(cantidad);
+                mov.setSaldoDestino(item.getCantidad());
+                mov.setSaldoEmpresa(ctx.sumarTotal(producto, cantidad));
+            }
+            case SALIDA -> {
+                validarCantidadPositiva(cantidad);
+                Repisa origen = ctx.repisa(linea.repisaOrigenId(), "repisaOrigenId");
+                Empresa empresa = ctx.empresaAutorizada(origen);
+                Item item = ctx.slotExistente(producto, origen);
+                if (item.getCantidad() < cantidad) {
+                    throw stockInsuficiente("SALIDA",
+                            "Stock insuficiente. Disponible: " + item.getCantidad() + ", solicitado: " + cantidad);
+                }
+                item.setCantidad(item.getCantidad() - cantidad);
+                mov.setEmpresa(empresa);
+                mov.setRepisaOrigen(origen);
+                mov.setCantidadMovida(cantidad);
+                mov.setSaldoOrigen(item.getCantidad());
+                mov.setSaldoEmpresa(ctx.sumarTotal(producto, -cantidad));
+            }
+            case TRASLADO -> {
+                validarCantidadPositiva(cantidad);
+                Repisa origen = ctx.repisa(linea.repisaOrigenId(), "repisaOrigenId");
+                Repisa destino = ctx.repisa(linea.repisaDestinoId(), "repisaDestinoId");
+                if (origen.getId().equals(destino.getId())) {
+                    throw new IllegalArgumentException("Repisa origen y destino no pueden ser la misma");
+                }
+                Empresa empresa = ctx.empresaAutorizada(origen);
+                ctx.empresaAutorizada(destino);
+                Item itemOrigen = ctx.slotExistente(producto, origen);
+                if (itemOrigen.getCantidad() < cantidad) {
+                    throw stockInsuficiente("TRASLADO",
+                            "Stock insuficiente en origen. Disponible: " + itemOrigen.getCantidad() + ", solicitado: " + cantidad);
+                }
+                Item itemDestino = ctx.slotOCrear(producto, destino);
+                itemOrigen.setCantidad(itemOrigen.getCantidad() - cantidad);
+                itemDestino.setCantidad(itemDestino.getCantidad() + cantidad);
+                mov.setEmpresa(empresa);
+                mov.setRepisaOrigen(origen);
+                mov.setRepisaDestino(destino);
+                mov.setCantidadMovida(cantidad);
+                mov.setSaldoOrigen(itemOrigen.getCantidad());
+                mov.setSaldoDestino(itemDestino.getCantidad());
+                mov.setSaldoEmpresa(ctx.sumarTotal(producto, 0));
+            }
+            case AJUSTE -> {
+                if (cantidad < 0) {
+                    throw new IllegalArgumentException("La cantidad ajustada no puede ser negativa");
+                }
+                Long repisaId = linea.repisaDestinoId() != null ? linea.repisaDestinoId() : linea.repisaOrigenId();
+                Repisa repisa = ctx.repisa(repisaId, "repisaId");
+                Empresa empresa = ctx.empresaAutorizada(repisa);
+                Item item = ctx.slotOCrear(producto, repisa);
+                int anterior = item.getCantidad();
+                item.setCantidad(cantidad);
+                mov.setEmpresa(empresa);
+                mov.setRepisaDestino(repisa);
+                mov.setCantidadMovida(Math.abs(cantidad - anterior));
+                mov.setSaldoDestino(cantidad);
+                mov.setSaldoEmpresa(ctx.sumarTotal(producto, cantidad - anterior));
+                mov.setObservacion("Ajuste de " + anterior + " a " + cantidad
+                        + (linea.observacion() != null ? ". " + linea.observacion() : ""));
+            }
+        }
+        return mov;
+    }
+
+    /**
+     * Los ids se reservan de movimiento_inventario_id_seq con la misma regla que el optimizador
+     * pooled-lo de Hibernate: cada nextval entrega un bloque de tantos ids como el incremento de
+     * la secuencia, así que para n movimientos bastan n / incremento llamadas.
+     */
+    private void insertarMovimientos(List<MovimientoInventario> movimientos) {
+        if (movimientos.isEmpty()) {
+            return;
+        }
+        long incremento = incrementoMovimientos();
+        long bloques = (movimientos.size() + incremento - 1) / incremento;
+        List<Long> inicios = jdbcTemplate.queryForList(
+                "SELECT nextval('movimiento_inventario_id_seq') FROM generate_series(1, ?)",
+                Long.class, bloques);
+        for (int i = 0; i < movimientos.size(); i++) {
+            movimientos.get(i).setId(inicios.get((int) (i / incremento)) + i % incremento);
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO movimiento_inventario (id, empresa_id, producto_id, repisa_origen_id, repisa_destino_id, "
+                        + "cantidad_movida, tipo, referencia_documento_id, observacion, usuario_id, fecha, "
+                        + "saldo_origen, saldo_destino, saldo_empresa) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                movimientos,
+                LOTE_JDBC,
+                (ps, mov) -> {
+                    ps.setLong(1, mov.getId());
+                    ps.setLong(2, mov.getEmpresa().getId());
+                    ps.setLong(3, mov.getProducto().getId());
+                    ps.setObject(4, mov.getRepisaOrigen() != null ? mov.getRepisaOrigen().getId() : null, Types.BIGINT);
+                    ps.setObject(5, mov.getRepisaDestino() != null ? mov.getRepisaDestino().getId() : null, Types.BIGINT);
+                    ps.setInt(6, mov.getCantidadMovida());
+                    ps.setString(7, mov.getTipo().name());
+                    ps.setString(8, mov.getReferenciaDocumentoId());
+                    ps.setString(9, mov.getObservacion());
+                    ps.setLong(10, mov.getUsuario().getId());
+                    ps.setTimestamp(11, Timestamp.from(mov.getFecha()));
+                    ps.setObject(12, mov.getSaldoOrigen(), Types.INTEGER);
+                    ps.setObject(13, mov.getSaldoDestino(), Types.INTEGER);
+                    ps.setObject(14, mov.getSaldoEmpresa(), Types.BIGINT);
+                }
+        );
+    }
+
+    private long incrementoMovimientos() {
+        long incremento = incrementoMovimientos;
+        if (incremento <= 0) {
+            // Se lee una vez: SchemaMigrationRunner ajusta el incremento antes de aceptar requests
+            Long leido = jdbcTemplate.queryForObject(
+                    "SELECT increment_by FROM pg_sequences WHERE schemaname = current_schema() AND sequencename = 'movimiento_inventario_id_seq'",
+                    Long.class);
+            incremento = leido != null && leido > 0 ? leido : 1;
+            incrementoMovimientos = incremento;
+        }
+        return incremento;
+    }
+
+    /**
+     * Estado en memoria de un lote: entidades precargadas, slots bloqueados y
+     * permisos ya resueltos por empresa.
+     */
+    private final class ContextoLote {
+
+        private final Usuario actor;
+        private final Predicate<Empresa> autorizado;
+        private final Map<Long, Producto> productos = new HashMap<>();
+        private final Map<Long, Repisa> repisas = new HashMap<>();
+        private final Map<Slot, Item> slots = new HashMap<>();
+        private final List<Item> nuevos = new ArrayList<>();
+        private final Map<Long, Boolean> permisos = new HashMap<>();
+        private final Map<Long, Long> totales = new HashMap<>();
+
+        ContextoLote(Usuario actor, Predicate<Empresa> autorizado) {
+            this.actor = actor;
+            this.autorizado = autorizado;
+        }
+
+        Producto producto(Long productoId) {
+            if (productoId == null) {
+                throw new IllegalArgumentException("productoId es requerido");
+            }
+            Producto producto = productos.get(productoId);
+            if (producto == null) {
+                throw new IllegalArgumentException("Producto no encontrado: " + productoId);
+            }
+            return producto;
+        }
+
+        Repisa repisa(Long repisaId, String campo) {
+            if (repisaId == null) {
+                throw new IllegalArgumentException(campo + " es requerido");
+            }
+            Repisa repisa = repisas.get(repisaId);
+            if (repisa == null) {
+                throw new IllegalArgumentException("Repisa no encontrada: " + repisaId);
+            }
+            return repisa;
+        }
+
+        Empresa empresaAutorizada(Repisa repisa) {
+            Empresa empresa = resolverEmpresa(repisa);
+            boolean permitido = permisos.computeIfAbsent(empresa.getId(),
+                    id -> autorizado == null || autorizado.test(empresa));
+            if (!permitido) {
+                throw new IllegalArgumentException("Sin permiso para registrar movimientos en la empresa " + empresa.getId());
+            }
+            return empresa;
+        }
+
+        Item slotExistente(Producto producto, Repisa repisa) {
+            Item item = slots.get(new Slot(producto.getId(), repisa.getId()));
+            if (item == null) {
+                throw new IllegalArgumentException(
+                        "No hay stock del producto " + producto.getSku() + " en la repisa " + repisa.getId());
+            }
+            return item;
+        }
+
+        /**
+         * Acumula la variación del total del producto en el lote y devuelve la acumulada hasta acá.
+         */
+        long sumarTotal(Producto producto, long delta) {
+            return totales.merge(producto.getId(), delta, Long::sum);
+        }
+
+        Item slotOCrear(Producto producto, Repisa repisa) {
+            return slots.computeIfAbsent(new Slot(producto.getId(), repisa.getId()), slot -> {
+                Item nuevo = nuevoItem(producto, repisa);
+                nuevos.add(nuevo);
+                return nuevo;
+            });
+        }
+    }
+
+    private MovimientoInventario medir(String tipo, Supplier<MovimientoInventario> operacion) {
+        EventosJfr.InventarioEvento evento = new EventosJfr.InventarioEvento();
+        evento.begin();
+        long inicio = System.nanoTime();
+        try {
+            MovimientoInventario mov = conReintentos(operacion);
+            terminar(tipo, "ok", inicio, evento, mov.getEmpresa() != null ? mov.getEmpresa().getId() : null, 1);
+            return mov;
+        } catch (RuntimeException e) {
+            terminar(tipo, resultadoDeError(e), inicio, evento, null, 1);
+            throw e;
+        }
+    }
+
+    private void terminar(
+            String tipo, String resultado, long inicioNanos,
+            EventosJfr.InventarioEvento evento, Long empresaId, int lineas
+    ) {
+        Timer.builder("inventario.movimiento")
+                .description("Duración de un movimiento de inventario, reintentos incluidos")
+                .tags("tipo", tipo, "resultado", resultado)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - inicioNanos, TimeUnit.NANOSECONDS);
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.empresaId = empresaId != null ? empresaId : 0;
+            evento.tipo = tipo;
+            evento.lineas = lineas;
+            evento.resultado = resultado;
+            evento.commit();
+        }
+    }
+
+    // Rechazo = validación o permisos (4xx); error = conflicto agotado o fallo de base
+    private static String resultadoDeError(RuntimeException e) {
+        return e instanceof IllegalArgumentException || e instanceof SecurityException ? "rechazado" : "error";
+    }
+
+    private IllegalArgumentException stockInsuficiente(String tipo, String mensaje) {
+        Counter.builder("inventario.stock.insuficiente")
+                .description("Movimientos rechazados por stock insuficiente")
+                .tag("tipo", tipo)
+                .register(meterRegistry)
+                .increment();
+        return new IllegalArgumentException(mensaje);
+    }
+
+    /**
+     * Ejecuta la operación en su propia transacción y la reintenta si choca con otra sobre
+     * el mismo slot (deadlock, timeout de lock o alta concurrente del mismo item).
+     * Dentro de una transacción externa no se puede reintentar: se participa en ella.
+     */
+    private <T> T conReintentos(Supplier<T> operacion) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return operacion.get();
+        }
+        for (int intento = 1; ; intento++) {
+            try {
+                return transactionTemplate.execute(status -> operacion.get());
+            } catch (ConcurrencyFailureException | DataIntegrityViolationException e) {
+                if (intento >= maxIntentos) {
+                    throw e;
+                }
+                log.warn("Conflicto de concurrencia en inventario (intento {}/{}): {}", intento, maxIntentos, e.getMessage());
+                try {
+                    Thread.sleep(10L * intento);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
     private void validarCantidadPositiva(int cantidad) {
         if (cantidad <= 0) {
             throw new IllegalArgumentException("La cantidad debe ser mayor a 0");
@@ -209,30 +791,107 @@ public class InventarioService {
         return empresa;
     }
 
+    /**
+     * La estructura del almacén muestra ocupación y cantidades por repisa: cada movimiento
+     * invalida su ETag (se confirma tras el commit).
+     */
+    private void cambioEstructura(Repisa repisa) {
+        if (repisa == null || repisa.getArmario() == null || repisa.getArmario().getAlmacen() == null) {
+            return;
+        }
+        versionRespuestaService.incrementar(VersionRespuestaService.Recurso.ALMACEN, repisa.getArmario().getAlmacen().getId());
+    }
+
+    /**
+     * FOR KEY SHARE sobre las repisas del movimiento, en orden de id, antes de bloquear items y
+     * saldos. Es el mismo lock que tomaría después la FK de movimiento_inventario, pero tomado
+     * primero sigue el orden de BorradoCascadaService.borrarAlmacen (repisas, items, saldos): el
+     * movimiento espera al borrado, o el borrado al movimiento, sin deadlock. Una repisa que ya
+     * no existe corta el movimiento acá.
+     */
+    private void bloquearRepisas(Collection<Long> repisaIds) {
+        if (repisaIds.isEmpty()) {
+            return;
+        }
+        Long[] ids = repisaIds.stream().distinct().sorted().toArray(Long[]::new);
+        List<Long> bloqueadas = jdbcTemplate.queryForList(
+                "SELECT id FROM repisa WHERE id = ANY(?) ORDER BY id FOR KEY SHARE", Long.class, (Object) ids);
+        if (bloqueadas.size() < ids.length) {
+            Long faltante = Arrays.stream(ids).filter(id -> !bloqueadas.contains(id)).findFirst().orElse(null);
+            throw new IllegalArgumentException("Repisa no encontrada: " + faltante);
+        }
+    }
+
     private Item buscarItemExistente(Producto producto, Repisa repisa) {
-        List<Item> items = itemRepository.findByRepisa(repisa);
+        List<Item> items = itemRepository.findSlotForUpdate(producto.getId(), repisa.getId());
         return items.stream()
-                .filter(i -> i.getProducto() != null && i.getProducto().getId().equals(producto.getId()))
                 .findFirst()
                 .orElseThrow(() -> new IllegalArgumentException(
                         "No hay stock del producto " + producto.getSku() + " en la repisa " + repisa.getId()));
     }
 
     private Item buscarOCrearItem(Producto producto, Repisa repisa) {
-        List<Item> items = itemRepository.findByRepisa(repisa);
+        List<Item> items = itemRepository.findSlotForUpdate(producto.getId(), repisa.getId());
         return items.stream()
-                .filter(i -> i.getProducto() != null && i.getProducto().getId().equals(producto.getId()))
                 .findFirst()
-                .orElseGet(() -> {
-                    Item nuevo = new Item();
-                    nuevo.setProducto(producto);
-                    nuevo.setRepisa(repisa);
-                    nuevo.setNombre(producto.getNombre());
-                    nuevo.setEstado("ACTIVO");
-                    nuevo.setTamanio(1);
-                    nuevo.setCantidad(0);
-                    nuevo.setEstadoStock(EstadoStock.DISPONIBLE);
-                    return nuevo;
-                });
+                .orElseGet(() -> nuevoItem(producto, repisa));
+    }
+
+    /**
+     * Aplica {@code delta} al total del producto en PRODUCTO_SALDO y devuelve el saldo resultante.
+     * Los items se escriben antes: la fila del contador es lo último que se bloquea, así dos
+     * movimientos del mismo producto en slots distintos solo se esperan entre este UPDATE y el
+     * commit. Un producto sin fila (recién creado) arranca en {@code delta}.
+     */
+    private long saldoEmpresa(Producto producto, long delta) {
+        itemRepository.flush();
+        Long total = jdbcTemplate.queryForObject(
+                "INSERT INTO producto_saldo (producto_id, total) VALUES (?, ?) "
+                        + "ON CONFLICT (producto_id) DO UPDATE SET total = producto_saldo.total + EXCLUDED.total "
+                        + "RETURNING total",
+                Long.class, producto.getId(), delta);
+        return total != null ? total : delta;
+    }
+
+    /**
+     * Aplica las variaciones netas de un lote en una sola sentencia, en orden de producto id para
+     * que dos lotes concurrentes bloqueen los contadores en el mismo orden. Devuelve el total de
+     * cada producto antes del lote.
+     */
+    private Map<Long, Long> sumarSaldos(Map<Long, Long> deltas) {
+        List<Long> productoIds = deltas.keySet().stream().sorted().toList();
+        Long[] variaciones = productoIds.stream().map(deltas::get).toArray(Long[]::new);
+        Map<Long, Long> previos = new HashMap<>();
+        jdbcTemplate.query("""
+                INSERT INTO producto_saldo (producto_id, total)
+                SELECT d.producto_id, d.delta FROM unnest(?::bigint[], ?::bigint[]) AS d(producto_id, delta)
+                ORDER BY d.producto_id
+                ON CONFLICT (producto_id) DO UPDATE SET total = producto_saldo.total + EXCLUDED.total
+                RETURNING producto_id, total
+                """, rs -> {
+            long productoId = rs.getLong(1);
+            previos.put(productoId, rs.getLong(2) - deltas.get(productoId));
+        }, productoIds.toArray(Long[]::new), variaciones);
+        return previos;
+    }
+
+    private void guardarItem(Item item, Empresa empresa) {
+        boolean nuevo = item.getId() == null;
+        itemRepository.save(item);
+        if (nuevo) {
+            usoEmpresaService.registrarAlta(empresa.getId(), UsoEmpresaService.Recurso.ITEMS);
+        }
+    }
+
+    private Item nuevoItem(Producto producto, Repisa repisa) {
+        Item nuevo = new Item();
+        nuevo.setProducto(producto);
+        nuevo.setRepisa(repisa);
+        nuevo.setNombre(producto.getNombre());
+        nuevo.setEstado("ACTIVO");
+        nuevo.setTamanio(1);
+        nuevo.setCantidad(0);
+        nuevo.setEstadoStock(EstadoStock.DISPONIBLE);
+        return nuevo;
     }
 }
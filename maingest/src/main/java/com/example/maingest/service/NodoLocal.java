@@ -0,0 +1,49 @@
+package com.example.maingest.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Identificador de este proceso entre los nodos que comparten la base: con él TrabajoService
+ * reconoce sus filas de TRABAJO y sus archivos, y GrabacionJfrService nombra las grabaciones.
+ * <p>
+ * Sin {@code app.trabajos.nodo} se genera uno por proceso (host, pid y sufijo aleatorio), así
+ * dos procesos con el mismo HOSTNAME (o sin HOSTNAME) no se marcan los trabajos como huérfanos
+ * entre sí. Un id generado no sobrevive al reinicio: los trabajos que dejó a medias la corrida
+ * anterior los marca FALLIDO el vencimiento del latido (ver TrabajoService); con un id estable y
+ * único por instancia el arranque los marca enseguida.
+ */
+@Component
+public class NodoLocal {
+
+    private static final Logger log = LoggerFactory.getLogger(NodoLocal.class);
+
+    private final String id;
+
+    public NodoLocal(@Value("${app.trabajos.nodo:}") String configurado) {
+        if (configurado.isBlank()) {
+            this.id = generar();
+            log.info("Nodo: app.trabajos.nodo sin configurar, id generado {} (no se conserva entre reinicios)", id);
+        } else {
+            this.id = configurado.trim();
+        }
+    }
+
+    public String id() {
+        return id;
+    }
+
+    private static String generar() {
+        String host = System.getenv("HOSTNAME");
+        if (host == null || host.isBlank()) {
+            host = "local";
+        } else if (host.length() > 100) {
+            host = host.substring(0, 100);
+        }
+        return host + "-" + ProcessHandle.current().pid() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
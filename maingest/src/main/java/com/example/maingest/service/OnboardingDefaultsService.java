@@ -1,32 +1,23 @@
 package com.example.maingest.service;
 
-import com.example.maingest.domain.Permiso;
 import com.example.maingest.domain.PlanSuscripcion;
 import com.example.maingest.domain.Rol;
-import com.example.maingest.domain.RolPermiso;
-import com.example.maingest.domain.RolPermisoId;
-import com.example.maingest.repository.PermisoRepository;
 import com.example.maingest.repository.PlanSuscripcionRepository;
-import com.example.maingest.repository.RolPermisoRepository;
 import com.example.maingest.repository.RolRepository;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import jakarta.annotation.PostConstruct;
-
-import java.util.HashSet;
-import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
 @Service
 public class OnboardingDefaultsService {
 
     private final PlanSuscripcionRepository planSuscripcionRepository;
     private final RolRepository rolRepository;
-    private final PermisoRepository permisoRepository;
-    private final RolPermisoRepository rolPermisoRepository;
+    private final PermissionCacheService permissionCacheService;
+    private final JdbcTemplate jdbcTemplate;
 
     @Value("${stockpocket.onboarding.defaultPlanNombre:GRATIS}")
     private String defaultPlanNombre;
@@ -37,27 +28,44 @@ public class OnboardingDefaultsService {
     public OnboardingDefaultsService(
             PlanSuscripcionRepository planSuscripcionRepository,
             RolRepository rolRepository,
-            PermisoRepository permisoRepository,
-            RolPermisoRepository rolPermisoRepository
+            PermissionCacheService permissionCacheService,
+            JdbcTemplate jdbcTemplate
     ) {
         this.planSuscripcionRepository = planSuscripcionRepository;
         this.rolRepository = rolRepository;
-        this.permisoRepository = permisoRepository;
-        this.rolPermisoRepository = rolPermisoRepository;
+        this.permissionCacheService = permissionCacheService;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
-    @PostConstruct
+    /**
+     * Plan por defecto y rol propietario con todos los permisos, en tres sentencias sin importar
+     * cuántos permisos haya. Lo llama el arranque (SchemaMigrationRunner) solo cuando cambian
+     * los datos base.
+     */
     @Transactional
     public void initDefaults() {
-        getOrCreateDefaultPlan();
-        getOrCreateOwnerRoleWithAllPermisos();
+        jdbcTemplate.update(
+                "INSERT INTO plan_suscripcion (nombre, descripcion, precio_mensual_cents, precio_anual_cents, activo) "
+                        + "VALUES (?, 'Plan gratuito', 0, 0, true) "
+                        + "ON CONFLICT (nombre) DO UPDATE SET activo = true WHERE plan_suscripcion.activo IS DISTINCT FROM true",
+                planNombre());
+        jdbcTemplate.update(
+                "INSERT INTO rol (nombre, descripcion) VALUES (?, 'Propietario / administrador total') "
+                        + "ON CONFLICT (nombre) DO NOTHING",
+                ownerNombre());
+        enlazarTodosLosPermisos(ownerNombre());
+    }
+
+    /**
+     * Lo que define los datos base: si cambia, el arranque vuelve a aplicarlos.
+     */
+    public String huellaDefaults() {
+        return planNombre() + "|" + ownerNombre();
     }
 
     @Transactional
     public PlanSuscripcion getOrCreateDefaultPlan() {
-        String nombre = defaultPlanNombre != null && !defaultPlanNombre.isBlank()
-                ? defaultPlanNombre.trim()
-                : "GRATIS";
+        String nombre = planNombre();
 
         Optional<PlanSuscripcion> existente = planSuscripcionRepository.findByNombre(nombre);
         if (existente.isPresent()) {
@@ -80,41 +88,39 @@ public class OnboardingDefaultsService {
 
     @Transactional
     public Rol getOrCreateOwnerRoleWithAllPermisos() {
-        String nombre = ownerRoleNombre != null && !ownerRoleNombre.isBlank()
-                ? ownerRoleNombre.trim()
-                : "PROPIETARIO";
+        String nombre = ownerNombre();
 
         Rol rol = rolRepository.findByNombre(nombre).orElseGet(() -> {
             Rol nuevo = new Rol();
             nuevo.setNombre(nombre);
             nuevo.setDescripcion("Propietario / administrador total");
-            return rolRepository.save(nuevo);
+            return rolRepository.saveAndFlush(nuevo);
         });
+        enlazarTodosLosPermisos(nombre);
+        return rol;
+    }
 
-        List<RolPermiso> actuales = rolPermisoRepository.findByRol(rol);
-        Set<Long> permisoIds = new HashSet<>();
-        for (RolPermiso rp : actuales) {
-            if (rp != null && rp.getPermiso() != null && rp.getPermiso().getId() != null) {
-                permisoIds.add(rp.getPermiso().getId());
-            }
+    private void enlazarTodosLosPermisos(String rolNombre) {
+        // Un INSERT ... SELECT en vez de leer los enlaces y guardar uno por permiso
+        int enlacesNuevos = jdbcTemplate.update(
+                "INSERT INTO rol_permiso (rol_id, permiso_id) "
+                        + "SELECT r.id, p.id FROM rol r CROSS JOIN permiso p WHERE r.nombre = ? "
+                        + "ON CONFLICT DO NOTHING",
+                rolNombre);
+        if (enlacesNuevos > 0) {
+            permissionCacheService.invalidarTodo();
         }
+    }
 
-        List<Permiso> permisos = permisoRepository.findAll();
-        for (Permiso permiso : permisos) {
-            if (permiso == null || permiso.getId() == null) {
-                continue;
-            }
-            if (permisoIds.contains(permiso.getId())) {
-                continue;
-            }
-            RolPermiso enlace = new RolPermiso();
-            RolPermisoId id = new RolPermisoId(rol.getId(), permiso.getId());
-            enlace.setId(id);
-            enlace.setRol(rol);
-            enlace.setPermiso(permiso);
-            rolPermisoRepository.save(enlace);
-        }
+    private String planNombre() {
+        return defaultPlanNombre != null && !defaultPlanNombre.isBlank()
+                ? defaultPlanNombre.trim()
+                : "GRATIS";
+    }
 
-        return rol;
+    private String ownerNombre() {
+        return ownerRoleNombre != null && !ownerRoleNombre.isBlank()
+                ? ownerRoleNombre.trim()
+                : "PROPIETARIO";
     }
 }
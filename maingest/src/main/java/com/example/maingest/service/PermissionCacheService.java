@@ -0,0 +1,181 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.Permiso;
+import com.example.maingest.repository.PermisoRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache de permisos compilados por alcance (usuario, empresa, almacen).
+ * Cada alcance se guarda como un bitset inmutable indexado por el ordinal de (area, codigo),
+ * de modo que una verificación de permiso es un test de bit en memoria.
+ */
+@Service
+public class PermissionCacheService {
+
+    private final PermisoRepository permisoRepository;
+    private final int maxEntries;
+    private final Map<ScopeKey, CompiledScope> scopes;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Catalogo catalogo;
+
+    public PermissionCacheService(
+            PermisoRepository permisoRepository,
+            @Value("${app.permisos.cache.max-entries:10000}") int maxEntries
+    ) {
+        this.permisoRepository = permisoRepository;
+        this.maxEntries = Math.max(16, maxEntries);
+        this.scopes = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ScopeKey, CompiledScope> eldest) {
+                return size() > PermissionCacheService.this.maxEntries;
+            }
+        };
+    }
+
+    public record ScopeKey(Long usuarioId, Long empresaId, Long almacenId) {
+    }
+
+    public static final class CompiledScope {
+
+        private final boolean superAdmin;
+        private final BitSet permisos;
+
+        public CompiledScope(boolean superAdmin, BitSet permisos) {
+            this.superAdmin = superAdmin;
+            this.permisos = (BitSet) permisos.clone();
+        }
+
+        public boolean isSuperAdmin() {
+            return superAdmin;
+        }
+
+        public boolean has(int ordinal) {
+            return superAdmin || (ordinal >= 0 && permisos.get(ordinal));
+        }
+    }
+
+    private record Catalogo(Map<String, Integer> ordinalPorClave, Map<Long, Integer> ordinalPorId) {
+    }
+
+    public CompiledScope obtener(ScopeKey key, Supplier<CompiledScope> compilador) {
+        CompiledScope scope;
+        synchronized (scopes) {
+            scope = scopes.get(key);
+        }
+        if (scope != null) {
+            return scope;
+        }
+        long generacionInicial = generation.get();
+        scope = compilador.get();
+        synchronized (scopes) {
+            // Si hubo una invalidación mientras se compilaba, no se guarda un resultado posiblemente viejo
+            if (generation.get() == generacionInicial) {
+                scopes.put(key, scope);
+            }
+        }
+        return scope;
+    }
+
+    public int ordinal(String area, int codigo) {
+        Integer ordinal = catalogo().ordinalPorClave().get(clave(area, codigo));
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public int ordinal(Long permisoId) {
+        if (permisoId == null) {
+            return -1;
+        }
+        Integer ordinal = catalogo().ordinalPorId().get(permisoId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public void invalidarUsuario(Long usuarioId) {
+        if (usuarioId == null) {
+            return;
+        }
+        ejecutarAhoraYTrasCommit(() -> {
+            synchronized (scopes) {
+                generation.incrementAndGet();
+                scopes.keySet().removeIf(key -> Objects.equals(key.usuarioId(), usuarioId));
+            }
+        });
+    }
+
+    public void invalidarTodo() {
+        ejecutarAhoraYTrasCommit(() -> {
+            synchronized (scopes) {
+                generation.incrementAndGet();
+                scopes.clear();
+            }
+        });
+    }
+
+    public void invalidarCatalogo() {
+        ejecutarAhoraYTrasCommit(() -> {
+            synchronized (scopes) {
+                generation.incrementAndGet();
+                catalogo = null;
+                scopes.clear();
+            }
+        });
+    }
+
+    private void ejecutarAhoraYTrasCommit(Runnable accion) {
+        accion.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Otra petición pudo recompilar con datos aún no confirmados
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    accion.run();
+                }
+            });
+        }
+    }
+
+    private Catalogo catalogo() {
+        Catalogo actual = catalogo;
+        if (actual != null) {
+            return actual;
+        }
+        long generacionInicial = generation.get();
+        List<Permiso> permisos = permisoRepository.findAll();
+        Map<String, Integer> porClave = new HashMap<>();
+        Map<Long, Integer> porId = new HashMap<>();
+        for (Permiso permiso : permisos) {
+            if (permiso == null || permiso.getId() == null || permiso.getArea() == null || permiso.getCodigo() == null) {
+                continue;
+            }
+            String clave = clave(permiso.getArea(), permiso.getCodigo());
+            Integer ordinal = porClave.get(clave);
+            if (ordinal == null) {
+                ordinal = porClave.size();
+                porClave.put(clave, ordinal);
+            }
+            porId.put(permiso.getId(), ordinal);
+        }
+        actual = new Catalogo(Map.copyOf(porClave), Map.copyOf(porId));
+        synchronized (scopes) {
+            if (generation.get() == generacionInicial) {
+                catalogo = actual;
+            }
+        }
+        return actual;
+    }
+
+    private static String clave(String area, int codigo) {
+        return area + "#" + codigo;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.maingest.service;
 
+import com.example.maingest.config.ReplicaRoutingDataSource;
 import com.example.maingest.domain.Permiso;
 import com.example.maingest.domain.Rol;
 import com.example.maingest.domain.RolPermiso;
@@ -11,13 +12,13 @@ import com.example.maingest.domain.EmpresaUsuario;
 import com.example.maingest.domain.AlmacenUsuario;
 import com.example.maingest.repository.AlmacenUsuarioRepository;
 import com.example.maingest.repository.EmpresaUsuarioRepository;
-import com.example.maingest.repository.PermisoRepository;
 import com.example.maingest.repository.RolPermisoRepository;
 import com.example.maingest.repository.UsuarioRolRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -29,24 +30,24 @@ public class PermissionService {
     private final UsuarioRolRepository usuarioRolRepository;
     private final EmpresaUsuarioRepository empresaUsuarioRepository;
     private final AlmacenUsuarioRepository almacenUsuarioRepository;
-    private final PermisoRepository permisoRepository;
     private final RolPermisoRepository rolPermisoRepository;
     private final AccessControlService accessControlService;
+    private final PermissionCacheService permissionCacheService;
 
     public PermissionService(
             UsuarioRolRepository usuarioRolRepository,
             EmpresaUsuarioRepository empresaUsuarioRepository,
             AlmacenUsuarioRepository almacenUsuarioRepository,
-            PermisoRepository permisoRepository,
             RolPermisoRepository rolPermisoRepository,
-            AccessControlService accessControlService
+            AccessControlService accessControlService,
+            PermissionCacheService permissionCacheService
     ) {
         this.usuarioRolRepository = usuarioRolRepository;
         this.empresaUsuarioRepository = empresaUsuarioRepository;
         this.almacenUsuarioRepository = almacenUsuarioRepository;
-        this.permisoRepository = permisoRepository;
         this.rolPermisoRepository = rolPermisoRepository;
         this.accessControlService = accessControlService;
+        this.permissionCacheService = permissionCacheService;
     }
 
     public boolean hasPermission(Usuario usuario, String area, int codigo) {
@@ -63,18 +64,39 @@ public class PermissionService {
     }
 
     private boolean hasPermissionForRoles(Usuario usuario, Empresa empresa, Almacen almacen, String area, int codigo) {
-        if (usuario == null) {
+        if (usuario == null || usuario.getId() == null) {
             return false;
         }
-        if (accessControlService.isSuperAdmin(usuario)) {
-            return true;
+        EventosJfr.PermisoEvento evento = new EventosJfr.PermisoEvento();
+        evento.begin();
+        PermissionCacheService.CompiledScope scope = scope(usuario, empresa, almacen);
+        boolean concedido = scope.isSuperAdmin() || scope.has(permissionCacheService.ordinal(area, codigo));
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.usuarioId = usuario.getId();
+            evento.empresaId = empresa != null && empresa.getId() != null ? empresa.getId() : 0;
+            evento.almacenId = almacen != null && almacen.getId() != null ? almacen.getId() : 0;
+            evento.permiso = area + ":" + codigo;
+            evento.concedido = concedido;
+            evento.commit();
         }
-        Permiso permiso = permisoRepository.findByAreaAndCodigo(area, codigo).orElse(null);
-        if (permiso == null) {
-            return false;
+        return concedido;
+    }
+
+    private PermissionCacheService.CompiledScope scope(Usuario usuario, Empresa empresa, Almacen almacen) {
+        Long empresaId = empresa != null ? empresa.getId() : null;
+        Long almacenId = almacen != null ? almacen.getId() : null;
+        PermissionCacheService.ScopeKey key = new PermissionCacheService.ScopeKey(usuario.getId(), empresaId, almacenId);
+        // Lo compilado queda en cache: se lee del principal para no cachear una réplica atrasada
+        return permissionCacheService.obtener(key,
+                () -> ReplicaRoutingDataSource.enPrimario(() -> compilarScope(usuario, empresa, almacen)));
+    }
+
+    private PermissionCacheService.CompiledScope compilarScope(Usuario usuario, Empresa empresa, Almacen almacen) {
+        BitSet permisos = new BitSet();
+        if (accessControlService.isSuperAdmin(usuario)) {
+            return new PermissionCacheService.CompiledScope(true, permisos);
         }
-        Long permisoId = permiso.getId();
-        
         List<Rol> roles;
         if (empresa == null && almacen == null) {
             // Check global and all company roles (generic permission check)
@@ -83,20 +105,24 @@ public class PermissionService {
             // Check specific context
             roles = collectRoles(usuario, empresa, almacen);
         }
-
-        if (roles.isEmpty()) {
-            return false;
-        }
-        for (Rol rol : roles) {
-            List<RolPermiso> enlaces = rolPermisoRepository.findByRol(rol);
-            for (RolPermiso rp : enlaces) {
-                Permiso p = rp.getPermiso();
-                if (p != null && permisoId.equals(p.getId())) {
-                    return true;
+        if (!roles.isEmpty()) {
+            List<Long> rolIds = roles.stream().map(Rol::getId).toList();
+            for (Long permisoId : rolPermisoRepository.findPermisoIdsByRolIds(rolIds)) {
+                int ordinal = permissionCacheService.ordinal(permisoId);
+                if (ordinal >= 0) {
+                    permisos.set(ordinal);
                 }
             }
         }
-        return false;
+        return new PermissionCacheService.CompiledScope(false, permisos);
+    }
+
+    public void invalidarCacheUsuario(Long usuarioId) {
+        permissionCacheService.invalidarUsuario(usuarioId);
+    }
+
+    public void invalidarCache() {
+        permissionCacheService.invalidarTodo();
     }
 
     @Transactional(readOnly = true)
@@ -206,10 +232,10 @@ public class PermissionService {
     }
 
     public String uiRoleForUsuario(Usuario usuario) {
-        if (usuario == null) {
+        if (usuario == null || usuario.getId() == null) {
             return "USUARIO_EMPRESA";
         }
-        if (accessControlService.isSuperAdmin(usuario)) {
+        if (scope(usuario, null, null).isSuperAdmin()) {
             return "ADMIN";
         }
         boolean hasUsuarioPermisos =
@@ -235,30 +261,6 @@ public class PermissionService {
     }
 
     private boolean hasGlobalOrCompanyPermission(Usuario usuario, String area, int codigo) {
-        if (usuario == null) {
-            return false;
-        }
-        if (accessControlService.isSuperAdmin(usuario)) {
-            return true;
-        }
-        Permiso permiso = permisoRepository.findByAreaAndCodigo(area, codigo).orElse(null);
-        if (permiso == null) {
-            return false;
-        }
-        Long permisoId = permiso.getId();
-        List<Rol> roles = getAllRoles(usuario);
-        if (roles.isEmpty()) {
-            return false;
-        }
-        for (Rol rol : roles) {
-            List<RolPermiso> enlaces = rolPermisoRepository.findByRol(rol);
-            for (RolPermiso rp : enlaces) {
-                Permiso p = rp.getPermiso();
-                if (p != null && permisoId.equals(p.getId())) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return hasPermissionForRoles(usuario, null, null, area, codigo);
     }
 }
@@ -0,0 +1,238 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.AlmacenUsuario;
+import com.example.maingest.domain.EmpresaUsuario;
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.repository.AlmacenUsuarioRepository;
+import com.example.maingest.repository.EmpresaUsuarioRepository;
+import com.example.maingest.repository.ItemRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+@Service
+public class ReporteInventarioService {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final List<String> CSV_COLUMNAS = List.of(
+            "empresaId", "empresaNombre", "almacenId", "almacenNombre",
+            "armarioId", "armarioNombre", "repisaId", "repisaNivel", "repisaCapacidad",
+            "itemId", "itemNombre", "itemEstado", "itemTamanio",
+            "productoId", "productoSku", "cantidad", "estadoStock", "lote"
+    );
+
+    // Evita "IN ()" cuando el actor no tiene empresas o almacenes asignados
+    private static final Set<Long> SIN_IDS = Set.of(-1L);
+
+    private final ItemRepository itemRepository;
+    private final EmpresaUsuarioRepository empresaUsuarioRepository;
+    private final AlmacenUsuarioRepository almacenUsuarioRepository;
+    private final AccessControlService accessControlService;
+    private final ObjectMapper objectMapper;
+
+    public ReporteInventarioService(
+            ItemRepository itemRepository,
+            EmpresaUsuarioRepository empresaUsuarioRepository,
+            AlmacenUsuarioRepository almacenUsuarioRepository,
+            AccessControlService accessControlService,
+            ObjectMapper objectMapper
+    ) {
+        this.itemRepository = itemRepository;
+        this.empresaUsuarioRepository = empresaUsuarioRepository;
+        this.almacenUsuarioRepository = almacenUsuarioRepository;
+        this.accessControlService = accessControlService;
+        this.objectMapper = objectMapper;
+    }
+
+    public record InventarioRowDto(
+            Long empresaId,
+            String empresaNombre,
+            Long almacenId,
+            String almacenNombre,
+            Long armarioId,
+            String armarioNombre,
+            Long repisaId,
+            Integer repisaNivel,
+            Integer repisaCapacidad,
+            Long itemId,
+            String itemNombre,
+            String itemEstado,
+            Integer itemTamanio,
+            Long productoId,
+            String productoSku,
+            Integer cantidad,
+            String estadoStock,
+            String lote
+    ) {
+    }
+
+    public record Alcance(boolean todos, Set<Long> empresaIds, Set<Long> almacenIds) {
+
+        public boolean vacio() {
+            return !todos && empresaIds.isEmpty() && almacenIds.isEmpty();
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Alcance resolverAlcance(Usuario actor) {
+        if (accessControlService.isSuperAdmin(actor)) {
+            return new Alcance(true, Set.of(), Set.of());
+        }
+        Set<Long> empresaIds = new HashSet<>();
+        for (EmpresaUsuario relacion : empresaUsuarioRepository.findByUsuario(actor)) {
+            if (relacion.getEmpresa() != null && relacion.getEmpresa().getId() != null) {
+                empresaIds.add(relacion.getEmpresa().getId());
+            }
+        }
+        Set<Long> almacenIds = new HashSet<>();
+        for (AlmacenUsuario relacion : almacenUsuarioRepository.findByUsuario(actor)) {
+            if (relacion.getAlmacen() != null && relacion.getAlmacen().getId() != null) {
+                almacenIds.add(relacion.getAlmacen().getId());
+            }
+        }
+        return new Alcance(false, Set.copyOf(empresaIds), Set.copyOf(almacenIds));
+    }
+
+    @Transactional(readOnly = true)
+    public List<ItemRepository.InventarioFila> pagina(Alcance alcance, Long afterId, int size) {
+        if (alcance.vacio()) {
+            return List.of();
+        }
+        int limite = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        return itemRepository.findInventarioPagina(
+                alcance.todos(),
+                ids(alcance.empresaIds()),
+                ids(alcance.almacenIds()),
+                afterId != null ? afterId : 0L,
+                PageRequest.of(0, limite)
+        );
+    }
+
+    /**
+     * Recorre todas las filas del alcance con un cursor de solo avance; cada fila se
+     * entrega al consumidor y se descarta, así la memoria no depende del tamaño del reporte.
+     */
+    @Transactional(readOnly = true)
+    public void recorrer(Alcance alcance, Consumer<ItemRepository.InventarioFila> consumidor) {
+        if (alcance.vacio()) {
+            return;
+        }
+        try (Stream<ItemRepository.InventarioFila> filas = itemRepository.streamInventario(
+                alcance.todos(),
+                ids(alcance.empresaIds()),
+                ids(alcance.almacenIds())
+        )) {
+            filas.forEach(consumidor);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public long contar(Alcance alcance) {
+        if (alcance.vacio()) {
+            return 0;
+        }
+        return itemRepository.contarInventario(
+                alcance.todos(),
+                ids(alcance.empresaIds()),
+                ids(alcance.almacenIds())
+        );
+    }
+
+    /**
+     * Escribe el alcance como CSV (con encabezado) o NDJSON. {@code avance}, si viene, recibe
+     * el número de filas escritas cada 1000 filas y puede cortar el recorrido lanzando una
+     * excepción.
+     */
+    @Transactional(readOnly = true)
+    public long exportar(Alcance alcance, boolean csv, Writer writer, LongConsumer avance) throws IOException {
+        if (csv) {
+            writer.write(String.join(",", CSV_COLUMNAS));
+            writer.write('\n');
+        }
+        long[] escritas = {0};
+        try {
+            recorrer(alcance, fila -> {
+                try {
+                    InventarioRowDto row = toRowDto(fila);
+                    writer.write(csv ? toCsvLinea(row) : objectMapper.writeValueAsString(row));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                escritas[0]++;
+                if (avance != null && escritas[0] % 1000 == 0) {
+                    avance.accept(escritas[0]);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return escritas[0];
+    }
+
+    public static InventarioRowDto toRowDto(ItemRepository.InventarioFila fila) {
+        String estadoStock = fila.getEstadoStock() != null ? fila.getEstadoStock().name() : null;
+        return new InventarioRowDto(
+                fila.getEmpresaId(),
+                fila.getEmpresaNombre(),
+                fila.getAlmacenId(),
+                fila.getAlmacenNombre(),
+                fila.getArmarioId(),
+                fila.getArmarioNombre(),
+                fila.getRepisaId(),
+                fila.getRepisaNivel(),
+                fila.getRepisaCapacidad(),
+                fila.getItemId(),
+                fila.getProductoId() != null ? fila.getProductoNombre() : fila.getItemNombre(),
+                estadoStock != null ? estadoStock : fila.getItemEstado(),
+                fila.getItemTamanio(),
+                fila.getProductoId(),
+                fila.getProductoSku(),
+                fila.getCantidad(),
+                estadoStock,
+                fila.getLote()
+        );
+    }
+
+    private static String toCsvLinea(InventarioRowDto row) {
+        Object[] valores = {
+                row.empresaId(), row.empresaNombre(), row.almacenId(), row.almacenNombre(),
+                row.armarioId(), row.armarioNombre(), row.repisaId(), row.repisaNivel(), row.repisaCapacidad(),
+                row.itemId(), row.itemNombre(), row.itemEstado(), row.itemTamanio(),
+                row.productoId(), row.productoSku(), row.cantidad(), row.estadoStock(), row.lote()
+        };
+        StringBuilder linea = new StringBuilder();
+        for (int i = 0; i < valores.length; i++) {
+            if (i > 0) {
+                linea.append(',');
+            }
+            Object valor = valores[i];
+            if (valor == null) {
+                continue;
+            }
+            String texto = valor.toString();
+            if (texto.indexOf(',') >= 0 || texto.indexOf('"') >= 0 || texto.indexOf('\n') >= 0 || texto.indexOf('\r') >= 0) {
+                linea.append('"').append(texto.replace("\"", "\"\"")).append('"');
+            } else {
+                linea.append(texto);
+            }
+        }
+        return linea.toString();
+    }
+
+    private static Set<Long> ids(Set<Long> ids) {
+        return ids.isEmpty() ? SIN_IDS : ids;
+    }
+}
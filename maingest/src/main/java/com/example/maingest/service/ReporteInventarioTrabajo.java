@@ -0,0 +1,82 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.repository.UsuarioRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Exportación del inventario a archivo (csv o ndjson) con el alcance del usuario que la pidió,
+ * resuelto al ejecutar.
+ */
+@Component
+public class ReporteInventarioTrabajo implements TrabajoEjecutor {
+
+    public static final String TIPO = "REPORTE_INVENTARIO";
+
+    private final ReporteInventarioService reporteInventarioService;
+    private final UsuarioRepository usuarioRepository;
+    private final ObjectMapper objectMapper;
+
+    public ReporteInventarioTrabajo(
+            ReporteInventarioService reporteInventarioService,
+            UsuarioRepository usuarioRepository,
+            ObjectMapper objectMapper
+    ) {
+        this.reporteInventarioService = reporteInventarioService;
+        this.usuarioRepository = usuarioRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String tipo() {
+        return TIPO;
+    }
+
+    @Override
+    public JsonNode validar(Usuario actor, JsonNode parametros) {
+        if (actor == null) {
+            throw new SecurityException("Usuario no autenticado");
+        }
+        String formato = parametros.path("formato").asText("ndjson").trim().toLowerCase();
+        if (!"csv".equals(formato) && !"ndjson".equals(formato)) {
+            throw new IllegalArgumentException("formato debe ser csv o ndjson");
+        }
+        ObjectNode normalizados = objectMapper.createObjectNode();
+        normalizados.put("formato", formato);
+        return normalizados;
+    }
+
+    @Override
+    public void ejecutar(TrabajoService.Contexto contexto) throws Exception {
+        Usuario usuario = contexto.usuarioId() != null
+                ? usuarioRepository.findById(contexto.usuarioId()).orElse(null)
+                : null;
+        if (usuario == null) {
+            throw new IllegalStateException("El usuario que pidió el reporte ya no existe");
+        }
+        boolean csv = "csv".equals(contexto.parametros().path("formato").asText());
+        ReporteInventarioService.Alcance alcance = reporteInventarioService.resolverAlcance(usuario);
+        long total = reporteInventarioService.contar(alcance);
+        contexto.progreso(0, total + " filas por exportar");
+
+        String nombre = csv ? "inventario.csv" : "inventario.ndjson";
+        String tipo = csv ? "text/csv; charset=UTF-8" : "application/x-ndjson";
+        long escritas;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(contexto.archivo(nombre, tipo), StandardCharsets.UTF_8))) {
+            escritas = reporteInventarioService.exportar(alcance, csv, writer, filas -> contexto.progreso(
+                    total > 0 ? (int) (filas * 100 / total) : 0,
+                    filas + " de " + total + " filas"));
+        }
+        contexto.progreso(99, escritas + " filas exportadas");
+        contexto.resultado(Map.of("filas", escritas, "formato", csv ? "csv" : "ndjson"));
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.maingest.service;
+
+import com.example.maingest.repository.SaldoDiarioRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stock histórico a partir de los saldos que lleva cada movimiento. Un job diario compacta el
+ * día anterior en SALDO_DIARIO (foto previa + último saldo de cada slot tocado ese día), así
+ * una consulta a una fecha lee una foto y como mucho un día de movimientos.
+ */
+@Service
+public class SaldoKardexService {
+
+    private static final Logger log = LoggerFactory.getLogger(SaldoKardexService.class);
+    private static final long LOCK_COMPACTACION = 0x5A1D0D1AL;
+
+    private final SaldoDiarioRepository saldoDiarioRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ZoneId zona;
+
+    public SaldoKardexService(
+            SaldoDiarioRepository saldoDiarioRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.kardex.saldo.zona:UTC}") String zona
+    ) {
+        this.saldoDiarioRepository = saldoDiarioRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.zona = ZoneId.of(zona);
+    }
+
+    public record SaldoSlot(Long productoId, Long repisaId, int cantidad) {
+    }
+
+    /**
+     * Stock a {@code fecha}; {@code snapshot} es el día de la foto usada como base (null si
+     * todavía no hay fotos y se recorrió el kardex completo).
+     */
+    public record SaldoFecha(Instant fecha, LocalDate snapshot, List<SaldoSlot> slots) {
+    }
+
+    /**
+     * Acepta un instante ISO-8601 o una fecha (yyyy-MM-dd), que se interpreta como el cierre de ese día.
+     */
+    public Instant resolverFecha(String valor) {
+        if (valor == null || valor.isBlank()) {
+            throw new IllegalArgumentException("fecha es requerida");
+        }
+        String texto = valor.trim();
+        try {
+            if (texto.length() == 10) {
+                return finDelDia(LocalDate.parse(texto));
+            }
+            return Instant.parse(texto);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("fecha inválida, se espera yyyy-MM-dd o un instante ISO-8601");
+        }
+    }
+
+    public SaldoFecha saldoA(Long empresaId, Instant fecha, Long productoId) {
+        LocalDate dia = fecha.atZone(zona).toLocalDate();
+        LocalDate snapshot = saldoDiarioRepository.ultimaFechaAntesDe(dia);
+        Instant desde = snapshot != null ? inicioDelDia(snapshot.plusDays(1)) : Instant.EPOCH;
+
+        String filtroMov = " AND empresa_id = ?" + (productoId != null ? " AND producto_id = ?" : "");
+        List<Object> args = new ArrayList<>();
+        for (int lado = 0; lado < 2; lado++) {
+            args.add(Timestamp.from(desde));
+            args.add(Timestamp.from(fecha));
+            args.add(empresaId);
+            if (productoId != null) {
+                args.add(productoId);
+            }
+        }
+        args.add(Date.valueOf(snapshot != null ? snapshot : LocalDate.EPOCH));
+        args.add(empresaId);
+        if (productoId != null) {
+            args.add(productoId);
+        }
+
+        String sql = "SELECT COALESCE(u.producto_id, a.producto_id) AS producto_id, "
+                + "COALESCE(u.repisa_id, a.repisa_id) AS repisa_id, "
+                + "COALESCE(u.saldo, a.cantidad) AS cantidad "
+                + "FROM (" + ultimosSaldos("fecha <= ?", filtroMov) + ") u "
+                + "FULL OUTER JOIN (SELECT producto_id, repisa_id, cantidad FROM saldo_diario "
+                + "WHERE fecha = ? AND empresa_id = ?" + (productoId != null ? " AND producto_id = ?" : "") + ") a "
+                + "ON a.producto_id = u.producto_id AND a.repisa_id = u.repisa_id "
+                + "WHERE COALESCE(u.saldo, a.cantidad) <> 0 "
+                + "ORDER BY 1, 2";
+        List<SaldoSlot> slots = jdbcTemplate.query(sql,
+                (rs, i) -> new SaldoSlot(rs.getLong("producto_id"), rs.getLong("repisa_id"), rs.getInt("cantidad")),
+                args.toArray());
+        return new SaldoFecha(fecha, snapshot, slots);
+    }
+
+    /**
+     * Completa las fotos hasta ayer. La primera ejecución siembra la foto desde el stock actual
+     * (los movimientos anteriores al saldo por movimiento no permiten reconstruir más atrás).
+     */
+    @Scheduled(cron = "${app.kardex.saldo.cron:0 10 0 * * *}", zone = "${app.kardex.saldo.zona:UTC}")
+    public void compactar() {
+        LocalDate ayer = LocalDate.now(zona).minusDays(1);
+        try {
+            LocalDate ultima = saldoDiarioRepository.ultimaFecha();
+            if (ultima == null) {
+                sembrarBase(ayer);
+                return;
+            }
+            for (LocalDate dia = ultima.plusDays(1); !dia.isAfter(ayer); dia = dia.plusDays(1)) {
+                if (!compactarDia(dia)) {
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("SaldoKardex: error compactando fotos de saldo: {}", e.getMessage(), e);
+        }
+    }
+
+    private void sembrarBase(LocalDate dia) {
+        Integer filas = transactionTemplate.execute(status -> {
+            if (!lockCompactacion()) {
+                return null;
+            }
+            return jdbcTemplate.update(
+                    "INSERT INTO saldo_diario (fecha, empresa_id, producto_id, repisa_id, cantidad) "
+                            + "SELECT ?, al.empresa_id, i.producto_id, i.repisa_id, SUM(i.cantidad) "
+                            + "FROM item i "
+                            + "JOIN repisa r ON r.id = i.repisa_id "
+                            + "JOIN armario ar ON ar.id = r.armario_id "
+                            + "JOIN almacen al ON al.id = ar.almacen_id "
+                            + "WHERE i.producto_id IS NOT NULL "
+                            + "GROUP BY al.empresa_id, i.producto_id, i.repisa_id "
+                            + "HAVING SUM(i.cantidad) <> 0",
+                    Date.valueOf(dia));
+        });
+        if (filas != null) {
+            log.info("SaldoKardex: foto base del {} sembrada desde el stock actual ({} slots)", dia, filas);
+        }
+    }
+
+    private boolean compactarDia(LocalDate dia) {
+        Integer filas = transactionTemplate.execute(status -> {
+            if (!lockCompactacion()) {
+                return null;
+            }
+            jdbcTemplate.update("DELETE FROM saldo_diario WHERE fecha = ?", Date.valueOf(dia));
+            Timestamp inicio = Timestamp.from(inicioDelDia(dia));
+            Timestamp fin = Timestamp.from(inicioDelDia(dia.plusDays(1)));
+            return jdbcTemplate.update(
+                    "INSERT INTO saldo_diario (fecha, empresa_id, producto_id, repisa_id, cantidad) "
+                            + "SELECT ?, COALESCE(u.empresa_id, a.empresa_id), COALESCE(u.producto_id, a.producto_id), "
+                            + "COALESCE(u.repisa_id, a.repisa_id), COALESCE(u.saldo, a.cantidad) "
+                            + "FROM (" + ultimosSaldos("fecha < ?", "") + ") u "
+                            + "FULL OUTER JOIN (SELECT empresa_id, producto_id, repisa_id, cantidad FROM saldo_diario WHERE fecha = ?) a "
+                            + "ON a.producto_id = u.producto_id AND a.repisa_id = u.repisa_id "
+                            + "WHERE COALESCE(u.saldo, a.cantidad) <> 0",
+                    Date.valueOf(dia), inicio, fin, inicio, fin, Date.valueOf(dia.minusDays(1)));
+        });
+        if (filas == null) {
+            log.debug("SaldoKardex: otra instancia está compactando, se omite {}", dia);
+            return false;
+        }
+        log.info("SaldoKardex: foto del {} compactada ({} slots)", dia, filas);
+        return true;
+    }
+
+    /**
+     * Último saldo de cada (producto, repisa) entre {@code fecha >= ?} y el límite dado. Un
+     * traslado aporta dos slots: el origen y el destino.
+     */
+    private String ultimosSaldos(String limiteSuperior, String filtro) {
+        return "SELECT DISTINCT ON (producto_id, repisa_id) empresa_id, producto_id, repisa_id, saldo FROM ("
+                + "SELECT empresa_id, producto_id, repisa_destino_id AS repisa_id, saldo_destino AS saldo, fecha, id "
+                + "FROM movimiento_inventario WHERE fecha >= ? AND " + limiteSuperior
+                + " AND saldo_destino IS NOT NULL" + filtro
+                + " UNION ALL "
+                + "SELECT empresa_id, producto_id, repisa_origen_id, saldo_origen, fecha, id "
+                + "FROM movimiento_inventario WHERE fecha >= ? AND " + limiteSuperior
+                + " AND saldo_origen IS NOT NULL" + filtro
+                + ") m ORDER BY producto_id, repisa_id, fecha DESC, id DESC";
+    }
+
+    private boolean lockCompactacion() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, LOCK_COMPACTACION));
+    }
+
+    private Instant inicioDelDia(LocalDate dia) {
+        return dia.atStartOfDay(zona).toInstant();
+    }
+
+    private Instant finDelDia(LocalDate dia) {
+        try {
+            // Un microsegundo antes del día siguiente: es la precisión de timestamp en PostgreSQL
+            return inicioDelDia(dia.plusDays(1)).minus(1, ChronoUnit.MICROS);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("fecha fuera de rango");
+        }
+    }
+}
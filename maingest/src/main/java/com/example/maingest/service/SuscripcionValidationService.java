@@ -1,32 +1,15 @@
 package com.example.maingest.service;
 
 import com.example.maingest.domain.Empresa;
-import com.example.maingest.domain.EmpresaSuscripcion;
-import com.example.maingest.domain.PlanSuscripcion;
-import com.example.maingest.repository.AlmacenRepository;
-import com.example.maingest.repository.EmpresaSuscripcionRepository;
-import com.example.maingest.repository.EmpresaUsuarioRepository;
-import com.example.maingest.repository.ProductoRepository;
 import org.springframework.stereotype.Service;
 
 @Service
 public class SuscripcionValidationService {
 
-    private final EmpresaSuscripcionRepository empresaSuscripcionRepository;
-    private final AlmacenRepository almacenRepository;
-    private final EmpresaUsuarioRepository empresaUsuarioRepository;
-    private final ProductoRepository productoRepository;
-
-    public SuscripcionValidationService(
-            EmpresaSuscripcionRepository empresaSuscripcionRepository,
-            AlmacenRepository almacenRepository,
-            EmpresaUsuarioRepository empresaUsuarioRepository,
-            ProductoRepository productoRepository
-    ) {
-        this.empresaSuscripcionRepository = empresaSuscripcionRepository;
-        this.almacenRepository = almacenRepository;
-        this.empresaUsuarioRepository = empresaUsuarioRepository;
-        this.productoRepository = productoRepository;
+    private final UsoEmpresaService usoEmpresaService;
+
+    public SuscripcionValidationService(UsoEmpresaService usoEmpresaService) {
+        this.usoEmpresaService = usoEmpresaService;
     }
 
     public static class ValidationResult {
@@ -73,168 +56,49 @@ public class SuscripcionValidationService {
     }
 
     public ValidationResult validateCanCreateAlmacen(Empresa empresa) {
-        ValidationResult blockedCheck = validateEmpresaNotBlocked(empresa);
-        if (!blockedCheck.isValid()) {
-            return blockedCheck;
-        }
-
-        EmpresaSuscripcion suscripcion = empresaSuscripcionRepository
-                .findFirstByEmpresaAndEstadoOrderByCreatedAtDesc(empresa, "ACTIVA")
-                .orElse(null);
-
-        if (suscripcion == null) {
-            return ValidationResult.error("SIN_SUSCRIPCION", "La empresa no tiene una suscripción activa");
-        }
-
-        PlanSuscripcion plan = suscripcion.getPlan();
-        if (plan == null || plan.getLimiteAlmacenes() == null) {
-            return ValidationResult.ok();
-        }
-
-        long currentCount = almacenRepository.countByEmpresaId(empresa.getId());
-        if (currentCount >= plan.getLimiteAlmacenes()) {
-            return ValidationResult.error("LIMITE_ALMACENES", 
-                    "Límite de almacenes alcanzado (" + plan.getLimiteAlmacenes() + ")");
-        }
-
-        return ValidationResult.ok();
+        return validarLimite(empresa, UsoEmpresaService.Recurso.ALMACENES, "LIMITE_ALMACENES", "almacenes");
     }
 
     public ValidationResult validateCanCreateArmario(Empresa empresa) {
-        ValidationResult blockedCheck = validateEmpresaNotBlocked(empresa);
-        if (!blockedCheck.isValid()) {
-            return blockedCheck;
-        }
-
-        EmpresaSuscripcion suscripcion = empresaSuscripcionRepository
-                .findFirstByEmpresaAndEstadoOrderByCreatedAtDesc(empresa, "ACTIVA")
-                .orElse(null);
-
-        if (suscripcion == null) {
-            return ValidationResult.error("SIN_SUSCRIPCION", "La empresa no tiene una suscripción activa");
-        }
-
-        PlanSuscripcion plan = suscripcion.getPlan();
-        if (plan == null || plan.getLimiteArmarios() == null) {
-            return ValidationResult.ok();
-        }
-
-        long currentCount = almacenRepository.countArmariosByEmpresaId(empresa.getId());
-        if (currentCount >= plan.getLimiteArmarios()) {
-            return ValidationResult.error("LIMITE_ARMARIOS", 
-                    "Límite de armarios alcanzado (" + plan.getLimiteArmarios() + ")");
-        }
-
-        return ValidationResult.ok();
+        return validarLimite(empresa, UsoEmpresaService.Recurso.ARMARIOS, "LIMITE_ARMARIOS", "armarios");
     }
 
     public ValidationResult validateCanCreateRepisa(Empresa empresa) {
-        ValidationResult blockedCheck = validateEmpresaNotBlocked(empresa);
-        if (!blockedCheck.isValid()) {
-            return blockedCheck;
-        }
-
-        EmpresaSuscripcion suscripcion = empresaSuscripcionRepository
-                .findFirstByEmpresaAndEstadoOrderByCreatedAtDesc(empresa, "ACTIVA")
-                .orElse(null);
-
-        if (suscripcion == null) {
-            return ValidationResult.error("SIN_SUSCRIPCION", "La empresa no tiene una suscripción activa");
-        }
-
-        PlanSuscripcion plan = suscripcion.getPlan();
-        if (plan == null || plan.getLimiteRepisas() == null) {
-            return ValidationResult.ok();
-        }
-
-        long currentCount = almacenRepository.countRepisasByEmpresaId(empresa.getId());
-        if (currentCount >= plan.getLimiteRepisas()) {
-            return ValidationResult.error("LIMITE_REPISAS", 
-                    "Límite de repisas alcanzado (" + plan.getLimiteRepisas() + ")");
-        }
-
-        return ValidationResult.ok();
+        return validarLimite(empresa, UsoEmpresaService.Recurso.REPISAS, "LIMITE_REPISAS", "repisas");
     }
 
     public ValidationResult validateCanCreateItem(Empresa empresa) {
-        ValidationResult blockedCheck = validateEmpresaNotBlocked(empresa);
-        if (!blockedCheck.isValid()) {
-            return blockedCheck;
-        }
-
-        EmpresaSuscripcion suscripcion = empresaSuscripcionRepository
-                .findFirstByEmpresaAndEstadoOrderByCreatedAtDesc(empresa, "ACTIVA")
-                .orElse(null);
-
-        if (suscripcion == null) {
-            return ValidationResult.error("SIN_SUSCRIPCION", "La empresa no tiene una suscripción activa");
-        }
-
-        PlanSuscripcion plan = suscripcion.getPlan();
-        if (plan == null || plan.getLimiteItems() == null) {
-            return ValidationResult.ok();
-        }
-
-        long currentCount = almacenRepository.countItemsByEmpresaId(empresa.getId());
-        if (currentCount >= plan.getLimiteItems()) {
-            return ValidationResult.error("LIMITE_ITEMS", 
-                    "Límite de items alcanzado (" + plan.getLimiteItems() + ")");
-        }
-
-        return ValidationResult.ok();
+        return validarLimite(empresa, UsoEmpresaService.Recurso.ITEMS, "LIMITE_ITEMS", "items");
     }
 
     public ValidationResult validateCanCreateProducto(Empresa empresa) {
-        ValidationResult blockedCheck = validateEmpresaNotBlocked(empresa);
-        if (!blockedCheck.isValid()) {
-            return blockedCheck;
-        }
-
-        EmpresaSuscripcion suscripcion = empresaSuscripcionRepository
-                .findFirstByEmpresaAndEstadoOrderByCreatedAtDesc(empresa, "ACTIVA")
-                .orElse(null);
-
-        if (suscripcion == null) {
-            return ValidationResult.error("SIN_SUSCRIPCION", "La empresa no tiene una suscripción activa");
-        }
-
-        PlanSuscripcion plan = suscripcion.getPlan();
-        if (plan == null || plan.getLimiteProductos() == null) {
-            return ValidationResult.ok();
-        }
-
-        long currentCount = productoRepository.countByEmpresaId(empresa.getId());
-        if (currentCount >= plan.getLimiteProductos()) {
-            return ValidationResult.error("LIMITE_PRODUCTOS",
-                    "Límite de productos alcanzado (" + plan.getLimiteProductos() + ")");
-        }
-
-        return ValidationResult.ok();
+        return validarLimite(empresa, UsoEmpresaService.Recurso.PRODUCTOS, "LIMITE_PRODUCTOS", "productos");
     }
 
     public ValidationResult validateCanAssignUsuario(Empresa empresa) {
+        return validarLimite(empresa, UsoEmpresaService.Recurso.USUARIOS, "LIMITE_USUARIOS", "usuarios");
+    }
+
+    private ValidationResult validarLimite(Empresa empresa, UsoEmpresaService.Recurso recurso, String errorCode, String etiqueta) {
         ValidationResult blockedCheck = validateEmpresaNotBlocked(empresa);
         if (!blockedCheck.isValid()) {
             return blockedCheck;
         }
 
-        EmpresaSuscripcion suscripcion = empresaSuscripcionRepository
-                .findFirstByEmpresaAndEstadoOrderByCreatedAtDesc(empresa, "ACTIVA")
-                .orElse(null);
-
-        if (suscripcion == null) {
+        UsoEmpresaService.PlanVigente plan = usoEmpresaService.planActivo(empresa.getId()).orElse(null);
+        if (plan == null) {
             return ValidationResult.error("SIN_SUSCRIPCION", "La empresa no tiene una suscripción activa");
         }
 
-        PlanSuscripcion plan = suscripcion.getPlan();
-        if (plan == null || plan.getLimiteUsuarios() == null) {
+        Integer limite = plan.limite(recurso);
+        if (limite == null) {
             return ValidationResult.ok();
         }
 
-        long currentCount = empresaUsuarioRepository.findByEmpresa(empresa).size();
-        if (currentCount >= plan.getLimiteUsuarios()) {
-            return ValidationResult.error("LIMITE_USUARIOS", 
-                    "Límite de usuarios alcanzado (" + plan.getLimiteUsuarios() + ")");
+        long currentCount = usoEmpresaService.uso(empresa.getId()).get(recurso);
+        if (currentCount >= limite) {
+            return ValidationResult.error(errorCode,
+                    "Límite de " + etiqueta + " alcanzado (" + limite + ")");
         }
 
         return ValidationResult.ok();
@@ -0,0 +1,25 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.Usuario;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Un tipo de trabajo en segundo plano. Cada implementación es un bean y {@link TrabajoService}
+ * la busca por {@link #tipo()}.
+ */
+public interface TrabajoEjecutor {
+
+    String tipo();
+
+    /**
+     * Corre en el request que encola: permisos (SecurityException) y parámetros
+     * (IllegalArgumentException). Devuelve los parámetros normalizados que se guardan.
+     */
+    JsonNode validar(Usuario actor, JsonNode parametros);
+
+    /**
+     * Corre en un hilo del pool. Debe llamar a {@link TrabajoService.Contexto#progreso} con
+     * frecuencia: ahí se publica el avance y se corta el trabajo si lo cancelaron.
+     */
+    void ejecutar(TrabajoService.Contexto contexto) throws Exception;
+}
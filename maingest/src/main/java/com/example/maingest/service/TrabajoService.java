@@ -0,0 +1,519 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.Trabajo;
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.repository.TrabajoRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Trabajos en segundo plano con estado persistido en TRABAJO. Se ejecutan en un pool acotado
+ * ({@code app.trabajos.workers} hilos, {@code app.trabajos.cola} en espera); con la cola llena
+ * el encolado falla en vez de acumular. El avance se guarda como porcentaje y mensaje, a lo
+ * sumo cada {@code progreso-ms}, y en esa misma escritura se lee si pidieron cancelar.
+ * <p>
+ * Los archivos de resultado quedan en {@code app.trabajos.directorio}/&lt;id&gt; del nodo que
+ * ejecutó el trabajo y se borran tras {@code retencion-horas}. Al arrancar, los trabajos que
+ * este nodo dejó pendientes o en curso se marcan FALLIDO (si el id de nodo es estable, ver
+ * {@link NodoLocal}).
+ * <p>
+ * Cada nodo renueva {@code latido_en} de sus trabajos vivos cada {@code latido-ms} (y en cada
+ * reporte de avance). Un trabajo pendiente o en curso sin latido durante {@code latido-vence-ms}
+ * es de un nodo caído o reiniciado con otro id: cualquier nodo lo marca FALLIDO.
+ */
+@Service
+public class TrabajoService implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(TrabajoService.class);
+
+    public static final String PENDIENTE = "PENDIENTE";
+    public static final String EN_CURSO = "EN_CURSO";
+    public static final String COMPLETADO = "COMPLETADO";
+    public static final String FALLIDO = "FALLIDO";
+    public static final String CANCELADO = "CANCELADO";
+
+    private final TrabajoRepository trabajoRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<TrabajoEjecutor> ejecutores;
+    private final String nodo;
+    private final Path directorio;
+    private final long progresoMs;
+    private final Duration retencion;
+    private final Duration latidoVence;
+    private final long latidoMs;
+    private final int hilos;
+    private final int cola;
+    private final AtomicInteger contador = new AtomicInteger();
+    private volatile ThreadPoolExecutor pool;
+    // Cancelaciones de trabajos que corren en este nodo; las de otros nodos llegan por la tabla
+    private final Set<Long> cancelados = ConcurrentHashMap.newKeySet();
+
+    private volatile Map<String, TrabajoEjecutor> porTipo;
+    private volatile boolean activo;
+
+    public TrabajoService(
+            TrabajoRepository trabajoRepository,
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            ObjectProvider<TrabajoEjecutor> ejecutores,
+            NodoLocal nodoLocal,
+            @Value("${app.trabajos.directorio:trabajos}") String directorio,
+            @Value("${app.trabajos.workers:2}") int workers,
+            @Value("${app.trabajos.cola:100}") int cola,
+            @Value("${app.trabajos.progreso-ms:1000}") long progresoMs,
+            @Value("${app.trabajos.retencion-horas:72}") long retencionHoras,
+            @Value("${app.trabajos.latido-ms:30000}") long latidoMs,
+            @Value("${app.trabajos.latido-vence-ms:120000}") long latidoVenceMs
+    ) {
+        this.trabajoRepository = trabajoRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.ejecutores = ejecutores;
+        this.nodo = nodoLocal.id();
+        this.directorio = Paths.get(directorio).toAbsolutePath().normalize();
+        this.progresoMs = Math.max(0, progresoMs);
+        this.retencion = Duration.ofHours(Math.max(1, retencionHoras));
+        this.latidoMs = Math.max(1, latidoMs);
+        // Al menos dos latidos perdidos antes de dar un trabajo por muerto
+        this.latidoVence = Duration.ofMillis(Math.max(latidoVenceMs, 2 * this.latidoMs));
+        this.hilos = Math.max(1, workers);
+        this.cola = Math.max(1, cola);
+        this.pool = nuevoPool();
+    }
+
+    /**
+     * Valida con el ejecutor del tipo y encola. IllegalArgumentException si el tipo no existe o
+     * los parámetros no sirven, SecurityException sin permiso, IllegalStateException con la cola llena.
+     */
+    public Trabajo encolar(Usuario actor, String tipo, JsonNode parametros) {
+        TrabajoEjecutor ejecutor = ejecutor(tipo);
+        JsonNode normalizados = ejecutor.validar(actor, parametros != null ? parametros : objectMapper.createObjectNode());
+        return registrar(ejecutor, actor != null ? actor.getId() : null, normalizados);
+    }
+
+    /**
+     * Trabajo del sistema, sin usuario (solo lo ven los superadmin).
+     */
+    public Trabajo encolarSistema(String tipo, JsonNode parametros) {
+        TrabajoEjecutor ejecutor = ejecutor(tipo);
+        return registrar(ejecutor, null, parametros != null ? parametros : objectMapper.createObjectNode());
+    }
+
+    public Optional<Trabajo> buscar(Long id) {
+        return trabajoRepository.findById(id);
+    }
+
+    public List<Trabajo> recientes(Usuario actor, boolean todos) {
+        return todos
+                ? trabajoRepository.findTop50ByOrderByCreadoEnDesc()
+                : trabajoRepository.findTop50ByUsuarioIdOrderByCreadoEnDesc(actor.getId());
+    }
+
+    /**
+     * Un trabajo pendiente pasa directo a CANCELADO; uno en curso se detiene en su próximo
+     * reporte de avance. Devuelve false si ya había terminado.
+     */
+    public boolean cancelar(Trabajo trabajo) {
+        Long id = trabajo.getId();
+        int marcados = jdbcTemplate.update(
+                "UPDATE trabajo SET cancelacion_solicitada = true WHERE id = ? AND estado IN (?, ?)",
+                id, PENDIENTE, EN_CURSO);
+        if (marcados == 0) {
+            return false;
+        }
+        cancelados.add(id);
+        jdbcTemplate.update(
+                "UPDATE trabajo SET estado = ?, mensaje = 'Cancelado', finalizado_en = ? WHERE id = ? AND estado = ?",
+                CANCELADO, Timestamp.from(Instant.now()), id, PENDIENTE);
+        return true;
+    }
+
+    /**
+     * Archivo de resultado, si el trabajo lo generó y sigue en el disco de este nodo.
+     */
+    public Optional<Path> archivo(Trabajo trabajo) {
+        if (trabajo.getArchivoRuta() == null || !COMPLETADO.equals(trabajo.getEstado())) {
+            return Optional.empty();
+        }
+        Path ruta = Paths.get(trabajo.getArchivoRuta());
+        return Files.isReadable(ruta) ? Optional.of(ruta) : Optional.empty();
+    }
+
+    public String nodo() {
+        return nodo;
+    }
+
+    public int enCola() {
+        return pool.getQueue().size();
+    }
+
+    public int enCurso() {
+        return pool.getActiveCount();
+    }
+
+    @Scheduled(fixedDelayString = "${app.trabajos.limpieza-ms:3600000}", initialDelayString = "${app.trabajos.limpieza-ms:3600000}")
+    public void limpiar() {
+        Timestamp limite = Timestamp.from(Instant.now().minus(retencion));
+        try {
+            List<Long> viejos = jdbcTemplate.queryForList(
+                    "SELECT id FROM trabajo WHERE nodo = ? AND finalizado_en < ?", Long.class, nodo, limite);
+            for (Long id : viejos) {
+                borrarArchivos(id);
+            }
+            if (!viejos.isEmpty()) {
+                jdbcTemplate.update("DELETE FROM trabajo WHERE nodo = ? AND finalizado_en < ?", nodo, limite);
+                log.info("Trabajos: {} trabajos terminados hace más de {} h eliminados", viejos.size(), retencion.toHours());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Trabajos: no se pudo limpiar trabajos viejos: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Renueva el latido de los trabajos pendientes y en curso de este nodo, incluidos los que
+     * pasan mucho tiempo entre reportes de avance.
+     */
+    @Scheduled(fixedDelayString = "${app.trabajos.latido-ms:30000}", initialDelayString = "${app.trabajos.latido-ms:30000}")
+    public void latir() {
+        try {
+            jdbcTemplate.update("UPDATE trabajo SET latido_en = ? WHERE nodo = ? AND estado IN (?, ?)",
+                    Timestamp.from(Instant.now()), nodo, PENDIENTE, EN_CURSO);
+        } catch (RuntimeException e) {
+            log.warn("Trabajos: no se pudo renovar el latido de {}: {}", nodo, e.getMessage());
+        }
+    }
+
+    /**
+     * Marca FALLIDO los trabajos pendientes o en curso sin latido reciente, sea cual sea su nodo.
+     * Devuelve cuántos marcó.
+     */
+    @Scheduled(fixedDelayString = "${app.trabajos.latido-ms:30000}", initialDelayString = "${app.trabajos.latido-ms:30000}")
+    public int recuperarVencidos() {
+        Instant ahora = Instant.now();
+        try {
+            int vencidos = jdbcTemplate.update(
+                    "UPDATE trabajo SET estado = ?, error = 'Nodo sin latido: caído o reiniciado con otro id', finalizado_en = ? "
+                            + "WHERE estado IN (?, ?) AND COALESCE(latido_en, creado_en) < ?",
+                    FALLIDO, Timestamp.from(ahora), PENDIENTE, EN_CURSO, Timestamp.from(ahora.minus(latidoVence)));
+            if (vencidos > 0) {
+                log.warn("Trabajos: {} trabajos sin latido en {} s marcados FALLIDO", vencidos, latidoVence.toSeconds());
+            }
+            return vencidos;
+        } catch (RuntimeException e) {
+            log.warn("Trabajos: no se pudieron revisar trabajos sin latido: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    // --- Ciclo de vida ---
+
+    @Override
+    public void start() {
+        if (activo) {
+            return;
+        }
+        activo = true;
+        // stop() apaga el pool; el contexto puede volver a arrancar (p. ej. los tests lo pausan)
+        if (pool.isShutdown()) {
+            pool = nuevoPool();
+        }
+        try {
+            int huerfanos = jdbcTemplate.update(
+                    "UPDATE trabajo SET estado = ?, error = 'Interrumpido por reinicio del nodo', finalizado_en = ? "
+                            + "WHERE nodo = ? AND estado IN (?, ?)",
+                    FALLIDO, Timestamp.from(Instant.now()), nodo, PENDIENTE, EN_CURSO);
+            if (huerfanos > 0) {
+                log.warn("Trabajos: {} trabajos interrumpidos en el arranque anterior de {} marcados FALLIDO", huerfanos, nodo);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Trabajos: no se pudieron revisar trabajos interrumpidos: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        activo = false;
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return activo;
+    }
+
+    @Override
+    public int getPhase() {
+        // Arranca antes que el servidor web (y se detiene después) para no aceptar trabajos sin pool
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    // --- Ejecución ---
+
+    private ThreadPoolExecutor nuevoPool() {
+        return new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cola), r -> {
+                    Thread hilo = new Thread(r, "trabajo-" + contador.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                });
+    }
+
+    private TrabajoEjecutor ejecutor(String tipo) {
+        Map<String, TrabajoEjecutor> mapa = porTipo;
+        if (mapa == null) {
+            Map<String, TrabajoEjecutor> nuevo = new ConcurrentHashMap<>();
+            ejecutores.orderedStream().forEach(e -> nuevo.put(e.tipo(), e));
+            porTipo = mapa = nuevo;
+        }
+        TrabajoEjecutor ejecutor = tipo != null ? mapa.get(tipo.trim().toUpperCase()) : null;
+        if (ejecutor == null) {
+            throw new IllegalArgumentException("Tipo de trabajo desconocido: " + tipo);
+        }
+        return ejecutor;
+    }
+
+    private Trabajo registrar(TrabajoEjecutor ejecutor, Long usuarioId, JsonNode parametros) {
+        Trabajo trabajo = new Trabajo();
+        trabajo.setTipo(ejecutor.tipo());
+        trabajo.setUsuarioId(usuarioId);
+        trabajo.setNodo(nodo);
+        trabajo.setParametrosJson(parametros.toString());
+        trabajo.setCreadoEn(Instant.now());
+        trabajo.setLatidoEn(trabajo.getCreadoEn());
+        Trabajo guardado = trabajoRepository.save(trabajo);
+        try {
+            pool.execute(() -> correr(guardado.getId(), ejecutor, usuarioId, parametros));
+        } catch (RejectedExecutionException e) {
+            guardado.setEstado(FALLIDO);
+            guardado.setError("Cola de trabajos llena");
+            guardado.setFinalizadoEn(Instant.now());
+            trabajoRepository.save(guardado);
+            throw new IllegalStateException("Cola de trabajos llena, reintente más tarde");
+        }
+        return guardado;
+    }
+
+    private void correr(long id, TrabajoEjecutor ejecutor, Long usuarioId, JsonNode parametros) {
+        Timestamp ahora = Timestamp.from(Instant.now());
+        int tomados = jdbcTemplate.update(
+                "UPDATE trabajo SET estado = ?, iniciado_en = ?, latido_en = ? WHERE id = ? AND estado = ? AND cancelacion_solicitada = false",
+                EN_CURSO, ahora, ahora, id, PENDIENTE);
+        if (tomados == 0) {
+            cancelados.remove(id);
+            return;
+        }
+        Contexto contexto = new Contexto(id, usuarioId, parametros);
+        long inicio = System.nanoTime();
+        try {
+            ejecutor.ejecutar(contexto);
+            contexto.verificarCancelacion();
+            terminar(id, trabajo -> {
+                trabajo.setEstado(COMPLETADO);
+                trabajo.setProgreso(100);
+                trabajo.setMensaje(contexto.mensaje);
+                trabajo.setResultadoJson(contexto.resultadoJson);
+                if (contexto.archivo != null) {
+                    trabajo.setArchivoRuta(contexto.archivo.toString());
+                    trabajo.setArchivoNombre(contexto.archivoNombre);
+                    trabajo.setArchivoTipo(contexto.archivoTipo);
+                    trabajo.setArchivoBytes(tamanio(contexto.archivo));
+                }
+            });
+            log.info("Trabajo {} ({}) completado en {} ms", id, ejecutor.tipo(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+        } catch (CancellationException e) {
+            borrarArchivos(id);
+            terminar(id, trabajo -> {
+                trabajo.setEstado(CANCELADO);
+                trabajo.setMensaje("Cancelado");
+            });
+            log.info("Trabajo {} ({}) cancelado", id, ejecutor.tipo());
+        } catch (Exception e) {
+            borrarArchivos(id);
+            String mensaje = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            terminar(id, trabajo -> {
+                trabajo.setEstado(FALLIDO);
+                trabajo.setError(mensaje.length() > 1000 ? mensaje.substring(0, 1000) : mensaje);
+            });
+            log.error("Trabajo {} ({}) falló: {}", id, ejecutor.tipo(), mensaje, e);
+        } finally {
+            cancelados.remove(id);
+        }
+    }
+
+    private void terminar(long id, Consumer<Trabajo> cambios) {
+        try {
+            trabajoRepository.findById(id).ifPresent(trabajo -> {
+                if (!EN_CURSO.equals(trabajo.getEstado())) {
+                    // Otro nodo lo dio por muerto mientras corría: queda como lo dejó
+                    log.warn("Trabajo {}: terminó pero ya estaba {}, no se actualiza", id, trabajo.getEstado());
+                    return;
+                }
+                cambios.accept(trabajo);
+                trabajo.setFinalizadoEn(Instant.now());
+                trabajoRepository.save(trabajo);
+            });
+        } catch (RuntimeException e) {
+            log.error("Trabajo {}: no se pudo guardar el estado final: {}", id, e.getMessage());
+        }
+    }
+
+    private static Long tamanio(Path archivo) {
+        try {
+            return Files.size(archivo);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void borrarArchivos(long id) {
+        Path carpeta = directorio.resolve(Long.toString(id));
+        if (!Files.exists(carpeta)) {
+            return;
+        }
+        try (Stream<Path> rutas = Files.walk(carpeta)) {
+            rutas.sorted(Comparator.reverseOrder()).forEach(ruta -> {
+                try {
+                    Files.deleteIfExists(ruta);
+                } catch (IOException e) {
+                    log.debug("Trabajos: no se pudo borrar {}: {}", ruta, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Trabajos: no se pudo borrar la carpeta {}: {}", carpeta, e.getMessage());
+        }
+    }
+
+    /**
+     * Lo que ve un ejecutor de su trabajo: parámetros, avance, cancelación y resultado.
+     */
+    public final class Contexto {
+
+        private final long id;
+        private final Long usuarioId;
+        private final JsonNode parametros;
+        private long ultimoGuardado;
+        private int ultimoPorcentaje = -1;
+        private volatile boolean cancelado;
+        private String mensaje;
+        private String resultadoJson;
+        private Path archivo;
+        private String archivoNombre;
+        private String archivoTipo;
+
+        private Contexto(long id, Long usuarioId, JsonNode parametros) {
+            this.id = id;
+            this.usuarioId = usuarioId;
+            this.parametros = parametros;
+        }
+
+        public long id() {
+            return id;
+        }
+
+        public Long usuarioId() {
+            return usuarioId;
+        }
+
+        public JsonNode parametros() {
+            return parametros;
+        }
+
+        /**
+         * Publica el avance (0-99; el 100 lo pone el cierre), renueva el latido y lanza
+         * CancellationException si cancelaron el trabajo. Sin cambio de porcentaje escribe igual
+         * una vez por {@code latido-ms}.
+         */
+        public void progreso(int porcentaje, String mensaje) {
+            int valor = Math.max(0, Math.min(99, porcentaje));
+            this.mensaje = mensaje;
+            long ahora = System.nanoTime();
+            long desdeGuardado = ahora - ultimoGuardado;
+            boolean vencido = desdeGuardado >= TimeUnit.MILLISECONDS.toNanos(progresoMs);
+            boolean latido = desdeGuardado >= TimeUnit.MILLISECONDS.toNanos(latidoMs);
+            if (valor != ultimoPorcentaje && vencido || latido || ultimoPorcentaje < 0) {
+                Boolean solicitada = jdbcTemplate.queryForObject(
+                        "UPDATE trabajo SET progreso = ?, mensaje = ?, latido_en = ? WHERE id = ? RETURNING cancelacion_solicitada",
+                        Boolean.class, valor, recortar(mensaje), Timestamp.from(Instant.now()), id);
+                if (Boolean.TRUE.equals(solicitada)) {
+                    cancelado = true;
+                }
+                ultimoPorcentaje = valor;
+                ultimoGuardado = ahora;
+            }
+            verificarCancelacion();
+        }
+
+        public void verificarCancelacion() {
+            if (cancelado || cancelados.contains(id) || Thread.currentThread().isInterrupted()) {
+                cancelado = true;
+                throw new CancellationException("Trabajo cancelado");
+            }
+        }
+
+        /**
+         * Abre el archivo de resultado (uno por trabajo). El ejecutor lo cierra.
+         */
+        public OutputStream archivo(String nombre, String contentType) throws IOException {
+            Path carpeta = directorio.resolve(Long.toString(id));
+            Files.createDirectories(carpeta);
+            this.archivo = carpeta.resolve(nombre);
+            this.archivoNombre = nombre;
+            this.archivoTipo = contentType;
+            return Files.newOutputStream(archivo);
+        }
+
+        /**
+         * Resumen pequeño que se guarda como JSON junto al trabajo (conteos, ids creados).
+         */
+        public void resultado(Object valor) {
+            try {
+                this.resultadoJson = objectMapper.writeValueAsString(valor);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Resultado no serializable", e);
+            }
+        }
+
+        private String recortar(String texto) {
+            return texto != null && texto.length() > 500 ? texto.substring(0, 500) : texto;
+        }
+    }
+}
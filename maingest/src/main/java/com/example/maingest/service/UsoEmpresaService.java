@@ -0,0 +1,266 @@
+package com.example.maingest.service;
+
+import com.example.maingest.config.ReplicaRoutingDataSource;
+import com.example.maingest.domain.EmpresaSuscripcion;
+import com.example.maingest.domain.PlanSuscripcion;
+import com.example.maingest.repository.EmpresaRepository;
+import com.example.maingest.repository.EmpresaSuscripcionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contadores de uso y plan activo por empresa, en memoria. Los contadores se siembran con una
+ * sola consulta agregada, las altas los incrementan tras el commit y las bajas los invalidan.
+ * El TTL corrige cualquier camino de escritura que no avise (cargas masivas, migraciones).
+ */
+@Service
+public class UsoEmpresaService {
+
+    public enum Recurso {
+        ALMACENES,
+        ARMARIOS,
+        REPISAS,
+        ITEMS,
+        PRODUCTOS,
+        USUARIOS
+    }
+
+    public record Uso(long almacenes, long armarios, long repisas, long items, long productos, long usuarios) {
+
+        public long get(Recurso recurso) {
+            return switch (recurso) {
+                case ALMACENES -> almacenes;
+                case ARMARIOS -> armarios;
+                case REPISAS -> repisas;
+                case ITEMS -> items;
+                case PRODUCTOS -> productos;
+                case USUARIOS -> usuarios;
+            };
+        }
+
+        Uso sumar(Recurso recurso, long delta) {
+            return new Uso(
+                    almacenes + (recurso == Recurso.ALMACENES ? delta : 0),
+                    armarios + (recurso == Recurso.ARMARIOS ? delta : 0),
+                    repisas + (recurso == Recurso.REPISAS ? delta : 0),
+                    items + (recurso == Recurso.ITEMS ? delta : 0),
+                    productos + (recurso == Recurso.PRODUCTOS ? delta : 0),
+                    usuarios + (recurso == Recurso.USUARIOS ? delta : 0)
+            );
+        }
+    }
+
+    /**
+     * Límites del plan de la suscripción ACTIVA más reciente; null en un límite significa sin límite.
+     */
+    public record PlanVigente(
+            Long suscripcionId,
+            Long planId,
+            Integer limiteAlmacenes,
+            Integer limiteArmarios,
+            Integer limiteRepisas,
+            Integer limiteItems,
+            Integer limiteProductos,
+            Integer limiteUsuarios
+    ) {
+
+        public Integer limite(Recurso recurso) {
+            return switch (recurso) {
+                case ALMACENES -> limiteAlmacenes;
+                case ARMARIOS -> limiteArmarios;
+                case REPISAS -> limiteRepisas;
+                case ITEMS -> limiteItems;
+                case PRODUCTOS -> limiteProductos;
+                case USUARIOS -> limiteUsuarios;
+            };
+        }
+    }
+
+    private record Entrada<T>(T valor, long expiraEn) {
+    }
+
+    private final EmpresaRepository empresaRepository;
+    private final EmpresaSuscripcionRepository empresaSuscripcionRepository;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<Long, Entrada<Uso>> usos;
+    private final Map<Long, Entrada<Optional<PlanVigente>>> planes;
+    private final AtomicLong generation = new AtomicLong();
+
+    public UsoEmpresaService(
+            EmpresaRepository empresaRepository,
+            EmpresaSuscripcionRepository empresaSuscripcionRepository,
+            @Value("${app.empresas.uso.ttl-ms:300000}") long ttlMs,
+            @Value("${app.empresas.uso.max-entries:5000}") int maxEntries
+    ) {
+        this.empresaRepository = empresaRepository;
+        this.empresaSuscripcionRepository = empresaSuscripcionRepository;
+        this.ttlNanos = Math.max(0, ttlMs) * 1_000_000L;
+        this.maxEntries = Math.max(16, maxEntries);
+        this.usos = lru();
+        this.planes = lru();
+    }
+
+    private <T> Map<Long, Entrada<T>> lru() {
+        return new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entrada<T>> eldest) {
+                return size() > UsoEmpresaService.this.maxEntries;
+            }
+        };
+    }
+
+    public Uso uso(Long empresaId) {
+        Uso cacheado = leer(usos, empresaId);
+        if (cacheado != null) {
+            return cacheado;
+        }
+        long generacionInicial = generation.get();
+        EmpresaRepository.UsoFila fila = ReplicaRoutingDataSource.enPrimario(() -> empresaRepository.contarUso(empresaId));
+        Uso uso = fila == null
+                ? new Uso(0, 0, 0, 0, 0, 0)
+                : new Uso(fila.getAlmacenes(), fila.getArmarios(), fila.getRepisas(),
+                fila.getItems(), fila.getProductos(), fila.getUsuarios());
+        guardar(usos, empresaId, uso, generacionInicial);
+        return uso;
+    }
+
+    public Optional<PlanVigente> planActivo(Long empresaId) {
+        Optional<PlanVigente> cacheado = leer(planes, empresaId);
+        if (cacheado != null) {
+            return cacheado;
+        }
+        long generacionInicial = generation.get();
+        List<EmpresaSuscripcion> activas = ReplicaRoutingDataSource.enPrimario(() -> empresaSuscripcionRepository
+                .findConPlanByEmpresaIdAndEstado(empresaId, "ACTIVA", PageRequest.of(0, 1)));
+        Optional<PlanVigente> plan = activas.stream().findFirst().map(suscripcion -> {
+            PlanSuscripcion p = suscripcion.getPlan();
+            if (p == null) {
+                return new PlanVigente(suscripcion.getId(), null, null, null, null, null, null, null);
+            }
+            return new PlanVigente(suscripcion.getId(), p.getId(),
+                    p.getLimiteAlmacenes(), p.getLimiteArmarios(), p.getLimiteRepisas(),
+                    p.getLimiteItems(), p.getLimiteProductos(), p.getLimiteUsuarios());
+        });
+        guardar(planes, empresaId, plan, generacionInicial);
+        return plan;
+    }
+
+    /**
+     * Suma altas al contador tras el commit. Si la empresa no está en cache no hace nada:
+     * la próxima siembra ya las cuenta.
+     */
+    public void registrarAlta(Long empresaId, Recurso recurso, long cantidad) {
+        if (empresaId == null || cantidad == 0) {
+            return;
+        }
+        trasCommit(() -> {
+            synchronized (usos) {
+                generation.incrementAndGet();
+                Entrada<Uso> entrada = usos.get(empresaId);
+                if (entrada != null) {
+                    usos.put(empresaId, new Entrada<>(entrada.valor().sumar(recurso, cantidad), entrada.expiraEn()));
+                }
+            }
+        });
+    }
+
+    public void registrarAlta(Long empresaId, Recurso recurso) {
+        registrarAlta(empresaId, recurso, 1);
+    }
+
+    public void invalidarUso(Long empresaId) {
+        if (empresaId == null) {
+            return;
+        }
+        ahoraYTrasCommit(() -> {
+            synchronized (usos) {
+                generation.incrementAndGet();
+                usos.remove(empresaId);
+            }
+        });
+    }
+
+    public void invalidarPlan(Long empresaId) {
+        if (empresaId == null) {
+            return;
+        }
+        ahoraYTrasCommit(() -> {
+            synchronized (usos) {
+                generation.incrementAndGet();
+                planes.remove(empresaId);
+            }
+        });
+    }
+
+    public void invalidarTodo() {
+        ahoraYTrasCommit(() -> {
+            synchronized (usos) {
+                generation.incrementAndGet();
+                usos.clear();
+                planes.clear();
+            }
+        });
+    }
+
+    private <T> T leer(Map<Long, Entrada<T>> cache, Long empresaId) {
+        long ahora = System.nanoTime();
+        synchronized (usos) {
+            Entrada<T> entrada = cache.get(empresaId);
+            if (entrada == null) {
+                return null;
+            }
+            if (ahora - entrada.expiraEn() >= 0) {
+                cache.remove(empresaId);
+                return null;
+            }
+            return entrada.valor();
+        }
+    }
+
+    private <T> void guardar(Map<Long, Entrada<T>> cache, Long empresaId, T valor, long generacionInicial) {
+        if (ttlNanos == 0) {
+            return;
+        }
+        synchronized (usos) {
+            // Una escritura durante la consulta deja el valor posiblemente viejo fuera de cache
+            if (generation.get() == generacionInicial) {
+                cache.put(empresaId, new Entrada<>(valor, System.nanoTime() + ttlNanos));
+            }
+        }
+    }
+
+    private void trasCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+            return;
+        }
+        accion.run();
+    }
+
+    private void ahoraYTrasCommit(Runnable accion) {
+        accion.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    accion.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.maingest.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versiones en memoria de las respuestas que los clientes consultan en bucle (estructura de
+ * almacén, catálogo de productos, planes). Los endpoints que modifican datos incrementan la
+ * versión; los GET calculan un ETag fuerte a partir de ella y responden 304 sin ir a la base.
+ * <p>
+ * El ETag es un HMAC (clave aleatoria por proceso) de recurso, versión, usuario y variante, así
+ * que solo coincide si ese mismo usuario ya recibió esa respuesta con permiso: el 304 no
+ * necesita repetir la verificación de acceso. Como la clave cambia al reiniciar, los ETags
+ * de antes del reinicio no coinciden. La ventana {@code app.etag.ventana-ms} acota cuánto puede
+ * durar un 304 ante escrituras que no pasan por aquí (otra instancia, SQL directo).
+ */
+@Service
+public class VersionRespuestaService implements DisposableBean {
+
+    public enum Recurso {
+        ALMACEN,
+        CATALOGO,
+        PLANES
+    }
+
+    private record Clave(Recurso recurso, Long id) {
+    }
+
+    private final Map<Clave, AtomicLong> versiones = new ConcurrentHashMap<>();
+    private final AtomicLong global = new AtomicLong();
+    private final byte[] secreto = new byte[32];
+    private final long ventanaMs;
+    private final long reincrementoMs;
+    private final ThreadLocal<Mac> macs;
+    private final ScheduledExecutorService programador;
+
+    public VersionRespuestaService(
+            @Value("${app.etag.ventana-ms:300000}") long ventanaMs,
+            @Value("${app.datasource.replicas.urls:}") String replicas,
+            @Value("${app.datasource.replicas.max-lag-ms:5000}") long maxRetrasoReplicaMs
+    ) {
+        new SecureRandom().nextBytes(secreto);
+        this.ventanaMs = Math.max(0, ventanaMs);
+        // Con réplicas, un GET justo después del commit puede leer la foto anterior con la versión nueva
+        this.reincrementoMs = replicas == null || replicas.isBlank() ? 0 : Math.max(0, maxRetrasoReplicaMs);
+        SecretKeySpec clave = new SecretKeySpec(secreto, "HmacSHA256");
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(clave);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 no disponible", e);
+            }
+        });
+        this.programador = reincrementoMs > 0
+                ? Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread hilo = new Thread(r, "etag-versiones");
+                    hilo.setDaemon(true);
+                    return hilo;
+                })
+                : null;
+    }
+
+    /**
+     * ETag fuerte (con comillas) para la respuesta. Se calcula antes de leer la base: si una
+     * escritura entra durante la lectura, el cliente queda con la versión vieja y vuelve a pedir.
+     */
+    public String etag(Recurso recurso, Long id, Long usuarioId, String variante) {
+        AtomicLong version = versiones.get(new Clave(recurso, id));
+        long ventana = ventanaMs > 0 ? System.currentTimeMillis() / ventanaMs : 0;
+        String base = recurso.name() + '|' + id + '|' + (version != null ? version.get() : 0) + '|'
+                + global.get() + '|' + ventana + '|' + usuarioId + '|' + (variante != null ? variante : "");
+        byte[] hmac = macs.get().doFinal(base.getBytes(StandardCharsets.UTF_8));
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hmac).substring(0, 22) + "\"";
+    }
+
+    /**
+     * Comparación de If-None-Match (lista separada por comas, con o sin prefijo W/). {@code *} no
+     * coincide: en estos GET el 304 se responde antes de verificar existencia y permisos, y solo
+     * un ETag emitido a este usuario prueba que ya tuvo acceso.
+     */
+    public boolean coincide(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidato : ifNoneMatch.split(",")) {
+            String valor = candidato.trim();
+            if (valor.startsWith("W/")) {
+                valor = valor.substring(2);
+            }
+            if (valor.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void incrementar(Recurso recurso, Long id) {
+        if (id == null) {
+            return;
+        }
+        Clave clave = new Clave(recurso, id);
+        ahoraYTrasCommit(() -> versiones.computeIfAbsent(clave, c -> new AtomicLong()).incrementAndGet());
+    }
+
+    /**
+     * Para cambios que alcanzan a muchos recursos (borrado de empresa, limpieza de datos).
+     */
+    public void incrementarTodo() {
+        ahoraYTrasCommit(global::incrementAndGet);
+    }
+
+    @Override
+    public void destroy() {
+        if (programador != null) {
+            programador.shutdownNow();
+        }
+    }
+
+    private void ahoraYTrasCommit(Runnable accion) {
+        accion.run();
+        Runnable despues = () -> {
+            accion.run();
+            if (programador != null) {
+                programador.schedule(accion, reincrementoMs, TimeUnit.MILLISECONDS);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    despues.run();
+                }
+            });
+            return;
+        }
+        despues.run();
+    }
+}
@@ -16,6 +16,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -26,6 +27,7 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Locale;
@@ -43,9 +45,10 @@ public class WompiService {
     private final EmpresaSuscripcionRepository empresaSuscripcionRepository;
     private final AccessControlService accessControlService;
     private final AuditoriaService auditoriaService;
+    private final UsoEmpresaService usoEmpresaService;
     private final ObjectMapper objectMapper;
 
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final HttpClient httpClient;
 
     private final String frontendBaseUrl;
     private final String wompiPublicKey;
@@ -60,12 +63,14 @@ public class WompiService {
             EmpresaSuscripcionRepository empresaSuscripcionRepository,
             AccessControlService accessControlService,
             AuditoriaService auditoriaService,
+            UsoEmpresaService usoEmpresaService,
             ObjectMapper objectMapper,
             @Value("${app.frontend.base-url}") String frontendBaseUrl,
             @Value("${app.wompi.public-key:}") String wompiPublicKey,
             @Value("${app.wompi.integrity-secret:}") String wompiIntegritySecret,
             @Value("${app.wompi.events-secret:}") String wompiEventsSecret,
-            @Value("${app.wompi.environment:}") String wompiEnvironment
+            @Value("${app.wompi.environment:}") String wompiEnvironment,
+            @Value("${spring.threads.virtual.enabled:false}") boolean hilosVirtuales
     ) {
         this.empresaRepository = empresaRepository;
         this.planSuscripcionRepository = planSuscripcionRepository;
@@ -73,12 +78,19 @@ public class WompiService {
         this.empresaSuscripcionRepository = empresaSuscripcionRepository;
         this.accessControlService = accessControlService;
         this.auditoriaService = auditoriaService;
+        this.usoEmpresaService = usoEmpresaService;
         this.objectMapper = objectMapper;
         this.frontendBaseUrl = frontendBaseUrl;
         this.wompiPublicKey = wompiPublicKey;
         this.wompiIntegritySecret = wompiIntegritySecret;
         this.wompiEventsSecret = wompiEventsSecret;
         this.wompiEnvironment = wompiEnvironment;
+        // En el perfil virtual las respuestas de Wompi se procesan en hilos virtuales en vez del pool compartido
+        HttpClient.Builder builder = HttpClient.newBuilder();
+        if (hilosVirtuales && Runtime.version().feature() >= 21) {
+            builder.executor(new VirtualThreadTaskExecutor("wompi-http-"));
+        }
+        this.httpClient = builder.build();
     }
 
     @Transactional
@@ -200,35 +212,38 @@ public class WompiService {
         return confirmarPagoInternal(actor, tx);
     }
 
-    @Transactional
-    public void procesarWebhook(String body, String checksumHeader) {
+    /**
+     * Verifica firma y forma del evento sin tocar la base. Devuelve null si no aplica (firma
+     * inválida, otro tipo de evento o datos incompletos); la aplicación la hace la bandeja.
+     */
+    protected EventoWebhook leerWebhook(String body, String checksumHeader) {
         if (body == null || body.isBlank()) {
-            return;
+            return null;
         }
         JsonNode root;
         try {
             root = objectMapper.readTree(body);
         } catch (Exception e) {
-            return;
+            return null;
         }
 
         if (wompiEventsSecret == null || wompiEventsSecret.isBlank()) {
-            return;
+            return null;
         }
         boolean ok = verifyEventChecksum(root, checksumHeader, wompiEventsSecret);
         if (!ok) {
-            return;
+            return null;
         }
 
         String eventType = root.path("event").asText("");
         if (!"transaction.updated".equals(eventType)) {
-            return;
+            return null;
         }
 
         JsonNode txNode = root.path("data").path("transaction");
         String txId = txNode.path("id").asText(null);
         if (txId == null || txId.isBlank()) {
-            return;
+            return null;
         }
 
         String reference = txNode.path("reference").asText(null);
@@ -237,11 +252,17 @@ public class WompiService {
         String currency = txNode.path("currency").asText(null);
 
         if (reference == null || reference.isBlank() || status == null || status.isBlank()) {
-            return;
+            return null;
         }
 
+        long timestamp = root.path("signature").path("timestamp").asLong(0);
         WompiTransactionInfo info = new WompiTransactionInfo(txId, reference, status, amount, currency);
-        actualizarDesdeWompiInternal(null, info);
+        return new EventoWebhook(info, timestamp > 0 ? Instant.ofEpochSecond(timestamp) : Instant.now());
+    }
+
+    @Transactional
+    protected WompiConfirmResponse aplicarEventoWebhook(WompiTransactionInfo tx) {
+        return actualizarDesdeWompiInternal(null, tx);
     }
 
     protected WompiConfirmResponse confirmarPagoInternal(Usuario actor, WompiTransactionInfo tx) {
@@ -332,6 +353,7 @@ public class WompiService {
         nueva.setEstado("ACTIVA");
         nueva.setAutoRenovar(false);
         EmpresaSuscripcion guardada = empresaSuscripcionRepository.save(nueva);
+        usoEmpresaService.invalidarPlan(empresa.getId());
 
         if (actor != null) {
             auditoriaService.registrar(
@@ -389,8 +411,22 @@ public class WompiService {
                 .GET()
                 .build();
 
+        EventosJfr.WompiHttpEvento evento = new EventosJfr.WompiHttpEvento();
+        evento.begin();
         try {
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response;
+            try {
+                response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                evento.estado = response.statusCode();
+            } finally {
+                evento.end();
+                if (evento.shouldCommit()) {
+                    evento.operacion = "GET /transactions";
+                    evento.transaccion = transactionId;
+                    evento.exitosa = evento.estado >= 200 && evento.estado < 300;
+                    evento.commit();
+                }
+            }
             if (response.statusCode() < 200 || response.statusCode() >= 300) {
                 throw new IllegalStateException("wompi status " + response.statusCode());
             }
@@ -484,4 +520,10 @@ public class WompiService {
             String currency
     ) {
     }
+
+    protected record EventoWebhook(
+            WompiTransactionInfo transaccion,
+            Instant eventoEn
+    ) {
+    }
 }
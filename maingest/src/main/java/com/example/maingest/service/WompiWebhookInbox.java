@@ -0,0 +1,354 @@
+package com.example.maingest.service;
+
+import com.example.maingest.dto.PagoWompiDtos.WompiConfirmResponse;
+import com.example.maingest.service.WompiService.EventoWebhook;
+import com.example.maingest.service.WompiService.WompiTransactionInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bandeja de entrada de webhooks de Wompi. El request solo verifica la firma e inserta el evento
+ * crudo en WOMPI_EVENTO (un INSERT en autocommit, sin locks de PagoWompi); un hilo propio los
+ * aplica después.
+ * <p>
+ * Por referencia los eventos se aplican en orden de {@code evento_en} (timestamp firmado) bajo un
+ * advisory lock, así que varias instancias no se pisan. Un evento más viejo que el último aplicado
+ * se descarta. Si la aplicación falla, el evento se reintenta con backoff exponencial y los
+ * siguientes de la misma referencia esperan; tras {@code max-intentos} queda FALLIDO.
+ */
+@Component
+public class WompiWebhookInbox implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(WompiWebhookInbox.class);
+
+    private static final int LOCK_BANDEJA = 0x57504D49;
+
+    private static final String SQL_INSERTAR = "INSERT INTO wompi_evento (wompi_transaction_id, reference, status, "
+            + "amount_in_cents, currency, payload, evento_en, recibido_en, estado, intentos, siguiente_intento_en) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 'PENDIENTE', 0, ?) "
+            + "ON CONFLICT (wompi_transaction_id, status) DO NOTHING";
+
+    private enum Paso {
+        SIGUIENTE,
+        ESPERA,
+        OCUPADA,
+        VACIA
+    }
+
+    private record Pendiente(
+            long id,
+            String transactionId,
+            String status,
+            Long amountInCents,
+            String currency,
+            Instant eventoEn,
+            Instant siguienteIntentoEn,
+            int intentos
+    ) {
+    }
+
+    private static final RowMapper<Pendiente> MAPEAR = (rs, i) -> new Pendiente(
+            rs.getLong("id"),
+            rs.getString("wompi_transaction_id"),
+            rs.getString("status"),
+            rs.getObject("amount_in_cents") != null ? rs.getLong("amount_in_cents") : null,
+            rs.getString("currency"),
+            rs.getTimestamp("evento_en").toInstant(),
+            rs.getTimestamp("siguiente_intento_en").toInstant(),
+            rs.getInt("intentos")
+    );
+
+    private final WompiService wompiService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean procesar;
+    private final long intervaloMs;
+    private final int lote;
+    private final int maxIntentos;
+    private final long reintentoBaseMs;
+    private final long reintentoMaxMs;
+    // Timbre: el webhook avisa al hilo para no esperar al siguiente intervalo
+    private final BlockingQueue<Boolean> timbre = new ArrayBlockingQueue<>(1);
+
+    private final AtomicLong recibidos = new AtomicLong();
+    private final AtomicLong duplicados = new AtomicLong();
+    private final AtomicLong procesados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+
+    private volatile boolean activo;
+    private volatile Thread worker;
+
+    public WompiWebhookInbox(
+            WompiService wompiService,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.wompi.inbox.procesar:true}") boolean procesar,
+            @Value("${app.wompi.inbox.intervalo-ms:1000}") long intervaloMs,
+            @Value("${app.wompi.inbox.lote:50}") int lote,
+            @Value("${app.wompi.inbox.max-intentos:10}") int maxIntentos,
+            @Value("${app.wompi.inbox.reintento-base-ms:2000}") long reintentoBaseMs,
+            @Value("${app.wompi.inbox.reintento-max-ms:600000}") long reintentoMaxMs
+    ) {
+        this.wompiService = wompiService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.procesar = procesar;
+        this.intervaloMs = Math.max(50, intervaloMs);
+        this.lote = Math.max(1, lote);
+        this.maxIntentos = Math.max(1, maxIntentos);
+        this.reintentoBaseMs = Math.max(100, reintentoBaseMs);
+        this.reintentoMaxMs = Math.max(this.reintentoBaseMs, reintentoMaxMs);
+    }
+
+    /**
+     * Guarda el evento si la firma es válida. Devuelve false si se ignoró (firma, tipo) o ya
+     * estaba en la bandeja. Un error de base se propaga para que el webhook responda 5xx y
+     * Wompi lo reenvíe.
+     */
+    public boolean recibir(String body, String checksumHeader) {
+        EventoWebhook evento = wompiService.leerWebhook(body, checksumHeader);
+        if (evento == null) {
+            return false;
+        }
+        WompiTransactionInfo tx = evento.transaccion();
+        Timestamp ahora = Timestamp.from(Instant.now());
+        int filas = jdbcTemplate.update(SQL_INSERTAR, ps -> {
+            ps.setString(1, tx.id());
+            ps.setString(2, tx.reference());
+            ps.setString(3, tx.status());
+            ps.setObject(4, tx.amountInCents(), Types.BIGINT);
+            ps.setString(5, tx.currency());
+            ps.setString(6, body);
+            ps.setTimestamp(7, Timestamp.from(evento.eventoEn()));
+            ps.setTimestamp(8, ahora);
+            ps.setTimestamp(9, ahora);
+        });
+        if (filas == 0) {
+            duplicados.incrementAndGet();
+            return false;
+        }
+        recibidos.incrementAndGet();
+        timbre.offer(Boolean.TRUE);
+        return true;
+    }
+
+    public long recibidos() {
+        return recibidos.get();
+    }
+
+    public long duplicados() {
+        return duplicados.get();
+    }
+
+    public long procesados() {
+        return procesados.get();
+    }
+
+    public long fallidos() {
+        return fallidos.get();
+    }
+
+    /**
+     * Eventos en la bandeja que todavía no se aplicaron (incluye los que esperan reintento).
+     */
+    public long pendientes() {
+        Long total = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM wompi_evento WHERE estado = 'PENDIENTE'", Long.class);
+        return total != null ? total : 0;
+    }
+
+    // --- Ciclo de vida ---
+
+    @Override
+    public void start() {
+        if (!procesar || activo) {
+            return;
+        }
+        activo = true;
+        Thread hilo = new Thread(this::ejecutar, "wompi-inbox");
+        hilo.setDaemon(true);
+        worker = hilo;
+        hilo.start();
+    }
+
+    @Override
+    public void stop() {
+        activo = false;
+        Thread hilo = worker;
+        if (hilo == null) {
+            return;
+        }
+        timbre.offer(Boolean.TRUE);
+        try {
+            hilo.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (hilo.isAlive()) {
+            hilo.interrupt();
+        }
+        worker = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return activo;
+    }
+
+    @Override
+    public int getPhase() {
+        // Igual que la auditoría: se detiene después del servidor web
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void ejecutar() {
+        while (activo) {
+            int atendidas;
+            try {
+                atendidas = procesarPendientes();
+            } catch (RuntimeException e) {
+                log.warn("Bandeja Wompi: no se pudieron leer eventos pendientes: {}", e.getMessage());
+                atendidas = 0;
+            }
+            if (atendidas >= lote) {
+                continue;
+            }
+            try {
+                timbre.poll(intervaloMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Atiende hasta {@code lote} referencias cuyo evento pendiente más viejo ya puede aplicarse.
+     * Se filtra sobre ese primer evento (el que bloquea a los demás de la referencia) antes del
+     * LIMIT: una referencia cuyo primero está en backoff no ocupa lugar del lote.
+     */
+    private int procesarPendientes() {
+        List<String> referencias = jdbcTemplate.queryForList(
+                "SELECT reference FROM ("
+                        + "SELECT DISTINCT ON (reference) reference, id, siguiente_intento_en FROM wompi_evento "
+                        + "WHERE estado = 'PENDIENTE' ORDER BY reference, evento_en, id) primeros "
+                        + "WHERE siguiente_intento_en <= ? ORDER BY id LIMIT ?",
+                String.class, Timestamp.from(Instant.now()), lote);
+        for (String reference : referencias) {
+            if (!activo) {
+                break;
+            }
+            procesarReferencia(reference);
+        }
+        return referencias.size();
+    }
+
+    private void procesarReferencia(String reference) {
+        while (activo) {
+            Pendiente[] actual = new Pendiente[1];
+            Paso paso;
+            try {
+                paso = transactionTemplate.execute(status -> aplicarSiguiente(reference, actual));
+            } catch (RuntimeException e) {
+                if (actual[0] != null) {
+                    registrarFallo(reference, actual[0], e);
+                } else {
+                    log.warn("Bandeja Wompi: error leyendo eventos de {}: {}", reference, e.getMessage());
+                }
+                return;
+            }
+            if (paso != Paso.SIGUIENTE) {
+                return;
+            }
+        }
+    }
+
+    private Paso aplicarSiguiente(String reference, Pendiente[] actual) {
+        Boolean bloqueada = jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(?, hashtext(?))", Boolean.class, LOCK_BANDEJA, reference);
+        if (!Boolean.TRUE.equals(bloqueada)) {
+            return Paso.OCUPADA;
+        }
+        List<Pendiente> filas = jdbcTemplate.query(
+                "SELECT id, wompi_transaction_id, status, amount_in_cents, currency, evento_en, "
+                        + "siguiente_intento_en, intentos FROM wompi_evento "
+                        + "WHERE reference = ? AND estado = 'PENDIENTE' ORDER BY evento_en, id LIMIT 1",
+                MAPEAR, reference);
+        if (filas.isEmpty()) {
+            return Paso.VACIA;
+        }
+        Pendiente evento = filas.get(0);
+        if (evento.siguienteIntentoEn().isAfter(Instant.now())) {
+            return Paso.ESPERA;
+        }
+        actual[0] = evento;
+        Timestamp ultimoAplicado = jdbcTemplate.queryForObject(
+                "SELECT max(evento_en) FROM wompi_evento WHERE reference = ? AND estado = 'PROCESADO'",
+                Timestamp.class, reference);
+        if (ultimoAplicado != null && evento.eventoEn().isBefore(ultimoAplicado.toInstant())) {
+            cerrar(evento.id(), "DESCARTADO", "Evento anterior al último aplicado");
+            return Paso.SIGUIENTE;
+        }
+        WompiConfirmResponse respuesta = wompiService.aplicarEventoWebhook(new WompiTransactionInfo(
+                evento.transactionId(), reference, evento.status(), evento.amountInCents(), evento.currency()));
+        if ("NO_ENCONTRADO".equals(respuesta.estado())) {
+            cerrar(evento.id(), "DESCARTADO", "Pago no encontrado");
+        } else {
+            cerrar(evento.id(), "PROCESADO", null);
+            procesados.incrementAndGet();
+        }
+        return Paso.SIGUIENTE;
+    }
+
+    private void cerrar(long id, String estado, String motivo) {
+        jdbcTemplate.update(
+                "UPDATE wompi_evento SET estado = ?, procesado_en = ?, ultimo_error = ? WHERE id = ?",
+                estado, Timestamp.from(Instant.now()), motivo, id);
+    }
+
+    private void registrarFallo(String reference, Pendiente evento, RuntimeException error) {
+        int intentos = evento.intentos() + 1;
+        boolean agotado = intentos >= maxIntentos;
+        long espera = Math.min(reintentoMaxMs, reintentoBaseMs << Math.min(20, intentos - 1));
+        espera += ThreadLocalRandom.current().nextLong(espera / 5 + 1);
+        String mensaje = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        if (mensaje.length() > 1000) {
+            mensaje = mensaje.substring(0, 1000);
+        }
+        try {
+            jdbcTemplate.update(
+                    "UPDATE wompi_evento SET intentos = ?, estado = ?, siguiente_intento_en = ?, ultimo_error = ? "
+                            + "WHERE id = ?",
+                    intentos, agotado ? "FALLIDO" : "PENDIENTE",
+                    Timestamp.from(Instant.now().plusMillis(espera)), mensaje, evento.id());
+        } catch (RuntimeException e) {
+            log.warn("Bandeja Wompi: no se pudo registrar el fallo del evento {}: {}", evento.id(), e.getMessage());
+            return;
+        }
+        if (agotado) {
+            fallidos.incrementAndGet();
+            log.error("Bandeja Wompi: evento {} ({} {}) falló {} veces, queda FALLIDO: {}",
+                    evento.id(), reference, evento.status(), intentos, mensaje, error);
+        } else {
+            log.warn("Bandeja Wompi: evento {} ({} {}) falló (intento {}), reintento en {} ms: {}",
+                    evento.id(), reference, evento.status(), intentos, espera, mensaje);
+        }
+    }
+}
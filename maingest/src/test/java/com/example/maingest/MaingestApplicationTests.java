@@ -1,10 +1,9 @@
 package com.example.maingest;
 
+import com.example.maingest.support.PruebaIntegracion;
 import org.junit.jupiter.api.Test;
-import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
-class MaingestApplicationTests {
+class MaingestApplicationTests extends PruebaIntegracion {
 
 	@Test
 	void contextLoads() {
@@ -0,0 +1,78 @@
+package com.example.maingest.config;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * El filtro solo, con un turno y sin espera: un request asíncrono conserva el turno hasta que
+ * termina el ciclo async, y health/prometheus pasan aunque no quede ninguno.
+ */
+class LimiteConcurrenciaFilterTest {
+
+    private final LimiteConcurrenciaFilter filtro = new LimiteConcurrenciaFilter(null, true, 1, 4, 0);
+
+    @Test
+    void requestSincronoDevuelveElTurnoAlVolver() throws Exception {
+        MockHttpServletResponse respuesta = new MockHttpServletResponse();
+        filtro.doFilter(request("/api/productos"), respuesta, new MockFilterChain());
+
+        assertThat(respuesta.getStatus()).isEqualTo(200);
+        assertThat(filtro.enCurso()).isZero();
+    }
+
+    @Test
+    void requestAsincronoConservaElTurnoHastaCompletar() throws Exception {
+        AtomicReference<AsyncContext> async = new AtomicReference<>();
+        FilterChain streaming = (req, res) -> async.set(req.startAsync());
+        filtro.doFilter(request("/api/reportes/inventario"), new MockHttpServletResponse(), streaming);
+
+        assertThat(filtro.enCurso()).isEqualTo(1);
+        MockHttpServletResponse rechazado = new MockHttpServletResponse();
+        filtro.doFilter(request("/api/productos"), rechazado, new MockFilterChain());
+        assertThat(rechazado.getStatus()).isEqualTo(503);
+        assertThat(rechazado.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(filtro.rechazados()).isEqualTo(1);
+
+        async.get().complete();
+        assertThat(filtro.enCurso()).isZero();
+        MockHttpServletResponse siguiente = new MockHttpServletResponse();
+        filtro.doFilter(request("/api/productos"), siguiente, new MockFilterChain());
+        assertThat(siguiente.getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void healthYPrometheusNoPasanPorElLimite() throws Exception {
+        AtomicReference<AsyncContext> async = new AtomicReference<>();
+        filtro.doFilter(request("/api/reportes/inventario"), new MockHttpServletResponse(),
+                (req, res) -> async.set(req.startAsync()));
+        assertThat(filtro.enCurso()).isEqualTo(1);
+
+        for (String ruta : new String[]{"/actuator/health", "/actuator/health/liveness", "/actuator/prometheus"}) {
+            MockHttpServletResponse respuesta = new MockHttpServletResponse();
+            MockFilterChain cadena = new MockFilterChain();
+            filtro.doFilter(request(ruta), respuesta, cadena);
+            assertThat(respuesta.getStatus()).as(ruta).isEqualTo(200);
+            assertThat(cadena.getRequest()).as(ruta).isNotNull();
+        }
+        MockHttpServletResponse metricas = new MockHttpServletResponse();
+        filtro.doFilter(request("/actuator/metrics"), metricas, new MockFilterChain());
+        assertThat(metricas.getStatus()).isEqualTo(503);
+
+        async.get().complete();
+        assertThat(filtro.enCurso()).isZero();
+    }
+
+    private static MockHttpServletRequest request(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.maingest.config;
+
+import com.example.maingest.domain.Usuario;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ruteo entre dos PostgreSQL embebidos, el principal y una "réplica" (un servidor aparte, no un
+ * standby real): cada conexión se identifica por el puerto del servidor que la atiende. El retraso
+ * se simula en otro pool de la réplica con funciones pg_is_in_recovery/pg_last_* propias por
+ * delante de pg_catalog en el search_path, y la réplica caída es un puerto sin servidor.
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private static final long STICKY_MS = 500;
+
+    private static EmbeddedPostgres principal;
+    private static EmbeddedPostgres replica;
+
+    private ReplicaRoutingDataSource dataSource;
+
+    @BeforeAll
+    static void arrancar() throws IOException, SQLException {
+        principal = EmbeddedPostgres.builder().start();
+        replica = EmbeddedPostgres.builder().start();
+        try (Connection conexion = replica.getPostgresDatabase().getConnection();
+             Statement st = conexion.createStatement()) {
+            st.execute("CREATE SCHEMA retraso");
+            st.execute("CREATE FUNCTION retraso.pg_is_in_recovery() RETURNS boolean LANGUAGE sql AS 'SELECT true'");
+            st.execute("CREATE FUNCTION retraso.pg_last_wal_receive_lsn() RETURNS pg_lsn LANGUAGE sql AS 'SELECT ''0/2''::pg_lsn'");
+            st.execute("CREATE FUNCTION retraso.pg_last_wal_replay_lsn() RETURNS pg_lsn LANGUAGE sql AS 'SELECT ''0/1''::pg_lsn'");
+            st.execute("CREATE FUNCTION retraso.pg_last_xact_replay_timestamp() RETURNS timestamptz LANGUAGE sql "
+                    + "AS 'SELECT now() - interval ''1 hour'''");
+        }
+    }
+
+    @AfterAll
+    static void detener() throws IOException {
+        principal.close();
+        replica.close();
+    }
+
+    @AfterEach
+    void limpiar() {
+        RequestContextHolder.resetRequestAttributes();
+        SecurityContextHolder.clearContext();
+        if (dataSource != null) {
+            dataSource.destroy();
+        }
+    }
+
+    @Test
+    void lecturaGetVaALaReplica() throws Exception {
+        dataSource = enrutador(pool("replica-1", replica.getJdbcUrl("postgres", "postgres"), null));
+        request("GET");
+        esperarReplicaSana();
+
+        assertThat(puerto(true)).isEqualTo(replica.getPort());
+        // Sin readOnly la conexión es de escritura aunque el request sea GET
+        assertThat(puerto(false)).isEqualTo(principal.getPort());
+    }
+
+    @Test
+    void postYUsuarioQueAcabaDeEscribirLeenDelPrincipal() throws Exception {
+        dataSource = enrutador(pool("replica-1", replica.getJdbcUrl("postgres", "postgres"), null));
+        request("GET");
+        esperarReplicaSana();
+
+        request("POST");
+        assertThat(puerto(true)).isEqualTo(principal.getPort());
+
+        Usuario usuario = new Usuario();
+        usuario.setId(42L);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(usuario, null, List.of()));
+        request("GET");
+        assertThat(puerto(true)).isEqualTo(replica.getPort());
+        assertThat(puerto(false)).isEqualTo(principal.getPort());
+        assertThat(puerto(true)).as("dentro de sticky-ms").isEqualTo(principal.getPort());
+
+        Thread.sleep(STICKY_MS + 100);
+        assertThat(puerto(true)).as("pasado sticky-ms").isEqualTo(replica.getPort());
+    }
+
+    @Test
+    void replicaAtrasadaOCaidaCaeAlPrincipal() throws Exception {
+        String atrasada = replica.getJdbcUrl("postgres", "postgres");
+        try (HikariDataSource directo = pool("sonda", atrasada, "SET search_path = retraso, pg_catalog");
+             Connection conexion = directo.getConnection();
+             Statement st = conexion.createStatement();
+             ResultSet rs = st.executeQuery(
+                     "SELECT pg_is_in_recovery(), now() - pg_last_xact_replay_timestamp() > interval '5 seconds'")) {
+            rs.next();
+            assertThat(rs.getBoolean(1)).isTrue();
+            assertThat(rs.getBoolean(2)).isTrue();
+        }
+        dataSource = enrutador(
+                pool("replica-atrasada", atrasada, "SET search_path = retraso, pg_catalog"),
+                pool("replica-caida", "jdbc:postgresql://localhost:" + puertoLibre() + "/postgres", null));
+        request("GET");
+        // Varias mediciones del monitor (cada 100 ms): ninguna de las dos puede quedar sana
+        Thread.sleep(1000);
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(puerto(true)).isEqualTo(principal.getPort());
+        }
+    }
+
+    @Test
+    void enPrimarioIgnoraLaReplica() throws Exception {
+        dataSource = enrutador(pool("replica-1", replica.getJdbcUrl("postgres", "postgres"), null));
+        request("GET");
+        esperarReplicaSana();
+
+        int forzado = ReplicaRoutingDataSource.enPrimario(() -> {
+            try {
+                return puerto(true);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(forzado).isEqualTo(principal.getPort());
+        assertThat(puerto(true)).isEqualTo(replica.getPort());
+    }
+
+    private ReplicaRoutingDataSource enrutador(HikariDataSource... replicas) {
+        return new ReplicaRoutingDataSource(pool("principal", principal.getJdbcUrl("postgres", "postgres"), null),
+                List.of(replicas), 5000, STICKY_MS, 100, 100);
+    }
+
+    private static HikariDataSource pool(String nombre, String url, String initSql) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(nombre);
+        config.setJdbcUrl(url);
+        config.setUsername("postgres");
+        config.setPassword("postgres");
+        config.setMaximumPoolSize(2);
+        config.setConnectionTimeout(250);
+        config.setInitializationFailTimeout(-1);
+        if (initSql != null) {
+            config.setConnectionInitSql(initSql);
+        }
+        return new HikariDataSource(config);
+    }
+
+    private static void request(String metodo) {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(metodo, "/api/x")));
+    }
+
+    // Como una transacción readOnly: la conexión perezosa se marca antes de la primera sentencia
+    private int puerto(boolean soloLectura) throws SQLException {
+        try (Connection conexion = dataSource.getConnection()) {
+            conexion.setReadOnly(soloLectura);
+            try (Statement st = conexion.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT current_setting('port')::int")) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private void esperarReplicaSana() throws Exception {
+        long limite = System.nanoTime() + 10_000_000_000L;
+        while (puerto(true) != replica.getPort()) {
+            assertThat(System.nanoTime()).as("la réplica no quedó sana en 10 s").isLessThan(limite);
+            Thread.sleep(50);
+        }
+    }
+
+    private static int puertoLibre() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.maingest.config;
+
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class SchemaMigrationRunnerTest extends PruebaIntegracion {
+
+    @Autowired
+    private Escenario escenario;
+
+    @Autowired
+    private SchemaMigrationRunner schemaMigrationRunner;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void fusionaItemsDuplicadosAntesDeCrearElIndiceUnico() {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        Long productoId = datos.productoIds().get(0);
+        Long repisaId = datos.repisaIds().get(0);
+
+        // Una instalación vieja: sin el índice y con el mismo producto en tres filas de la repisa
+        jdbcTemplate.execute("DROP INDEX uk_item_producto_repisa");
+        for (int cantidad : new int[]{4, 5, 6}) {
+            jdbcTemplate.update("""
+                    INSERT INTO item (id, nombre, estado, tamanio, producto_id, cantidad, estado_stock, repisa_id)
+                    VALUES (nextval('item_id_seq'), 'Item', 'ACTIVO', 1, ?, ?, 'DISPONIBLE', ?)
+                    """, productoId, cantidad, repisaId);
+        }
+        jdbcTemplate.update("DELETE FROM schema_migracion WHERE version = '3'");
+
+        schemaMigrationRunner.afterSingletonsInstantiated();
+
+        List<Map<String, Object>> items = jdbcTemplate.queryForList(
+                "SELECT cantidad FROM item WHERE producto_id = ? AND repisa_id = ?", productoId, repisaId);
+        assertEquals(1, items.size());
+        assertEquals(15, ((Number) items.get(0).get("cantidad")).intValue());
+        assertTrue(jdbcTemplate.queryForObject(
+                "SELECT to_regclass('uk_item_producto_repisa') IS NOT NULL", Boolean.class));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM schema_migracion WHERE version = '3'", Integer.class));
+    }
+
+    @Test
+    void convierteDetallesDeTextoAJsonbConservandoCadaFila() throws Exception {
+        columnaDetallesVieja("text", "CAST(detalles_json AS text)");
+        long filasAntes = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM auditoria_evento", Long.class);
+        long conJson = evento("Traslado de cafeteras a la bodega norte", "'{\"proveedor\": \"Zapatería Olmedo\", \"cantidad\": 12}'");
+        long sinFormato = evento("Ajuste manual de cafeteras", "'motivo escrito a mano, sin JSON'");
+        long sinDetalles = evento("Alta de proveedor", "NULL");
+        jdbcTemplate.update("DELETE FROM schema_migracion WHERE version = '5'");
+
+        schemaMigrationRunner.afterSingletonsInstantiated();
+
+        assertEquals("jsonb", jdbcTemplate.queryForObject(
+                "SELECT data_type FROM information_schema.columns WHERE table_name = 'auditoria_evento' AND column_name = 'detalles_json'",
+                String.class));
+        assertEquals(filasAntes + 3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM auditoria_evento", Long.class));
+        // Una fila que no es JSON no convierte a las demás en strings
+        assertTrue(jdbcTemplate.queryForObject(
+                "SELECT detalles_json = '{\"proveedor\": \"Zapatería Olmedo\", \"cantidad\": 12}'::jsonb FROM auditoria_evento WHERE id = ?",
+                Boolean.class, conJson));
+        Map<String, Object> texto = jdbcTemplate.queryForMap(
+                "SELECT jsonb_typeof(detalles_json) AS tipo, detalles_json #>> '{}' AS valor FROM auditoria_evento WHERE id = ?",
+                sinFormato);
+        assertEquals("string", texto.get("tipo"));
+        assertEquals("motivo escrito a mano, sin JSON", texto.get("valor"));
+        assertNull(jdbcTemplate.queryForObject("SELECT detalles_json FROM auditoria_evento WHERE id = ?", String.class, sinDetalles));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM schema_migracion WHERE version = '5'", Integer.class));
+
+        String superAdmin = escenario.bearerSuperAdmin();
+        // Por la descripción (con raíz: cafetera encuentra cafeteras) y por un valor dentro de los detalles
+        assertEquals(Set.of(conJson, sinFormato), buscar(superAdmin, "cafetera"));
+        assertEquals(Set.of(conJson), buscar(superAdmin, "olmedo"));
+        assertEquals(Set.of(conJson), buscar(superAdmin, "cafeteras bodega"));
+        assertTrue(planUsaIndice("busqueda_tsv @@ websearch_to_tsquery('spanish', 'olmedo')", "idx_auditoria_busqueda_tsv"));
+        assertTrue(planUsaIndice("detalles_json @> '{\"cantidad\": 12}'::jsonb", "idx_auditoria_detalles"));
+    }
+
+    @Test
+    void convierteDetallesGuardadosComoLargeObject() {
+        columnaDetallesVieja("oid", "lo_from_bytea(0, convert_to(CAST(detalles_json AS text), 'UTF8'))");
+        long id = evento("Evento con lob", "lo_from_bytea(0, convert_to('{\"lote\": \"L-77\"}', 'UTF8'))");
+        jdbcTemplate.update("DELETE FROM schema_migracion WHERE version = '5'");
+
+        schemaMigrationRunner.afterSingletonsInstantiated();
+
+        assertEquals("L-77", jdbcTemplate.queryForObject(
+                "SELECT detalles_json ->> 'lote' FROM auditoria_evento WHERE id = ?", String.class, id));
+    }
+
+    // Una instalación de antes del paso 5: detalles_json en el tipo viejo, sin búsqueda ni índices
+    private void columnaDetallesVieja(String tipo, String conversion) {
+        jdbcTemplate.execute("ALTER TABLE auditoria_evento DROP COLUMN IF EXISTS busqueda_tsv");
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_auditoria_detalles");
+        jdbcTemplate.execute("ALTER TABLE auditoria_evento ALTER COLUMN detalles_json TYPE " + tipo + " USING "
+                + "CASE WHEN detalles_json IS NULL THEN NULL ELSE " + conversion + " END");
+    }
+
+    private long evento(String descripcion, String detalles) {
+        return jdbcTemplate.queryForObject("INSERT INTO auditoria_evento (id, accion, objeto_tipo, descripcion, detalles_json, creado_en) "
+                + "VALUES (nextval('auditoria_evento_id_seq'), 'ACTUALIZAR', 'PRODUCTO', ?, " + detalles + ", now()) RETURNING id",
+                Long.class, descripcion);
+    }
+
+    private Set<Long> buscar(String bearer, String texto) throws Exception {
+        String json = mockMvc.perform(get("/api/auditoria").param("texto", texto).param("size", "200")
+                        .header(HttpHeaders.AUTHORIZATION, bearer))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<Number> ids = JsonPath.read(json, "$.content[*].id");
+        Set<Long> encontrados = new HashSet<>();
+        ids.forEach(id -> encontrados.add(id.longValue()));
+        return encontrados;
+    }
+
+    // Con seqscan apagado el plan tiene que poder usar el índice; si no existe o no aplica, no aparece
+    private boolean planUsaIndice(String condicion, String indice) {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) conexion -> {
+            try (Statement st = conexion.createStatement()) {
+                st.execute("SET enable_seqscan = off");
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet rs = st.executeQuery("EXPLAIN SELECT id FROM auditoria_evento WHERE " + condicion)) {
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                } finally {
+                    st.execute("RESET enable_seqscan");
+                }
+                return plan.toString().contains(indice);
+            }
+        });
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.maingest.controller;
+
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import static com.example.maingest.support.ConsultasSqlAssert.assertMaxQueries;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Sentencias SQL por request en los endpoints de listado. Los datos son lo bastante grandes para
+ * que un N+1 (una consulta por armario, usuario o fila) pase holgadamente el presupuesto. Antes de
+ * medir se hace el mismo request una vez, para que el usuario del JWT y sus permisos ya estén en
+ * cache: se mide el estado estable, no el primer request.
+ */
+class ConsultasPorRequestTest extends PruebaIntegracion {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Test
+    void estructuraDeAlmacen() throws Exception {
+        Escenario.Datos datos = escenario.crear(20, 5, 20);
+        escenario.llenarRepisas(datos, 20, 3);
+        RequestBuilder request = get("/api/almacenes/{id}/estructura", datos.almacen().getId())
+                .header(HttpHeaders.AUTHORIZATION, datos.bearer());
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        assertMaxQueries(4, () -> mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.armarios.length()").value(20))
+                .andExpect(jsonPath("$.armarios[0].repisas.length()").value(5)));
+    }
+
+    @Test
+    void estructuraDeAlmacenGrande() throws Exception {
+        // 200 armarios x 10 repisas x 50 items: las mismas sentencias que la estructura chica
+        Escenario.Datos datos = escenario.crear(200, 10, 50);
+        escenario.llenarRepisas(datos, 50, 1);
+        RequestBuilder request = get("/api/almacenes/{id}/estructura", datos.almacen().getId())
+                .header(HttpHeaders.AUTHORIZATION, datos.bearer());
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        assertMaxQueries(4, () -> mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.armarios.length()").value(200))
+                .andExpect(jsonPath("$.armarios[199].repisas.length()").value(10)));
+    }
+
+    @Test
+    void listarUsuarios() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        escenario.agregarUsuarios(datos, 30);
+        RequestBuilder request = get("/api/usuarios").header(HttpHeaders.AUTHORIZATION, datos.bearer());
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        assertMaxQueries(5, () -> mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(31)));
+    }
+
+    @Test
+    void listarUsuariosComoSuperAdmin() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        escenario.agregarUsuarios(datos, 30);
+        RequestBuilder request = get("/api/usuarios")
+                .header(HttpHeaders.AUTHORIZATION, escenario.bearerSuperAdmin());
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        assertMaxQueries(5, () -> mockMvc.perform(request)
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void reporteInventarioPorPaginas() throws Exception {
+        Escenario.Datos datos = escenario.crear(10, 5, 10);
+        escenario.llenarRepisas(datos, 10, 2);
+        RequestBuilder request = get("/api/reportes/inventario/pagina").param("size", "200")
+                .header(HttpHeaders.AUTHORIZATION, datos.bearer());
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        MvcResult primera = assertMaxQueries(4, () -> mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(200))
+                .andReturn());
+        String after = JsonPath.read(primera.getResponse().getContentAsString(), "$.nextAfter").toString();
+        assertMaxQueries(4, () -> mockMvc.perform(get("/api/reportes/inventario/pagina")
+                        .param("size", "200").param("after", after)
+                        .header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(200)));
+    }
+
+    @Test
+    void reporteUsuariosPorEmpresa() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        escenario.agregarUsuarios(datos, 30);
+        // Superadmin: ve las relaciones de todas las empresas sembradas por los demás tests
+        RequestBuilder request = get("/api/reportes/usuarios")
+                .header(HttpHeaders.AUTHORIZATION, escenario.bearerSuperAdmin());
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        assertMaxQueries(4, () -> mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.empresaId == %d)]", datos.empresa().getId()).isNotEmpty()));
+    }
+
+    @Test
+    void kardexPorPaginaYPorCursor() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 2, 20);
+        escenario.movimientos(datos, 300, 3);
+        RequestBuilder request = get("/api/kardex").param("empresaId", datos.empresa().getId().toString())
+                .param("size", "100").header(HttpHeaders.AUTHORIZATION, datos.bearer());
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        assertMaxQueries(4, () -> mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(100))
+                .andExpect(jsonPath("$.totalElements").value(300)));
+
+        MvcResult primera = assertMaxQueries(3, () -> mockMvc.perform(get("/api/kardex")
+                        .param("empresaId", datos.empresa().getId().toString())
+                        .param("size", "100").param("after", "")
+                        .header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(100))
+                .andReturn());
+        String siguiente = JsonPath.read(primera.getResponse().getContentAsString(), "$.siguiente");
+        assertMaxQueries(3, () -> mockMvc.perform(get("/api/kardex")
+                        .param("empresaId", datos.empresa().getId().toString())
+                        .param("size", "100").param("after", siguiente)
+                        .header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(100)));
+    }
+
+    @Test
+    void listarProductos() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 120);
+        RequestBuilder request = get("/api/productos").param("empresaId", datos.empresa().getId().toString())
+                .param("size", "100").header(HttpHeaders.AUTHORIZATION, datos.bearer());
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        assertMaxQueries(4, () -> mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(100))
+                .andExpect(jsonPath("$.totalElements").value(120))
+                // Apagado por defecto: no se publica cuántas sentencias corre cada endpoint
+                .andExpect(header().doesNotExist("Server-Timing")));
+    }
+
+    @Test
+    void usoDeEmpresa() throws Exception {
+        Escenario.Datos datos = escenario.crear(5, 4, 30);
+        escenario.llenarRepisas(datos, 5, 1);
+        escenario.agregarUsuarios(datos, 10);
+        RequestBuilder request = get("/api/empresas/{id}/usage", datos.empresa().getId())
+                .header(HttpHeaders.AUTHORIZATION, escenario.bearerSuperAdmin());
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        assertMaxQueries(3, () -> mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.repisas").value(20))
+                .andExpect(jsonPath("$.usuarios").value(11)));
+    }
+
+    @Test
+    void estructuraGlobal() throws Exception {
+        Escenario.Datos datos = escenario.crear(20, 5, 20);
+        escenario.llenarRepisas(datos, 10, 2);
+        RequestBuilder request = get("/api/almacenes/estructura-global")
+                .header(HttpHeaders.AUTHORIZATION, datos.bearer());
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        assertMaxQueries(5, () -> mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(100)));
+    }
+
+    @Test
+    void auditoriaPorPaginaYPorCursor() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        escenario.agregarUsuarios(datos, 10);
+        escenario.auditoria(datos, 300);
+        RequestBuilder request = get("/api/auditoria").param("size", "100")
+                .header(HttpHeaders.AUTHORIZATION, datos.bearer());
+        mockMvc.perform(request).andExpect(status().isOk());
+
+        assertMaxQueries(5, () -> mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(100)));
+
+        MvcResult primera = assertMaxQueries(4, () -> mockMvc.perform(get("/api/auditoria")
+                        .param("size", "100").param("after", "")
+                        .header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(100))
+                .andReturn());
+        String siguiente = JsonPath.read(primera.getResponse().getContentAsString(), "$.siguiente");
+        assertMaxQueries(4, () -> mockMvc.perform(get("/api/auditoria")
+                        .param("size", "100").param("after", siguiente)
+                        .header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(100)));
+    }
+}
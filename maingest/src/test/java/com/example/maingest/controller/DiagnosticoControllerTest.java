@@ -0,0 +1,145 @@
+package com.example.maingest.controller;
+
+import com.example.maingest.service.GrabacionJfrService;
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import com.jayway.jsonpath.JsonPath;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * /api/admin/jfr contra el JFR real de la JVM de tests: solo superadmin, duración y tamaño acotados
+ * por app.jfr.max-segundos y app.jfr.max-bytes (300 s y 100 MB por defecto), y una sola grabación
+ * por nodo, que al terminar queda para descargar hasta la siguiente.
+ */
+class DiagnosticoControllerTest extends PruebaIntegracion {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Autowired
+    private GrabacionJfrService grabacionJfrService;
+
+    @AfterEach
+    void detenerSiQuedoEnCurso() {
+        try {
+            grabacionJfrService.detener();
+        } catch (IllegalStateException e) {
+            // No había una en curso
+        }
+    }
+
+    @Test
+    void soloElSuperAdminPuedeGrabar() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        String estadoAntes = grabacionJfrService.estado().estado();
+
+        // El propietario tiene todos los permisos de su empresa, pero no es superadmin
+        for (MockHttpServletRequestBuilder request : new MockHttpServletRequestBuilder[]{
+                get("/api/admin/jfr"),
+                post("/api/admin/jfr/iniciar").param("segundos", "5"),
+                post("/api/admin/jfr/detener"),
+                get("/api/admin/jfr/descarga")}) {
+            mockMvc.perform(request.header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                    .andExpect(status().isForbidden());
+        }
+        assertThat(grabacionJfrService.estado().estado()).isEqualTo(estadoAntes);
+        mockMvc.perform(post("/api/admin/jfr/iniciar").param("segundos", "5"))
+                .andExpect(status().is4xxClientError());
+        assertThat(grabacionJfrService.estado().estado()).isEqualTo(estadoAntes);
+    }
+
+    @Test
+    void duracionYTamanioAcotados() throws Exception {
+        String superAdmin = escenario.bearerSuperAdmin();
+        for (String segundos : new String[]{"0", "-5", "301"}) {
+            mockMvc.perform(iniciar(superAdmin, segundos))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.error").value("La duración debe estar entre 1 y 300 segundos"));
+        }
+        mockMvc.perform(iniciar(superAdmin, "5").param("perfil", "todo"))
+                .andExpect(status().isBadRequest());
+
+        String json = mockMvc.perform(iniciar(superAdmin, "300"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.duracionSegundos").value(300))
+                .andReturn().getResponse().getContentAsString();
+        String nombre = JsonPath.read(json, "$.nombre");
+        Recording recording = FlightRecorder.getFlightRecorder().getRecordings().stream()
+                .filter(r -> r.getName().equals(nombre))
+                .findFirst()
+                .orElseThrow();
+        assertThat(recording.getMaxSize()).isEqualTo(104_857_600L);
+        assertThat(recording.getDuration()).isEqualTo(Duration.ofSeconds(300));
+        assertThat(recording.getDestination()).isNotNull();
+    }
+
+    @Test
+    void unaGrabacionPorNodoQueTerminaSolaYSeDescarga() throws Exception {
+        String superAdmin = escenario.bearerSuperAdmin();
+        String primera = mockMvc.perform(iniciar(superAdmin, "1"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.nodo").value(grabacionJfrService.nodo()))
+                .andReturn().getResponse().getContentAsString();
+        mockMvc.perform(iniciar(superAdmin, "5"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(get("/api/admin/jfr/descarga").header(HttpHeaders.AUTHORIZATION, superAdmin))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.nodo").value(grabacionJfrService.nodo()));
+
+        // Al cumplir la duración se detiene sola y queda descargable
+        long limite = System.nanoTime() + 15_000_000_000L;
+        while (!grabacionJfrService.estado().descargable()) {
+            assertThat(System.nanoTime()).as("la grabación de 1 s no terminó en 15 s").isLessThan(limite);
+            Thread.sleep(100);
+        }
+        mockMvc.perform(post("/api/admin/jfr/detener").header(HttpHeaders.AUTHORIZATION, superAdmin))
+                .andExpect(status().isConflict());
+        byte[] contenido = mockMvc.perform(get("/api/admin/jfr/descarga").header(HttpHeaders.AUTHORIZATION, superAdmin))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        // Los archivos JFR empiezan con "FLR\0"
+        assertThat(new String(Arrays.copyOf(contenido, 3), StandardCharsets.US_ASCII)).isEqualTo("FLR");
+        Path archivo = Paths.get("target/jfr").toAbsolutePath()
+                .resolve("maingest-" + grabacionJfrService.nodo() + "-"
+                        + JsonPath.<String>read(primera, "$.nombre").substring("maingest-".length()) + ".jfr");
+        assertThat(archivo).exists();
+
+        // La siguiente reemplaza a la anterior y borra su archivo
+        mockMvc.perform(iniciar(superAdmin, "5"))
+                .andExpect(status().isAccepted());
+        assertThat(Files.exists(archivo)).isFalse();
+        mockMvc.perform(post("/api/admin/jfr/detener").header(HttpHeaders.AUTHORIZATION, superAdmin))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.descargable").value(true));
+    }
+
+    private static MockHttpServletRequestBuilder iniciar(String bearer, String segundos) {
+        return post("/api/admin/jfr/iniciar")
+                .param("segundos", segundos)
+                .param("perfil", "default")
+                .header(HttpHeaders.AUTHORIZATION, bearer);
+    }
+}
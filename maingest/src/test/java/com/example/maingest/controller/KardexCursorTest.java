@@ -0,0 +1,112 @@
+package com.example.maingest.controller;
+
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Paginación por cursor del kardex ({@code ?after=}): recorrer todas las páginas con muchas filas
+ * en la misma fecha no repite ni salta movimientos, un cursor mal formado es 400 y el total solo
+ * se calcula con {@code conTotal=true}.
+ */
+class KardexCursorTest extends PruebaIntegracion {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void recorreLasPaginasConFechasRepetidasSinRepetirNiSaltar() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 3);
+        // Grupos de 7 movimientos con la misma fecha: los cortes de página de 10 caen dentro de un grupo
+        escenario.movimientos(datos, 95, 7);
+
+        assertThat(recorrer(datos, null)).containsExactlyElementsOf(jdbcTemplate.queryForList(
+                "SELECT id FROM movimiento_inventario WHERE empresa_id = ? ORDER BY fecha DESC, id DESC",
+                Long.class, datos.empresa().getId()));
+        Long productoId = datos.productoIds().get(1);
+        assertThat(recorrer(datos, productoId)).hasSize(32).containsExactlyElementsOf(jdbcTemplate.queryForList(
+                "SELECT id FROM movimiento_inventario WHERE empresa_id = ? AND producto_id = ? ORDER BY fecha DESC, id DESC",
+                Long.class, datos.empresa().getId(), productoId));
+    }
+
+    @Test
+    void cursorMalFormadoEsBadRequest() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        for (String after : List.of("basura", "2024-05-01T10:00:00Z", "2024-05-01T10:00:00Z,", ",15",
+                "2024-05-01,15", "2024-05-01T10:00:00Z,quince")) {
+            mockMvc.perform(kardex(datos, after))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.error").value("Cursor inválido, se espera <fecha,id>"));
+        }
+    }
+
+    @Test
+    void elTotalSoloSeCalculaSiSePide() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 2);
+        escenario.movimientos(datos, 25, 3);
+
+        Map<String, Object> sinTotal = pagina(kardex(datos, ""));
+        assertThat(sinTotal.get("totalElements")).isNull();
+        assertThat(sinTotal.get("siguiente")).isNotNull();
+
+        Map<String, Object> conTotal = pagina(kardex(datos, "").param("conTotal", "true"));
+        assertThat(((Number) conTotal.get("totalElements")).longValue()).isEqualTo(25);
+        Map<String, Object> segunda = pagina(kardex(datos, (String) conTotal.get("siguiente")).param("conTotal", "true"));
+        assertThat(((Number) segunda.get("totalElements")).longValue()).isEqualTo(25);
+        assertThat(pagina(kardex(datos, (String) conTotal.get("siguiente"))).get("totalElements")).isNull();
+    }
+
+    private List<Long> recorrer(Escenario.Datos datos, Long productoId) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        String after = "";
+        while (after != null) {
+            MockHttpServletRequestBuilder request = kardex(datos, after);
+            if (productoId != null) {
+                request.param("productoId", productoId.toString());
+            }
+            Map<String, Object> pagina = pagina(request);
+            List<Number> contenido = JsonPath.read(pagina, "$.content[*].id");
+            assertThat(contenido).hasSizeLessThanOrEqualTo(10);
+            contenido.forEach(id -> ids.add(id.longValue()));
+            after = (String) pagina.get("siguiente");
+            assertThat(after == null || contenido.size() == 10).as("solo la última página viene corta").isTrue();
+        }
+        return ids;
+    }
+
+    private Map<String, Object> pagina(MockHttpServletRequestBuilder request) throws Exception {
+        String json = mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(json, "$");
+    }
+
+    private static MockHttpServletRequestBuilder kardex(Escenario.Datos datos, String after) {
+        return get("/api/kardex")
+                .param("empresaId", datos.empresa().getId().toString())
+                .param("size", "10")
+                .param("after", after)
+                .header(HttpHeaders.AUTHORIZATION, datos.bearer());
+    }
+}
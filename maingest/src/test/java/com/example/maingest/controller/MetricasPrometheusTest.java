@@ -0,0 +1,57 @@
+package com.example.maingest.controller;
+
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * El scrape de /actuator/prometheus: solo superadmin (o el token del scraper), con las métricas
+ * de Spring Boot y las propias de la aplicación.
+ */
+class MetricasPrometheusTest extends PruebaIntegracion {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Test
+    void soloSuperAdmin() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/prometheus").header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void exportaMetricasDeBootYPropias() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        mockMvc.perform(get("/api/almacenes/{id}/estructura", datos.almacen().getId())
+                        .header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/prometheus").header(HttpHeaders.AUTHORIZATION, escenario.bearerSuperAdmin()))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("http_server_requests_seconds_bucket")))
+                .andExpect(content().string(containsString("hikaricp_connections_active")))
+                .andExpect(content().string(containsString("hibernate_sessions_open_total")))
+                .andExpect(content().string(containsString("jvm_memory_used_bytes")))
+                .andExpect(content().string(containsString("auth_jwt_verificacion_seconds_bucket")))
+                .andExpect(content().string(containsString("trabajos_en_cola")))
+                .andExpect(content().string(containsString("auditoria_en_cola")))
+                .andExpect(content().string(containsString("auditoria_flush_seconds_count")))
+                .andExpect(content().string(containsString("auditoria_descartados_total")))
+                .andExpect(content().string(containsString("auditoria_rechazados_total")))
+                .andExpect(content().string(containsString("wompi_webhook_procesados_total")))
+                .andExpect(content().string(containsString("wompi_webhook_pendientes")));
+    }
+}
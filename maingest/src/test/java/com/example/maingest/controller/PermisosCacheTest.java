@@ -0,0 +1,159 @@
+package com.example.maingest.controller;
+
+import com.example.maingest.domain.Empresa;
+import com.example.maingest.domain.Permiso;
+import com.example.maingest.domain.Rol;
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.repository.PermisoRepository;
+import com.example.maingest.repository.RolRepository;
+import com.example.maingest.repository.UsuarioRepository;
+import com.example.maingest.service.PermissionService;
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static com.example.maingest.support.ConsultasSqlAssert.assertMaxQueries;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Las mutaciones de roles, roles de usuario y usuarios de empresa invalidan los bitsets compilados
+ * de PermissionService: la verificación siguiente ve el cambio, y la que viene después vuelve a
+ * salir de memoria sin SQL. Antes de cada mutación se verifica una vez para dejar el alcance en
+ * cache; sin la invalidación esa respuesta vieja es la que se vería.
+ */
+class PermisosCacheTest extends PruebaIntegracion {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Autowired
+    private PermissionService permissionService;
+
+    @Autowired
+    private PermisoRepository permisoRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    private Escenario.Datos datos;
+    private Usuario usuario;
+    private Permiso permiso;
+    private String superAdmin;
+
+    @BeforeEach
+    void sembrar() {
+        datos = escenario.crear(1, 1, 1);
+        // Un usuario con un rol de empresa y uno global, los dos sin permisos
+        usuario = usuarioRepository.findById(escenario.agregarUsuarios(datos, 1).get(0)).orElseThrow();
+        permiso = permisoRepository.findAll().stream()
+                .filter(p -> "PRODUCTO".equals(p.getArea()) && p.getCodigo() != null)
+                .findFirst()
+                .orElseThrow();
+        superAdmin = escenario.bearerSuperAdmin();
+    }
+
+    @Test
+    void rolControllerInvalidaAlAsignarYQuitarPermisos() throws Exception {
+        Rol rol = rol(null);
+        asignarRolGlobal(rol);
+        assertPermiso(null, false);
+
+        mockMvc.perform(conJson(post("/api/roles/{id}/permisos", rol.getId()), "{\"permisoId\": " + permiso.getId() + "}"))
+                .andExpect(status().isCreated());
+        assertPermiso(null, true);
+        assertPermiso(datos.empresa(), true);
+
+        mockMvc.perform(delete("/api/roles/{id}/permisos/{permisoId}", rol.getId(), permiso.getId())
+                        .header(HttpHeaders.AUTHORIZATION, superAdmin))
+                .andExpect(status().isNoContent());
+        assertPermiso(null, false);
+        assertPermiso(datos.empresa(), false);
+    }
+
+    @Test
+    void usuarioControllerInvalidaAlAsignarYQuitarRolesGlobales() throws Exception {
+        Rol rol = rolConPermiso(null);
+        assertPermiso(null, false);
+
+        asignarRolGlobal(rol);
+        assertPermiso(null, true);
+
+        mockMvc.perform(delete("/api/usuarios/{id}/roles/{rolId}", usuario.getId(), rol.getId())
+                        .header(HttpHeaders.AUTHORIZATION, superAdmin))
+                .andExpect(status().isNoContent());
+        assertPermiso(null, false);
+    }
+
+    @Test
+    void empresaControllerInvalidaAlCambiarYQuitarElRolDeEmpresa() throws Exception {
+        Rol rol = rolConPermiso(datos.empresa());
+        assertPermiso(datos.empresa(), false);
+
+        // El usuario ya está en la empresa: se le cambia el rol
+        mockMvc.perform(conJson(post("/api/empresas/{id}/usuarios", datos.empresa().getId()),
+                        "{\"usuarioId\": " + usuario.getId() + ", \"rolId\": " + rol.getId() + "}"))
+                .andExpect(status().isOk());
+        assertPermiso(datos.empresa(), true);
+        assertPermiso(null, true);
+
+        mockMvc.perform(delete("/api/empresas/{id}/usuarios/{usuarioId}", datos.empresa().getId(), usuario.getId())
+                        .header(HttpHeaders.AUTHORIZATION, superAdmin))
+                .andExpect(status().isNoContent());
+        assertPermiso(datos.empresa(), false);
+        assertPermiso(null, false);
+    }
+
+    // La primera verificación puede compilar el alcance; la segunda tiene que salir del bitset
+    private void assertPermiso(Empresa empresa, boolean esperado) throws Exception {
+        assertThat(tiene(empresa)).as("permiso en %s", empresa != null ? "la empresa" : "global").isEqualTo(esperado);
+        Boolean enCache = assertMaxQueries(0, () -> tiene(empresa));
+        assertThat(enCache).isEqualTo(esperado);
+    }
+
+    private boolean tiene(Empresa empresa) {
+        return empresa != null
+                ? permissionService.hasPermissionForEmpresa(usuario, empresa, permiso.getArea(), permiso.getCodigo())
+                : permissionService.hasPermission(usuario, permiso.getArea(), permiso.getCodigo());
+    }
+
+    private Rol rol(Empresa empresa) {
+        Rol rol = new Rol();
+        rol.setNombre("CACHE_" + System.nanoTime());
+        rol.setDescripcion("Rol de test de cache");
+        rol.setEmpresa(empresa);
+        return rolRepository.save(rol);
+    }
+
+    private Rol rolConPermiso(Empresa empresa) throws Exception {
+        Rol rol = rol(empresa);
+        mockMvc.perform(conJson(post("/api/roles/{id}/permisos", rol.getId()), "{\"permisoId\": " + permiso.getId() + "}"))
+                .andExpect(status().isCreated());
+        return rol;
+    }
+
+    private void asignarRolGlobal(Rol rol) throws Exception {
+        mockMvc.perform(conJson(post("/api/usuarios/{id}/roles", usuario.getId()), "{\"rolId\": " + rol.getId() + "}"))
+                .andExpect(status().isCreated());
+    }
+
+    private MockHttpServletRequestBuilder conJson(MockHttpServletRequestBuilder request, String cuerpo) {
+        return request.header(HttpHeaders.AUTHORIZATION, superAdmin)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(cuerpo);
+    }
+}
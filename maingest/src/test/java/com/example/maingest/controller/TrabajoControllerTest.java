@@ -0,0 +1,186 @@
+package com.example.maingest.controller;
+
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import com.example.maingest.support.TrabajoDePrueba;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * /api/jobs de punta a punta con el trabajo {@link TrabajoDePrueba}: 202 con Location, avance,
+ * cancelación, cola llena, acceso solo del dueño o un superadmin y descarga del resultado. Los
+ * tests corren con un worker y dos lugares de cola (ver {@link PruebaIntegracion}).
+ */
+class TrabajoControllerTest extends PruebaIntegracion {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Autowired
+    private TrabajoDePrueba trabajoDePrueba;
+
+    @AfterEach
+    void abrirCompuerta() {
+        trabajoDePrueba.abrir();
+    }
+
+    @Test
+    void creaCon202YDescargaElResultado() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        MvcResult creado = mockMvc.perform(post("/api/jobs")
+                        .header(HttpHeaders.AUTHORIZATION, datos.bearer())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"tipo\":\"prueba\",\"parametros\":{\"lineas\":3}}"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.tipo").value(TrabajoDePrueba.TIPO))
+                .andExpect(jsonPath("$.parametros.lineas").value(3))
+                .andReturn();
+        long id = id(creado);
+        assertThat(creado.getResponse().getHeader(HttpHeaders.LOCATION)).isEqualTo("/api/jobs/" + id);
+
+        esperarEstado(id, datos.bearer(), "COMPLETADO");
+        mockMvc.perform(get("/api/jobs/{id}", id).header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.progreso").value(100))
+                .andExpect(jsonPath("$.resultado.lineas").value(3))
+                .andExpect(jsonPath("$.archivoNombre").value("prueba.txt"))
+                .andExpect(jsonPath("$.descargaUrl").value("/api/jobs/" + id + "/resultado"));
+        mockMvc.perform(get("/api/jobs/{id}/resultado", id).header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, containsString("prueba.txt")))
+                .andExpect(content().string("linea 1\nlinea 2\nlinea 3\n"));
+    }
+
+    @Test
+    void tipoDesconocidoOParametrosInvalidosDan400() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        mockMvc.perform(post("/api/jobs").header(HttpHeaders.AUTHORIZATION, datos.bearer())
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"tipo\":\"no-existe\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/jobs").header(HttpHeaders.AUTHORIZATION, datos.bearer())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"tipo\":\"prueba\",\"parametros\":{\"lineas\":-1}}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void publicaElAvanceYSeCancela() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        trabajoDePrueba.cerrar();
+        long id = crear(datos.bearer());
+
+        esperarEstado(id, datos.bearer(), "EN_CURSO");
+        mockMvc.perform(get("/api/jobs/{id}", id).header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(jsonPath("$.progreso").value(50))
+                .andExpect(jsonPath("$.mensaje").value("esperando compuerta"))
+                .andExpect(jsonPath("$.iniciadoEn").isNotEmpty());
+        mockMvc.perform(get("/api/jobs/{id}/resultado", id).header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isConflict());
+
+        mockMvc.perform(post("/api/jobs/{id}/cancelar", id).header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isAccepted());
+        esperarEstado(id, datos.bearer(), "CANCELADO");
+        mockMvc.perform(post("/api/jobs/{id}/cancelar", id).header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isConflict());
+        mockMvc.perform(get("/api/jobs/{id}/resultado", id).header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void colaLlenaDevuelve503() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        trabajoDePrueba.cerrar();
+        List<Long> aceptados = new ArrayList<>();
+        aceptados.add(crear(datos.bearer()));
+        // El primero ocupa el único worker; los dos siguientes llenan la cola
+        esperarEstado(aceptados.get(0), datos.bearer(), "EN_CURSO");
+        aceptados.add(crear(datos.bearer()));
+        aceptados.add(crear(datos.bearer()));
+
+        mockMvc.perform(post("/api/jobs").header(HttpHeaders.AUTHORIZATION, datos.bearer())
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"tipo\":\"prueba\"}"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "30"))
+                .andExpect(jsonPath("$.error").value(containsString("Cola de trabajos llena")));
+
+        trabajoDePrueba.abrir();
+        for (Long id : aceptados) {
+            esperarEstado(id, datos.bearer(), "COMPLETADO");
+        }
+    }
+
+    @Test
+    void soloElDuenoOUnSuperadminVenElTrabajo() throws Exception {
+        Escenario.Datos duenio = escenario.crear(1, 1, 1);
+        Escenario.Datos otro = escenario.crear(1, 1, 1);
+        long id = crear(duenio.bearer());
+        esperarEstado(id, duenio.bearer(), "COMPLETADO");
+
+        mockMvc.perform(get("/api/jobs/{id}", id).header(HttpHeaders.AUTHORIZATION, otro.bearer()))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/jobs/{id}/resultado", id).header(HttpHeaders.AUTHORIZATION, otro.bearer()))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/jobs/{id}/cancelar", id).header(HttpHeaders.AUTHORIZATION, otro.bearer()))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/jobs").header(HttpHeaders.AUTHORIZATION, otro.bearer()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[?(@.id == %d)]", id).isEmpty());
+
+        mockMvc.perform(get("/api/jobs/{id}", id).header(HttpHeaders.AUTHORIZATION, escenario.bearerSuperAdmin()))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/jobs/{id}/resultado", id).header(HttpHeaders.AUTHORIZATION, escenario.bearerSuperAdmin()))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/jobs").header(HttpHeaders.AUTHORIZATION, escenario.bearerSuperAdmin()))
+                .andExpect(jsonPath("$[?(@.id == %d)]", id).isNotEmpty());
+        mockMvc.perform(get("/api/jobs/{id}", Long.MAX_VALUE).header(HttpHeaders.AUTHORIZATION, duenio.bearer()))
+                .andExpect(status().isNotFound());
+    }
+
+    private long crear(String bearer) throws Exception {
+        return id(mockMvc.perform(post("/api/jobs").header(HttpHeaders.AUTHORIZATION, bearer)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"tipo\":\"prueba\"}"))
+                .andExpect(status().isAccepted())
+                .andReturn());
+    }
+
+    private static long id(MvcResult resultado) throws Exception {
+        return ((Number) JsonPath.read(resultado.getResponse().getContentAsString(), "$.id")).longValue();
+    }
+
+    private void esperarEstado(long id, String bearer, String estado) throws Exception {
+        long limite = System.nanoTime() + 10_000_000_000L;
+        String actual;
+        do {
+            String cuerpo = mockMvc.perform(get("/api/jobs/{id}", id).header(HttpHeaders.AUTHORIZATION, bearer))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            actual = JsonPath.read(cuerpo, "$.estado");
+            if (estado.equals(actual)) {
+                return;
+            }
+            Thread.sleep(20);
+        } while (System.nanoTime() < limite);
+        throw new AssertionError("El trabajo " + id + " sigue " + actual + ", se esperaba " + estado);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.maingest.security;
+
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.repository.UsuarioRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UsuarioSnapshotCacheTest {
+
+    @Test
+    void noGuardaUnaFilaLeidaAntesDeUnaInvalidacion() {
+        UsuarioRepository repository = mock(UsuarioRepository.class);
+        UsuarioSnapshotCache cache = new UsuarioSnapshotCache(repository, 60_000, 100);
+        AtomicReference<String> estadoEnBase = new AtomicReference<>("ACTIVO");
+        when(repository.findById(7L)).thenAnswer(invocacion -> {
+            Usuario leido = usuario(estadoEnBase.get());
+            if ("ACTIVO".equals(leido.getEstado())) {
+                // Mientras esta lectura está en vuelo otro request bloquea al usuario e invalida
+                estadoEnBase.set("BLOQUEADO");
+                cache.invalidar(7L);
+            }
+            return Optional.of(leido);
+        });
+
+        assertEquals("ACTIVO", cache.obtener(7L).orElseThrow().getEstado());
+        assertEquals("BLOQUEADO", cache.obtener(7L).orElseThrow().getEstado());
+        assertEquals("BLOQUEADO", cache.obtener(7L).orElseThrow().getEstado());
+        verify(repository, times(2)).findById(7L);
+    }
+
+    private static Usuario usuario(String estado) {
+        Usuario usuario = new Usuario();
+        usuario.setId(7L);
+        usuario.setCorreo("u7@maingest.test");
+        usuario.setClave("x");
+        usuario.setNombre("Usuario 7");
+        usuario.setEstado(estado);
+        return usuario;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.maingest.service;
+
+import com.example.maingest.support.PruebaIntegracion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Un archivo de respaldo grande que quedó a medio reinsertar: el writer tiene que retomar desde el
+ * offset guardado (sin duplicar las líneas ya confirmadas) y terminarlo en varias pasadas. Las
+ * líneas ilegibles o que la base rechaza van al .rechazado sin frenar las demás.
+ */
+class AuditoriaWriterReinsercionTest extends PruebaIntegracion {
+
+    private static final int LINEAS = 12_000;
+    private static final int YA_CONFIRMADAS = 1_000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void retomaDesdeElOffsetEnLotes() throws Exception {
+        String marca = "reinsercion-" + System.nanoTime();
+        Path archivo = directorio.resolve("auditoria.ndjson");
+        Path pendiente = directorio.resolve("auditoria.ndjson.reinsertando");
+        Path offset = directorio.resolve("auditoria.ndjson.reinsertando.offset");
+        try (BufferedWriter writer = Files.newBufferedWriter(pendiente, StandardCharsets.UTF_8)) {
+            for (int i = 1; i <= LINEAS; i++) {
+                writer.write(objectMapper.writeValueAsString(Map.of(
+                        "accion", "ACTUALIZAR",
+                        "objetoTipo", "PRODUCTO",
+                        "objetoId", i,
+                        "descripcion", marca + "-" + i,
+                        "creadoEnMs", System.currentTimeMillis())));
+                writer.newLine();
+            }
+        }
+        Files.writeString(offset, Integer.toString(YA_CONFIRMADAS));
+
+        AuditoriaWriter writer = new AuditoriaWriter(jdbcTemplate, transactionManager, objectMapper,
+                true, 1000, 100, 20, 50, 5000, AuditoriaWriter.PoliticaDesborde.BLOQUEAR, archivo.toString());
+        writer.start();
+        try {
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (Files.exists(pendiente) && System.nanoTime() < limite) {
+                Thread.sleep(50);
+            }
+        } finally {
+            writer.stop();
+        }
+
+        assertFalse(Files.exists(pendiente), "El archivo de respaldo no se terminó de reinsertar");
+        assertFalse(Files.exists(offset));
+        Long insertados = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM auditoria_evento WHERE descripcion LIKE ?", Long.class, marca + "-%");
+        assertEquals(LINEAS - YA_CONFIRMADAS, insertados);
+        Long minimo = jdbcTemplate.queryForObject(
+                "SELECT MIN(objeto_id) FROM auditoria_evento WHERE descripcion LIKE ?", Long.class, marca + "-%");
+        assertEquals(YA_CONFIRMADAS + 1, minimo);
+        assertEquals(LINEAS - YA_CONFIRMADAS, writer.estadisticas().escritos());
+    }
+
+    @Test
+    void apartaLasLineasMalasYSigue() throws Exception {
+        String marca = "rechazo-" + System.nanoTime();
+        Path archivo = directorio.resolve("auditoria.ndjson");
+        Path pendiente = directorio.resolve("auditoria.ndjson.reinsertando");
+        Path rechazado = directorio.resolve("auditoria.ndjson.rechazado");
+        String ilegible = "{\"accion\": \"CREAR\", cortada";
+        String sinAccion = objectMapper.writeValueAsString(Map.of(
+                "objetoTipo", "PRODUCTO", "descripcion", marca + "-sin-accion", "creadoEnMs", 1L));
+        String jsonInvalido = objectMapper.writeValueAsString(Map.of(
+                "accion", "ACTUALIZAR", "descripcion", marca + "-json", "detallesJson", "{no es json", "creadoEnMs", 1L));
+        int buenas = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(pendiente, StandardCharsets.UTF_8)) {
+            for (int i = 1; i <= 250; i++) {
+                String linea;
+                if (i == 3) {
+                    linea = ilegible;
+                } else if (i == 120) {
+                    linea = sinAccion;
+                } else if (i == 201) {
+                    linea = jsonInvalido;
+                } else {
+                    Map<String, Object> evento = new HashMap<>();
+                    evento.put("accion", "ACTUALIZAR");
+                    evento.put("objetoId", i);
+                    evento.put("descripcion", marca + "-" + i);
+                    evento.put("detallesJson", "{\"linea\": " + i + "}");
+                    evento.put("creadoEnMs", System.currentTimeMillis());
+                    linea = objectMapper.writeValueAsString(evento);
+                    buenas++;
+                }
+                writer.write(linea);
+                writer.newLine();
+            }
+        }
+
+        AuditoriaWriter writer = new AuditoriaWriter(jdbcTemplate, transactionManager, objectMapper,
+                true, 1000, 100, 20, 50, 5000, AuditoriaWriter.PoliticaDesborde.BLOQUEAR, archivo.toString());
+        writer.start();
+        try {
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (Files.exists(pendiente) && System.nanoTime() < limite) {
+                Thread.sleep(50);
+            }
+        } finally {
+            writer.stop();
+        }
+
+        assertFalse(Files.exists(pendiente), "Las líneas malas frenaron la reinserción");
+        assertTrue(Files.exists(rechazado));
+        assertEquals(List.of(ilegible, sinAccion, jsonInvalido), Files.readAllLines(rechazado, StandardCharsets.UTF_8));
+        assertEquals(3, writer.estadisticas().rechazados());
+        Long insertados = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM auditoria_evento WHERE descripcion LIKE ?", Long.class, marca + "-%");
+        assertEquals(buenas, insertados);
+        assertEquals(buenas, writer.estadisticas().escritos());
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.maingest.service;
+
+import com.example.maingest.repository.EmpresaRepository;
+import com.example.maingest.repository.EmpresaUsuarioRepository;
+import com.example.maingest.repository.RolRepository;
+import com.example.maingest.security.UsuarioSnapshotCache;
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Borrar un almacén mientras entra stock sin parar en una de sus repisas. Gane quien gane, el
+ * almacén queda entero (con su kardex) o desaparece del todo: nunca sobrevive con los items ya
+ * borrados. El servicio se arma con lotes chicos y pausa entre lotes para alargar la ventana.
+ * <p>
+ * Los dos caminos bloquean en el mismo orden (repisas, items, saldos): PostgreSQL no debe detectar
+ * ningún deadlock. Se mira el contador de la base porque InventarioService reintenta los deadlocks
+ * y el test no los vería como excepción.
+ */
+class BorradoAlmacenConcurrenciaTest extends PruebaIntegracion {
+
+    private static final int RONDAS = 20;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Autowired
+    private InventarioService inventarioService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EmpresaRepository empresaRepository;
+
+    @Autowired
+    private EmpresaUsuarioRepository empresaUsuarioRepository;
+
+    @Autowired
+    private RolRepository rolRepository;
+
+    @Autowired
+    private PermissionCacheService permissionCacheService;
+
+    @Autowired
+    private UsuarioSnapshotCache usuarioSnapshotCache;
+
+    @Autowired
+    private UsoEmpresaService usoEmpresaService;
+
+    @Autowired
+    private CatalogoBusquedaService catalogoBusquedaService;
+
+    @Autowired
+    private VersionRespuestaService versionRespuestaService;
+
+    @Test
+    void elAlmacenQuedaEnteroOSeBorraEntero() throws Exception {
+        BorradoCascadaService borradoCascadaService = new BorradoCascadaService(jdbcTemplate, transactionManager,
+                empresaRepository, empresaUsuarioRepository, rolRepository, permissionCacheService,
+                usuarioSnapshotCache, usoEmpresaService, catalogoBusquedaService, versionRespuestaService, 100, 5);
+        long deadlocksAntes = deadlocks();
+        ExecutorService hilos = Executors.newFixedThreadPool(2);
+        try {
+            for (int r = 0; r < RONDAS; r++) {
+                int ronda = r;
+                Escenario.Datos datos = escenario.crear(5, 4, 50);
+                escenario.llenarRepisas(datos, 50, 5);
+                int items = datos.repisaIds().size() * 50;
+                CountDownLatch largada = new CountDownLatch(1);
+                AtomicBoolean terminado = new AtomicBoolean();
+
+                Future<?> entradas = hilos.submit(() -> {
+                    largada.await();
+                    while (!terminado.get()) {
+                        try {
+                            inventarioService.registrarEntrada(datos.productoIds().get(0), datos.repisaIds().get(0), 1,
+                                    null, "carrera", datos.propietario());
+                        } catch (RuntimeException e) {
+                            // La repisa ya no existe o chocó con el borrado: válido, se reintenta hasta que termine
+                        }
+                    }
+                    return null;
+                });
+                Future<?> borrado = hilos.submit(() -> {
+                    largada.await();
+                    Thread.sleep(ronda % 5);
+                    try {
+                        borradoCascadaService.borrarAlmacen(datos.almacen().getId());
+                    } finally {
+                        terminado.set(true);
+                    }
+                    return null;
+                });
+                largada.countDown();
+                esperar(borrado);
+                entradas.get(1, TimeUnit.MINUTES);
+
+                Long almacenes = jdbcTemplate.queryForObject(
+                        "SELECT COUNT(*) FROM almacen WHERE id = ?", Long.class, datos.almacen().getId());
+                Long restantes = jdbcTemplate.queryForObject("""
+                        SELECT COUNT(*) FROM item i JOIN repisa r ON r.id = i.repisa_id
+                        JOIN armario a ON a.id = r.armario_id WHERE a.almacen_id = ?
+                        """, Long.class, datos.almacen().getId());
+                assertEquals(almacenes == 1 ? items : 0, restantes, "Ronda " + ronda);
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+        // Las estadísticas llegan a pg_stat_database con un retraso de hasta medio segundo
+        Thread.sleep(1000);
+        assertEquals(0, deadlocks() - deadlocksAntes, "PostgreSQL detectó deadlocks entre el borrado y los movimientos");
+    }
+
+    private long deadlocks() {
+        Long total = jdbcTemplate.queryForObject(
+                "SELECT deadlocks FROM pg_stat_database WHERE datname = current_database()", Long.class);
+        return total != null ? total : 0;
+    }
+
+    private static void esperar(Future<?> tarea) throws Exception {
+        try {
+            tarea.get(1, TimeUnit.MINUTES);
+        } catch (ExecutionException e) {
+            // Perder la carrera es válido: el borrado ve el movimiento registrado antes
+            if (!(e.getCause() instanceof RuntimeException)) {
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.Trabajo;
+import com.example.maingest.repository.TrabajoRepository;
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * La migración Item→Producto corrida como trabajo, contra la tabla real: productos por nombre
+ * normalizado, un slot por (producto, repisa), totales de producto_saldo, el conteo del checkpoint
+ * cuando otro proceso asignó un item entre la lectura y el bloqueo, y retomar desde un checkpoint a
+ * mitad de empresa o reiniciar.
+ */
+class DataMigrationRunnerTest extends PruebaIntegracion {
+
+    @Autowired
+    private TrabajoService trabajoService;
+
+    @Autowired
+    private TrabajoRepository trabajoRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Test
+    void fusionaPorSlotYSumaLosSaldos() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 2, 1);
+        // "Producto 0" ya tiene slot con 5 unidades en las dos repisas
+        escenario.llenarRepisas(datos, 1, 5);
+        // Se alternan las repisas: dos "tornillo" y un "producto 0" en cada una
+        items(datos, "Tornillo", "Tornillo", " tornillo ", "TORNILLO", "producto 0", "Producto 0 ");
+
+        migrar(false);
+
+        assertThat(pendientes(datos)).isZero();
+        assertThat(saldo(datos, "tornillo")).isEqualTo(4);
+        assertThat(saldo(datos, "producto 0")).isEqualTo(12);
+        assertThat(slots(datos, "tornillo")).containsExactly(2, 2);
+        assertThat(slots(datos, "producto 0")).containsExactly(6, 6);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM producto WHERE empresa_id = ? AND lower(nombre) = 'tornillo'",
+                Long.class, datos.empresa().getId())).isEqualTo(1);
+        Map<String, Object> checkpoint = checkpoint(datos);
+        assertThat(((Number) checkpoint.get("items_migrados")).longValue()).isEqualTo(6);
+        assertThat(((Number) checkpoint.get("productos_creados")).longValue()).isEqualTo(1);
+    }
+
+    @Test
+    void noCuentaLosItemsQueOtroProcesoAsignoAntes() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 2, 1);
+        List<Long> ids = items(datos, "Clavo", "Clavo suelto", "Clavo");
+        // Otro proceso asigna el segundo item sin confirmar: la migración lo lee como pendiente y
+        // espera su bloqueo; cuando confirma, el FOR UPDATE ya no lo ve sin producto
+        Trabajo trabajo;
+        try (Connection otro = dataSource.getConnection()) {
+            otro.setAutoCommit(false);
+            try (PreparedStatement ps = otro.prepareStatement("UPDATE item SET producto_id = ? WHERE id = ?")) {
+                ps.setLong(1, datos.productoIds().get(0));
+                ps.setLong(2, ids.get(1));
+                ps.executeUpdate();
+            }
+            trabajo = encolar(false);
+            esperarBloqueo();
+            otro.commit();
+        }
+        esperarFin(trabajo);
+
+        assertThat(saldo(datos, "clavo")).isEqualTo(2);
+        assertThat(slots(datos, "clavo")).containsExactly(2);
+        assertThat(saldo(datos, "clavo suelto")).isNull();
+        assertThat(jdbcTemplate.queryForObject("SELECT producto_id FROM item WHERE id = ?", Long.class, ids.get(1)))
+                .isEqualTo(datos.productoIds().get(0));
+        Map<String, Object> checkpoint = checkpoint(datos);
+        assertThat(((Number) checkpoint.get("items_migrados")).longValue()).isEqualTo(2);
+        assertThat(((Number) checkpoint.get("productos_creados")).longValue()).isEqualTo(1);
+    }
+
+    @Test
+    void retomaDesdeElCheckpointYReiniciarVuelveAEmpezar() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        List<Long> ids = items(datos, "Arandela", "Arandela", "Arandela", "Arandela", "Arandela");
+        // Una corrida anterior cayó después de confirmar el lote que terminó en el tercer item
+        jdbcTemplate.update("""
+                INSERT INTO migracion_checkpoint (clave, ultimo_id, completada, items_migrados, productos_creados, actualizado_en)
+                VALUES (?, ?, false, 3, 0, now())
+                """, clave(datos), ids.get(2));
+
+        migrar(false);
+
+        // Solo los dos posteriores al checkpoint, fusionados en el slot del cuarto
+        assertThat(pendientes(datos)).isEqualTo(3);
+        assertThat(slots(datos, "arandela")).containsExactly(2);
+        assertThat(existentes(ids)).containsExactly(true, true, true, true, false);
+        assertThat(saldo(datos, "arandela")).isEqualTo(2);
+        Map<String, Object> checkpoint = checkpoint(datos);
+        assertThat(((Number) checkpoint.get("ultimo_id")).longValue()).isEqualTo(ids.get(4));
+        assertThat(((Number) checkpoint.get("items_migrados")).longValue()).isEqualTo(5);
+
+        migrar(true);
+
+        assertThat(pendientes(datos)).isZero();
+        assertThat(slots(datos, "arandela")).containsExactly(5);
+        assertThat(existentes(ids)).containsExactly(false, false, false, true, false);
+        assertThat(saldo(datos, "arandela")).isEqualTo(5);
+        assertThat(((Number) checkpoint(datos).get("items_migrados")).longValue()).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT completada FROM migracion_checkpoint WHERE clave = 'items-productos'", Boolean.class)).isTrue();
+    }
+
+    private List<Long> items(Escenario.Datos datos, String... nombres) {
+        List<Long> ids = new ArrayList<>(nombres.length);
+        for (String nombre : nombres) {
+            ids.add(jdbcTemplate.queryForObject("""
+                    INSERT INTO item (id, nombre, estado, tamanio, precio, cantidad, repisa_id)
+                    VALUES (nextval('item_id_seq'), ?, 'ACTIVO', 1, 10.00, 1, ?)
+                    RETURNING id
+                    """, Long.class, nombre, datos.repisaIds().get(ids.size() % datos.repisaIds().size())));
+        }
+        return ids;
+    }
+
+    private void migrar(boolean reiniciar) throws InterruptedException {
+        esperarFin(encolar(reiniciar));
+    }
+
+    private Trabajo encolar(boolean reiniciar) {
+        ObjectNode parametros = objectMapper.createObjectNode();
+        if (reiniciar) {
+            parametros.put("reiniciar", true);
+        }
+        return trabajoService.encolarSistema(DataMigrationRunner.TIPO, parametros);
+    }
+
+    private void esperarFin(Trabajo trabajo) throws InterruptedException {
+        long limite = System.nanoTime() + 30_000_000_000L;
+        while (System.nanoTime() < limite) {
+            Trabajo actual = trabajoRepository.findById(trabajo.getId()).orElseThrow();
+            if (TrabajoService.COMPLETADO.equals(actual.getEstado())) {
+                return;
+            }
+            if (TrabajoService.FALLIDO.equals(actual.getEstado())) {
+                throw new AssertionError("La migración falló: " + actual.getError());
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("La migración no terminó en 30 s");
+    }
+
+    private void esperarBloqueo() throws InterruptedException {
+        long limite = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < limite) {
+            Long esperando = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock' AND query LIKE '%FOR UPDATE%'",
+                    Long.class);
+            if (esperando != null && esperando > 0) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("La migración no llegó a esperar el bloqueo del item");
+    }
+
+    private long pendientes(Escenario.Datos datos) {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM item WHERE producto_id IS NULL AND repisa_id = ANY(?::bigint[])",
+                Long.class, (Object) datos.repisaIds().toArray(Long[]::new));
+    }
+
+    private List<Boolean> existentes(List<Long> ids) {
+        return ids.stream()
+                .map(id -> jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM item WHERE id = ?)",
+                        Boolean.class, id))
+                .toList();
+    }
+
+    private List<Integer> slots(Escenario.Datos datos, String nombre) {
+        return jdbcTemplate.queryForList("""
+                SELECT i.cantidad FROM item i JOIN producto p ON p.id = i.producto_id
+                WHERE p.empresa_id = ? AND lower(btrim(p.nombre)) = ? ORDER BY i.repisa_id
+                """, Integer.class, datos.empresa().getId(), nombre);
+    }
+
+    private Long saldo(Escenario.Datos datos, String nombre) {
+        List<Long> totales = jdbcTemplate.queryForList("""
+                SELECT ps.total FROM producto_saldo ps JOIN producto p ON p.id = ps.producto_id
+                WHERE p.empresa_id = ? AND lower(btrim(p.nombre)) = ?
+                """, Long.class, datos.empresa().getId(), nombre);
+        return totales.isEmpty() ? null : totales.get(0);
+    }
+
+    private Map<String, Object> checkpoint(Escenario.Datos datos) {
+        return jdbcTemplate.queryForMap("SELECT * FROM migracion_checkpoint WHERE clave = ?", clave(datos));
+    }
+
+    private static String clave(Escenario.Datos datos) {
+        return "items-productos:empresa:" + datos.empresa().getId();
+    }
+}
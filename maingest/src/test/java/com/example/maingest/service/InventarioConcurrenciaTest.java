@@ -0,0 +1,211 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.TipoMovimiento;
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Miles de entradas, salidas, traslados y lotes en paralelo sobre pocos slots, empezando vacíos
+ * para que varios hilos intenten crear el mismo item a la vez. Al final el stock de cada slot
+ * tiene que ser exactamente la suma de su kardex, no puede haber dos items por (producto, repisa)
+ * y el contador de producto_saldo tiene que coincidir con sus items y con el saldo_empresa del
+ * último movimiento confirmado.
+ */
+class InventarioConcurrenciaTest extends PruebaIntegracion {
+
+    private static final int HILOS = 32;
+    private static final int OPERACIONES = 4000;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Autowired
+    private InventarioService inventarioService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void kardexCuadraConElStockBajoConcurrencia() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 4, 5);
+        List<Long> productos = datos.productoIds();
+        List<Long> repisas = datos.repisaIds();
+
+        AtomicInteger aplicadas = new AtomicInteger();
+        AtomicInteger registrados = new AtomicInteger();
+        AtomicInteger sinStock = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> errores = new ConcurrentLinkedQueue<>();
+        CountDownLatch largada = new CountDownLatch(1);
+        ExecutorService hilos = Executors.newFixedThreadPool(HILOS);
+        try {
+            List<Future<?>> tareas = new ArrayList<>(HILOS);
+            for (int h = 0; h < HILOS; h++) {
+                SplittableRandom random = new SplittableRandom(h);
+                tareas.add(hilos.submit(() -> {
+                    largada.await();
+                    for (int i = 0; i < OPERACIONES / HILOS; i++) {
+                        Long producto = productos.get(random.nextInt(productos.size()));
+                        int origen = random.nextInt(repisas.size());
+                        int destino = (origen + 1 + random.nextInt(repisas.size() - 1)) % repisas.size();
+                        int operacion = random.nextInt(10);
+                        try {
+                            int movimientos = 1;
+                            if (operacion < 4) {
+                                inventarioService.registrarEntrada(producto, repisas.get(origen), 1 + random.nextInt(5),
+                                        null, "stress", datos.propietario());
+                            } else if (operacion < 7) {
+                                inventarioService.registrarSalida(producto, repisas.get(origen), 1 + random.nextInt(3),
+                                        "stress", datos.propietario());
+                            } else if (operacion < 9) {
+                                inventarioService.registrarTraslado(producto, repisas.get(origen), repisas.get(destino),
+                                        1 + random.nextInt(3), "stress", datos.propietario());
+                            } else {
+                                Long otro = productos.get(random.nextInt(productos.size()));
+                                movimientos = (int) inventarioService.registrarLote(List.of(
+                                                new InventarioService.LineaLote(TipoMovimiento.ENTRADA, producto, null,
+                                                        repisas.get(destino), 1 + random.nextInt(5), null, "stress"),
+                                                new InventarioService.LineaLote(TipoMovimiento.SALIDA, otro,
+                                                        repisas.get(origen), null, 1 + random.nextInt(3), null, "stress")),
+                                        InventarioService.ModoLote.MEJOR_ESFUERZO, datos.propietario(), null)
+                                        .lineas().stream().filter(linea -> linea.movimiento() != null).count();
+                            }
+                            aplicadas.incrementAndGet();
+                            registrados.addAndGet(movimientos);
+                        } catch (IllegalArgumentException e) {
+                            // Stock insuficiente o slot aún vacío: rechazo esperado, no deja movimiento
+                            sinStock.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            errores.add(e);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            largada.countDown();
+            for (Future<?> tarea : tareas) {
+                tarea.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+
+        assertTrue(errores.isEmpty(), () -> errores.size() + " operaciones fallaron; la primera: " + errores.peek());
+        assertEquals(OPERACIONES, aplicadas.get() + sinStock.get());
+        assertTrue(aplicadas.get() > OPERACIONES / 2, "Se aplicaron muy pocas operaciones: " + aplicadas.get());
+
+        Map<String, Long> stock = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT i.producto_id, i.repisa_id, i.cantidad FROM item i JOIN repisa r ON r.id = i.repisa_id
+                JOIN armario a ON a.id = r.armario_id WHERE a.almacen_id = ?
+                """, rs -> {
+            String slot = rs.getLong(1) + "/" + rs.getLong(2);
+            assertTrue(stock.put(slot, rs.getLong(3)) == null, "Item duplicado para el slot " + slot);
+        }, datos.almacen().getId());
+
+        Map<String, Long> kardex = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT producto_id, repisa_id, SUM(delta) FROM (
+                    SELECT producto_id, repisa_destino_id AS repisa_id, cantidad_movida AS delta
+                    FROM movimiento_inventario WHERE empresa_id = ? AND tipo IN ('ENTRADA', 'TRASLADO')
+                    UNION ALL
+                    SELECT producto_id, repisa_origen_id, -cantidad_movida
+                    FROM movimiento_inventario WHERE empresa_id = ? AND tipo IN ('SALIDA', 'TRASLADO')
+                ) m GROUP BY producto_id, repisa_id
+                """, rs -> {
+            kardex.put(rs.getLong(1) + "/" + rs.getLong(2), rs.getLong(3));
+        }, datos.empresa().getId(), datos.empresa().getId());
+
+        assertEquals(kardex, stock);
+        Long movimientos = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM movimiento_inventario WHERE empresa_id = ?", Long.class, datos.empresa().getId());
+        assertEquals(registrados.get(), movimientos);
+
+        Map<Long, Long> porProducto = new HashMap<>();
+        jdbcTemplate.query("SELECT producto_id, SUM(cantidad) FROM item WHERE producto_id IN (SELECT id FROM producto WHERE empresa_id = ?) "
+                + "GROUP BY producto_id", rs -> {
+            porProducto.put(rs.getLong(1), rs.getLong(2));
+        }, datos.empresa().getId());
+        Map<Long, Long> contadores = new HashMap<>();
+        jdbcTemplate.query("SELECT producto_id, total FROM producto_saldo WHERE producto_id IN (SELECT id FROM producto WHERE empresa_id = ?)",
+                rs -> {
+                    contadores.put(rs.getLong(1), rs.getLong(2));
+                }, datos.empresa().getId());
+        assertEquals(porProducto, contadores);
+        // Los ids no siguen el orden de commit; el último en confirmar dejó el total final en su saldo_empresa
+        for (Map.Entry<Long, Long> total : porProducto.entrySet()) {
+            Boolean visto = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM movimiento_inventario WHERE producto_id = ? AND saldo_empresa = ?)",
+                    Boolean.class, total.getKey(), total.getValue());
+            assertTrue(Boolean.TRUE.equals(visto), "Ningún movimiento del producto " + total.getKey()
+                    + " terminó con saldo_empresa " + total.getValue());
+        }
+    }
+
+    @Test
+    void elLoteSoloBloqueaLosSlotsQueToca() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 2, 2);
+        escenario.llenarRepisas(datos, 2, 10);
+        Long p0 = datos.productoIds().get(0);
+        Long p1 = datos.productoIds().get(1);
+        Long r0 = datos.repisaIds().get(0);
+        Long r1 = datos.repisaIds().get(1);
+
+        ExecutorService otraConexion = Executors.newSingleThreadExecutor();
+        try {
+            // Dentro de una transacción externa el lote participa en ella: sus locks siguen tomados
+            new TransactionTemplate(transactionManager).executeWithoutResult(estado -> {
+                inventarioService.registrarLote(List.of(
+                                new InventarioService.LineaLote(TipoMovimiento.ENTRADA, p0, null, r0, 1, null, "lock"),
+                                new InventarioService.LineaLote(TipoMovimiento.ENTRADA, p1, null, r1, 1, null, "lock")),
+                        InventarioService.ModoLote.TODO_O_NADA, datos.propietario(), null);
+                try {
+                    assertTrue(libre(otraConexion, p0, r1), "El lote bloqueó el slot cruzado (p0, r1)");
+                    assertTrue(libre(otraConexion, p1, r0), "El lote bloqueó el slot cruzado (p1, r0)");
+                    assertFalse(libre(otraConexion, p0, r0), "El lote no bloqueó su slot (p0, r0)");
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } finally {
+            otraConexion.shutdownNow();
+        }
+    }
+
+    private boolean libre(ExecutorService otraConexion, Long productoId, Long repisaId) throws Exception {
+        return otraConexion.submit(() -> {
+            try {
+                jdbcTemplate.queryForList("SELECT id FROM item WHERE producto_id = ? AND repisa_id = ? FOR UPDATE NOWAIT",
+                        Long.class, productoId, repisaId);
+                return true;
+            } catch (DataAccessException e) {
+                return false;
+            }
+        }).get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.MovimientoInventario;
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Los saldos guardados contra una réplica en memoria de las operaciones: saldo_empresa de cada
+ * movimiento, producto_saldo al final y el stock a una fecha, leído desde las fotos diarias de
+ * SALDO_DIARIO más el día en curso. Las operaciones se reparten en tres días hacia atrás y hoy
+ * moviendo sus fechas; la compactación arma las fotos de esos días.
+ */
+class SaldoKardexTest extends PruebaIntegracion {
+
+    private record Slot(Long productoId, Long repisaId) {
+    }
+
+    private static final Comparator<Slot> ORDEN =
+            Comparator.comparing(Slot::productoId).thenComparing(Slot::repisaId);
+
+    // Estado esperado después de cada movimiento, en el orden del kardex
+    private record Paso(long movimientoId, Map<Slot, Integer> slots) {
+    }
+
+    @Autowired
+    private InventarioService inventarioService;
+
+    @Autowired
+    private SaldoKardexService saldoKardexService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Test
+    void saldosYFotosCoincidenConElKardex() {
+        Escenario.Datos datos = escenario.crear(1, 3, 3);
+        SplittableRandom random = new SplittableRandom(20240601L);
+        Map<Slot, Integer> slots = new HashMap<>();
+        List<Paso> pasos = new ArrayList<>();
+        LocalDate hoy = LocalDate.now(ZoneOffset.UTC);
+        List<Instant> cortes = new ArrayList<>();
+
+        for (int dias = 3; dias >= 0; dias--) {
+            int desde = pasos.size();
+            for (int i = 0; i < 40; i++) {
+                operar(datos, random, slots, pasos);
+            }
+            if (dias > 0) {
+                List<Long> ids = pasos.subList(desde, pasos.size()).stream().map(Paso::movimientoId).toList();
+                jdbcTemplate.update("UPDATE movimiento_inventario SET fecha = fecha - ? * interval '1 day' WHERE id = ANY(?::bigint[])",
+                        dias, ids.toArray(Long[]::new));
+            }
+            cortes.add(fecha(pasos.get(pasos.size() - 1).movimientoId()));
+            cortes.add(fecha(pasos.get(desde + 20).movimientoId()));
+        }
+
+        // saldo_empresa de cada movimiento: el total del producto después de aplicarlo
+        for (Paso paso : pasos) {
+            Map<String, Object> mov = jdbcTemplate.queryForMap(
+                    "SELECT producto_id, saldo_empresa FROM movimiento_inventario WHERE id = ?", paso.movimientoId());
+            long productoId = ((Number) mov.get("producto_id")).longValue();
+            assertThat(((Number) mov.get("saldo_empresa")).longValue()).as("movimiento %d", paso.movimientoId())
+                    .isEqualTo(total(paso.slots(), productoId));
+        }
+        for (Long productoId : datos.productoIds()) {
+            Long contador = jdbcTemplate.queryForObject(
+                    "SELECT total FROM producto_saldo WHERE producto_id = ?", Long.class, productoId);
+            assertThat(contador).isEqualTo(total(slots, productoId));
+        }
+
+        // Fotos de los tres días anteriores: la compactación es global, así que se arma desde cero
+        jdbcTemplate.update("DELETE FROM saldo_diario");
+        jdbcTemplate.update("INSERT INTO saldo_diario (fecha, empresa_id, producto_id, repisa_id, cantidad) VALUES (?, ?, ?, ?, 0)",
+                Date.valueOf(hoy.minusDays(4)), datos.empresa().getId(), datos.productoIds().get(0), datos.repisaIds().get(0));
+        saldoKardexService.compactar();
+        assertThat(jdbcTemplate.queryForObject("SELECT max(fecha) FROM saldo_diario", LocalDate.class))
+                .isEqualTo(hoy.minusDays(1));
+
+        cortes.add(Instant.now());
+        cortes.add(hoy.minusDays(2).atStartOfDay(ZoneOffset.UTC).toInstant());
+        for (Instant corte : cortes) {
+            SaldoKardexService.SaldoFecha saldo = saldoKardexService.saldoA(datos.empresa().getId(), corte, null);
+            Map<Slot, Integer> esperado = new TreeMap<>(ORDEN);
+            esperado.putAll(estadoA(pasos, corte));
+            esperado.values().removeIf(c -> c == 0);
+            Map<Slot, Integer> obtenido = new TreeMap<>(ORDEN);
+            saldo.slots().forEach(s -> obtenido.put(new Slot(s.productoId(), s.repisaId()), s.cantidad()));
+            assertThat(obtenido).as("stock al %s", corte).isEqualTo(esperado);
+            if (corte.isAfter(hoy.minusDays(2).atStartOfDay(ZoneOffset.UTC).toInstant())) {
+                assertThat(saldo.snapshot()).as("foto usada al %s", corte).isNotNull();
+            }
+        }
+    }
+
+    @Test
+    void eliminarProductoBorraSuSaldoYSusFotos() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 2);
+        Long productoId = datos.productoIds().get(0);
+        // Un producto sin items ni movimientos puede quedar con contador y fotos en cero
+        jdbcTemplate.update("INSERT INTO producto_saldo (producto_id, total) VALUES (?, 0)", productoId);
+        jdbcTemplate.update("INSERT INTO saldo_diario (fecha, empresa_id, producto_id, repisa_id, cantidad) VALUES (?, ?, ?, ?, 0)",
+                Date.valueOf(LocalDate.now().minusDays(10)), datos.empresa().getId(), productoId, datos.repisaIds().get(0));
+
+        mockMvc.perform(delete("/api/productos/{id}", productoId).header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isNoContent());
+
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM producto_saldo WHERE producto_id = ?", Long.class, productoId)).isZero();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM saldo_diario WHERE producto_id = ?", Long.class, productoId)).isZero();
+    }
+
+    // Entrada, salida, traslado o ajuste al azar; las salidas y traslados nunca piden más de lo que hay
+    private void operar(Escenario.Datos datos, SplittableRandom random, Map<Slot, Integer> slots, List<Paso> pasos) {
+        Long producto = datos.productoIds().get(random.nextInt(datos.productoIds().size()));
+        Long origen = datos.repisaIds().get(random.nextInt(datos.repisaIds().size()));
+        Long destino = datos.repisaIds().get(random.nextInt(datos.repisaIds().size()));
+        Slot slotOrigen = new Slot(producto, origen);
+        Slot slotDestino = new Slot(producto, destino);
+        int disponible = slots.getOrDefault(slotOrigen, 0);
+        int tipo = random.nextInt(4);
+        MovimientoInventario mov;
+        if (tipo == 1 && disponible > 0) {
+            int cantidad = 1 + random.nextInt(disponible);
+            mov = inventarioService.registrarSalida(producto, origen, cantidad, "replay", datos.propietario());
+            slots.put(slotOrigen, disponible - cantidad);
+        } else if (tipo == 2 && disponible > 0 && !origen.equals(destino)) {
+            int cantidad = 1 + random.nextInt(disponible);
+            mov = inventarioService.registrarTraslado(producto, origen, destino, cantidad, "replay", datos.propietario());
+            slots.put(slotOrigen, disponible - cantidad);
+            slots.merge(slotDestino, cantidad, Integer::sum);
+        } else if (tipo == 3) {
+            int nueva = random.nextInt(20);
+            mov = inventarioService.registrarAjuste(producto, destino, nueva, "replay", datos.propietario());
+            slots.put(slotDestino, nueva);
+        } else {
+            int cantidad = 1 + random.nextInt(10);
+            mov = inventarioService.registrarEntrada(producto, destino, cantidad, null, "replay", datos.propietario());
+            slots.merge(slotDestino, cantidad, Integer::sum);
+        }
+        pasos.add(new Paso(mov.getId(), new HashMap<>(slots)));
+    }
+
+    private Instant fecha(long movimientoId) {
+        // Se compara al microsegundo, la precisión con la que PostgreSQL guarda la fecha
+        return jdbcTemplate.queryForObject("SELECT fecha FROM movimiento_inventario WHERE id = ?",
+                Timestamp.class, movimientoId).toInstant().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    private Map<Slot, Integer> estadoA(List<Paso> pasos, Instant corte) {
+        Map<Slot, Integer> estado = Map.of();
+        for (Paso paso : pasos) {
+            if (fecha(paso.movimientoId()).isAfter(corte)) {
+                break;
+            }
+            estado = paso.slots();
+        }
+        return estado;
+    }
+
+    private static long total(Map<Slot, Integer> slots, long productoId) {
+        return slots.entrySet().stream()
+                .filter(e -> e.getKey().productoId() == productoId)
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+    }
+}
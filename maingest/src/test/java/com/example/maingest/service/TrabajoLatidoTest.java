@@ -0,0 +1,127 @@
+package com.example.maingest.service;
+
+import com.example.maingest.domain.Trabajo;
+import com.example.maingest.repository.TrabajoRepository;
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import com.example.maingest.support.TrabajoDePrueba;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Latido de TRABAJO: el nodo dueño lo renueva mientras el trabajo vive y cualquier nodo marca
+ * FALLIDO los trabajos cuyo latido venció, aunque sean de otro nodo (p. ej. un proceso caído con
+ * id generado, que nunca va a volver a arrancar con ese id).
+ */
+class TrabajoLatidoTest extends PruebaIntegracion {
+
+    @Autowired
+    private TrabajoService trabajoService;
+
+    @Autowired
+    private TrabajoRepository trabajoRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Autowired
+    private TrabajoDePrueba trabajoDePrueba;
+
+    @AfterEach
+    void abrirCompuerta() {
+        trabajoDePrueba.abrir();
+    }
+
+    @Test
+    void marcaFallidosLosTrabajosSinLatidoDeCualquierNodo() {
+        Instant viejo = Instant.now().minus(Duration.ofMinutes(10));
+        Trabajo enCursoMuerto = guardar("nodo-caido-1", TrabajoService.EN_CURSO, viejo, viejo);
+        Trabajo pendienteMuerto = guardar("nodo-caido-2", TrabajoService.PENDIENTE, viejo, null);
+        Trabajo vivo = guardar("nodo-vivo", TrabajoService.EN_CURSO, viejo, Instant.now());
+
+        assertThat(trabajoService.recuperarVencidos()).isGreaterThanOrEqualTo(2);
+
+        Trabajo muerto = trabajoRepository.findById(enCursoMuerto.getId()).orElseThrow();
+        assertThat(muerto.getEstado()).isEqualTo(TrabajoService.FALLIDO);
+        assertThat(muerto.getError()).contains("sin latido");
+        assertThat(muerto.getFinalizadoEn()).isNotNull();
+        assertThat(trabajoRepository.findById(pendienteMuerto.getId()).orElseThrow().getEstado())
+                .isEqualTo(TrabajoService.FALLIDO);
+        assertThat(trabajoRepository.findById(vivo.getId()).orElseThrow().getEstado())
+                .isEqualTo(TrabajoService.EN_CURSO);
+    }
+
+    @Test
+    void elNodoRenuevaElLatidoDeSusTrabajos() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        trabajoDePrueba.cerrar();
+        Trabajo trabajo = trabajoService.encolar(datos.propietario(), TrabajoDePrueba.TIPO, null);
+        esperarEstado(trabajo.getId(), TrabajoService.EN_CURSO);
+        envejecerLatido(trabajo.getId());
+
+        trabajoService.latir();
+        trabajoService.recuperarVencidos();
+
+        Trabajo vivo = trabajoRepository.findById(trabajo.getId()).orElseThrow();
+        assertThat(vivo.getEstado()).isEqualTo(TrabajoService.EN_CURSO);
+        assertThat(vivo.getLatidoEn()).isAfter(Instant.now().minusSeconds(60));
+        trabajoDePrueba.abrir();
+        esperarEstado(trabajo.getId(), TrabajoService.COMPLETADO);
+    }
+
+    @Test
+    void unTrabajoDadoPorMuertoNoReviveAlTerminar() throws Exception {
+        Escenario.Datos datos = escenario.crear(1, 1, 1);
+        trabajoDePrueba.cerrar();
+        Trabajo trabajo = trabajoService.encolar(datos.propietario(), TrabajoDePrueba.TIPO, null);
+        esperarEstado(trabajo.getId(), TrabajoService.EN_CURSO);
+        envejecerLatido(trabajo.getId());
+        trabajoService.recuperarVencidos();
+
+        trabajoDePrueba.abrir();
+        long limite = System.nanoTime() + 10_000_000_000L;
+        while (trabajoService.enCurso() > 0 && System.nanoTime() < limite) {
+            Thread.sleep(20);
+        }
+        assertThat(trabajoService.enCurso()).isZero();
+        assertThat(trabajoRepository.findById(trabajo.getId()).orElseThrow().getEstado())
+                .isEqualTo(TrabajoService.FALLIDO);
+    }
+
+    private Trabajo guardar(String nodo, String estado, Instant creadoEn, Instant latidoEn) {
+        Trabajo trabajo = new Trabajo();
+        trabajo.setTipo(TrabajoDePrueba.TIPO);
+        trabajo.setNodo(nodo);
+        trabajo.setEstado(estado);
+        trabajo.setCreadoEn(creadoEn);
+        trabajo.setLatidoEn(latidoEn);
+        return trabajoRepository.save(trabajo);
+    }
+
+    private void envejecerLatido(long id) {
+        jdbcTemplate.update("UPDATE trabajo SET latido_en = ? WHERE id = ?",
+                Timestamp.from(Instant.now().minus(Duration.ofMinutes(10))), id);
+    }
+
+    private void esperarEstado(long id, String estado) throws InterruptedException {
+        long limite = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < limite) {
+            if (estado.equals(trabajoRepository.findById(id).map(Trabajo::getEstado).orElse(null))) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("El trabajo " + id + " no llegó a " + estado);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.maingest.service;
+
+import com.example.maingest.config.ConsultasSql;
+import com.example.maingest.support.Escenario;
+import com.example.maingest.support.PruebaIntegracion;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Los contadores en memoria de UsoEmpresaService contra un COUNT real después de cada alta y
+ * baja hecha por los endpoints (y el kardex para los slots nuevos), con el uso ya en cache antes
+ * de cada cambio; y /{id}/usage, que con los contadores en cache no corre la consulta con joins.
+ */
+class UsoEmpresaServiceTest extends PruebaIntegracion {
+
+    private static final List<String> RECURSOS = List.of("almacenes", "armarios", "repisas", "items", "productos", "usuarios");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private Escenario escenario;
+
+    @Autowired
+    private InventarioService inventarioService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void altasYBajasMantienenLosContadoresIgualesAlConteo() throws Exception {
+        Escenario.Datos datos = escenario.crear(2, 3, 4);
+        escenario.llenarRepisas(datos, 2, 1);
+        // Los cambios los hace el superadmin: la empresa de test no tiene suscripción para validar límites
+        String superAdmin = escenario.bearerSuperAdmin();
+        Long empresaId = datos.empresa().getId();
+        assertUsoIgualAlConteo(datos);
+
+        Long almacenId = crear(superAdmin, post("/api/almacenes"),
+                "{\"nombre\": \"Almacén nuevo\", \"empresaId\": " + empresaId + "}");
+        assertUsoIgualAlConteo(datos);
+        Long armarioId = crear(superAdmin, post("/api/almacenes/{id}/armarios", almacenId),
+                "{\"nombre\": \"Armario nuevo\", \"tamanioTotal\": 2}");
+        assertUsoIgualAlConteo(datos);
+        Long repisaId = crear(superAdmin, post("/api/almacenes/armarios/{id}/repisas", armarioId),
+                "{\"nivel\": 1, \"capacidad\": 100}");
+        assertUsoIgualAlConteo(datos);
+        Long productoId = crear(superAdmin, post("/api/productos"),
+                "{\"empresaId\": " + empresaId + ", \"nombre\": \"Producto nuevo\"}");
+        assertUsoIgualAlConteo(datos);
+
+        crear(superAdmin, post("/api/items"),
+                "{\"repisaId\": " + repisaId + ", \"nombre\": \"Item suelto\", \"estado\": \"ACTIVO\", \"tamanio\": 1}");
+        assertUsoIgualAlConteo(datos);
+
+        // Slot nuevo por el kardex, y una segunda entrada al mismo slot que no suma items. Van a una
+        // repisa del almacén original: el almacén nuevo no se puede borrar con movimientos
+        Long repisaOriginal = datos.repisaIds().get(0);
+        inventarioService.registrarEntrada(datos.productoIds().get(3), repisaOriginal, 5, null, null, datos.propietario());
+        assertUsoIgualAlConteo(datos);
+        inventarioService.registrarEntrada(datos.productoIds().get(3), repisaOriginal, 5, null, null, datos.propietario());
+        assertUsoIgualAlConteo(datos);
+
+        Long usuarioId = escenario.agregarUsuarios(datos, 1).get(0);
+        assertThat(usoEnCache(datos).get("usuarios")).as("alta directa en la base, todavía no contada")
+                .isEqualTo(conteo(datos).get("usuarios") - 1);
+        Long rolId = jdbcTemplate.queryForObject(
+                "SELECT rol_id FROM empresa_usuario WHERE empresa_id = ? AND usuario_id = ?", Long.class, empresaId, usuarioId);
+        mockMvc.perform(delete("/api/empresas/{id}/usuarios/{usuarioId}", empresaId, usuarioId)
+                        .header(HttpHeaders.AUTHORIZATION, superAdmin))
+                .andExpect(status().isNoContent());
+        assertUsoIgualAlConteo(datos);
+        mockMvc.perform(post("/api/empresas/{id}/usuarios", empresaId)
+                        .header(HttpHeaders.AUTHORIZATION, superAdmin)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"usuarioId\": " + usuarioId + ", \"rolId\": " + rolId + "}"))
+                .andExpect(status().isCreated());
+        assertUsoIgualAlConteo(datos);
+
+        mockMvc.perform(delete("/api/productos/{id}", productoId).header(HttpHeaders.AUTHORIZATION, superAdmin))
+                .andExpect(status().isNoContent());
+        assertUsoIgualAlConteo(datos);
+        mockMvc.perform(delete("/api/almacenes/{id}", almacenId).header(HttpHeaders.AUTHORIZATION, superAdmin))
+                .andExpect(status().isNoContent());
+        assertUsoIgualAlConteo(datos);
+    }
+
+    @Test
+    void usageConLosContadoresEnCacheNoHaceJoins() throws Exception {
+        Escenario.Datos datos = escenario.crear(3, 4, 10);
+        escenario.llenarRepisas(datos, 5, 1);
+        usoEnCache(datos);
+
+        try (ConsultasSql.Medicion medicion = ConsultasSql.iniciar()) {
+            mockMvc.perform(get("/api/empresas/{id}/usage", datos.empresa().getId())
+                            .header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                    .andExpect(status().isOk());
+            assertThat(medicion.textos()).isNotEmpty()
+                    .allSatisfy(sql -> assertThat(sql.toLowerCase(Locale.ROOT)).doesNotContain(" join "));
+        }
+    }
+
+    private Long crear(String bearer, MockHttpServletRequestBuilder request, String cuerpo) throws Exception {
+        MvcResult resultado = mockMvc.perform(request.header(HttpHeaders.AUTHORIZATION, bearer)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(cuerpo))
+                .andExpect(status().isCreated())
+                .andReturn();
+        return ((Number) JsonPath.read(resultado.getResponse().getContentAsString(), "$.id")).longValue();
+    }
+
+    // Lo compara dos veces: la lectura después del cambio puede sembrar de nuevo, la segunda sale de la cache
+    private void assertUsoIgualAlConteo(Escenario.Datos datos) throws Exception {
+        Map<String, Long> esperado = conteo(datos);
+        assertThat(usoEnCache(datos)).isEqualTo(esperado);
+        assertThat(usoEnCache(datos)).isEqualTo(esperado);
+    }
+
+    private Map<String, Long> usoEnCache(Escenario.Datos datos) throws Exception {
+        String json = mockMvc.perform(get("/api/empresas/{id}/usage", datos.empresa().getId())
+                        .header(HttpHeaders.AUTHORIZATION, datos.bearer()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return RECURSOS.stream().collect(Collectors.toMap(
+                r -> r, r -> ((Number) JsonPath.read(json, "$." + r)).longValue()));
+    }
+
+    private Map<String, Long> conteo(Escenario.Datos datos) {
+        return jdbcTemplate.queryForObject("""
+                SELECT (SELECT count(*) FROM almacen a WHERE a.empresa_id = e.id) AS almacenes,
+                       (SELECT count(*) FROM armario ar JOIN almacen a ON a.id = ar.almacen_id
+                        WHERE a.empresa_id = e.id) AS armarios,
+                       (SELECT count(*) FROM repisa r JOIN armario ar ON ar.id = r.armario_id
+                        JOIN almacen a ON a.id = ar.almacen_id WHERE a.empresa_id = e.id) AS repisas,
+                       (SELECT count(*) FROM item i JOIN repisa r ON r.id = i.repisa_id JOIN armario ar ON ar.id = r.armario_id
+                        JOIN almacen a ON a.id = ar.almacen_id WHERE a.empresa_id = e.id) AS items,
+                       (SELECT count(*) FROM producto p WHERE p.empresa_id = e.id) AS productos,
+                       (SELECT count(*) FROM empresa_usuario eu WHERE eu.empresa_id = e.id) AS usuarios
+                FROM empresa e WHERE e.id = ?
+                """, (rs, n) -> Map.of(
+                "almacenes", rs.getLong("almacenes"),
+                "armarios", rs.getLong("armarios"),
+                "repisas", rs.getLong("repisas"),
+                "items", rs.getLong("items"),
+                "productos", rs.getLong("productos"),
+                "usuarios", rs.getLong("usuarios")), datos.empresa().getId());
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.maingest.service;
+
+import com.example.maingest.dto.PagoWompiDtos.WompiConfirmResponse;
+import com.example.maingest.service.WompiService.EventoWebhook;
+import com.example.maingest.service.WompiService.WompiTransactionInfo;
+import com.example.maingest.support.PruebaIntegracion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * La bandeja de webhooks de Wompi contra la tabla real, con WompiService simulado (firma y
+ * aplicación): deduplicación por (transacción, estado), orden por referencia, backoff, FALLIDO al
+ * agotar los reintentos, descarte de eventos viejos y que una referencia en backoff no le quite
+ * lugar del lote a las que ya pueden aplicarse.
+ */
+class WompiWebhookInboxTest extends PruebaIntegracion {
+
+    private static final AtomicLong SECUENCIA = new AtomicLong(System.nanoTime());
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private WompiService wompiService;
+    private final List<String> aplicados = new CopyOnWriteArrayList<>();
+    private final Set<String> fallan = ConcurrentHashMap.newKeySet();
+    private WompiWebhookInbox inbox;
+
+    @BeforeEach
+    void simularWompi() {
+        wompiService = mock(WompiService.class);
+        when(wompiService.aplicarEventoWebhook(any())).thenAnswer(invocacion -> {
+            WompiTransactionInfo tx = invocacion.getArgument(0);
+            if (fallan.contains(tx.id() + "/" + tx.status())) {
+                throw new IllegalStateException("Wompi simulado: falla " + tx.id());
+            }
+            aplicados.add(tx.reference() + ":" + tx.status());
+            return new WompiConfirmResponse("APLICADO", tx.status(), tx.reference(), null);
+        });
+    }
+
+    @AfterEach
+    void detener() {
+        if (inbox != null) {
+            inbox.stop();
+        }
+    }
+
+    @Test
+    void deduplicaPorTransaccionYEstado() {
+        inbox = bandeja(50, 10, 60_000);
+        String reference = referencia();
+        Instant ahora = Instant.now();
+
+        assertThat(recibir(reference, "tx-" + reference, "PENDING", ahora)).isTrue();
+        assertThat(recibir(reference, "tx-" + reference, "PENDING", ahora)).isFalse();
+        assertThat(recibir(reference, "tx-" + reference, "APPROVED", ahora.plusSeconds(1))).isTrue();
+
+        assertThat(inbox.recibidos()).isEqualTo(2);
+        assertThat(inbox.duplicados()).isEqualTo(1);
+        assertThat(contar(reference, null)).isEqualTo(2);
+    }
+
+    @Test
+    void aplicaEnOrdenDeEventoYDescartaLosViejos() throws Exception {
+        String reference = referencia();
+        Instant base = Instant.now().minusSeconds(60);
+        // Llegan desordenados: se aplican por evento_en, no por orden de llegada
+        recibir(reference, "tx-" + reference, "APPROVED", base.plusSeconds(20));
+        recibir(reference, "tx-" + reference, "PENDING", base.plusSeconds(10));
+        inbox = bandeja(50, 10, 60_000);
+        inbox.start();
+        esperar(() -> contar(reference, "PENDIENTE") == 0);
+        assertThat(aplicados).containsExactly(reference + ":PENDING", reference + ":APPROVED");
+
+        // Un evento firmado antes del último aplicado llega tarde: se descarta sin aplicarse
+        recibir(reference, "tx-" + reference, "DECLINED", base.plusSeconds(15));
+        esperar(() -> contar(reference, "PENDIENTE") == 0);
+        assertThat(contar(reference, "DESCARTADO")).isEqualTo(1);
+        assertThat(aplicados).hasSize(2);
+        assertThat(inbox.procesados()).isEqualTo(2);
+    }
+
+    @Test
+    void unFalloEsperaConBackoffYBloqueaLosSiguientesDeLaReferencia() throws Exception {
+        String reference = referencia();
+        Instant base = Instant.now().minusSeconds(60);
+        fallan.add("tx-" + reference + "/PENDING");
+        recibir(reference, "tx-" + reference, "PENDING", base);
+        recibir(reference, "tx-" + reference, "APPROVED", base.plusSeconds(5));
+        inbox = bandeja(50, 10, 60_000);
+        Instant inicio = Instant.now();
+        inbox.start();
+
+        esperar(() -> intentos(reference, "PENDING") == 1);
+        Timestamp siguiente = jdbcTemplate.queryForObject(
+                "SELECT siguiente_intento_en FROM wompi_evento WHERE reference = ? AND status = 'PENDING'",
+                Timestamp.class, reference);
+        assertThat(siguiente.toInstant()).isAfter(inicio.plus(Duration.ofSeconds(59)));
+        // Varias pasadas después, el APPROVED sigue esperando detrás del PENDING en backoff
+        Thread.sleep(500);
+        assertThat(intentos(reference, "PENDING")).isEqualTo(1);
+        assertThat(contar(reference, "PENDIENTE")).isEqualTo(2);
+        assertThat(aplicados).isEmpty();
+    }
+
+    @Test
+    void agotadosLosIntentosQuedaFallidoYSigueLaReferencia() throws Exception {
+        String reference = referencia();
+        Instant base = Instant.now().minusSeconds(60);
+        fallan.add("tx-" + reference + "/PENDING");
+        recibir(reference, "tx-" + reference, "PENDING", base);
+        recibir(reference, "tx-" + reference, "APPROVED", base.plusSeconds(5));
+        inbox = bandeja(50, 3, 100);
+        inbox.start();
+
+        esperar(() -> contar(reference, "PENDIENTE") == 0);
+        assertThat(intentos(reference, "PENDING")).isEqualTo(3);
+        assertThat(estado(reference, "PENDING")).isEqualTo("FALLIDO");
+        assertThat(estado(reference, "APPROVED")).isEqualTo("PROCESADO");
+        assertThat(inbox.fallidos()).isEqualTo(1);
+        assertThat(aplicados).containsExactly(reference + ":APPROVED");
+    }
+
+    @Test
+    void unaReferenciaEnBackoffNoOcupaElLote() throws Exception {
+        // Todo lo pendiente que dejaron otros tests queda fuera del camino
+        jdbcTemplate.update("UPDATE wompi_evento SET estado = 'DESCARTADO' WHERE estado = 'PENDIENTE'");
+        String enBackoff = referencia();
+        String lista = referencia();
+        Instant base = Instant.now().minusSeconds(60);
+        // La primera referencia (id menor) tiene su primer evento en backoff y otro posterior ya vencido
+        recibir(enBackoff, "tx-" + enBackoff, "PENDING", base);
+        recibir(enBackoff, "tx-" + enBackoff, "APPROVED", base.plusSeconds(5));
+        jdbcTemplate.update("UPDATE wompi_evento SET siguiente_intento_en = ?, intentos = 1 "
+                + "WHERE reference = ? AND status = 'PENDING'", Timestamp.from(Instant.now().plusSeconds(600)), enBackoff);
+        recibir(lista, "tx-" + lista, "APPROVED", base.plusSeconds(10));
+
+        inbox = bandeja(1, 10, 60_000);
+        inbox.start();
+        esperar(() -> contar(lista, "PROCESADO") == 1);
+        assertThat(contar(enBackoff, "PENDIENTE")).isEqualTo(2);
+        assertThat(inbox.pendientes()).isEqualTo(2);
+    }
+
+    private WompiWebhookInbox bandeja(int lote, int maxIntentos, long reintentoMs) {
+        return new WompiWebhookInbox(wompiService, jdbcTemplate, transactionManager,
+                true, 50, lote, maxIntentos, reintentoMs, reintentoMs);
+    }
+
+    private boolean recibir(String reference, String transactionId, String status, Instant eventoEn) {
+        if (inbox == null) {
+            inbox = bandeja(50, 10, 60_000);
+        }
+        String body = "{\"evento\":\"" + transactionId + "/" + status + "/" + SECUENCIA.incrementAndGet() + "\"}";
+        when(wompiService.leerWebhook(eq(body), any())).thenReturn(new EventoWebhook(
+                new WompiTransactionInfo(transactionId, reference, status, 100_000L, "COP"), eventoEn));
+        return inbox.recibir(body, "firma");
+    }
+
+    private static String referencia() {
+        return "ref-" + SECUENCIA.incrementAndGet();
+    }
+
+    private long contar(String reference, String estado) {
+        Long total = estado == null
+                ? jdbcTemplate.queryForObject("SELECT count(*) FROM wompi_evento WHERE reference = ?", Long.class, reference)
+                : jdbcTemplate.queryForObject("SELECT count(*) FROM wompi_evento WHERE reference = ? AND estado = ?",
+                Long.class, reference, estado);
+        return total != null ? total : 0;
+    }
+
+    private int intentos(String reference, String status) {
+        Integer intentos = jdbcTemplate.queryForObject(
+                "SELECT intentos FROM wompi_evento WHERE reference = ? AND status = ?", Integer.class, reference, status);
+        return intentos != null ? intentos : 0;
+    }
+
+    private String estado(String reference, String status) {
+        return jdbcTemplate.queryForObject(
+                "SELECT estado FROM wompi_evento WHERE reference = ? AND status = ?", String.class, reference, status);
+    }
+
+    private static void esperar(BooleanSupplier condicion) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+        while (!condicion.getAsBoolean()) {
+            if (System.nanoTime() > limite) {
+                throw new AssertionError("La bandeja no llegó al estado esperado");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
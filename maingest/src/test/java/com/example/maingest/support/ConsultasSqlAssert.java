@@ -0,0 +1,51 @@
+package com.example.maingest.support;
+
+import com.example.maingest.config.ConsultasSql;
+
+/**
+ * Fija cuántas sentencias SQL ejecuta un bloque, para que un N+1 nuevo rompa el test en vez de
+ * aparecer con datos reales:
+ * <pre>
+ * assertMaxQueries(3, () -&gt; mockMvc.perform(get("/api/almacenes")).andExpect(status().isOk()));
+ * </pre>
+ * MockMvc atiende en el mismo hilo del test, así que cuenta todo lo que hace el request. El
+ * DataSource tiene que estar envuelto ({@code app.sql.presupuesto.activo=true}, el valor por defecto).
+ */
+public final class ConsultasSqlAssert {
+
+    @FunctionalInterface
+    public interface Bloque<T> {
+        T ejecutar() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface BloqueSinResultado {
+        void ejecutar() throws Exception;
+    }
+
+    private ConsultasSqlAssert() {
+    }
+
+    public static void assertMaxQueries(int max, BloqueSinResultado bloque) throws Exception {
+        assertMaxQueries(max, () -> {
+            bloque.ejecutar();
+            return null;
+        });
+    }
+
+    public static <T> T assertMaxQueries(int max, Bloque<T> bloque) throws Exception {
+        T resultado;
+        ConsultasSql.Medicion medicion;
+        try (ConsultasSql.Medicion m = ConsultasSql.iniciar()) {
+            medicion = m;
+            resultado = bloque.ejecutar();
+        }
+        if (medicion.sentencias() > max) {
+            ConsultasSql.Repetida repetida = medicion.masRepetida();
+            throw new AssertionError("Se esperaban como máximo " + max + " sentencias SQL y se ejecutaron "
+                    + medicion.sentencias()
+                    + (repetida != null ? ". La más repetida (" + repetida.veces() + " veces): " + repetida.sql() : ""));
+        }
+        return resultado;
+    }
+}
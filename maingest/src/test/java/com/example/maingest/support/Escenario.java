@@ -0,0 +1,286 @@
+package com.example.maingest.support;
+
+import com.example.maingest.domain.Almacen;
+import com.example.maingest.domain.Armario;
+import com.example.maingest.domain.Empresa;
+import com.example.maingest.domain.EmpresaUsuario;
+import com.example.maingest.domain.EmpresaUsuarioId;
+import com.example.maingest.domain.Producto;
+import com.example.maingest.domain.Repisa;
+import com.example.maingest.domain.Rol;
+import com.example.maingest.domain.UnidadMedida;
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.domain.UsuarioRol;
+import com.example.maingest.domain.UsuarioRolId;
+import com.example.maingest.repository.AlmacenRepository;
+import com.example.maingest.repository.ArmarioRepository;
+import com.example.maingest.repository.EmpresaRepository;
+import com.example.maingest.repository.EmpresaUsuarioRepository;
+import com.example.maingest.repository.ProductoRepository;
+import com.example.maingest.repository.RepisaRepository;
+import com.example.maingest.repository.RolRepository;
+import com.example.maingest.repository.UsuarioRepository;
+import com.example.maingest.repository.UsuarioRolRepository;
+import com.example.maingest.security.JwtService;
+import com.example.maingest.service.OnboardingDefaultsService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Siembra una empresa completa para un test: propietario (rol con todos los permisos) con su
+ * token, un almacén con {@code armarios} x {@code repisasPorArmario} repisas y {@code productos}
+ * productos. Los nombres llevan un sufijo único porque la base es compartida entre tests.
+ */
+@Component
+public class Escenario {
+
+    private static final AtomicLong SECUENCIA = new AtomicLong(System.nanoTime());
+
+    public record Datos(
+            Usuario propietario,
+            String token,
+            Empresa empresa,
+            Almacen almacen,
+            List<Long> repisaIds,
+            List<Long> productoIds
+    ) {
+
+        public String bearer() {
+            return "Bearer " + token;
+        }
+    }
+
+    private final EmpresaRepository empresaRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final EmpresaUsuarioRepository empresaUsuarioRepository;
+    private final AlmacenRepository almacenRepository;
+    private final ArmarioRepository armarioRepository;
+    private final RepisaRepository repisaRepository;
+    private final ProductoRepository productoRepository;
+    private final RolRepository rolRepository;
+    private final UsuarioRolRepository usuarioRolRepository;
+    private final OnboardingDefaultsService onboardingDefaultsService;
+    private final JwtService jwtService;
+    private final JdbcTemplate jdbcTemplate;
+
+    public Escenario(
+            EmpresaRepository empresaRepository,
+            UsuarioRepository usuarioRepository,
+            EmpresaUsuarioRepository empresaUsuarioRepository,
+            AlmacenRepository almacenRepository,
+            ArmarioRepository armarioRepository,
+            RepisaRepository repisaRepository,
+            ProductoRepository productoRepository,
+            RolRepository rolRepository,
+            UsuarioRolRepository usuarioRolRepository,
+            OnboardingDefaultsService onboardingDefaultsService,
+            JwtService jwtService,
+            JdbcTemplate jdbcTemplate
+    ) {
+        this.empresaRepository = empresaRepository;
+        this.usuarioRepository = usuarioRepository;
+        this.empresaUsuarioRepository = empresaUsuarioRepository;
+        this.almacenRepository = almacenRepository;
+        this.armarioRepository = armarioRepository;
+        this.repisaRepository = repisaRepository;
+        this.productoRepository = productoRepository;
+        this.rolRepository = rolRepository;
+        this.usuarioRolRepository = usuarioRolRepository;
+        this.onboardingDefaultsService = onboardingDefaultsService;
+        this.jwtService = jwtService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Datos crear(int armarios, int repisasPorArmario, int productos) {
+        long sufijo = SECUENCIA.incrementAndGet();
+
+        Empresa empresa = new Empresa();
+        empresa.setNombre("Empresa test " + sufijo);
+        empresa = empresaRepository.save(empresa);
+
+        Usuario propietario = new Usuario();
+        propietario.setCorreo("propietario-" + sufijo + "@maingest.test");
+        propietario.setClave("{noop}test");
+        propietario.setNombre("Propietario " + sufijo);
+        propietario.setEstado("ACTIVO");
+        propietario = usuarioRepository.save(propietario);
+
+        EmpresaUsuario eu = new EmpresaUsuario();
+        eu.setId(new EmpresaUsuarioId(empresa.getId(), propietario.getId()));
+        eu.setEmpresa(empresa);
+        eu.setUsuario(propietario);
+        eu.setRol(onboardingDefaultsService.getOrCreateOwnerRoleWithAllPermisos());
+        empresaUsuarioRepository.save(eu);
+
+        Almacen almacen = new Almacen();
+        almacen.setNombre("Almacén " + sufijo);
+        almacen.setEmpresa(empresa);
+        almacen = almacenRepository.save(almacen);
+
+        List<Armario> nuevosArmarios = new ArrayList<>(armarios);
+        for (int a = 0; a < armarios; a++) {
+            Armario armario = new Armario();
+            armario.setNombre("Armario " + a);
+            armario.setTamanioTotal(repisasPorArmario);
+            armario.setAlmacen(almacen);
+            nuevosArmarios.add(armario);
+        }
+        List<Repisa> repisas = new ArrayList<>(armarios * repisasPorArmario);
+        for (Armario armario : armarioRepository.saveAll(nuevosArmarios)) {
+            for (int nivel = 1; nivel <= repisasPorArmario; nivel++) {
+                Repisa repisa = new Repisa();
+                repisa.setNivel(nivel);
+                repisa.setCapacidad(1_000_000);
+                repisa.setArmario(armario);
+                repisas.add(repisa);
+            }
+        }
+        List<Long> repisaIds = repisaRepository.saveAll(repisas).stream().map(Repisa::getId).toList();
+
+        List<Producto> nuevosProductos = new ArrayList<>(productos);
+        for (int i = 0; i < productos; i++) {
+            Producto producto = new Producto();
+            producto.setEmpresa(empresa);
+            producto.setSku(String.format("T%d-%06d", sufijo, i));
+            producto.setNombre("Producto " + i);
+            producto.setUnidadMedida(UnidadMedida.UNIDAD);
+            producto.setPrecioBase(BigDecimal.valueOf(1000 + i, 2));
+            nuevosProductos.add(producto);
+        }
+        List<Long> productoIds = productoRepository.saveAll(nuevosProductos).stream().map(Producto::getId).toList();
+
+        return new Datos(propietario, jwtService.generateToken(propietario), empresa, almacen, repisaIds, productoIds);
+    }
+
+    /**
+     * {@code cantidad} usuarios más en la empresa, con un rol de empresa propio y un rol global
+     * cada uno, como los que lista /api/usuarios.
+     */
+    public List<Long> agregarUsuarios(Datos datos, int cantidad) {
+        long sufijo = SECUENCIA.incrementAndGet();
+        Rol rolEmpresa = new Rol();
+        rolEmpresa.setNombre("OPERADOR_" + sufijo);
+        rolEmpresa.setDescripcion("Rol de empresa de test");
+        rolEmpresa.setEmpresa(datos.empresa());
+        rolEmpresa = rolRepository.save(rolEmpresa);
+        Rol rolGlobal = new Rol();
+        rolGlobal.setNombre("GLOBAL_" + sufijo);
+        rolGlobal.setDescripcion("Rol global de test");
+        rolGlobal = rolRepository.save(rolGlobal);
+
+        List<Long> ids = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            Usuario usuario = new Usuario();
+            usuario.setCorreo("usuario-" + sufijo + "-" + i + "@maingest.test");
+            usuario.setClave("{noop}test");
+            usuario.setNombre("Usuario " + i);
+            usuario.setEstado("ACTIVO");
+            usuario = usuarioRepository.save(usuario);
+
+            EmpresaUsuario eu = new EmpresaUsuario();
+            eu.setId(new EmpresaUsuarioId(datos.empresa().getId(), usuario.getId()));
+            eu.setEmpresa(datos.empresa());
+            eu.setUsuario(usuario);
+            eu.setRol(rolEmpresa);
+            empresaUsuarioRepository.save(eu);
+
+            UsuarioRol ur = new UsuarioRol();
+            ur.setId(new UsuarioRolId(usuario.getId(), rolGlobal.getId()));
+            ur.setUsuario(usuario);
+            ur.setRol(rolGlobal);
+            usuarioRolRepository.save(ur);
+            ids.add(usuario.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Un usuario con el rol global SUPER_ADMIN, sin empresa; devuelve su cabecera Authorization.
+     */
+    public String bearerSuperAdmin() {
+        long sufijo = SECUENCIA.incrementAndGet();
+        Rol superAdmin = rolRepository.findByNombre("SUPER_ADMIN").orElseGet(() -> {
+            Rol rol = new Rol();
+            rol.setNombre("SUPER_ADMIN");
+            rol.setDescripcion("Super administrador");
+            return rolRepository.save(rol);
+        });
+        Usuario usuario = new Usuario();
+        usuario.setCorreo("superadmin-" + sufijo + "@maingest.test");
+        usuario.setClave("{noop}test");
+        usuario.setNombre("Super admin " + sufijo);
+        usuario.setEstado("ACTIVO");
+        usuario = usuarioRepository.save(usuario);
+
+        UsuarioRol ur = new UsuarioRol();
+        ur.setId(new UsuarioRolId(usuario.getId(), superAdmin.getId()));
+        ur.setUsuario(usuario);
+        ur.setRol(superAdmin);
+        usuarioRolRepository.save(ur);
+        return "Bearer " + jwtService.generateToken(usuario);
+    }
+
+    /**
+     * {@code cantidad} eventos de auditoría del propietario, escritos directo en la tabla (el
+     * writer es asíncrono y no se puede esperar por un evento concreto).
+     */
+    public void auditoria(Datos datos, int cantidad) {
+        jdbcTemplate.update("""
+                INSERT INTO auditoria_evento (id, usuario_id, usuario_correo, accion, objeto_tipo, objeto_id, descripcion, creado_en)
+                SELECT nextval('auditoria_evento_id_seq'), ?, ?, 'ACTUALIZAR', 'PRODUCTO', g, 'Evento ' || g,
+                       now() - g * interval '1 second'
+                FROM generate_series(1, ?) AS g
+                """,
+                datos.propietario().getId(), datos.propietario().getCorreo(), cantidad);
+    }
+
+    /**
+     * {@code cantidad} entradas de kardex del propietario, repartidas entre los productos y
+     * escritas directo en la tabla. Cada {@code porFecha} movimientos comparten la misma fecha
+     * (al segundo), para ejercitar el desempate por id del cursor.
+     */
+    public void movimientos(Datos datos, int cantidad, int porFecha) {
+        jdbcTemplate.update("""
+                INSERT INTO movimiento_inventario (id, empresa_id, producto_id, repisa_destino_id, cantidad_movida,
+                                                   tipo, usuario_id, fecha)
+                SELECT nextval('movimiento_inventario_id_seq'), ?, (?::bigint[])[1 + g % cardinality(?::bigint[])],
+                       ?, 1, 'ENTRADA', ?, date_trunc('second', now()) - (g / ?) * interval '1 second'
+                FROM generate_series(0, ? - 1) AS g
+                """,
+                datos.empresa().getId(),
+                datos.productoIds().toArray(Long[]::new),
+                datos.productoIds().toArray(Long[]::new),
+                datos.repisaIds().get(0),
+                datos.propietario().getId(),
+                Math.max(1, porFecha),
+                cantidad);
+    }
+
+    /**
+     * Un item por producto en cada repisa (hasta {@code itemsPorRepisa} productos), insertados en
+     * una sola sentencia: para estructuras grandes sin pasar por InventarioService. El total de
+     * cada producto en producto_saldo se ajusta igual que lo haría un movimiento.
+     */
+    public void llenarRepisas(Datos datos, int itemsPorRepisa, int cantidad) {
+        List<Long> productos = datos.productoIds().subList(0, Math.min(itemsPorRepisa, datos.productoIds().size()));
+        jdbcTemplate.update("""
+                INSERT INTO item (id, nombre, estado, tamanio, producto_id, cantidad, estado_stock, repisa_id)
+                SELECT nextval('item_id_seq'), 'Item', 'ACTIVO', 1, p, ?, 'DISPONIBLE', r
+                FROM unnest(?::bigint[]) AS p CROSS JOIN unnest(?::bigint[]) AS r
+                """,
+                cantidad,
+                productos.toArray(Long[]::new),
+                datos.repisaIds().toArray(Long[]::new));
+        jdbcTemplate.update("""
+                INSERT INTO producto_saldo (producto_id, total)
+                SELECT p, ? * ? FROM unnest(?::bigint[]) AS p
+                ON CONFLICT (producto_id) DO UPDATE SET total = producto_saldo.total + EXCLUDED.total
+                """,
+                (long) cantidad, (long) datos.repisaIds().size(), productos.toArray(Long[]::new));
+    }
+}
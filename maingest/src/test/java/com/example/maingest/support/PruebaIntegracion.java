@@ -0,0 +1,75 @@
+package com.example.maingest.support;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Base de los tests de integración: contexto completo contra un PostgreSQL embebido (binarios
+ * zonky, sin Docker) que se arranca una vez por JVM. Todas las subclases comparten contexto y
+ * base, así que cada test siembra sus propios datos con {@link Escenario} y no asume tablas vacías.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.jpa.show-sql=false",
+        "app.jwt.secret=test-secret-test-secret-test-secret-0123456789",
+        "app.auditoria.fallback-file=target/auditoria-fallback.ndjson",
+        "app.jfr.directorio=target/jfr",
+        // Un worker y dos en espera: el test de /api/jobs llena la cola con tres trabajos
+        "app.trabajos.directorio=target/trabajos",
+        "app.trabajos.workers=1",
+        "app.trabajos.cola=2",
+        // La bandeja de Wompi del contexto no procesa: WompiWebhookInboxTest arma las suyas
+        "app.wompi.inbox.procesar=false",
+        "logging.level.com.example.maingest.service.InventarioService=WARN",
+        "spring.security.oauth2.client.registration.google.client-id=test",
+        "spring.security.oauth2.client.registration.google.client-secret=test",
+        "spring.security.oauth2.client.registration.microsoft.client-id=test",
+        "spring.security.oauth2.client.registration.microsoft.client-secret=test"
+})
+@AutoConfigureMockMvc
+public abstract class PruebaIntegracion {
+
+    private static EmbeddedPostgres postgres;
+
+    @DynamicPropertySource
+    static void baseDeDatos(DynamicPropertyRegistry registry) throws SQLException {
+        EmbeddedPostgres pg = postgres();
+        // ddl-auto=create recrea las tablas mapeadas en cada contexto nuevo pero no SCHEMA_MIGRACION:
+        // sin esto los pasos constarían como aplicados sobre tablas recién creadas
+        try (Connection conexion = pg.getPostgresDatabase().getConnection();
+             Statement statement = conexion.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS schema_migracion");
+        }
+        registry.add("spring.datasource.url", () -> pg.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    private static synchronized EmbeddedPostgres postgres() {
+        if (postgres == null) {
+            try {
+                postgres = EmbeddedPostgres.builder().start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo iniciar el PostgreSQL embebido", e);
+            }
+            EmbeddedPostgres iniciado = postgres;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    iniciado.close();
+                } catch (IOException ignored) {
+                    // La JVM de tests está terminando
+                }
+            }, "postgres-embebido-cierre"));
+        }
+        return postgres;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.maingest.support;
+
+import com.example.maingest.domain.Usuario;
+import com.example.maingest.service.TrabajoEjecutor;
+import com.example.maingest.service.TrabajoService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trabajo de tipo PRUEBA para los tests de /api/jobs: publica 50 % de avance, espera a que el test
+ * abra la compuerta (revisando la cancelación mientras tanto) y escribe {@code lineas} líneas en
+ * prueba.txt. Con la compuerta abierta, que es lo normal, termina enseguida.
+ */
+@Component
+public class TrabajoDePrueba implements TrabajoEjecutor {
+
+    public static final String TIPO = "PRUEBA";
+
+    private final ObjectMapper objectMapper;
+    private volatile CountDownLatch compuerta = new CountDownLatch(0);
+
+    public TrabajoDePrueba(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Los trabajos que arranquen desde ahora esperan en el 50 % hasta {@link #abrir()}.
+     */
+    public void cerrar() {
+        compuerta = new CountDownLatch(1);
+    }
+
+    public void abrir() {
+        compuerta.countDown();
+    }
+
+    @Override
+    public String tipo() {
+        return TIPO;
+    }
+
+    @Override
+    public JsonNode validar(Usuario actor, JsonNode parametros) {
+        if (actor == null) {
+            throw new SecurityException("Usuario no autenticado");
+        }
+        int lineas = parametros.path("lineas").asInt(3);
+        if (lineas < 0) {
+            throw new IllegalArgumentException("lineas no puede ser negativo");
+        }
+        ObjectNode normalizados = objectMapper.createObjectNode();
+        normalizados.put("lineas", lineas);
+        return normalizados;
+    }
+
+    @Override
+    public void ejecutar(TrabajoService.Contexto contexto) throws Exception {
+        CountDownLatch espera = compuerta;
+        contexto.progreso(50, "esperando compuerta");
+        while (!espera.await(20, TimeUnit.MILLISECONDS)) {
+            contexto.verificarCancelacion();
+        }
+        int lineas = contexto.parametros().path("lineas").asInt();
+        try (OutputStream salida = contexto.archivo("prueba.txt", "text/plain; charset=UTF-8")) {
+            for (int i = 1; i <= lineas; i++) {
+                salida.write(("linea " + i + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        contexto.resultado(Map.of("lineas", lineas));
+    }
+}